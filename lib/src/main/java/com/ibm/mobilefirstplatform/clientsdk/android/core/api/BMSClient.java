@@ -16,15 +16,32 @@ package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
 import android.content.Context;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.AbstractClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.CallRegistry;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.CircuitBreakerRegistry;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ConnectionPrewarmer;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.GzipRequestBody;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.HttpClientRegistry;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.OfflineQueue;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.PersistentCookieStore;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RequestEvents;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseBuffer;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseDelivery;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RetryEngine;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.DummyAuthorizationManager;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.HttpUrl;
 
-import java.net.CookiePolicy;
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.concurrent.Executor;
 
 /**
  * The BMSClient is a singleton that serves as the entry point to MobileFirst.
  */
 public class BMSClient extends AbstractClient {
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + BMSClient.class.getSimpleName());
 
 	public final static String REGION_US_SOUTH = ".ng.bluemix.net";
 	public final static String REGION_UK = ".eu-gb.bluemix.net";
@@ -32,11 +49,16 @@ public class BMSClient extends AbstractClient {
 
     public final static String HTTP_SCHEME = "http";
     public final static String HTTPS_SCHEME = "https";
+
+    private final static String RESPONSE_CACHE_DIRECTORY = "bms-http-cache";
+    private final static String COOKIE_FILE = "bms-cookies";
 	
     private String backendRoute;
+    private HttpUrl backendRouteUrl;
     private String backendGUID;
 	private String bluemixRegionSuffix;
     private String defaultProtocol = HTTPS_SCHEME;
+    private OfflineQueueListener offlineQueueListener;
 
     protected static AbstractClient instance = null;
 
@@ -69,13 +91,395 @@ public class BMSClient extends AbstractClient {
 	public void initialize(Context context, String bluemixAppRoute, String bluemixAppGUID, String bluemixRegion) throws MalformedURLException{
 		this.backendGUID = bluemixAppGUID;
 		this.backendRoute = bluemixAppRoute;
+		this.backendRouteUrl = bluemixAppRoute != null ? HttpUrl.parse(bluemixAppRoute) : null;
 		this.bluemixRegionSuffix = bluemixRegion;
 		this.authorizationManager = new DummyAuthorizationManager(context);
 
-		Request.setCookieManager(cookieManager);
-		cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
+		Request.setCookieManager(getCookieManager());
 	}
 
+    /**
+     * Opens connections to the Bluemix app route and to the authorization server in the background, so that
+     * the first requests reuse a connection instead of waiting for DNS lookup, TCP connect and TLS handshake.
+     * The authorization server is only contacted when the current authorization manager uses one, for example
+     * MCAAuthorizationManager.
+     * <p>
+     * This method should be called after {@link #initialize}, for example when the application starts.
+     * </p>
+     */
+    public void prewarm() {
+        ConnectionPrewarmer.prewarm();
+    }
+
+    /**
+     * Enables a disk cache for the responses of resource requests. The cache follows the Cache-Control
+     * headers of the server and revalidates stale responses with If-None-Match and If-Modified-Since.
+     * A response that the server confirms as unchanged is delivered as a normal success with the cached body.
+     * When the cache is full, the least recently used responses are removed.
+     *
+     * @param context Android application context, the cache is stored in its cache directory
+     * @param maxSize the maximum number of bytes the cache may use
+     */
+    public void enableResponseCache(Context context, long maxSize) {
+        Cache previousCache = Request.getCache();
+
+        Request.setCache(new Cache(new File(context.getCacheDir(), RESPONSE_CACHE_DIRECTORY), maxSize));
+
+        closeCache(previousCache);
+    }
+
+    /**
+     * Disables the response cache. The responses already stored are kept on disk.
+     */
+    public void disableResponseCache() {
+        Cache previousCache = Request.getCache();
+
+        Request.setCache(null);
+
+        closeCache(previousCache);
+    }
+
+    /**
+     * @return the hit, miss and revalidation counters of the response cache since it was enabled
+     */
+    public CacheStatistics getResponseCacheStatistics() {
+        return Request.getCacheStatistics();
+    }
+
+    private void closeCache(Cache cache) {
+        if (cache == null) {
+            return;
+        }
+
+        try {
+            cache.close();
+        } catch (IOException e) {
+            logger.error("Response cache can't be closed: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Enables or disables gzip compression of request bodies. Compressed bodies are sent with the header
+     * "Content-Encoding: gzip", so enable it only for servers that accept compressed request bodies.
+     * Compression is disabled by default and can be changed for a single request with
+     * {@link Request#setCompressionEnabled} and {@link Request#setCompressionThreshold}.
+     *
+     * @param enabled true to compress request bodies
+     * @param threshold the minimum size in bytes of a body to be compressed
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public void setRequestCompression(boolean enabled, long threshold) {
+        Request.setDefaultCompression(enabled, threshold);
+    }
+
+    /**
+     * @return true if request bodies are compressed by default
+     */
+    public boolean isRequestCompressionEnabled() {
+        return Request.isDefaultCompressionEnabled();
+    }
+
+    /**
+     * @return the minimum size in bytes of a request body to be compressed by default
+     */
+    public long getRequestCompressionThreshold() {
+        return Request.getDefaultCompressionThreshold();
+    }
+
+    /**
+     * @return the number of bytes saved by compressing request bodies and the CPU time spent on it
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return GzipRequestBody.getStatistics();
+    }
+
+    /**
+     * Sets the retry budget shared by all requests with a {@link RetryPolicy}. Every request adds
+     * {@code retryRatio} to the budget, up to {@code reserve}, and every retry takes one from it. When the budget
+     * is empty, failed requests are not retried, so that retries don't multiply the load on a server that is
+     * already failing. The defaults are a ratio of 0.1 and a reserve of 10.
+     *
+     * @param retryRatio the number of retries allowed per request sent
+     * @param reserve the maximum number of retries allowed in a burst
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setRetryBudget(double retryRatio, int reserve) {
+        RetryEngine.getBudget().setLimits(retryRatio, reserve);
+    }
+
+    /**
+     * Enables a circuit breaker for every host requests are sent to. While the circuit of a host is open,
+     * requests to it fail at once with a {@link CircuitBreakerOpenException} instead of waiting for the timeout.
+     * Enabling circuit breakers again with a new configuration resets the state of all hosts.
+     *
+     * @param config the thresholds of the circuit breakers, or null for the defaults
+     */
+    public void enableCircuitBreaker(CircuitBreakerConfig config) {
+        CircuitBreakerRegistry.setConfig(config != null ? config : new CircuitBreakerConfig.Builder().build());
+    }
+
+    /**
+     * Disables the circuit breakers. Circuit breakers are disabled by default.
+     */
+    public void disableCircuitBreaker() {
+        CircuitBreakerRegistry.setConfig(null);
+    }
+
+    /**
+     * @param host a host
+     * @return the state of the circuit breaker of the host, or null if circuit breakers are disabled
+     */
+    public CircuitBreakerListener.State getCircuitBreakerState(String host) {
+        return CircuitBreakerRegistry.getState(host);
+    }
+
+    /**
+     * Adds a listener notified whenever the circuit breaker of a host changes state.
+     *
+     * @param listener the listener to add
+     */
+    public void addCircuitBreakerListener(CircuitBreakerListener listener) {
+        CircuitBreakerRegistry.addListener(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeCircuitBreakerListener(CircuitBreakerListener listener) {
+        CircuitBreakerRegistry.removeListener(listener);
+    }
+
+    /**
+     * Adds a listener notified about the phases of every resource and authorization request: DNS lookup,
+     * connect, TLS handshake, request sent, first byte, body read and authorization round trips.
+     * Every response carries a summary of the same phases, see {@link ExtendedResponse#getTimings()}.
+     *
+     * @param listener the listener to add
+     */
+    public void addRequestEventListener(RequestEventListener listener) {
+        RequestEvents.addListener(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeRequestEventListener(RequestEventListener listener) {
+        RequestEvents.removeListener(listener);
+    }
+
+    /**
+     * Enables the offline queue, which stores the requests made deferrable with {@link Request#setDeferrable}
+     * in the files directory of the application and sends them once the device is online. Requests left in the
+     * queue by a previous run of the application are sent again.
+     *
+     * @param context Android application context
+     * @param maxConcurrentRequests the maximum number of queued requests sent at the same time;
+     *                              with 1 the requests are delivered strictly in order
+     * @throws IOException if the queue files can't be opened
+     */
+    public void enableOfflineQueue(Context context, int maxConcurrentRequests) throws IOException {
+        OfflineQueue.enable(context, maxConcurrentRequests, offlineQueueListener);
+    }
+
+    /**
+     * Disables the offline queue. Queued requests stay on disk until the queue is enabled again.
+     */
+    public void disableOfflineQueue() {
+        OfflineQueue.disable();
+    }
+
+    /**
+     * @return the number of requests in the offline queue, or 0 if it is disabled
+     */
+    public int getOfflineQueueSize() {
+        OfflineQueue queue = OfflineQueue.getInstance();
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Sets the listener notified about every request delivered or dropped by the offline queue.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setOfflineQueueListener(OfflineQueueListener listener) {
+        offlineQueueListener = listener;
+
+        OfflineQueue queue = OfflineQueue.getInstance();
+        if (queue != null) {
+            queue.setListener(listener);
+        }
+    }
+
+    /**
+     * Keeps the cookies of resource and authorization requests in the files directory of the application,
+     * so that sessions survive a restart of the application. The store is indexed by domain and path and
+     * holds at most the given number of cookies, dropping expired cookies first and then the cookies that
+     * expire soonest.
+     *
+     * @param context Android application context
+     * @param maxCookies the maximum number of cookies kept
+     * @throws IOException if the cookie file can't be opened
+     */
+    public void enablePersistentCookies(Context context, int maxCookies) throws IOException {
+        setCookieStore(new PersistentCookieStore(new File(context.getFilesDir(), COOKIE_FILE), maxCookies));
+    }
+
+    /**
+     * Goes back to keeping cookies in memory. The cookie file stays on disk until persistent cookies
+     * are enabled again.
+     */
+    public void disablePersistentCookies() {
+        setCookieStore(null);
+    }
+
+    /**
+     * Sets the executor that calls the listeners of resource requests, unless a request sets its own with
+     * {@link Request#setCallbackExecutor}. See {@link CallbackExecutors} for the executors provided by the SDK.
+     * The default calls the listeners on the network thread.
+     *
+     * @param executor the executor, or null to restore the default
+     */
+    public void setCallbackExecutor(Executor executor) {
+        ResponseDelivery.setDefaultExecutor(executor);
+    }
+
+    /**
+     * @return the executor that calls the listeners of resource requests
+     */
+    public Executor getCallbackExecutor() {
+        return ResponseDelivery.getDefaultExecutor();
+    }
+
+    /**
+     * Sets the number of threads that read response bodies before the listeners are called, so that the network
+     * threads are free for the next request. With 0, the default, bodies are read on the network thread.
+     *
+     * @param threads the number of parsing threads
+     * @throws IllegalArgumentException if threads is negative
+     */
+    public void setResponseParsingThreads(int threads) {
+        ResponseDelivery.setParsePoolSize(threads);
+    }
+
+    /**
+     * @return the number of threads that read response bodies, 0 if they are read on the network thread
+     */
+    public int getResponseParsingThreads() {
+        return ResponseDelivery.getParsePoolSize();
+    }
+
+    /**
+     * Limits the size of the response bodies kept in memory. Larger bodies are either written to a temporary
+     * file in the cache directory, and read back from it, or fail the request with a
+     * {@link ResponseBodyTooLargeException}. By default there is no limit. The temporary file of a response
+     * is deleted by {@link ExtendedResponse#close()}, or once the response is garbage collected; files left by
+     * an earlier run are deleted when this method is called.
+     *
+     * @param context  Android application context, spilled bodies are stored in its cache directory
+     * @param maxBytes the largest body kept in memory, or Long.MAX_VALUE for no limit
+     * @param policy   what happens to larger bodies
+     */
+    public void setMaxResponseBodySize(Context context, long maxBytes, LargeBodyPolicy policy) {
+        ResponseBuffer.setSpillDirectory(context != null ? context.getCacheDir() : null);
+        ResponseBuffer.setLimit(maxBytes, policy);
+    }
+
+    /**
+     * @return the largest response body kept in memory, Long.MAX_VALUE if there is no limit
+     */
+    public long getMaxResponseBodySize() {
+        return ResponseBuffer.getMaxInMemorySize();
+    }
+
+    /**
+     * @return what happens to response bodies above {@link #getMaxResponseBodySize()}
+     */
+    public LargeBodyPolicy getLargeBodyPolicy() {
+        return ResponseBuffer.getLargeBodyPolicy();
+    }
+
+    /**
+     * Cancels all the resource requests sent with the given tag, see {@link Request#setTag}. Their listeners are
+     * called with a {@link RequestCancelledException}.
+     *
+     * @param tag the tag of the requests
+     * @return the number of requests cancelled
+     */
+    public int cancelAll(Object tag) {
+        return CallRegistry.cancelAll(tag);
+    }
+
+    /**
+     * Sets the limits of the request dispatcher and the connection pool. The settings apply to resource requests
+     * and authorization requests alike, and are changed for both at once.
+     * The SDK's defaults are 64 requests, 5 requests per host, 5 idle connections and a keep-alive of 5 minutes.
+     *
+     * @param maxRequests the maximum number of requests executed at the same time
+     * @param maxRequestsPerHost the maximum number of requests to the same host executed at the same time
+     * @param maxIdleConnections the maximum number of idle connections kept open for reuse
+     * @param keepAliveDuration the time in milliseconds an idle connection is kept open
+     * @throws IllegalArgumentException if any of the values is out of range
+     */
+    public void setConnectionSettings(int maxRequests, int maxRequestsPerHost, int maxIdleConnections, long keepAliveDuration) {
+        HttpClientRegistry.setConnectionSettings(maxRequests, maxRequestsPerHost, maxIdleConnections, keepAliveDuration);
+    }
+
+    /**
+     * Enables or disables HTTP/2 for resource and authorization requests. HTTP/2 is enabled by default.
+     * <p>
+     * When enabled, HTTP/2 is negotiated during the TLS handshake (ALPN) and servers that don't support it are
+     * reached over HTTP/1.1. With HTTP/2, concurrent requests to the same host share one connection instead of
+     * opening one socket each; consider raising the per host limit of {@link #setConnectionSettings} accordingly.
+     * </p>
+     *
+     * @param enabled true to use HTTP/2 when the server supports it
+     */
+    public void setHttp2Enabled(boolean enabled) {
+        HttpClientRegistry.setHttp2Enabled(enabled);
+    }
+
+    /**
+     * @return true if HTTP/2 is used when the server supports it
+     */
+    public boolean isHttp2Enabled() {
+        return HttpClientRegistry.isHttp2Enabled();
+    }
+
+    /**
+     * @return the maximum number of requests executed at the same time
+     */
+    public int getMaxRequests() {
+        return HttpClientRegistry.getMaxRequests();
+    }
+
+    /**
+     * @return the maximum number of requests to the same host executed at the same time
+     */
+    public int getMaxRequestsPerHost() {
+        return HttpClientRegistry.getMaxRequestsPerHost();
+    }
+
+    /**
+     * @return the maximum number of idle connections kept open for reuse
+     */
+    public int getMaxIdleConnections() {
+        return HttpClientRegistry.getMaxIdleConnections();
+    }
+
+    /**
+     * @return the time in milliseconds an idle connection is kept open
+     */
+    public long getKeepAliveDuration() {
+        return HttpClientRegistry.getKeepAliveDuration();
+    }
+
+    /**
+     * @return the current number of running and queued requests, and of open and idle connections
+     */
+    public ConnectionStatistics getConnectionStatistics() {
+        return HttpClientRegistry.getStatistics();
+    }
+
     /**
      *
      * @return backend route url
@@ -84,6 +488,14 @@ public class BMSClient extends AbstractClient {
         return backendRoute;
     }
 
+    /**
+     * @exclude
+     * @return backend route parsed once when the SDK is initialized, or null if it is not a valid http or https URL
+     */
+    public HttpUrl getBluemixAppRouteUrl() {
+        return backendRouteUrl;
+    }
+
     /**
      *
      * @return backend GUID
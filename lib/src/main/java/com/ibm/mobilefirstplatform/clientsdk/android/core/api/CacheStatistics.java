@@ -0,0 +1,78 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * A snapshot of the response cache counters, as returned by {@link BMSClient#getResponseCacheStatistics()}.
+ */
+public class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long revalidationCount;
+    private final long size;
+    private final long maxSize;
+
+    /**
+     * @exclude
+     */
+    public CacheStatistics(long hitCount, long missCount, long revalidationCount, long size, long maxSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.revalidationCount = revalidationCount;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the number of responses served from the cache without contacting the server
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of responses that were not in the cache, or had changed on the server
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of cached responses that the server confirmed as unchanged with a 304 status
+     */
+    public long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    /**
+     * @return the number of bytes currently used by the cache
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of bytes the cache may use
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics: hits=" + hitCount + ", misses=" + missCount + ", revalidations=" + revalidationCount
+                + ", size=" + size + ", maxSize=" + maxSize;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors for the listeners of requests, see {@link BMSClient#setCallbackExecutor} and
+ * {@link Request#setCallbackExecutor}.
+ */
+public final class CallbackExecutors {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Executor mainThread;
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * Returns the executor that calls listeners on the thread that finished the request: a network thread,
+     * or a thread of the parse pool when one is set with {@link BMSClient#setResponseParsingThreads}.
+     * This is the default.
+     *
+     * @return the direct executor
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Returns the executor that calls listeners on the main thread of the application.
+     *
+     * @return the main thread executor
+     */
+    public static synchronized Executor mainThread() {
+        if (mainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+
+            mainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+
+        return mainThread;
+    }
+}
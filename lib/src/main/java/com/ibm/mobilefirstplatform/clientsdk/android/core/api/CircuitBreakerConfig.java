@@ -0,0 +1,217 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * The thresholds of the circuit breakers enabled with {@link BMSClient#enableCircuitBreaker}.
+ * <p>
+ * Each host has its own circuit breaker, which remembers the outcome of the last calls to the host. A call
+ * fails when it ends with an I/O error or a response with a status code of 500 or more, and it is slow when it
+ * takes longer than the slow call duration. Once enough calls were made, the circuit opens when the share of
+ * failed calls or the share of slow calls reaches its threshold. While the circuit is open, requests to the host
+ * fail at once with a {@link CircuitBreakerOpenException}. After the open duration the circuit is half-open and
+ * lets a few trial calls through: if they go well the circuit closes again, otherwise it opens again.
+ * </p>
+ */
+public class CircuitBreakerConfig {
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+    public static final long DEFAULT_SLOW_CALL_DURATION = 10000;
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final long openDuration;
+    private final int halfOpenCalls;
+
+    private CircuitBreakerConfig(Builder builder) {
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.openDuration = builder.openDuration;
+        this.halfOpenCalls = builder.halfOpenCalls;
+    }
+
+    /**
+     * @return the number of recent calls whose outcome is remembered
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return the number of calls needed before the circuit can open
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * @return the percentage of failed calls that opens the circuit
+     */
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @return the percentage of slow calls that opens the circuit
+     */
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @return the duration in milliseconds after which a call is slow
+     */
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * @return the time in milliseconds the circuit stays open before trial calls are let through
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @return the number of trial calls let through while the circuit is half-open
+     */
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerConfig: windowSize=" + windowSize + ", minimumCalls=" + minimumCalls
+                + ", failureRateThreshold=" + failureRateThreshold + "%, slowCallRateThreshold=" + slowCallRateThreshold
+                + "%, slowCallDuration=" + slowCallDuration + ", openDuration=" + openDuration + ", halfOpenCalls=" + halfOpenCalls;
+    }
+
+    /**
+     * Builds a {@link CircuitBreakerConfig}. The defaults are a window of 20 calls, at least 10 calls, a failure
+     * rate threshold of 50%, a slow call rate threshold of 80% with a slow call duration of 10 seconds, an open
+     * duration of 30 seconds and 3 trial calls.
+     */
+    public static class Builder {
+        private int windowSize = DEFAULT_WINDOW_SIZE;
+        private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+        private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+        private int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+        private long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+        private long openDuration = DEFAULT_OPEN_DURATION;
+        private int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+        /**
+         * @param windowSize the number of recent calls whose outcome is remembered
+         * @return this builder
+         */
+        public Builder windowSize(int windowSize) {
+            if (windowSize < 1) {
+                throw new IllegalArgumentException("windowSize < 1: " + windowSize);
+            }
+
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param minimumCalls the number of calls needed before the circuit can open
+         * @return this builder
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            if (minimumCalls < 1) {
+                throw new IllegalArgumentException("minimumCalls < 1: " + minimumCalls);
+            }
+
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param failureRateThreshold the percentage of failed calls that opens the circuit, from 1 to 100
+         * @return this builder
+         */
+        public Builder failureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = checkPercentage("failureRateThreshold", failureRateThreshold);
+            return this;
+        }
+
+        /**
+         * @param slowCallRateThreshold the percentage of slow calls that opens the circuit, from 1 to 100
+         * @param slowCallDuration      the duration in milliseconds after which a call is slow
+         * @return this builder
+         */
+        public Builder slowCallThreshold(int slowCallRateThreshold, long slowCallDuration) {
+            if (slowCallDuration < 1) {
+                throw new IllegalArgumentException("slowCallDuration < 1: " + slowCallDuration);
+            }
+
+            this.slowCallRateThreshold = checkPercentage("slowCallRateThreshold", slowCallRateThreshold);
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        /**
+         * @param openDuration the time in milliseconds the circuit stays open before trial calls are let through
+         * @return this builder
+         */
+        public Builder openDuration(long openDuration) {
+            if (openDuration < 0) {
+                throw new IllegalArgumentException("openDuration < 0: " + openDuration);
+            }
+
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * @param halfOpenCalls the number of trial calls let through while the circuit is half-open
+         * @return this builder
+         */
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            if (halfOpenCalls < 1) {
+                throw new IllegalArgumentException("halfOpenCalls < 1: " + halfOpenCalls);
+            }
+
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public CircuitBreakerConfig build() {
+            if (minimumCalls > windowSize) {
+                throw new IllegalArgumentException("minimumCalls > windowSize: " + minimumCalls + " > " + windowSize);
+            }
+
+            return new CircuitBreakerConfig(this);
+        }
+
+        private static int checkPercentage(String name, int value) {
+            if (value < 1 || value > 100) {
+                throw new IllegalArgumentException(name + " is not between 1 and 100: " + value);
+            }
+
+            return value;
+        }
+    }
+}
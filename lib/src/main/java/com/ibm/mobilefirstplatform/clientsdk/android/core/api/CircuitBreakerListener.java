@@ -0,0 +1,49 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * Listener notified when the circuit breaker of a host changes state,
+ * see {@link BMSClient#addCircuitBreakerListener}.
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    enum State {
+        /**
+         * Requests are sent and their outcome is recorded.
+         */
+        CLOSED,
+        /**
+         * Requests fail at once without being sent.
+         */
+        OPEN,
+        /**
+         * A few trial requests are sent to find out if the host has recovered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Called when the circuit breaker of a host changes state. Called on the thread that caused the change,
+     * so it should return quickly.
+     *
+     * @param host the host of the circuit breaker
+     * @param from the previous state
+     * @param to   the new state
+     */
+    void onStateChanged(String host, State from, State to);
+}
@@ -0,0 +1,49 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+
+/**
+ * Passed to {@link ResponseListener#onFailure} when a request was not sent because the circuit breaker
+ * of its host is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final String host;
+    private final long retryAfter;
+
+    /**
+     * @exclude
+     */
+    public CircuitBreakerOpenException(String host, long retryAfter) {
+        super("Circuit breaker is open for host " + host + ", request not sent");
+        this.host = host;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the host whose circuit breaker is open
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the time in milliseconds until the circuit breaker lets trial requests through
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * A snapshot of the request body compression counters, as returned by {@link BMSClient#getCompressionStatistics()}.
+ */
+public class CompressionStatistics {
+
+    private final long compressedBodyCount;
+    private final long bytesBeforeCompression;
+    private final long bytesAfterCompression;
+    private final long cpuTimeNanos;
+
+    /**
+     * @exclude
+     */
+    public CompressionStatistics(long compressedBodyCount, long bytesBeforeCompression, long bytesAfterCompression, long cpuTimeNanos) {
+        this.compressedBodyCount = compressedBodyCount;
+        this.bytesBeforeCompression = bytesBeforeCompression;
+        this.bytesAfterCompression = bytesAfterCompression;
+        this.cpuTimeNanos = cpuTimeNanos;
+    }
+
+    /**
+     * @return the number of request bodies sent compressed
+     */
+    public long getCompressedBodyCount() {
+        return compressedBodyCount;
+    }
+
+    /**
+     * @return the total size in bytes of the compressed bodies before compression
+     */
+    public long getBytesBeforeCompression() {
+        return bytesBeforeCompression;
+    }
+
+    /**
+     * @return the total size in bytes of the compressed bodies as sent
+     */
+    public long getBytesAfterCompression() {
+        return bytesAfterCompression;
+    }
+
+    /**
+     * @return the number of bytes not sent thanks to compression
+     */
+    public long getBytesSaved() {
+        return bytesBeforeCompression - bytesAfterCompression;
+    }
+
+    /**
+     * @return the CPU time in nanoseconds spent writing the compressed bodies
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStatistics: bodies=" + compressedBodyCount + ", before=" + bytesBeforeCompression
+                + ", after=" + bytesAfterCompression + ", saved=" + getBytesSaved() + ", cpuTimeNanos=" + cpuTimeNanos;
+    }
+}
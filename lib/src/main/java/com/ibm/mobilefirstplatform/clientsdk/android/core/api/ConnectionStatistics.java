@@ -0,0 +1,99 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * A snapshot of the request dispatcher and connection pool, as returned by {@link BMSClient#getConnectionStatistics()}.
+ */
+public class ConnectionStatistics {
+
+    private final int runningCallCount;
+    private final int queuedCallCount;
+    private final int connectionCount;
+    private final int idleConnectionCount;
+    private final int multiplexedConnectionCount;
+    private final long fullHandshakeCount;
+    private final long resumedHandshakeCount;
+
+    /**
+     * @exclude
+     */
+    public ConnectionStatistics(int runningCallCount, int queuedCallCount, int connectionCount, int idleConnectionCount, int multiplexedConnectionCount,
+                                long fullHandshakeCount, long resumedHandshakeCount) {
+        this.runningCallCount = runningCallCount;
+        this.queuedCallCount = queuedCallCount;
+        this.connectionCount = connectionCount;
+        this.idleConnectionCount = idleConnectionCount;
+        this.multiplexedConnectionCount = multiplexedConnectionCount;
+        this.fullHandshakeCount = fullHandshakeCount;
+        this.resumedHandshakeCount = resumedHandshakeCount;
+    }
+
+    /**
+     * @return the number of requests currently being executed
+     */
+    public int getRunningCallCount() {
+        return runningCallCount;
+    }
+
+    /**
+     * @return the number of requests waiting for the dispatcher
+     */
+    public int getQueuedCallCount() {
+        return queuedCallCount;
+    }
+
+    /**
+     * @return the number of open connections in the pool
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return the number of open connections that are not in use
+     */
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    /**
+     * @return the number of open connections that carry several requests at once (HTTP/2)
+     */
+    public int getMultiplexedConnectionCount() {
+        return multiplexedConnectionCount;
+    }
+
+    /**
+     * @return the number of TLS handshakes that created a new session
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakeCount;
+    }
+
+    /**
+     * @return the number of TLS handshakes that resumed a cached session
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStatistics: running=" + runningCallCount + ", queued=" + queuedCallCount
+                + ", connections=" + connectionCount + ", idle=" + idleConnectionCount
+                + ", multiplexed=" + multiplexedConnectionCount
+                + ", fullHandshakes=" + fullHandshakeCount + ", resumedHandshakes=" + resumedHandshakeCount;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.InputStream;
+
+/**
+ * The methods of a {@link Response} that were added after the first release of the SDK. They are kept out of
+ * {@link Response} so that existing implementations and mocks of it keep compiling, and will move into it with
+ * the next major version.
+ * <p>
+ * Every response passed to a {@link ResponseListener} or returned by the SDK implements this interface.
+ * </p>
+ */
+public interface ExtendedResponse extends Response {
+
+    /**
+     * This method gets the response body as a stream. When the request was sent with a
+     * {@link StreamingResponseListener} the stream reads directly from the network and is only valid
+     * until {@link ResponseListener#onSuccess(Response)} returns.
+     *
+     * @return the response body as a stream. Will be null if there is no body.
+     */
+    InputStream getResponseByteStream();
+
+    /**
+     * Get the time spent in each phase of the request.
+     *
+     * @return the timing summary of the request. Will be null when the request did not go through the SDK's clients.
+     */
+    RequestTimings getTimings();
+
+    /**
+     * Releases the body of this response early. The SDK gives the buffer of a body back to its pool on its own
+     * once the listener returns, so closing mainly matters for a body that was over the in-memory limit: its
+     * temporary file is deleted at once, instead of after the response is garbage collected. The text, JSON and
+     * bytes read before stay available; streams of a temporary file must not be read afterwards.
+     */
+    void close();
+
+}
@@ -0,0 +1,160 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.JsonArrayReader;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseImpl;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+
+/**
+ * JsonArrayListener is a {@link StreamingResponseListener} that parses a JSON array while it is downloaded, and
+ * passes each element to {@link #onElement(Object, int)} as soon as it is read. Only the current element is held
+ * in memory, instead of the whole body, its text and its parsed tree.
+ * <p>
+ * The array is either the whole body, or a member of the top-level object, such as "items" in
+ * <code>{"total": 2, "items": [...]}</code>; other members are skipped. Elements are {@link JSONObject},
+ * {@link org.json.JSONArray}, String, Long, Double, Boolean or {@link JSONObject#NULL}.
+ * </p>
+ * <p>
+ * Without an element executor, all the methods are called on the thread that reads the body. With one, such as
+ * {@link CallbackExecutors#mainThread()}, {@link #onElement(Object, int)}, {@link #onComplete(Response, int)} and
+ * the failures to read the body are called through it, in order; an executor slower than the network lets
+ * elements pile up in its queue.
+ * </p>
+ * <p>
+ * {@link #onFailure(Response, Throwable, JSONObject)} is called if the request fails, as for any listener, or if
+ * the body is not the expected JSON. In the latter case, the elements read before the error were already delivered.
+ * </p>
+ */
+public abstract class JsonArrayListener implements StreamingResponseListener {
+
+    private final String arrayName;
+    private final Executor elementExecutor;
+
+    /**
+     * Creates a listener for a body that is a JSON array, whose elements are delivered on the thread that reads
+     * the body.
+     */
+    public JsonArrayListener() {
+        this(null, null);
+    }
+
+    /**
+     * @param arrayName       the name of the array in the top-level object of the body, or null if the body is
+     *                        the array
+     * @param elementExecutor the executor that calls this listener, or null to call it on the thread that reads
+     *                        the body
+     */
+    public JsonArrayListener(String arrayName, Executor elementExecutor) {
+        this.arrayName = arrayName;
+        this.elementExecutor = elementExecutor;
+    }
+
+    /**
+     * Called for each element of the array, in order.
+     *
+     * @param element the element
+     * @param index   the index of the element in the array
+     */
+    public abstract void onElement(Object element, int index);
+
+    /**
+     * Called once the whole array was read.
+     *
+     * @param response the server response, whose body was consumed
+     * @param count    the number of elements in the array
+     */
+    public abstract void onComplete(Response response, int count);
+
+    /**
+     * Reads the array from the body of the response. Subclasses implement {@link #onElement(Object, int)} and
+     * {@link #onComplete(Response, int)} instead.
+     *
+     * @param response the server response
+     */
+    @Override
+    public final void onSuccess(final Response response) {
+        InputStream body = null;
+        if (response instanceof ExtendedResponse) {
+            body = ((ExtendedResponse) response).getResponseByteStream();
+        }
+
+        if (body == null) {
+            fail(response, new IOException("Response has no body"));
+            return;
+        }
+
+        Charset charset = Charset.forName("UTF-8");
+        if (response instanceof ResponseImpl) {
+            charset = ((ResponseImpl) response).getResponseCharset();
+        }
+
+        JsonArrayReader reader = new JsonArrayReader(body, charset, arrayName);
+        int count = 0;
+
+        try {
+            while (reader.hasNext()) {
+                final Object element = reader.next();
+                final int index = count++;
+
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        onElement(element, index);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            fail(response, e);
+            return;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        final int total = count;
+
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                onComplete(response, total);
+            }
+        });
+    }
+
+    private void fail(final Response response, final IOException e) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                onFailure(response, e, null);
+            }
+        });
+    }
+
+    private void deliver(Runnable runnable) {
+        if (elementExecutor != null) {
+            elementExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * What happens to a response body larger than the limit set with {@link BMSClient#setMaxResponseBodySize}.
+ */
+public enum LargeBodyPolicy {
+    /**
+     * The body is written to a temporary file and read with {@link ExtendedResponse#getResponseByteStream()}.
+     * {@link Response#getResponseBytes()} returns null and {@link Response#getResponseText()} throws.
+     */
+    SPILL_TO_FILE,
+
+    /**
+     * The request fails with a {@link ResponseBodyTooLargeException}.
+     */
+    FAIL
+}
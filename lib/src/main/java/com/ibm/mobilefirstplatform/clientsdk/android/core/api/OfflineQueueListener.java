@@ -0,0 +1,43 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * Listener notified about the requests sent from the offline queue, see {@link BMSClient#setOfflineQueueListener}.
+ * Unlike the listener passed to {@link Request#send}, it is also notified about requests queued before the
+ * application was restarted.
+ */
+public interface OfflineQueueListener {
+
+    /**
+     * Called when a queued request got a successful response and was removed from the queue.
+     *
+     * @param method   the HTTP method of the request
+     * @param url      the URL of the request
+     * @param response the response of the server
+     */
+    void onDelivered(String method, String url, Response response);
+
+    /**
+     * Called when a queued request was removed from the queue without being delivered, because the server
+     * rejected it with a status code that retrying won't change, because it could not be sent at all, or
+     * because it still failed after the maximum number of attempts.
+     *
+     * @param method   the HTTP method of the request, or null if the stored request could not be read
+     * @param url      the URL of the request, or null if the stored request could not be read
+     * @param response the response of the server, or null if there was none
+     * @param t        the error, or null if the server rejected the request
+     */
+    void onDropped(String method, String url, Response response, Throwable t);
+}
@@ -14,19 +14,41 @@
 package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
 
 import android.content.Context;
+import android.os.Looper;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.CallHandle;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.CallRegistry;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.OfflineQueue;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.QueuedRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RequestTimer;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseDelivery;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseImpl;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RetryEngine;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.StreamingRequestBody;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.DummyAuthorizationManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.api.MCAAuthorizationManager;
+import com.squareup.okhttp.CacheControl;
 import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.RequestBody;
 
 import org.json.JSONObject;
 
+import okio.Buffer;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used to create and send a request. It allows to add all the parameters to the request
@@ -34,9 +56,39 @@ import java.util.Map;
  */
 public class Request extends BaseRequest {
 
+    /**
+     * Controls how a request uses the response cache enabled with {@link BMSClient#enableResponseCache}.
+     */
+    public enum CachePolicy {
+        /**
+         * Follow the cache headers sent by the server. Stale responses are revalidated with
+         * If-None-Match and If-Modified-Since.
+         */
+        DEFAULT,
+        /**
+         * Always get the response from the server. The response is still stored in the cache.
+         */
+        NETWORK_ONLY,
+        /**
+         * Only use the cache, even if the cached response is stale. If nothing is cached the request
+         * fails with status 504.
+         */
+        CACHE_ONLY,
+        /**
+         * Use a cached response when there is one, even if it is stale, and go to the server otherwise.
+         */
+        PREFER_CACHE
+    }
+
     private int oauthFailCounter = 0;
     private RequestBody savedRequestBody;
     private Context context;
+    private CachePolicy cachePolicy = CachePolicy.DEFAULT;
+    private RetryPolicy retryPolicy = null;
+    private boolean deferrable = false;
+    private int retryCount = 0;
+    private Object tag = null;
+    private Executor callbackExecutor = null;
 
 	/**
      * Constructs a new resource request with the specified URL, using the specified HTTP method.
@@ -60,6 +112,32 @@ public class Request extends BaseRequest {
         super(url, method, timeout);
 	}
 
+    /**
+     * Constructs a new resource request from a URL template, using the specified HTTP method.
+     *
+     * @param template       The URL template
+     * @param pathParameters The value of every variable of the template
+     * @param method         The HTTP method to use
+     * @throws IllegalArgumentException if a variable of the template has no value
+     */
+    public Request(UrlTemplate template, Map<String, String> pathParameters, String method) {
+        this(template, pathParameters, method, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructs a new resource request from a URL template, using the specified HTTP method.
+     * Additionally this constructor sets a custom timeout.
+     *
+     * @param template       The URL template
+     * @param pathParameters The value of every variable of the template
+     * @param method         The HTTP method to use
+     * @param timeout        The timeout in milliseconds for this request.
+     * @throws IllegalArgumentException if a variable of the template has no value
+     */
+    public Request(UrlTemplate template, Map<String, String> pathParameters, String method, int timeout) {
+        super(template.expand(pathParameters, null), method, timeout);
+    }
+
     /**
      * Returns the URL for this resource request.
      *
@@ -123,6 +201,145 @@ public class Request extends BaseRequest {
         super.setHeaders(headers);
     }
 
+    /**
+     * Returns the cache policy for this resource request.
+     *
+     * @return the cache policy for this resource request
+     */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Sets how this resource request uses the response cache. Has no effect unless the cache was
+     * enabled with {@link BMSClient#enableResponseCache}.
+     *
+     * @param cachePolicy the cache policy for this resource request
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy != null ? cachePolicy : CachePolicy.DEFAULT;
+
+        setCacheControl(getCacheControl(this.cachePolicy));
+    }
+
+    /**
+     * @param cachePolicy a cache policy
+     * @return the cache directives of the policy, or null to follow the cache headers of the server
+     */
+    static CacheControl getCacheControl(CachePolicy cachePolicy) {
+        switch (cachePolicy) {
+            case NETWORK_ONLY:
+                return CacheControl.FORCE_NETWORK;
+            case CACHE_ONLY:
+                return CacheControl.FORCE_CACHE;
+            case PREFER_CACHE:
+                return new CacheControl.Builder().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the retry policy for this resource request.
+     *
+     * @return the retry policy, or null if this request is not retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets when this resource request is sent again after a failure. The listener is only called
+     * once, with the outcome of the last attempt. Requests are not retried by default.
+     *
+     * @param retryPolicy the retry policy, or null to never retry this request
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns true if this resource request is stored in the offline queue instead of being sent at once.
+     *
+     * @return true if this request is deferrable
+     */
+    public boolean isDeferrable() {
+        return deferrable;
+    }
+
+    /**
+     * Makes this resource request deferrable. When the offline queue is enabled with
+     * {@link BMSClient#enableOfflineQueue}, sending a deferrable request stores its method, URL, headers and body
+     * in the queue file, from which it is sent in order once the device is online. The request survives a restart
+     * of the application and is delivered at least once, so the server should handle duplicates.
+     * <p>
+     * Only bodies of a known length up to 1 MB are stored. Sending a deferrable request with a larger body, or
+     * with a stream of unknown length, fails with an IOException instead of queuing it.
+     * </p>
+     * <p>
+     * The listener is called when the request is delivered or dropped, unless the application stops first;
+     * use {@link BMSClient#setOfflineQueueListener} to learn about requests queued before a restart.
+     * Without an offline queue, deferrable requests are sent like any other request.
+     * </p>
+     *
+     * @param deferrable true to store this request in the offline queue when it is sent
+     */
+    public void setDeferrable(boolean deferrable) {
+        this.deferrable = deferrable;
+    }
+
+    /**
+     * Returns the tag of this resource request.
+     *
+     * @return the tag, or null
+     */
+    public Object getTag() {
+        return tag;
+    }
+
+    /**
+     * Tags this resource request, so that it can be cancelled with {@link BMSClient#cancelAll(Object)}, for example
+     * with the activity that sent it. Tags are compared with equals.
+     *
+     * @param tag the tag, or null
+     */
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Returns the executor that calls the listener of this resource request.
+     *
+     * @return the executor, or null to use the one set with {@link BMSClient#setCallbackExecutor}
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Sets the executor that calls the listener of this resource request, see {@link CallbackExecutors}.
+     * Streaming listeners are always called on the thread that reads the body, only their failures go
+     * through the executor.
+     *
+     * @param callbackExecutor the executor, or null to use the one set with {@link BMSClient#setCallbackExecutor}
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Cancels the last send of this resource request, whether it waits to be sent, waits for authorization or
+     * a retry, or is in flight. The listener is called with a {@link RequestCancelledException}, unless the
+     * request already finished. Requests stored in the offline queue are not cancelled.
+     *
+     * @return true if the request was cancelled
+     */
+    public boolean cancel() {
+        CallHandle handle = getCallHandle();
+
+        return handle != null && handle.cancel();
+    }
+
     /**
      * Send this resource request asynchronously, without a request body.
      *
@@ -158,8 +375,439 @@ public class Request extends BaseRequest {
         super.send(bytes, listener);
     }
 
+    /**
+     * Send this resource request asynchronously, streaming the content of the given file as the request body.
+     * The file is read while the request is sent, so it is never loaded into memory as a whole.
+     * If no content type header was set, this method will set it to "application/octet-stream".
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param file The file containing the request body
+     * @param listener The listener whose onSuccess or onFailure methods will be called when this request finishes.
+     */
+    public void send(Context context, File file, ResponseListener listener) {
+        this.context = context;
+        super.send(file, listener);
+    }
+
+    /**
+     * Send this resource request asynchronously, streaming the content of the given input stream as the request body.
+     * The stream is read while the request is sent, so it is never loaded into memory as a whole. When the request
+     * may have to be sent again, because it has a retry policy or an authorization manager other than the default
+     * one is installed, a copy is kept in the cache directory of the context until the request finishes. Otherwise
+     * the stream is sent once, and a connection failure fails the request. The stream is closed once it has been
+     * sent.
+     * If no content type header was set, this method will set it to "application/octet-stream".
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param stream The stream containing the request body
+     * @param contentLength The number of bytes in the stream, or -1 if unknown, in which case chunked encoding is used
+     * @param listener The listener whose onSuccess or onFailure methods will be called when this request finishes.
+     */
+    public void send(Context context, InputStream stream, long contentLength, ResponseListener listener) {
+        this.context = context;
+        super.send(stream, contentLength, listener);
+    }
+
+    /**
+     * Send this resource request asynchronously, without a request body.
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @return a future that completes with the response, or fails with a {@link RequestFailedException}.
+     * Cancelling the future cancels the request.
+     */
+    public RequestFuture<Response> sendAsync(Context context) {
+        RequestFuture<Response> future = new RequestFuture<>();
+        send(context, getFutureListener(future));
+        return track(future);
+    }
+
+    /**
+     * Send this resource request asynchronously, with the given string as the request body.
+     * If no content type header was set, this method will set it to "text/plain".
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param text The request body text
+     * @return a future that completes with the response, or fails with a {@link RequestFailedException}.
+     * Cancelling the future cancels the request.
+     */
+    public RequestFuture<Response> sendAsync(Context context, String text) {
+        RequestFuture<Response> future = new RequestFuture<>();
+        send(context, text, getFutureListener(future));
+        return track(future);
+    }
+
+    /**
+     * Send this resource request asynchronously, with the content of the given byte array as the request body.
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param bytes The byte array containing the request body
+     * @return a future that completes with the response, or fails with a {@link RequestFailedException}.
+     * Cancelling the future cancels the request.
+     */
+    public RequestFuture<Response> sendAsync(Context context, byte[] bytes) {
+        RequestFuture<Response> future = new RequestFuture<>();
+        send(context, bytes, getFutureListener(future));
+        return track(future);
+    }
+
+    /**
+     * Send this resource request and wait for the response, without a request body. Authorization and retries
+     * are handled as for {@link #send(Context, ResponseListener)}, but on the calling thread, which saves the
+     * hop through the dispatcher for callers that already run on a worker thread. Deferrable requests are
+     * sent at once.
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @return the response, whatever its status code
+     * @throws IOException if no response was received, or authorization failed
+     * @throws ResponseBodyTooLargeException if the body is above the limit set with
+     * {@link BMSClient#setMaxResponseBodySize(Context, long, LargeBodyPolicy)} and the policy is {@link LargeBodyPolicy#FAIL}
+     * @throws IllegalStateException if called on the main thread
+     */
+    public Response execute(Context context) throws IOException {
+        return execute(context, createBody(""));
+    }
+
+    /**
+     * Send this resource request and wait for the response, with the given string as the request body.
+     * If no content type header was set, this method will set it to "text/plain".
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param text The request body text
+     * @return the response, whatever its status code
+     * @throws IOException if no response was received, or authorization failed
+     * @throws IllegalStateException if called on the main thread
+     * @see #execute(Context)
+     */
+    public Response execute(Context context, String text) throws IOException {
+        return execute(context, createBody(text));
+    }
+
+    /**
+     * Send this resource request and wait for the response, with the content of the given byte array as the
+     * request body.
+     *
+     * @param context The context that will be passed to authentication listener.
+     * @param bytes The byte array containing the request body
+     * @return the response, whatever its status code
+     * @throws IOException if no response was received, or authorization failed
+     * @throws IllegalStateException if called on the main thread
+     * @see #execute(Context)
+     */
+    public Response execute(Context context, byte[] bytes) throws IOException {
+        return execute(context, createBody(bytes));
+    }
+
+    private Response execute(Context context, RequestBody requestBody) throws IOException {
+        // waiting on the main thread would freeze the UI, and may block the authentication UI it waits for
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("execute() must not be called on the main thread, use send() instead");
+        }
+
+        this.context = context;
+
+        CallHandle handle = new CallHandle();
+        setCallHandle(handle);
+
+        Object callTag = tag;
+
+        if (callTag != null) {
+            CallRegistry.register(callTag, handle);
+        }
+
+        try {
+            return execute(requestBody, handle);
+        } finally {
+            if (callTag != null) {
+                CallRegistry.unregister(callTag, handle);
+            }
+        }
+    }
+
+    private Response execute(RequestBody requestBody, CallHandle handle) throws IOException {
+        RetryEngine.getBudget().onRequest();
+
+        int authorizationAttempts = 0;
+        int retries = 0;
+
+        while (true) {
+            setCachedAuthorizationHeader();
+
+            com.squareup.okhttp.Response response;
+
+            try {
+                response = executeRequest(requestBody);
+            } catch (IOException e) {
+                // retrying is pointless while the circuit breaker of the host is open, or after a cancel
+                boolean retryable = !(e instanceof CircuitBreakerOpenException) && !(e instanceof RequestCancelledException);
+                long delay = retryable ? RetryEngine.getRetryDelay(retryPolicy, getMethod(), retries) : RetryEngine.NO_RETRY;
+
+                if (delay == RetryEngine.NO_RETRY) {
+                    throw e;
+                }
+
+                waitForRetry(delay, handle);
+                requestBody = StreamingRequestBody.replay(requestBody);
+                retries++;
+                continue;
+            }
+
+            AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
+
+            if (authorizationManager.isAuthorizationRequired(response.code(), response.headers().toMultimap())) {
+                if (authorizationAttempts++ >= 2) {
+                    return toResponse(response);
+                }
+
+                response.body().close();
+                obtainAuthorization(authorizationManager, context, handle);
+
+                // the next attempt takes the auth header that has been cached by obtainAuthorization
+                requestBody = StreamingRequestBody.replay(requestBody);
+                continue;
+            }
+
+            if (response.isSuccessful() || response.isRedirect()) {
+                return toResponse(response);
+            }
+
+            long delay = RetryEngine.getRetryDelay(retryPolicy, getMethod(), retries, response);
+
+            if (delay == RetryEngine.NO_RETRY) {
+                return toResponse(response);
+            }
+
+            response.body().close();
+            waitForRetry(delay, handle);
+            requestBody = StreamingRequestBody.replay(requestBody);
+            retries++;
+        }
+    }
+
+    private static Response toResponse(com.squareup.okhttp.Response response) throws ResponseBodyTooLargeException {
+        ResponseImpl bufferedResponse = new ResponseImpl(response);
+
+        if (bufferedResponse.getBodyTooLargeException() != null) {
+            throw bufferedResponse.getBodyTooLargeException();
+        }
+
+        return bufferedResponse;
+    }
+
+    private static void waitForRetry(long delay, CallHandle handle) throws IOException {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+
+        if (!handle.onWaiting(countingDown(cancelled))) {
+            throw new RequestCancelledException();
+        }
+
+        try {
+            cancelled.await(delay, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+
+        if (!handle.onWaitingDone()) {
+            throw new RequestCancelledException();
+        }
+    }
+
+    private static Runnable countingDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static void cancelAuthorizationWait(AuthorizationManager authorizationManager, ResponseListener listener) {
+        if (authorizationManager instanceof MCAAuthorizationManager) {
+            ((MCAAuthorizationManager) authorizationManager).cancelAuthorizationWait(listener);
+        }
+    }
+
+    /**
+     * Starts the authorization process, or joins the one in flight, and waits until it finishes. The process
+     * runs on the threads of the authorization client, so waiting here can't block it.
+     */
+    private static void obtainAuthorization(final AuthorizationManager authorizationManager, Context context, CallHandle handle) throws IOException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Response[] failedResponse = new Response[1];
+        final Throwable[] failure = new Throwable[1];
+
+        final ResponseListener authorizationListener = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                failedResponse[0] = response;
+                failure[0] = t != null ? t : new IOException("Authorization failed");
+                latch.countDown();
+            }
+        };
+
+        boolean waiting = handle.onWaiting(new Runnable() {
+            @Override
+            public void run() {
+                cancelAuthorizationWait(authorizationManager, authorizationListener);
+                latch.countDown();
+            }
+        });
+
+        if (!waiting) {
+            throw new RequestCancelledException();
+        }
+
+        RequestTimer timer = handle.getRequestTimer();
+        timer.authorizationStarted();
+        authorizationManager.obtainAuthorization(context, authorizationListener);
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            timer.authorizationEnded(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for authorization");
+        }
+
+        boolean notCancelled = handle.onWaitingDone();
+        timer.authorizationEnded(notCancelled && failure[0] == null);
+
+        if (!notCancelled) {
+            throw new RequestCancelledException();
+        }
+
+        Throwable t = failure[0];
+
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+
+        if (t != null) {
+            Response response = failedResponse[0];
+            throw new IOException("Authorization failed" + (response != null ? " with status " + response.getStatus() : ""), t);
+        }
+    }
+
+    private static ResponseListener getFutureListener(final RequestFuture<Response> future) {
+        return new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                future.fail(new RequestFailedException(response, t, extendedInfo));
+            }
+        };
+    }
+
+    /**
+     * Lets the future cancel the request that was just sent.
+     */
+    private RequestFuture<Response> track(RequestFuture<Response> future) {
+        final CallHandle handle = getCallHandle();
+
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                handle.cancel();
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Resource requests are sent again after obtaining authorization, or after a failure when they have a
+     * retry policy.
+     */
+    @Override
+    protected boolean canResend() {
+        AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
+
+        return retryPolicy != null
+                || (authorizationManager != null && !(authorizationManager instanceof DummyAuthorizationManager));
+    }
+
     @Override
-    protected void sendRequest(final ResponseListener listener, final RequestBody requestBody) {
+    protected File getSpoolDirectory() {
+        return context != null ? context.getCacheDir() : null;
+    }
+
+    @Override
+    protected void sendRequest(ResponseListener listener, final RequestBody requestBody) {
+        // every send gets its own handle, shared by its retries
+        CallHandle handle = new CallHandle();
+        setCallHandle(handle);
+
+        ResponseListener deliveringListener = ResponseDelivery.wrap(listener, callbackExecutor, handle, tag);
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+
+        if (deferrable && offlineQueue != null) {
+            defer(offlineQueue, deliveringListener, requestBody);
+            return;
+        }
+
+        RetryEngine.getBudget().onRequest();
+        sendRequest(deliveringListener, requestBody, 0);
+    }
+
+    private void defer(OfflineQueue offlineQueue, ResponseListener listener, RequestBody requestBody) {
+        try {
+            Headers.Builder headers = new Headers.Builder();
+
+            for (Map.Entry<String, List<String>> header : getAllHeaders().entrySet()) {
+                for (String value : header.getValue()) {
+                    headers.add(header.getKey(), value);
+                }
+            }
+
+            byte[] body = null;
+
+            //A GET request cannot have a body in OKHTTP
+            if (requestBody != null && !getMethod().equalsIgnoreCase(GET)) {
+                long contentLength = requestBody.contentLength();
+
+                // the queue keeps whole records in memory to send them, so streams are not queued
+                if (contentLength < 0 || contentLength > OfflineQueue.MAX_BODY_SIZE) {
+                    throw new IOException("Request body of " + (contentLength < 0 ? "unknown size" : contentLength + " bytes")
+                            + " can't be deferred, the offline queue accepts bodies of up to " + OfflineQueue.MAX_BODY_SIZE + " bytes");
+                }
+
+                Buffer buffer = new Buffer();
+                requestBody.writeTo(buffer);
+                body = buffer.readByteArray();
+
+                if (headers.get(CONTENT_TYPE) == null) {
+                    MediaType contentType = requestBody.contentType();
+                    headers.add(CONTENT_TYPE, contentType != null ? contentType.toString() : OCTET_STREAM);
+                }
+            }
+
+            String url = getURLWithQueryParameters(getUrl(), getQueryParameters()).toString();
+
+            offlineQueue.add(new QueuedRequest(getMethod(), url, headers.build(), body), listener);
+        } catch (IOException e) {
+            listener.onFailure(null, e, null);
+        }
+    }
+
+    private void sendRequest(final ResponseListener listener, final RequestBody requestBody, int retryCount) {
+        this.retryCount = retryCount;
+
+        setCachedAuthorizationHeader();
+
+        savedRequestBody = requestBody;
+        super.sendRequest(listener, requestBody);
+    }
+
+    private void setCachedAuthorizationHeader() {
 		AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
         String cachedAuthHeader = authorizationManager.getCachedAuthorizationHeader();
 
@@ -167,9 +815,6 @@ public class Request extends BaseRequest {
             removeHeaders("Authorization");
             addHeader("Authorization", cachedAuthHeader);
         }
-
-        savedRequestBody = requestBody;
-        super.sendRequest(listener, requestBody);
     }
 
     @Override
@@ -177,12 +822,24 @@ public class Request extends BaseRequest {
         final RequestBody requestBody = savedRequestBody;
         final Request request = this;
         final Context ctx = this.context;
+        final int retries = this.retryCount;
+        final CallHandle handle = getCallHandle();
 
         return new Callback() {
             @Override
-            public void onFailure(com.squareup.okhttp.Request request, IOException e) {
-                if (listener != null) {
+            public void onFailure(com.squareup.okhttp.Request okRequest, IOException e) {
+                if (listener == null) {
+                    return;
+                }
+
+                // retrying is pointless while the circuit breaker of the host is open, or after a cancel
+                boolean retryable = !(e instanceof CircuitBreakerOpenException) && !(e instanceof RequestCancelledException);
+                long delay = retryable ? RetryEngine.getRetryDelay(retryPolicy, getMethod(), retries) : RetryEngine.NO_RETRY;
+
+                if (delay == RetryEngine.NO_RETRY) {
                     listener.onFailure(null, e, null);
+                } else {
+                    retry(listener, requestBody, retries + 1, delay, handle);
                 }
             }
 
@@ -199,32 +856,111 @@ public class Request extends BaseRequest {
 
                 if (isAuthorizationRequired) {
                     if (oauthFailCounter++ < 2) {
-                        authorizationManager.obtainAuthorization(
-                                ctx,
-                                new ResponseListener() {
-                                    @Override
-                                    public void onSuccess(Response response) {
-                                        // this will take the auth hader that has been cached by obtainAuthorizationHeader
-                                        request.sendRequest(listener, requestBody);
-                                    }
-
-                                    @Override
-                                    public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
-                                        listener.onFailure(response, t, extendedInfo);
-                                    }
+                        response.body().close();
+
+                        final RequestTimer timer = handle.getRequestTimer();
+                        final ResponseListener authorizationListener = new ResponseListener() {
+                            @Override
+                            public void onSuccess(Response response) {
+                                timer.authorizationEnded(true);
+
+                                // the listener was told when the request was cancelled
+                                if (!handle.onWaitingDone()) {
+                                    return;
                                 }
-                        );
+
+                                RequestBody replayBody;
+
+                                try {
+                                    replayBody = StreamingRequestBody.replay(requestBody);
+                                } catch (IOException e) {
+                                    listener.onFailure(null, e, null);
+                                    return;
+                                }
+
+                                // this will take the auth hader that has been cached by obtainAuthorizationHeader
+                                request.setCallHandle(handle);
+                                request.sendRequest(listener, replayBody, 0);
+                            }
+
+                            @Override
+                            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                                timer.authorizationEnded(false);
+
+                                if (handle.onWaitingDone()) {
+                                    listener.onFailure(response, t, extendedInfo);
+                                }
+                            }
+                        };
+
+                        final AuthorizationManager manager = authorizationManager;
+                        boolean waiting = handle.onWaiting(new Runnable() {
+                            @Override
+                            public void run() {
+                                cancelAuthorizationWait(manager, authorizationListener);
+                                listener.onFailure(null, new RequestCancelledException(), null);
+                            }
+                        });
+
+                        if (waiting) {
+                            timer.authorizationStarted();
+                            authorizationManager.obtainAuthorization(ctx, authorizationListener);
+                        } else {
+                            listener.onFailure(null, new RequestCancelledException(), null);
+                        }
                     } else {
-                        listener.onFailure(new ResponseImpl(response), null, null);
+                        deliverFailure(listener, response);
                     }
                 } else {
                     if (response.isSuccessful() || response.isRedirect()) {
-                        listener.onSuccess(new ResponseImpl(response));
+                        deliverSuccess(listener, response);
+                        return;
+                    }
+
+                    long delay = RetryEngine.getRetryDelay(retryPolicy, getMethod(), retries, response);
+
+                    if (delay == RetryEngine.NO_RETRY) {
+                        deliverFailure(listener, response);
                     } else {
-                        listener.onFailure(new ResponseImpl(response), null, null);
+                        response.body().close();
+                        retry(listener, requestBody, retries + 1, delay, handle);
                     }
                 }
             }
         };
     }
+
+    /**
+     * Sends this request again after the given delay, with a copy of the body of the failed attempt.
+     */
+    private void retry(final ResponseListener listener, final RequestBody requestBody, final int retryCount, long delay,
+                       final CallHandle handle) {
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                RequestBody replayBody;
+
+                try {
+                    replayBody = StreamingRequestBody.replay(requestBody);
+                } catch (IOException e) {
+                    listener.onFailure(null, e, null);
+                    return;
+                }
+
+                setCallHandle(handle);
+                sendRequest(listener, replayBody, retryCount);
+            }
+        };
+
+        Runnable onCancelled = new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailure(null, new RequestCancelledException(), null);
+            }
+        };
+
+        if (!handle.scheduleRetry(retry, delay, onCancelled)) {
+            onCancelled.run();
+        }
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+
+/**
+ * Passed to {@link ResponseListener#onFailure} when a request was cancelled before it finished.
+ * Cancelled requests are never retried.
+ */
+public class RequestCancelledException extends IOException {
+
+    /**
+     * @exclude
+     */
+    public RequestCancelledException() {
+        super("Request was cancelled");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Listener for the phases of resource and authorization requests, registered with
+ * {@link BMSClient#addRequestEventListener(RequestEventListener)}. Override the events you need, all the
+ * methods do nothing by default.
+ * <p>
+ * The events of one request share its call id. A request that is retried or sent again after authorization
+ * reports the phases of each attempt; DNS, connect and TLS events only occur when a new connection is opened.
+ * Events are reported on the network threads, so listeners must return quickly and must not throw.
+ * </p>
+ */
+public abstract class RequestEventListener {
+
+    /**
+     * The request is sent for the first time.
+     *
+     * @param callId the id of the request
+     * @param method the HTTP method
+     * @param url    the URL of the request
+     */
+    public void callStart(long callId, String method, String url) {
+    }
+
+    /**
+     * @param callId the id of the request
+     * @param host   the host that is looked up
+     */
+    public void dnsStart(long callId, String host) {
+    }
+
+    /**
+     * @param callId    the id of the request
+     * @param host      the host that was looked up
+     * @param addresses the addresses of the host
+     */
+    public void dnsEnd(long callId, String host, List<InetAddress> addresses) {
+    }
+
+    /**
+     * @param callId  the id of the request
+     * @param address the address a socket is connected to
+     */
+    public void connectStart(long callId, InetSocketAddress address) {
+    }
+
+    /**
+     * @param callId  the id of the request
+     * @param address the address the socket is connected to
+     */
+    public void connectEnd(long callId, InetSocketAddress address) {
+    }
+
+    /**
+     * A connection attempt failed. Another address of the host may be tried next.
+     *
+     * @param callId  the id of the request
+     * @param address the address that could not be reached
+     * @param e       the reason
+     */
+    public void connectFailed(long callId, InetSocketAddress address, IOException e) {
+    }
+
+    /**
+     * @param callId the id of the request
+     * @param host   the host the TLS handshake is made with
+     */
+    public void tlsStart(long callId, String host) {
+    }
+
+    /**
+     * @param callId the id of the request
+     */
+    public void tlsEnd(long callId) {
+    }
+
+    /**
+     * The request headers and body were written. For requests without a body this is when the request is
+     * handed to the connection.
+     *
+     * @param callId the id of the request
+     */
+    public void requestSent(long callId) {
+    }
+
+    /**
+     * The response headers were received.
+     *
+     * @param callId the id of the request
+     */
+    public void firstByte(long callId) {
+    }
+
+    /**
+     * The response body was read.
+     *
+     * @param callId    the id of the request
+     * @param byteCount the size of the body, or -1 if the body was streamed and its size is unknown
+     */
+    public void bodyComplete(long callId, long byteCount) {
+    }
+
+    /**
+     * The server asked for authorization, the request waits for an authorization round trip.
+     *
+     * @param callId the id of the request
+     */
+    public void authorizationStart(long callId) {
+    }
+
+    /**
+     * @param callId  the id of the request
+     * @param success true if authorization was obtained
+     */
+    public void authorizationEnd(long callId, boolean success) {
+    }
+
+    /**
+     * The response of the request was read.
+     *
+     * @param callId  the id of the request
+     * @param timings the timing summary of the request
+     */
+    public void callEnd(long callId, RequestTimings timings) {
+    }
+
+    /**
+     * An attempt failed without a response. The request may still be retried.
+     *
+     * @param callId the id of the request
+     * @param e      the reason
+     */
+    public void callFailed(long callId, IOException e) {
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import org.json.JSONObject;
+
+/**
+ * The failure of a {@link RequestFuture} created by {@link Request#sendAsync}. It holds the arguments that
+ * {@link ResponseListener#onFailure} would have been called with.
+ */
+public class RequestFailedException extends Exception {
+
+    private final Response response;
+    private final JSONObject extendedInfo;
+
+    /**
+     * @exclude
+     */
+    public RequestFailedException(Response response, Throwable t, JSONObject extendedInfo) {
+        super(response != null ? "Request failed with status " + response.getStatus()
+                : t != null ? t.getMessage() : "Request failed", t);
+        this.response = response;
+        this.extendedInfo = extendedInfo;
+    }
+
+    /**
+     * @return the response of the server, or null if no response was received
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return additional information about the failure, or null
+     */
+    public JSONObject getExtendedInfo() {
+        return extendedInfo;
+    }
+}
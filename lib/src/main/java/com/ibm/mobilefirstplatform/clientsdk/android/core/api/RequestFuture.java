@@ -0,0 +1,511 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RetryEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of an asynchronous request, returned by {@link Request#sendAsync}. Futures can be chained with
+ * {@link #then} and {@link #thenCompose}, combined with {@link #all} and {@link #any}, and bounded with
+ * {@link #timeout}, so dependent and parallel requests can be written without nesting listeners or blocking
+ * threads.
+ * <p>
+ * Listeners added with {@link #addListener} run on the thread that completes the future, or at once on the
+ * calling thread if the future is already complete. Cancelling a future cancels the request behind it,
+ * including its OkHttp call, and the futures it was derived from.
+ * </p>
+ *
+ * @param <T> the type of the result
+ */
+public class RequestFuture<T> implements Future<T> {
+
+    /**
+     * Receives the outcome of a future.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Listener<T> {
+        /**
+         * Called when the future succeeds.
+         *
+         * @param result the result
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called when the future fails, times out or is cancelled. Failed requests are reported with a
+         * {@link RequestFailedException}, cancelled futures with a {@link CancellationException}.
+         *
+         * @param t the cause of the failure
+         */
+        void onFailure(Throwable t);
+    }
+
+    /**
+     * Turns the result of a future into another value.
+     *
+     * @param <T> the type of the input
+     * @param <R> the type of the output
+     */
+    public interface Function<T, R> {
+        /**
+         * @param value the result of the previous future
+         * @return the new value
+         * @throws Exception to fail the derived future
+         */
+        R apply(T value) throws Exception;
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private int state = PENDING;
+    private T result;
+    private Throwable failure;
+    private List<Listener<? super T>> listeners = new ArrayList<>();
+    private Runnable cancelAction;
+
+    /**
+     * @exclude
+     */
+    public RequestFuture() {
+    }
+
+    /**
+     * @return a future that has already succeeded with the given result
+     */
+    public static <T> RequestFuture<T> completed(T result) {
+        RequestFuture<T> future = new RequestFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * @return a future that has already failed with the given cause
+     */
+    public static <T> RequestFuture<T> failed(Throwable t) {
+        RequestFuture<T> future = new RequestFuture<>();
+        future.fail(t);
+        return future;
+    }
+
+    /**
+     * Completes this future with a result.
+     *
+     * @return false if this future was already complete
+     */
+    boolean complete(T value) {
+        return finish(SUCCEEDED, value, null);
+    }
+
+    /**
+     * Completes this future with a failure.
+     *
+     * @return false if this future was already complete
+     */
+    boolean fail(Throwable t) {
+        return finish(FAILED, null, t);
+    }
+
+    /**
+     * Completes this future. The cancel action is taken in the same step as the state changes, so an action set
+     * at the same time either is taken here, or sees the new state in {@link #setCancelAction} and runs there.
+     */
+    private boolean finish(int newState, T value, Throwable t) {
+        List<Listener<? super T>> toNotify;
+        Runnable action;
+
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+
+            state = newState;
+            result = value;
+            failure = t;
+            action = cancelAction;
+            cancelAction = null;
+
+            toNotify = listeners;
+            listeners = null;
+
+            notifyAll();
+        }
+
+        for (Listener<? super T> listener : toNotify) {
+            deliver(listener);
+        }
+
+        if (newState == CANCELLED && action != null) {
+            action.run();
+        }
+
+        return true;
+    }
+
+    private void deliver(Listener<? super T> listener) {
+        if (state == SUCCEEDED) {
+            listener.onSuccess(result);
+        } else {
+            listener.onFailure(failure);
+        }
+    }
+
+    /**
+     * Sets what cancelling this future cancels. If this future is already cancelled, the action runs at once.
+     */
+    void setCancelAction(Runnable action) {
+        synchronized (this) {
+            if (state == PENDING) {
+                cancelAction = action;
+                return;
+            }
+
+            if (state != CANCELLED) {
+                return;
+            }
+        }
+
+        action.run();
+    }
+
+    /**
+     * Adds a listener that is called once with the outcome of this future.
+     *
+     * @param listener the listener
+     * @return this future
+     */
+    public RequestFuture<T> addListener(Listener<? super T> listener) {
+        synchronized (this) {
+            if (state == PENDING) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+
+        deliver(listener);
+        return this;
+    }
+
+    /**
+     * Returns a future that succeeds with the result of the given function, applied to the result of this future.
+     * If this future fails, or the function throws, the returned future fails with the same cause.
+     *
+     * @param function the function
+     * @param <R>      the type of the new result
+     * @return the derived future
+     */
+    public <R> RequestFuture<R> then(final Function<? super T, ? extends R> function) {
+        final RequestFuture<R> derived = new RequestFuture<>();
+        derived.setCancelAction(cancelling(this));
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(T value) {
+                try {
+                    derived.complete(function.apply(value));
+                } catch (Exception e) {
+                    derived.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                derived.fail(t);
+            }
+        });
+
+        return derived;
+    }
+
+    /**
+     * Returns a future for a request that depends on the result of this future. The function is called with the
+     * result of this future and returns the future of the next request, whose outcome becomes the outcome of the
+     * returned future. Cancelling the returned future cancels whichever of the two requests is running.
+     *
+     * @param function the function that sends the next request
+     * @param <R>      the type of the new result
+     * @return the derived future
+     */
+    public <R> RequestFuture<R> thenCompose(final Function<? super T, RequestFuture<R>> function) {
+        final RequestFuture<R> derived = new RequestFuture<>();
+        derived.setCancelAction(cancelling(this));
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(T value) {
+                RequestFuture<R> next;
+
+                try {
+                    next = function.apply(value);
+                } catch (Exception e) {
+                    derived.fail(e);
+                    return;
+                }
+
+                if (next == null) {
+                    derived.fail(new NullPointerException("thenCompose function returned null"));
+                    return;
+                }
+
+                derived.setCancelAction(cancelling(next));
+                next.addListener(completing(derived));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                derived.fail(t);
+            }
+        });
+
+        return derived;
+    }
+
+    /**
+     * Returns a future that fails with a {@link TimeoutException} if this future is not complete after the
+     * given time. This future is cancelled when the time is up.
+     *
+     * @param timeout the time to wait
+     * @param unit    the unit of the time
+     * @return the derived future
+     */
+    public RequestFuture<T> timeout(long timeout, TimeUnit unit) {
+        final RequestFuture<T> derived = new RequestFuture<>();
+        final RequestFuture<T> source = this;
+
+        derived.setCancelAction(cancelling(this));
+
+        final ScheduledFuture<?> timer = RetryEngine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (derived.fail(new TimeoutException("Request did not complete in time"))) {
+                    source.cancel(true);
+                }
+            }
+        }, unit.toMillis(timeout));
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(T value) {
+                timer.cancel(false);
+                derived.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                timer.cancel(false);
+                derived.fail(t);
+            }
+        });
+
+        return derived;
+    }
+
+    /**
+     * Returns a future that succeeds with the results of all the given futures, in the same order. The returned
+     * future fails as soon as one of the futures fails, and the others are then cancelled.
+     *
+     * @param futures the futures
+     * @param <T>     the type of the results
+     * @return the combined future
+     */
+    public static <T> RequestFuture<List<T>> all(final List<? extends RequestFuture<? extends T>> futures) {
+        final RequestFuture<List<T>> combined = new RequestFuture<>();
+        combined.setCancelAction(cancellingAll(futures));
+
+        if (futures.isEmpty()) {
+            combined.complete(new ArrayList<T>());
+            return combined;
+        }
+
+        final Object[] results = new Object[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+
+        for (int i = 0; i < futures.size(); i++) {
+            final int index = i;
+
+            futures.get(i).addListener(new Listener<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void onSuccess(T value) {
+                    results[index] = value;
+
+                    if (remaining.decrementAndGet() == 0) {
+                        combined.complete((List<T>) (List<?>) Arrays.asList(results));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (combined.fail(t)) {
+                        cancellingAll(futures).run();
+                    }
+                }
+            });
+        }
+
+        return combined;
+    }
+
+    /**
+     * Returns a future that succeeds with the result of the first of the given futures to succeed. The others
+     * are then cancelled. If all the futures fail, the returned future fails with the cause of the last failure.
+     *
+     * @param futures the futures, at least one
+     * @param <T>     the type of the results
+     * @return the combined future
+     */
+    public static <T> RequestFuture<T> any(final List<? extends RequestFuture<? extends T>> futures) {
+        if (futures.isEmpty()) {
+            throw new IllegalArgumentException("futures is empty");
+        }
+
+        final RequestFuture<T> combined = new RequestFuture<>();
+        combined.setCancelAction(cancellingAll(futures));
+
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+
+        for (RequestFuture<? extends T> future : futures) {
+            future.addListener(new Listener<T>() {
+                @Override
+                public void onSuccess(T value) {
+                    if (combined.complete(value)) {
+                        cancellingAll(futures).run();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (remaining.decrementAndGet() == 0) {
+                        combined.fail(t);
+                    }
+                }
+            });
+        }
+
+        return combined;
+    }
+
+    private static Runnable cancelling(final Future<?> future) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(true);
+            }
+        };
+    }
+
+    private static Runnable cancellingAll(final List<? extends Future<?>> futures) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        };
+    }
+
+    private static <T> Listener<T> completing(final RequestFuture<T> future) {
+        return new Listener<T>() {
+            @Override
+            public void onSuccess(T value) {
+                future.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.fail(t);
+            }
+        };
+    }
+
+    /**
+     * Cancels this future and the request behind it. Listeners are called with a {@link CancellationException}.
+     *
+     * @param mayInterruptIfRunning ignored, requests are always cancelled in OkHttp without interrupting threads
+     * @return false if this future was already complete
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(CANCELLED, null, new CancellationException("Request was cancelled"));
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    /**
+     * Waits for the result. Must not be called on the main thread.
+     */
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+
+        return getResult();
+    }
+
+    /**
+     * Waits for the result at most the given time. Must not be called on the main thread.
+     */
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (state == PENDING) {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw (CancellationException) failure;
+        }
+
+        if (state == FAILED) {
+            throw new ExecutionException(failure);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.GzipRequestBody;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RequestSpecCall;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.FormEncodingBuilder;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An immutable description of a resource request that can be sent any number of times, from any thread,
+ * also concurrently. The URL, headers and body are prepared once when the spec is built, so sending the same
+ * spec again, for example when polling, does not rebuild them.
+ * <p>
+ * Each call of {@link #send} has its own authorization and retry state: the cached authorization header is
+ * added to every call, and a call that needs authorization obtains it and is sent again on its own. Like
+ * resource requests, calls are cancelled with {@link BMSClient#cancelAll(Object)} when the spec has a tag, and
+ * their listener is called through the callback executor.
+ * </p>
+ */
+public class RequestSpec {
+
+    private final com.squareup.okhttp.Request template;
+    private final Request.Method method;
+    private final int timeout;
+    private final Boolean followRedirects;
+    private final Request.Priority priority;
+    private final RetryPolicy retryPolicy;
+    private final boolean coalescingEnabled;
+    private final Object tag;
+    private final Executor callbackExecutor;
+
+    private RequestSpec(Builder builder, com.squareup.okhttp.Request template) {
+        this.template = template;
+        this.method = builder.method;
+        this.timeout = builder.timeout;
+        this.followRedirects = builder.followRedirects;
+        this.priority = builder.priority;
+        this.retryPolicy = builder.retryPolicy;
+        this.coalescingEnabled = builder.coalescingEnabled;
+        this.tag = builder.tag;
+        this.callbackExecutor = builder.callbackExecutor;
+    }
+
+    /**
+     * Sends a call of this request asynchronously.
+     *
+     * @param context  The context that will be passed to authentication listener.
+     * @param listener The listener whose onSuccess or onFailure methods will be called when this call finishes.
+     */
+    public void send(Context context, ResponseListener listener) {
+        new RequestSpecCall(this, context, listener).start();
+    }
+
+    /**
+     * @exclude
+     * @return the prepared request, without the authorization header
+     */
+    public com.squareup.okhttp.Request getTemplate() {
+        return template;
+    }
+
+    public Request.Method getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return template.urlString();
+    }
+
+    /**
+     * @return the headers of this request, without the authorization header added to each call
+     */
+    public Headers getHeaders() {
+        return template.headers();
+    }
+
+    /**
+     * @return the timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the redirect policy, or null to use the one of the client
+     */
+    public Boolean getFollowRedirects() {
+        return followRedirects;
+    }
+
+    public Request.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the retry policy, or null if calls are not retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    /**
+     * @return the tag of every call, or null
+     */
+    public Object getTag() {
+        return tag;
+    }
+
+    /**
+     * @return the executor that calls the listeners, or null to use the one set with {@link BMSClient#setCallbackExecutor}
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestSpec: " + method + " " + template.urlString();
+    }
+
+    /**
+     * Builds a {@link RequestSpec}. A builder is not thread-safe, but the specs it builds are.
+     */
+    public static class Builder {
+        private final String url;
+        private final HttpUrl templateUrl;
+        private final Request.Method method;
+        private final Headers.Builder headers = new Headers.Builder();
+        private final Map<String, String> queryParameters = new LinkedHashMap<>();
+
+        private String bodyText;
+        private byte[] bodyBytes;
+        private RequestBody formBody;
+        private String defaultContentType;
+        private int timeout = BaseRequest.DEFAULT_TIMEOUT;
+        private Boolean followRedirects = null;
+        private Request.Priority priority = Request.Priority.NORMAL;
+        private RetryPolicy retryPolicy = null;
+        private boolean coalescingEnabled = false;
+        private Boolean compressionEnabled = null;
+        private CacheControl cacheControl = null;
+        private Object tag = null;
+        private Executor callbackExecutor = null;
+
+        /**
+         * @param url    The resource URL, may be either relative or absolute.
+         * @param method The HTTP method to use
+         */
+        public Builder(String url, Request.Method method) {
+            if (url == null || method == null) {
+                throw new IllegalArgumentException("url and method are required");
+            }
+
+            this.url = url.startsWith("/") ? BMSClient.getInstance().getBluemixAppRoute() + url : url;
+            this.templateUrl = null;
+            this.method = method;
+        }
+
+        /**
+         * @param template       The URL template
+         * @param pathParameters The value of every variable of the template
+         * @param method         The HTTP method to use
+         * @throws IllegalArgumentException if a variable of the template has no value
+         */
+        public Builder(UrlTemplate template, Map<String, String> pathParameters, Request.Method method) {
+            if (template == null || method == null) {
+                throw new IllegalArgumentException("template and method are required");
+            }
+
+            this.url = null;
+            this.templateUrl = template.expand(pathParameters, null);
+            this.method = method;
+        }
+
+        /**
+         * Adds a header. Headers can have multiple values.
+         */
+        public Builder addHeader(String name, String value) {
+            headers.add(name, value);
+            return this;
+        }
+
+        /**
+         * Sets a header, replacing all its values.
+         */
+        public Builder header(String name, String value) {
+            headers.set(name, value);
+            return this;
+        }
+
+        public Builder queryParameter(String name, String value) {
+            queryParameters.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sets the body to the given text. If no content type header was set, "text/plain" is used.
+         */
+        public Builder body(String text) {
+            return body(text, BaseRequest.TEXT_PLAIN);
+        }
+
+        /**
+         * Sets the body to the given JSON object. If no content type header was set, "application/json" is used.
+         */
+        public Builder body(JSONObject json) {
+            return body(json.toString(), BaseRequest.JSON_CONTENT_TYPE);
+        }
+
+        /**
+         * Sets the body to the given bytes. If no content type header was set, "application/octet-stream" is used.
+         */
+        public Builder body(byte[] data) {
+            clearBody();
+            this.bodyBytes = data.clone();
+            this.defaultContentType = BaseRequest.OCTET_STREAM;
+            return this;
+        }
+
+        /**
+         * Sets the body to the given form parameters, with the content type "application/x-www-form-urlencoded".
+         */
+        public Builder formBody(Map<String, String> formParameters) {
+            FormEncodingBuilder formBuilder = new FormEncodingBuilder();
+
+            for (Map.Entry<String, String> parameter : formParameters.entrySet()) {
+                formBuilder.add(parameter.getKey(), parameter.getValue());
+            }
+
+            clearBody();
+            this.formBody = formBuilder.build();
+            return this;
+        }
+
+        private Builder body(String text, String contentType) {
+            clearBody();
+            this.bodyText = text;
+            this.defaultContentType = contentType;
+            return this;
+        }
+
+        private void clearBody() {
+            bodyText = null;
+            bodyBytes = null;
+            formBody = null;
+            defaultContentType = null;
+        }
+
+        /**
+         * @param timeout The timeout in milliseconds of every call.
+         */
+        public Builder timeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        /**
+         * @see Request#setPriority
+         */
+        public Builder priority(Request.Priority priority) {
+            this.priority = priority != null ? priority : Request.Priority.NORMAL;
+            return this;
+        }
+
+        /**
+         * @see Request#setRetryPolicy
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @see Request#setCoalescingEnabled
+         */
+        public Builder coalescingEnabled(boolean coalescingEnabled) {
+            this.coalescingEnabled = coalescingEnabled;
+            return this;
+        }
+
+        /**
+         * @see Request#setCompressionEnabled
+         */
+        public Builder compressionEnabled(boolean compressionEnabled) {
+            this.compressionEnabled = compressionEnabled;
+            return this;
+        }
+
+        /**
+         * @see Request#setCachePolicy
+         */
+        public Builder cachePolicy(Request.CachePolicy cachePolicy) {
+            this.cacheControl = cachePolicy != null ? Request.getCacheControl(cachePolicy) : null;
+            return this;
+        }
+
+        /**
+         * @see Request#setTag
+         */
+        public Builder tag(Object tag) {
+            this.tag = tag;
+            return this;
+        }
+
+        /**
+         * @see Request#setCallbackExecutor
+         */
+        public Builder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * @return the spec
+         * @throws IllegalArgumentException if the URL is not a valid http or https URL
+         */
+        public RequestSpec build() {
+            HttpUrl httpUrl = templateUrl != null ? templateUrl : HttpUrl.parse(url);
+
+            if (httpUrl == null) {
+                throw new IllegalArgumentException("URL is not a valid http or https URL: " + url);
+            }
+
+            if (!queryParameters.isEmpty()) {
+                HttpUrl.Builder urlBuilder = httpUrl.newBuilder();
+
+                for (Map.Entry<String, String> parameter : queryParameters.entrySet()) {
+                    urlBuilder.addEncodedQueryParameter(parameter.getKey(), parameter.getValue());
+                }
+
+                httpUrl = urlBuilder.build();
+            }
+
+            com.squareup.okhttp.Request.Builder requestBuilder = new com.squareup.okhttp.Request.Builder()
+                    .url(httpUrl)
+                    .headers(headers.build());
+
+            if (cacheControl != null) {
+                requestBuilder.cacheControl(cacheControl);
+            }
+
+            requestBuilder.method(method.name(), method.permitsRequestBody() ? buildBody(requestBuilder) : null);
+
+            return new RequestSpec(this, requestBuilder.build());
+        }
+
+        private RequestBody buildBody(com.squareup.okhttp.Request.Builder requestBuilder) {
+            String contentType = headers.get(BaseRequest.CONTENT_TYPE);
+            if (contentType == null) {
+                contentType = defaultContentType;
+            }
+
+            // the content type is resolved here, so that the header and the body can be set in any order
+            MediaType mediaType = contentType != null ? MediaType.parse(contentType) : null;
+            RequestBody requestBody;
+
+            if (bodyText != null) {
+                requestBody = RequestBody.create(mediaType, bodyText);
+            } else if (bodyBytes != null) {
+                requestBody = RequestBody.create(mediaType, bodyBytes);
+            } else if (formBody != null) {
+                requestBody = formBody;
+            } else {
+                requestBody = RequestBody.create(null, new byte[0]);
+            }
+
+            boolean compress = compressionEnabled != null ? compressionEnabled : BaseRequest.isDefaultCompressionEnabled();
+
+            if (compress && headers.get(GzipRequestBody.CONTENT_ENCODING) == null
+                    && GzipRequestBody.shouldCompress(requestBody, BaseRequest.getDefaultCompressionThreshold())) {
+                requestBuilder.header(GzipRequestBody.CONTENT_ENCODING, GzipRequestBody.GZIP);
+                requestBody = new GzipRequestBody(requestBody);
+            }
+
+            return requestBody;
+        }
+    }
+}
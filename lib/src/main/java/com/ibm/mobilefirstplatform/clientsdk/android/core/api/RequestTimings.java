@@ -0,0 +1,138 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * The time spent in each phase of a request, as returned by {@link ExtendedResponse#getTimings()}. Times are in
+ * milliseconds and are -1 for phases that did not happen, for example DNS, connect and TLS when the
+ * request reused a pooled connection. The phases are those of the last attempt; the total time covers
+ * all the attempts, retry delays and authorization round trips.
+ */
+public class RequestTimings {
+
+    private final long dnsTime;
+    private final long connectTime;
+    private final long tlsTime;
+    private final long requestTime;
+    private final long serverTime;
+    private final long bodyTime;
+    private final long authorizationTime;
+    private final int authorizationCount;
+    private final int attemptCount;
+    private final long totalTime;
+    private final boolean connectionReused;
+
+    /**
+     * @exclude
+     */
+    public RequestTimings(long dnsTime, long connectTime, long tlsTime, long requestTime, long serverTime, long bodyTime,
+                          long authorizationTime, int authorizationCount, int attemptCount, long totalTime, boolean connectionReused) {
+        this.dnsTime = dnsTime;
+        this.connectTime = connectTime;
+        this.tlsTime = tlsTime;
+        this.requestTime = requestTime;
+        this.serverTime = serverTime;
+        this.bodyTime = bodyTime;
+        this.authorizationTime = authorizationTime;
+        this.authorizationCount = authorizationCount;
+        this.attemptCount = attemptCount;
+        this.totalTime = totalTime;
+        this.connectionReused = connectionReused;
+    }
+
+    /**
+     * @return the time spent looking up the host
+     */
+    public long getDnsTime() {
+        return dnsTime;
+    }
+
+    /**
+     * @return the time spent opening the TCP connection
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return the time spent in the TLS handshake
+     */
+    public long getTlsTime() {
+        return tlsTime;
+    }
+
+    /**
+     * @return the time spent writing the request
+     */
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * @return the time between sending the request and receiving the response headers
+     */
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    /**
+     * @return the time spent reading the response body
+     */
+    public long getBodyTime() {
+        return bodyTime;
+    }
+
+    /**
+     * @return the time spent waiting for authorization
+     */
+    public long getAuthorizationTime() {
+        return authorizationTime;
+    }
+
+    /**
+     * @return the number of authorization round trips
+     */
+    public int getAuthorizationCount() {
+        return authorizationCount;
+    }
+
+    /**
+     * @return the number of times the request was sent
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * @return the time from the first attempt until the response body was read, or until now if it is still read
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return true if the last attempt was sent on a pooled connection
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings: dns=" + dnsTime + ", connect=" + connectTime + ", tls=" + tlsTime
+                + ", request=" + requestTime + ", server=" + serverTime + ", body=" + bodyTime
+                + ", authorization=" + authorizationTime + " (" + authorizationCount + ")"
+                + ", attempts=" + attemptCount + ", total=" + totalTime + ", reused=" + connectionReused;
+    }
+}
@@ -18,6 +18,12 @@ import java.util.Map;
 
 /**
  * This class has methods to get more details from the Response to the BaseRequest.
+ * <p>
+ * A response is read-only, and what it returns is decoded once and shared by every caller: the text, the
+ * bytes, the headers and, in implementations that parse it, the JSON object of the body. The header map and
+ * its value lists can't be modified; the byte array and the JSON object must not be modified either, copy
+ * them to change them.
+ * </p>
  */
 public interface  Response {
 
@@ -39,14 +45,15 @@ public interface  Response {
     /**
      * This method gets the bytes of the response body.
      *
-     * @return the bytes of the response body. Will be null if there is no body.
+     * @return the bytes of the response body, shared by all callers and not to be modified. Will be null if
+     * there is no body.
      */
     byte[] getResponseBytes();
 
     /**
      * Get the HTTP headers from the response.
      *
-     * @return A map with all the headers, and the corresponding values for each one.
+     * @return A read-only map with all the headers, and the read-only values for each one.
      */
     Map<String, List<String>> getHeaders();
 
@@ -0,0 +1,50 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+
+/**
+ * Reported when a response body is larger than the limit set with {@link BMSClient#setMaxResponseBodySize}
+ * and the policy is {@link LargeBodyPolicy#FAIL}.
+ */
+public class ResponseBodyTooLargeException extends IOException {
+
+    private final long limit;
+    private final long contentLength;
+
+    /**
+     * @exclude
+     */
+    public ResponseBodyTooLargeException(long limit, long contentLength) {
+        super("Response body " + (contentLength >= 0 ? "of " + contentLength + " bytes " : "")
+                + "exceeds the limit of " + limit + " bytes");
+        this.limit = limit;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * @return the maximum size of a response body kept in memory, in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the size announced by the server, or -1 if the body was cut off while reading it
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+}
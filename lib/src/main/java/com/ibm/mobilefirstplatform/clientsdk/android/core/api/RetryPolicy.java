@@ -0,0 +1,235 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes when and how often a failed request is sent again, see {@link Request#setRetryPolicy}.
+ * <p>
+ * A request is retried when it fails with an I/O error, or when the server answers with one of the
+ * retryable status codes. The delay before each retry is chosen at random between zero and an exponentially
+ * growing ceiling (full jitter), so that clients that failed together don't retry together. When the server
+ * sends a Retry-After header, the delay it asks for is used instead.
+ * </p>
+ * <p>
+ * By default only idempotent methods are retried: GET, HEAD, PUT, DELETE, OPTIONS and TRACE.
+ * Retries are also limited by the retry budget shared by all requests, see {@link BMSClient#setRetryBudget}.
+ * </p>
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE")));
+    private static final Set<Integer> DEFAULT_STATUS_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            408, 429, 502, 503, 504)));
+
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final boolean retryNonIdempotent;
+    private final boolean retryAfterEnabled;
+    private final Set<Integer> retryableStatusCodes;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = builder.maxDelay;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.retryAfterEnabled = builder.retryAfterEnabled;
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(builder.retryableStatusCodes));
+    }
+
+    /**
+     * @return the maximum number of times a request is sent, including the first time
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the ceiling in milliseconds of the delay before the first retry
+     */
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * @return the maximum delay in milliseconds before a retry
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @return true if requests with methods that are not idempotent, such as POST, are retried too
+     */
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * @return true if the delay asked for by a Retry-After header is used
+     */
+    public boolean isRetryAfterEnabled() {
+        return retryAfterEnabled;
+    }
+
+    /**
+     * @return the response status codes that cause a retry
+     */
+    public Set<Integer> getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+
+    /**
+     * @param method the HTTP method of a request
+     * @return true if requests with this method may be retried
+     */
+    public boolean isRetryableMethod(String method) {
+        return retryNonIdempotent || (method != null && IDEMPOTENT_METHODS.contains(method.toUpperCase()));
+    }
+
+    /**
+     * @param statusCode the status code of a response
+     * @return true if a response with this status code causes a retry
+     */
+    public boolean isRetryableStatusCode(int statusCode) {
+        return retryableStatusCodes.contains(statusCode);
+    }
+
+    /**
+     * Returns the ceiling of the random delay before a retry, that is the base delay doubled for every
+     * previous retry, up to the maximum delay.
+     *
+     * @param retry the number of retries already made
+     * @return the ceiling in milliseconds of the delay before the next retry
+     */
+    public long getDelayCeiling(int retry) {
+        // past 2^30 the maximum delay is reached for any sensible base delay, and the shift would overflow
+        if (retry >= 30) {
+            return maxDelay;
+        }
+
+        long ceiling = baseDelay << retry;
+
+        return ceiling < 0 || ceiling > maxDelay ? maxDelay : ceiling;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy: maxAttempts=" + maxAttempts + ", baseDelay=" + baseDelay + ", maxDelay=" + maxDelay
+                + ", retryNonIdempotent=" + retryNonIdempotent + ", retryAfterEnabled=" + retryAfterEnabled
+                + ", statusCodes=" + retryableStatusCodes;
+    }
+
+    /**
+     * Builds a {@link RetryPolicy}. The defaults are 3 attempts, a base delay of 500 milliseconds, a maximum
+     * delay of 30 seconds, idempotent methods only, Retry-After enabled, and the status codes 408, 429, 502,
+     * 503 and 504.
+     */
+    public static class Builder {
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long baseDelay = DEFAULT_BASE_DELAY;
+        private long maxDelay = DEFAULT_MAX_DELAY;
+        private boolean retryNonIdempotent = false;
+        private boolean retryAfterEnabled = true;
+        private Set<Integer> retryableStatusCodes = new HashSet<>(DEFAULT_STATUS_CODES);
+
+        /**
+         * @param maxAttempts the maximum number of times a request is sent, including the first time
+         * @return this builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+            }
+
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelay the ceiling in milliseconds of the delay before the first retry
+         * @return this builder
+         */
+        public Builder baseDelay(long baseDelay) {
+            if (baseDelay < 0) {
+                throw new IllegalArgumentException("baseDelay < 0: " + baseDelay);
+            }
+
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        /**
+         * @param maxDelay the maximum delay in milliseconds before a retry. A Retry-After header asking for
+         *                 a longer delay ends the retries.
+         * @return this builder
+         */
+        public Builder maxDelay(long maxDelay) {
+            if (maxDelay < 0) {
+                throw new IllegalArgumentException("maxDelay < 0: " + maxDelay);
+            }
+
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Only retry requests with methods that are not idempotent, such as POST, if the server is known
+         * to handle duplicates.
+         *
+         * @param retryNonIdempotent true to retry requests of any method
+         * @return this builder
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * @param retryAfterEnabled true to use the delay asked for by a Retry-After header
+         * @return this builder
+         */
+        public Builder retryAfterEnabled(boolean retryAfterEnabled) {
+            this.retryAfterEnabled = retryAfterEnabled;
+            return this;
+        }
+
+        /**
+         * @param statusCodes the response status codes that cause a retry, replacing the defaults
+         * @return this builder
+         */
+        public Builder retryableStatusCodes(Integer... statusCodes) {
+            this.retryableStatusCodes = new HashSet<>(Arrays.asList(statusCodes));
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (baseDelay > maxDelay) {
+                throw new IllegalArgumentException("baseDelay > maxDelay: " + baseDelay + " > " + maxDelay);
+            }
+
+            return new RetryPolicy(this);
+        }
+    }
+}
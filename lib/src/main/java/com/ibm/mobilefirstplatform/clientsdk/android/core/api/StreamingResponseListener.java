@@ -0,0 +1,32 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+/**
+ * StreamingResponseListener is a ResponseListener whose successful responses are not buffered in memory.
+ * <p>
+ * {@link #onSuccess(Response)} is called as soon as the response headers arrive, and the body is read from the
+ * network through {@link ExtendedResponse#getResponseByteStream()}. The body is closed when onSuccess returns, so it
+ * must be consumed before returning. Calling {@link Response#getResponseBytes()} or {@link Response#getResponseText()}
+ * buffers the rest of the body as usual.
+ * </p>
+ * <p>
+ * Failed responses are buffered, so {@link #onFailure(Response, Throwable, org.json.JSONObject)} receives the
+ * complete error body.
+ * </p>
+ *
+ * @see JsonArrayListener
+ */
+public interface StreamingResponseListener extends ResponseListener {
+}
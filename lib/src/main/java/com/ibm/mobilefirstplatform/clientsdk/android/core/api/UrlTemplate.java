@@ -0,0 +1,262 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.squareup.okhttp.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A URL with variables in its path, such as {@code /api/items/{id}}, parsed once and expanded for every request.
+ * <p>
+ * Templates that start with "/" are relative to the Bluemix app route passed to {@link BMSClient#initialize},
+ * which is only parsed once. Absolute templates, such as {@code https://example.com/api/items/{id}}, have their
+ * scheme and host parsed when the template is compiled. Variable values are percent-encoded, so a value
+ * containing "/" or "?" stays within its path segment. A path segment can't be "." or "..", and a segment
+ * made only of variables can't expand to an empty string, so that a value never moves the URL to another path.
+ * </p>
+ * Templates are immutable and can be shared between threads.
+ */
+public class UrlTemplate {
+
+    private final String template;
+    private final HttpUrl base;
+    private final Segment[] segments;
+    private final Set<String> variableNames;
+
+    private UrlTemplate(String template, HttpUrl base, Segment[] segments, Set<String> variableNames) {
+        this.template = template;
+        this.base = base;
+        this.segments = segments;
+        this.variableNames = variableNames;
+    }
+
+    /**
+     * Parses a template. Variables are written as {@code {name}} and can appear anywhere in the path,
+     * also next to literal text within a segment, such as {@code /files/{name}.json}.
+     *
+     * @param template the template, either starting with "/" or an absolute http or https URL
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template is not valid, or has a "." or ".." path segment
+     */
+    public static UrlTemplate compile(String template) {
+        if (template == null) {
+            throw new IllegalArgumentException("template == null");
+        }
+        if (template.indexOf('?') != -1 || template.indexOf('#') != -1) {
+            throw new IllegalArgumentException("Template must not contain a query or fragment, use query parameters: " + template);
+        }
+
+        HttpUrl base = null;
+        String path = template;
+
+        if (!template.startsWith("/")) {
+            int schemeEnd = template.indexOf("://");
+            int pathStart = schemeEnd != -1 ? template.indexOf('/', schemeEnd + 3) : -1;
+            String authority = pathStart != -1 ? template.substring(0, pathStart) : template;
+
+            base = HttpUrl.parse(authority);
+            if (base == null || authority.indexOf('{') != -1) {
+                throw new IllegalArgumentException("Template is neither relative nor an absolute http or https URL: " + template);
+            }
+
+            path = pathStart != -1 ? template.substring(pathStart) : "/";
+        }
+
+        Set<String> variableNames = new LinkedHashSet<>();
+        String[] rawSegments = path.substring(1).split("/", -1);
+        Segment[] segments = new Segment[rawSegments.length];
+
+        for (int i = 0; i < rawSegments.length; i++) {
+            segments[i] = Segment.parse(rawSegments[i], template, variableNames);
+        }
+
+        return new UrlTemplate(template, base, segments, Collections.unmodifiableSet(variableNames));
+    }
+
+    /**
+     * @return the names of the variables in this template, in the order they appear
+     */
+    public Set<String> getVariableNames() {
+        return variableNames;
+    }
+
+    /**
+     * Builds the URL for the given variable values.
+     *
+     * @param pathParameters  the value of every variable of this template
+     * @param queryParameters the query parameters to add, or null. Values that are already percent-encoded are
+     *                        kept as they are, other characters are encoded.
+     * @return the URL
+     * @throws IllegalArgumentException if a variable has no value, or if a segment expands to "", "." or ".."
+     * @throws IllegalStateException if the template is relative and the SDK was not initialized with a valid app route
+     */
+    public HttpUrl expand(Map<String, String> pathParameters, Map<String, String> queryParameters) {
+        HttpUrl baseUrl = base;
+
+        if (baseUrl == null) {
+            baseUrl = BMSClient.getInstance().getBluemixAppRouteUrl();
+
+            if (baseUrl == null) {
+                throw new IllegalStateException("Relative template " + template + " needs BMSClient to be initialized with a valid app route");
+            }
+        }
+
+        HttpUrl.Builder builder = baseUrl.newBuilder();
+
+        for (Segment segment : segments) {
+            segment.appendTo(builder, pathParameters);
+        }
+
+        if (queryParameters != null) {
+            for (Map.Entry<String, String> parameter : queryParameters.entrySet()) {
+                builder.addEncodedQueryParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * A path segment, made of literal text and variables.
+     */
+    private static class Segment {
+        private final String literal;
+        private final String[] parts;
+        private final boolean[] variables;
+        private final int literalLength;
+
+        private Segment(String literal, String[] parts, boolean[] variables, int literalLength) {
+            this.literal = literal;
+            this.parts = parts;
+            this.variables = variables;
+            this.literalLength = literalLength;
+        }
+
+        static Segment parse(String segment, String template, Set<String> variableNames) {
+            if (segment.indexOf('{') == -1) {
+                if (segment.indexOf('}') != -1) {
+                    throw new IllegalArgumentException("Unmatched } in template " + template);
+                }
+                if (isDotSegment(segment)) {
+                    throw new IllegalArgumentException("Template must not contain . or .. segments: " + template);
+                }
+
+                return new Segment(segment, null, null, segment.length());
+            }
+
+            List<String> parts = new ArrayList<>();
+            List<Boolean> variables = new ArrayList<>();
+            int literalLength = 0;
+            int position = 0;
+
+            while (position < segment.length()) {
+                int open = segment.indexOf('{', position);
+
+                if (open == -1) {
+                    parts.add(segment.substring(position));
+                    variables.add(false);
+                    literalLength += segment.length() - position;
+                    break;
+                }
+
+                int close = segment.indexOf('}', open);
+                if (close == -1 || close == open + 1) {
+                    throw new IllegalArgumentException("Invalid variable in template " + template);
+                }
+
+                if (open > position) {
+                    parts.add(segment.substring(position, open));
+                    variables.add(false);
+                    literalLength += open - position;
+                }
+
+                String name = segment.substring(open + 1, close);
+                parts.add(name);
+                variables.add(true);
+                variableNames.add(name);
+
+                position = close + 1;
+            }
+
+            boolean[] variableFlags = new boolean[variables.size()];
+            for (int i = 0; i < variableFlags.length; i++) {
+                variableFlags[i] = variables.get(i);
+            }
+
+            return new Segment(null, parts.toArray(new String[parts.size()]), variableFlags, literalLength);
+        }
+
+        void appendTo(HttpUrl.Builder builder, Map<String, String> pathParameters) {
+            if (literal != null) {
+                builder.addEncodedPathSegment(literal);
+                return;
+            }
+
+            // a segment with one variable and nothing else needs no intermediate string
+            if (parts.length == 1) {
+                builder.addPathSegment(checkSegment(getValue(parts[0], pathParameters)));
+                return;
+            }
+
+            StringBuilder value = new StringBuilder(literalLength + 16 * parts.length);
+
+            for (int i = 0; i < parts.length; i++) {
+                value.append(variables[i] ? getValue(parts[i], pathParameters) : parts[i]);
+            }
+
+            builder.addPathSegment(checkSegment(value.toString()));
+        }
+
+        /**
+         * Rejects expanded segments that would remove a segment or move up the path.
+         */
+        private static String checkSegment(String segment) {
+            if (segment.isEmpty() || isDotSegment(segment)) {
+                throw new IllegalArgumentException("Template variables must not expand to an empty, . or .. segment: \"" + segment + "\"");
+            }
+
+            return segment;
+        }
+
+        /**
+         * @return true for "." and "..", also percent-encoded, which URLs resolve as relative path segments
+         */
+        private static boolean isDotSegment(String segment) {
+            String decoded = segment.replace("%2e", ".").replace("%2E", ".");
+
+            return decoded.equals(".") || decoded.equals("..");
+        }
+
+        private static String getValue(String name, Map<String, String> pathParameters) {
+            String value = pathParameters != null ? pathParameters.get(name) : null;
+
+            if (value == null) {
+                throw new IllegalArgumentException("No value for template variable " + name);
+            }
+
+            return value;
+        }
+    }
+}
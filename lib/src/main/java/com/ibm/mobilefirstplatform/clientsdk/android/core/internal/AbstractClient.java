@@ -15,10 +15,17 @@ package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
 import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.List;
 
 public abstract class AbstractClient {
 
-    protected static final CookieManager cookieManager = new CookieManager();
+    // the manager stays the same, setCookieStore replaces the store behind it
+    private static final SwitchableCookieStore switchableCookieStore = new SwitchableCookieStore();
+    protected static final CookieManager cookieManager = new CookieManager(switchableCookieStore, CookiePolicy.ACCEPT_ALL);
 
 	protected AuthorizationManager authorizationManager = null;
     private int defaultTimeout = 20000;
@@ -64,5 +71,71 @@ public abstract class AbstractClient {
         return cookieManager;
     }
 
+    /**
+     * Replaces the store of the cookies of resource and authorization requests. Cookies in the previous
+     * store are not copied.
+     *
+     * @param cookieStore the store, or null for an in-memory store
+     */
+    public void setCookieStore(CookieStore cookieStore) {
+        CookieStore previousStore = switchableCookieStore.setDelegate(cookieStore);
+
+        HttpClientRegistry.setCookieHandler(cookieManager);
+
+        if (previousStore instanceof PersistentCookieStore && previousStore != cookieStore) {
+            ((PersistentCookieStore) previousStore).close();
+        }
+    }
+
+    /**
+     * A cookie store that forwards to a store that can be replaced.
+     */
+    private static class SwitchableCookieStore implements CookieStore {
+        private volatile CookieStore delegate = newInMemoryStore();
+
+        private static CookieStore newInMemoryStore() {
+            return new CookieManager().getCookieStore();
+        }
+
+        /**
+         * @return the previous store
+         */
+        synchronized CookieStore setDelegate(CookieStore store) {
+            CookieStore previous = delegate;
+            delegate = store != null ? store : newInMemoryStore();
+            return previous;
+        }
+
+        @Override
+        public void add(URI uri, HttpCookie cookie) {
+            delegate.add(uri, cookie);
+        }
+
+        @Override
+        public List<HttpCookie> get(URI uri) {
+            return delegate.get(uri);
+        }
+
+        @Override
+        public List<HttpCookie> getCookies() {
+            return delegate.getCookies();
+        }
+
+        @Override
+        public List<URI> getURIs() {
+            return delegate.getURIs();
+        }
+
+        @Override
+        public boolean remove(URI uri, HttpCookie cookie) {
+            return delegate.remove(uri, cookie);
+        }
+
+        @Override
+        public boolean removeAll() {
+            return delegate.removeAll();
+        }
+    }
+
 
 }
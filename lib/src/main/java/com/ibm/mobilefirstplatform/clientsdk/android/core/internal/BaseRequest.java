@@ -14,10 +14,19 @@
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CacheStatistics;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseBodyTooLargeException;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.StreamingResponseListener;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Call;
 import com.squareup.okhttp.Callback;
 import com.squareup.okhttp.FormEncodingBuilder;
 import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.HttpUrl;
 import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
@@ -26,19 +35,17 @@ import com.squareup.okhttp.RequestBody;
 
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.CookieManager;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLSocketFactory;
-
 /**
  * This class is used to create and send a request. It allows to add all the parameters to the request
  * before sending it.
@@ -49,6 +56,8 @@ public class BaseRequest {
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String JSON_CONTENT_TYPE = "application/json";
     public static final String TEXT_PLAIN = "text/plain";
+    public static final String OCTET_STREAM = "application/octet-stream";
+    public static final long DEFAULT_COMPRESSION_THRESHOLD = 1024;
 
     /**
      * The string constant for the GET HTTP method verb.
@@ -79,25 +88,95 @@ public class BaseRequest {
      */
     public final static String OPTIONS = "OPTIONS";
 
+    /**
+     * The priority of a request. Requests with a higher priority are sent first when the number of
+     * concurrent requests is at its limit.
+     */
+    public enum Priority {
+        /**
+         * For requests the user is waiting for.
+         */
+        HIGH,
+        /**
+         * The default priority.
+         */
+        NORMAL,
+        /**
+         * For requests that can wait. Low and background requests can only use part of the connections to a host.
+         */
+        LOW,
+        /**
+         * For prefetching and other work the user is not aware of.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The HTTP methods a request can use.
+     */
+    public enum Method {
+        GET, POST, PUT, DELETE, TRACE, HEAD, OPTIONS;
+
+        /**
+         * Returns the method with the given name, ignoring case.
+         *
+         * @param name the name of a method
+         * @return the method, or null if the name is not a valid method
+         */
+        public static Method fromString(String name) {
+            if (name == null) {
+                return null;
+            }
+
+            for (Method method : values()) {
+                if (method.name().equalsIgnoreCase(name)) {
+                    return method;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return true if requests with this method can have a body
+         */
+        public boolean permitsRequestBody() {
+            return this != GET && this != HEAD;
+        }
+    }
+
     private String url = null;
+    private HttpUrl httpUrl = null;
     private String method = null;
     private int timeout;
+    private Boolean followRedirects = null;
+    private CacheControl cacheControl = null;
+    private boolean coalescingEnabled = false;
+    private Priority priority = Priority.NORMAL;
+    private Boolean compressionEnabled = null;
+    private long compressionThreshold = -1;
+    private CallHandle callHandle = null;
 
     private Map<String, String> queryParameters;
     private Headers.Builder headers = new Headers.Builder();
 
     private static final OkHttpClient httpClient = new OkHttpClient();
+    private static final ResponseCacheInterceptor cacheInterceptor = new ResponseCacheInterceptor();
+    private static final RequestCoalescer coalescer = new RequestCoalescer();
+    private static final RequestScheduler scheduler = new RequestScheduler(httpClient.getDispatcher());
+
+    private static volatile boolean defaultCompressionEnabled = false;
+    private static volatile long defaultCompressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
 
     static {
-        SSLSocketFactory tlsEnabledSSLSocketFactory;
-        try {
-            tlsEnabledSSLSocketFactory = new TLSEnabledSSLSocketFactory();
-            httpClient.setSslSocketFactory(tlsEnabledSSLSocketFactory);
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
+        // requests created with the default timeout can use the shared client as is
+        httpClient.setConnectTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        httpClient.setReadTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        httpClient.setWriteTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        httpClient.interceptors().add(cacheInterceptor);
+
+        HttpClientRegistry.register(httpClient);
     }
 
     /**
@@ -129,6 +208,21 @@ public class BaseRequest {
         setTimeout(timeout);
     }
 
+    /**
+     * Constructs a new request with an URL that is already parsed, using the specified HTTP method.
+     *
+     * @param url     The resource URL
+     * @param method  The HTTP method to use.
+     * @param timeout The timeout in milliseconds for this request.
+     */
+    protected BaseRequest(HttpUrl url, String method, int timeout) {
+        this.url = url.toString();
+        this.httpUrl = url;
+        this.method = method;
+
+        setTimeout(timeout);
+    }
+
     private String convertRelativeURLToBluemixAbsolute(String url) {
         String appRoute = BMSClient.getInstance().getBluemixAppRoute();
 
@@ -252,18 +346,13 @@ public class BaseRequest {
     }
 
     /**
-     * Sets the timeout for this resource request.
+     * Sets the timeout for this resource request. The timeout only applies to this request,
+     * other requests keep their own timeouts.
      *
      * @param timeout The timeout for this request procedure
      */
     public void setTimeout(int timeout) {
         this.timeout = timeout;
-
-        OkHttpClient client = getHttpClient();
-
-        client.setConnectTimeout(timeout, TimeUnit.MILLISECONDS);
-        client.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
-        client.setWriteTimeout(timeout, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -283,15 +372,23 @@ public class BaseRequest {
      * @param listener    The listener whose onSuccess or onFailure methods will be called when this request finishes.
      */
     protected void send(final String requestBody, final ResponseListener listener) {
+        sendRequest(listener, createBody(requestBody));
+    }
+
+    /**
+     * Creates a body from the given string. If no content type header was set, "text/plain" is used.
+     *
+     * @param text The request body text
+     * @return the request body
+     */
+    protected RequestBody createBody(String text) {
         String contentType = headers.get(CONTENT_TYPE);
 
         if (contentType == null) {
             contentType = TEXT_PLAIN;
         }
 
-        RequestBody body = RequestBody.create(MediaType.parse(contentType), requestBody);
-
-        sendRequest(listener, body);
+        return RequestBody.create(MediaType.parse(contentType), text);
     }
 
     /**
@@ -340,110 +437,476 @@ public class BaseRequest {
      * @param listener The listener whose onSuccess or onFailure methods will be called when this request finishes.
      */
     protected void send(byte[] data, ResponseListener listener) {
-        RequestBody body = RequestBody.create(MediaType.parse(headers.get(CONTENT_TYPE)), data);
+        sendRequest(listener, createBody(data));
+    }
+
+    /**
+     * Creates a body from the given bytes, with the content type header of this request if there is one.
+     *
+     * @param data The byte array containing the request body
+     * @return the request body
+     */
+    protected RequestBody createBody(byte[] data) {
+        return RequestBody.create(MediaType.parse(headers.get(CONTENT_TYPE)), data);
+    }
+
+    /**
+     * Send this resource request asynchronously, streaming the content of the given file as the request body.
+     * If no content type header was set, this method will set it to "application/octet-stream".
+     *
+     * @param file     The file containing the request body
+     * @param listener The listener whose onSuccess or onFailure methods will be called when this request finishes.
+     */
+    protected void send(File file, ResponseListener listener) {
+        RequestBody body = StreamingRequestBody.create(getStreamingContentType(), file);
 
         sendRequest(listener, body);
     }
 
-    /** Configure this client to follow redirects.
-     * If unset, redirects be followed.
+    /**
+     * Send this resource request asynchronously, streaming the content of the given input stream as the request body.
+     * If no content type header was set, this method will set it to "application/octet-stream".
+     * The stream is closed once it has been sent.
+     *
+     * @param stream        The stream containing the request body
+     * @param contentLength The number of bytes in the stream, or -1 if unknown, in which case chunked encoding is used
+     * @param listener      The listener whose onSuccess or onFailure methods will be called when this request finishes.
+     */
+    protected void send(InputStream stream, long contentLength, ResponseListener listener) {
+        boolean replayable = canResend();
+        StreamingRequestBody body = StreamingRequestBody.create(getStreamingContentType(), stream, contentLength,
+                replayable ? getSpoolDirectory() : null, replayable);
+
+        sendRequest(body.releaseAfter(listener), body);
+    }
+
+    private MediaType getStreamingContentType() {
+        String contentType = headers.get(CONTENT_TYPE);
+
+        return MediaType.parse(contentType != null ? contentType : OCTET_STREAM);
+    }
+
+    /**
+     * Returns true if this request may be sent again with the same body, for example after a retry or after
+     * obtaining authorization. Input stream bodies are only copied to the spool directory when it does.
+     *
+     * @return false, requests are sent once unless a subclass resends them
+     */
+    protected boolean canResend() {
+        return false;
+    }
+
+    /**
+     * Returns the directory where streamed request bodies are copied so they can be sent again.
+     *
+     * @return the spool directory, or null to use the default temporary directory
+     */
+    protected File getSpoolDirectory() {
+        return null;
+    }
+
+    /**
+     * Sets the cache directives for this request, or null to only follow the cache headers of the server.
+     *
+     * @param cacheControl the cache directives to send with this request
+     */
+    protected void setCacheControl(CacheControl cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * Returns true if this request shares its network call with identical requests in flight.
+     *
+     * @return true if coalescing is enabled for this request
+     */
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    /**
+     * Enables sharing one network call between identical GET requests that are in flight at the same time.
+     * Requests are identical when they have the same URL, query parameters and headers, including Authorization.
+     * Every listener gets the same response. Requests sent with a streaming listener are never shared.
+     *
+     * @param coalescingEnabled true to share the network call with identical requests
+     */
+    public void setCoalescingEnabled(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    /**
+     * Returns the priority of this request.
+     *
+     * @return the priority of this request
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of this request. When the number of concurrent requests is at its limit, waiting
+     * requests are sent in order of priority. Requests that wait for a long time are moved up gradually,
+     * so low priority requests are never starved.
+     *
+     * @param priority the priority of this request
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Returns true if the body of this request is compressed when it is large enough. Unless set on this
+     * request, the global setting of {@link BMSClient#setRequestCompression} is used.
+     *
+     * @return true if compression is enabled for this request
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled != null ? compressionEnabled : defaultCompressionEnabled;
+    }
+
+    /**
+     * Enables or disables gzip compression of the body of this request. Only bodies with a known length of at
+     * least the compression threshold are compressed, and they are sent with the header "Content-Encoding: gzip",
+     * so the server must accept compressed request bodies.
+     *
+     * @param compressionEnabled true to compress the body of this request
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Returns the minimum body size in bytes for the body of this request to be compressed.
+     *
+     * @return the compression threshold of this request
+     */
+    public long getCompressionThreshold() {
+        return compressionThreshold >= 0 ? compressionThreshold : defaultCompressionThreshold;
+    }
+
+    /**
+     * Sets the minimum body size in bytes for the body of this request to be compressed. Small bodies
+     * gain little from compression and cost CPU time.
+     *
+     * @param compressionThreshold the minimum body size to compress
+     */
+    public void setCompressionThreshold(long compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("compressionThreshold < 0: " + compressionThreshold);
+        }
+
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /** Configure this request to follow redirects.
+     * If unset, the redirect policy of the underlying client is used.
      */
     public void setFollowRedirects(boolean followRedirects) {
-        getHttpClient().setFollowRedirects(followRedirects);
+        this.followRedirects = followRedirects;
     }
 
     protected URL getURLWithQueryParameters(String url, Map<String, String> queryParameters) throws MalformedURLException {
-        if (url == null || queryParameters == null || queryParameters.size() == 0) {
-            return new URL(url);
+        HttpUrl parsedUrl = url != null ? HttpUrl.parse(url) : null;
+
+        if (parsedUrl == null) {
+            throw new MalformedURLException("URL is not a valid http or https URL: " + url);
         }
 
-        String queryParamsURLFragment = "";
+        return addQueryParameters(parsedUrl, queryParameters).url();
+    }
 
-        int i = 0;
+    /**
+     * Returns the URL of this request with its query parameters. The URL is only parsed once.
+     */
+    private HttpUrl getHttpUrlWithQueryParameters() throws MalformedURLException {
+        if (httpUrl == null) {
+            httpUrl = url != null ? HttpUrl.parse(url) : null;
 
-        for (Map.Entry<String, String> entry : queryParameters.entrySet()) {
-            if (i > 0) {
-                queryParamsURLFragment += "&";
+            if (httpUrl == null) {
+                throw new MalformedURLException("URL is not a valid http or https URL: " + url);
             }
+        }
 
-            queryParamsURLFragment += entry.getKey() + "=" + entry.getValue();
+        return addQueryParameters(httpUrl, queryParameters);
+    }
 
-            i++;
+    /**
+     * Adds query parameters to an URL. Values that are already percent-encoded are kept as they are,
+     * other characters that can't appear in a query, such as spaces, "&amp;" and "=", are encoded.
+     *
+     * @param url             the URL
+     * @param queryParameters the query parameters, or null
+     * @return the URL with the query parameters
+     */
+    protected static HttpUrl addQueryParameters(HttpUrl url, Map<String, String> queryParameters) {
+        if (queryParameters == null || queryParameters.isEmpty()) {
+            return url;
         }
 
-        String newURL = url;
+        HttpUrl.Builder builder = url.newBuilder();
 
-        if (!urlContainsURIPath(newURL)) {
-            newURL += "/";
+        for (Map.Entry<String, String> entry : queryParameters.entrySet()) {
+            builder.addEncodedQueryParameter(entry.getKey(), entry.getValue());
         }
 
-        if (!newURL.contains("?")) {
-            queryParamsURLFragment = "?" + queryParamsURLFragment;
+        return builder.build();
+    }
+
+    protected void sendRequest(final ResponseListener listener, final RequestBody requestBody) {
+        Request request;
+
+        try {
+            request = buildRequest(requestBody);
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            listener.onFailure(null, e, null);
+            return;
         }
 
-        return new URL(newURL + queryParamsURLFragment);
+        OkHttpClient client = getClientForBody(getClientForCall(), requestBody);
+        Callback callback = getCallback(listener);
+        boolean coalesce = coalescingEnabled && request.method().equals(GET) && !(listener instanceof StreamingResponseListener);
+
+        dispatch(getScheduler(), priority, client, request, callback, coalesce, callHandle);
     }
 
-    protected boolean urlContainsURIPath(String url) {
-        int slashCount = 0;
-        int lastIndex = 0;
+    /**
+     * Sends this resource request and waits for the response on the calling thread. The call skips the
+     * priority scheduler and the coalescer, but goes through the circuit breaker of its host.
+     *
+     * @param requestBody the request body, ignored for GET and HEAD requests
+     * @return the response, whatever its status code. The body must be closed by the caller.
+     * @throws IOException if no response was received
+     * @throws IllegalArgumentException if the method of this request is not valid
+     */
+    protected com.squareup.okhttp.Response executeRequest(RequestBody requestBody) throws IOException {
+        return execute(getClientForBody(getClientForCall(), requestBody), buildRequest(requestBody), callHandle);
+    }
+
+    /**
+     * OkHttp sends a request again by itself when the connection fails, which a body that can only be
+     * written once doesn't survive. Such bodies are sent with a client that leaves the failure to the caller.
+     */
+    private static OkHttpClient getClientForBody(OkHttpClient client, RequestBody requestBody) {
+        if (StreamingRequestBody.isReplayable(requestBody) || !client.getRetryOnConnectionFailure()) {
+            return client;
+        }
 
-        while (lastIndex != -1) {
+        OkHttpClient callClient = client.clone();
+        callClient.setRetryOnConnectionFailure(false);
+
+        return callClient;
+    }
 
-            lastIndex = url.indexOf("/", lastIndex);
+    private Request buildRequest(RequestBody requestBody) throws MalformedURLException {
+        Method requestMethod = Method.fromString(method);
 
-            if (lastIndex != -1) {
-                slashCount++;
-                lastIndex += 1;
+        if (requestMethod == null) {
+            throw new IllegalArgumentException("Method is not valid: " + method);
+        }
+
+        Request.Builder requestBuilder = new Request.Builder();
+
+        // the timer of the handle spans retries and authorization, other requests are timed per call
+        requestBuilder.tag(callHandle != null ? callHandle.getRequestTimer() : new RequestTimer());
+        requestBuilder.headers(headers.build());
+        requestBuilder.url(getHttpUrlWithQueryParameters());
+
+        if (cacheControl != null) {
+            requestBuilder.cacheControl(cacheControl);
+        }
+
+        //GET and HEAD requests cannot have a body in OKHTTP
+        if (requestMethod.permitsRequestBody()) {
+            requestBuilder.method(requestMethod.name(), compressIfNeeded(requestBuilder, requestBody));
+        } else {
+            requestBuilder.method(requestMethod.name(), null);
+        }
+
+        return requestBuilder.build();
+    }
+
+    /**
+     * Sends a call on the calling thread, through the circuit breaker of its host.
+     *
+     * @param client  the client to send the call with
+     * @param request the request
+     * @param handle  the handle that can cancel the call, or null
+     * @return the response
+     * @throws IOException if no response was received
+     */
+    protected static com.squareup.okhttp.Response execute(OkHttpClient client, Request request, CallHandle handle) throws IOException {
+        if (handle != null && !handle.onStarted()) {
+            throw new RequestCancelledException();
+        }
+
+        String host = request.httpUrl().host();
+        CircuitBreaker breaker = CircuitBreakerRegistry.get(host);
+        CircuitBreaker.Permit permit = null;
+
+        if (breaker != null) {
+            permit = breaker.acquire();
+
+            if (permit == null) {
+                throw new CircuitBreakerOpenException(host, breaker.getRemainingOpenTime());
+            }
+        }
+
+        Call call = client.newCall(request);
+
+        if (handle != null && !handle.onCall(call)) {
+            if (permit != null) {
+                breaker.release(permit);
+            }
+            throw new RequestCancelledException();
+        }
+
+        long start = System.nanoTime();
+        com.squareup.okhttp.Response response;
+
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            boolean cancelled = handle != null && handle.onFinished();
+
+            if (permit != null) {
+                if (cancelled) {
+                    breaker.release(permit);
+                } else {
+                    breaker.record(permit, true, System.nanoTime() - start);
+                }
             }
+
+            throw cancelled ? new RequestCancelledException() : e;
+        }
+
+        if (permit != null) {
+            breaker.record(permit, response.code() >= 500, System.nanoTime() - start);
+        }
+
+        if (handle != null && handle.onFinished()) {
+            response.body().close();
+            throw new RequestCancelledException();
         }
-        return slashCount >= 3;
+
+        return response;
     }
 
-    private boolean isValidMethod(String method) {
-        return method.equalsIgnoreCase(PUT) ||
-                method.equalsIgnoreCase(POST) ||
-                method.equalsIgnoreCase(GET) ||
-                method.equalsIgnoreCase(DELETE) ||
-                method.equalsIgnoreCase(TRACE) ||
-                method.equalsIgnoreCase(HEAD) ||
-                method.equalsIgnoreCase(OPTIONS);
+    /**
+     * Sends a call through the scheduler, the circuit breaker of its host and the coalescer.
+     *
+     * @param requestScheduler the scheduler, or null to pass the call straight to the dispatcher
+     * @param priority         the priority of the call
+     * @param client           the client to send the call with
+     * @param request          the request
+     * @param callback         the callback of the call
+     * @param coalesce         true to share the call with identical calls in flight
+     * @param handle           the handle that can cancel the call, or null
+     */
+    protected static void dispatch(RequestScheduler requestScheduler, Priority priority, final OkHttpClient client,
+                                   final Request request, final Callback callback, final boolean coalesce,
+                                   final CallHandle handle) {
+        if (requestScheduler == null) {
+            enqueue(client, request, callback, coalesce, handle);
+            return;
+        }
+
+        RequestScheduler.Task task = new RequestScheduler.Task() {
+            @Override
+            public void run(RequestScheduler.Slot slot) {
+                enqueue(client, request, slot.releaseAfter(callback), coalesce, handle);
+            }
+        };
+
+        if (handle != null && !handle.onScheduled(requestScheduler, task, request, callback)) {
+            callback.onFailure(request, new RequestCancelledException());
+            return;
+        }
+
+        requestScheduler.schedule(priority, request.httpUrl().host(), task);
     }
 
-    protected void sendRequest(final ResponseListener listener, final RequestBody requestBody) {
-        if(method == null || !isValidMethod(method)){
-            listener.onFailure(null, new IllegalArgumentException("Method is not valid: " + method), null);
+    private RequestBody compressIfNeeded(Request.Builder requestBuilder, RequestBody requestBody) {
+        // a body that is already encoded is sent as is
+        if (!isCompressionEnabled() || headers.get(GzipRequestBody.CONTENT_ENCODING) != null
+                || !GzipRequestBody.shouldCompress(requestBody, getCompressionThreshold())) {
+            return requestBody;
+        }
+
+        requestBuilder.header(GzipRequestBody.CONTENT_ENCODING, GzipRequestBody.GZIP);
+
+        return new GzipRequestBody(requestBody);
+    }
+
+    private static void enqueue(OkHttpClient client, Request request, Callback callback, boolean coalesce, CallHandle handle) {
+        if (handle != null && !handle.onStarted()) {
+            callback.onFailure(request, new RequestCancelledException());
             return;
         }
 
-        Request.Builder requestBuilder = new Request.Builder();
+        String host = request.httpUrl().host();
+        CircuitBreaker breaker = CircuitBreakerRegistry.get(host);
 
-        requestBuilder.headers(headers.build());
+        if (breaker != null) {
+            CircuitBreaker.Permit permit = breaker.acquire();
 
-        try {
-            if (getQueryParamsMap().size() == 0) {
-                requestBuilder.url(url);
-            } else {
-                requestBuilder.url(getURLWithQueryParameters(url, getQueryParamsMap()));
+            // fail fast instead of waiting for a host that is known to be failing
+            if (permit == null) {
+                callback.onFailure(request, new CircuitBreakerOpenException(host, breaker.getRemainingOpenTime()));
+                return;
+            }
+
+            callback = breaker.wrap(permit, callback);
+        }
+
+        if (handle != null) {
+            callback = handle.wrap(callback);
+        }
+
+        if (coalesce) {
+            RequestCoalescer.Subscription subscription = coalescer.enqueue(client, request, callback);
 
+            if (handle != null) {
+                handle.onSubscribed(subscription, request, callback);
             }
-        } catch (MalformedURLException e) {
-            listener.onFailure(null, e, null);
             return;
         }
 
-        //A GET request cannot have a body in OKHTTP
-        if (!method.equalsIgnoreCase("GET")) {
-            requestBuilder.method(method, requestBody);
-        } else {
-            requestBuilder.get();
+        Call call = client.newCall(request);
+
+        if (handle != null && !handle.onCall(call)) {
+            callback.onFailure(request, new RequestCancelledException());
+            return;
         }
 
-        Request request = requestBuilder.build();
-        OkHttpClient client = getHttpClient();
-        client.newCall(request).enqueue(getCallback(listener));
-        client.newCall(request);
+        call.enqueue(callback);
+    }
+
+    /**
+     * Returns the handle that cancels the calls of this request.
+     *
+     * @return the handle, or null if the calls of this request can't be cancelled
+     */
+    protected CallHandle getCallHandle() {
+        return callHandle;
+    }
 
+    /**
+     * Sets the handle that cancels the calls of this request. The handle is used by every call sent until
+     * it is replaced.
+     *
+     * @param callHandle the handle, or null
+     */
+    protected void setCallHandle(CallHandle callHandle) {
+        this.callHandle = callHandle;
+    }
+
+    /**
+     * Returns the scheduler that orders the calls of this request by priority.
+     *
+     * @return the scheduler, or null to pass calls straight to the dispatcher
+     */
+    protected RequestScheduler getScheduler() {
+        return scheduler;
     }
 
     protected Callback getCallback(final ResponseListener listener) {
@@ -456,40 +919,215 @@ public class BaseRequest {
             @Override
             public void onResponse(com.squareup.okhttp.Response response) throws IOException {
                 if (response.isSuccessful() || response.isRedirect()) {
-                    listener.onSuccess(new ResponseImpl(response));
+                    deliverSuccess(listener, response);
                 } else {
-                    listener.onFailure(new ResponseImpl(response), null, null);
+                    deliverFailure(listener, response);
                 }
             }
         };
     }
 
+    /**
+     * Passes a successful response to the listener. Streaming listeners get the body unread and the body
+     * is closed once the listener returns; all other listeners get a fully buffered response, whose pooled
+     * buffer goes back once the listener returns. The body is read on the parse pool when there is one.
+     *
+     * @param listener the listener of this request
+     * @param response the successful response
+     */
+    protected static void deliverSuccess(final ResponseListener listener, final com.squareup.okhttp.Response response) {
+        ResponseDelivery.parse(new Runnable() {
+            @Override
+            public void run() {
+                if (!(listener instanceof StreamingResponseListener)) {
+                    ResponseImpl bufferedResponse = new ResponseImpl(response);
+                    ResponseBodyTooLargeException tooLarge = bufferedResponse.getBodyTooLargeException();
+
+                    try {
+                        if (tooLarge != null) {
+                            listener.onFailure(bufferedResponse, tooLarge, null);
+                        } else {
+                            listener.onSuccess(bufferedResponse);
+                        }
+                    } finally {
+                        releasePooledBuffer(listener, bufferedResponse);
+                    }
+                    return;
+                }
+
+                ResponseImpl streamingResponse = new ResponseImpl(response, true);
+
+                try {
+                    listener.onSuccess(streamingResponse);
+                } finally {
+                    streamingResponse.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Passes an unsuccessful response to the listener, with its body buffered.
+     *
+     * @param listener the listener of this request
+     * @param response the unsuccessful response
+     */
+    protected static void deliverFailure(final ResponseListener listener, final com.squareup.okhttp.Response response) {
+        ResponseDelivery.parse(new Runnable() {
+            @Override
+            public void run() {
+                ResponseImpl bufferedResponse = new ResponseImpl(response);
+
+                try {
+                    listener.onFailure(bufferedResponse, bufferedResponse.getBodyTooLargeException(), null);
+                } finally {
+                    releasePooledBuffer(listener, bufferedResponse);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gives the pooled buffer of a response back once its listener returned. Listeners wrapped by
+     * {@link ResponseDelivery} may call the application later on another thread, they release it themselves.
+     */
+    private static void releasePooledBuffer(ResponseListener listener, ResponseImpl response) {
+        if (!ResponseDelivery.releasesPooledBuffers(listener)) {
+            response.releasePooledBuffer();
+        }
+    }
+
     protected OkHttpClient getHttpClient(){
         return httpClient;
     }
 
+    /**
+     * Returns the client to use for a single call of this request. The shared client is never
+     * modified; when this request needs different settings a shallow copy is made instead, which
+     * keeps using the dispatcher, connection pool and interceptors of the shared client.
+     *
+     * @return client configured with the timeouts and redirect policy of this request
+     */
+    protected OkHttpClient getClientForCall() {
+        return getClientForCall(getHttpClient(), timeout, followRedirects);
+    }
+
+    /**
+     * Returns the client to use for a single call with the given settings, the given client itself
+     * when its settings already match.
+     *
+     * @param client          the shared client
+     * @param timeout         the connect, read and write timeout in milliseconds
+     * @param followRedirects the redirect policy, or null to keep the one of the client
+     * @return client configured with the given timeouts and redirect policy
+     */
+    protected static OkHttpClient getClientForCall(OkHttpClient client, int timeout, Boolean followRedirects) {
+        boolean sameTimeouts = client.getConnectTimeout() == timeout
+                && client.getReadTimeout() == timeout
+                && client.getWriteTimeout() == timeout;
+        boolean sameRedirects = followRedirects == null || followRedirects == client.getFollowRedirects();
+
+        if (sameTimeouts && sameRedirects) {
+            return client;
+        }
+
+        OkHttpClient callClient = client.clone();
+
+        callClient.setConnectTimeout(timeout, TimeUnit.MILLISECONDS);
+        callClient.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
+        callClient.setWriteTimeout(timeout, TimeUnit.MILLISECONDS);
+
+        if (followRedirects != null) {
+            callClient.setFollowRedirects(followRedirects);
+        }
+
+        return callClient;
+    }
+
+    /**
+     * @return the client shared by all resource requests
+     */
+    static OkHttpClient getResourceClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return the scheduler shared by all resource requests
+     */
+    static RequestScheduler getResourceScheduler() {
+        return scheduler;
+    }
+
     /**
      * @exclude
+     * @deprecated use {@link InterceptorRegistry#register}, which also applies to authorization requests
      */
+    @Deprecated
     public static void registerInterceptor(Interceptor interceptor) {
-        if (interceptor != null) {
-            httpClient.networkInterceptors().add(interceptor);
-        }
+        InterceptorRegistry.register(interceptor, InterceptorRegistry.Level.NETWORK, InterceptorRegistry.DEFAULT_PRIORITY);
     }
 
     /**
      * @exclude
+     * @deprecated use {@link InterceptorRegistry#unregister}
      */
+    @Deprecated
     public static void unregisterInterceptor(Interceptor interceptor) {
-        if (interceptor != null) {
-            httpClient.networkInterceptors().remove(interceptor);
+        InterceptorRegistry.unregister(interceptor);
+    }
+
+    /**
+     * @exclude
+     */
+    public static void setCache(Cache cache) {
+        httpClient.setCache(cache);
+        cacheInterceptor.setEnabled(cache != null);
+    }
+
+    /**
+     * @exclude
+     */
+    public static Cache getCache() {
+        return httpClient.getCache();
+    }
+
+    /**
+     * @exclude
+     */
+    public static CacheStatistics getCacheStatistics() {
+        return cacheInterceptor.getStatistics(httpClient.getCache());
+    }
+
+    /**
+     * @exclude
+     */
+    public static void setDefaultCompression(boolean enabled, long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold < 0: " + threshold);
         }
+
+        defaultCompressionEnabled = enabled;
+        defaultCompressionThreshold = threshold;
+    }
+
+    /**
+     * @exclude
+     */
+    public static boolean isDefaultCompressionEnabled() {
+        return defaultCompressionEnabled;
+    }
+
+    /**
+     * @exclude
+     */
+    public static long getDefaultCompressionThreshold() {
+        return defaultCompressionThreshold;
     }
 
 	/**
 	 * @exclude
 	 */
 	public static void setCookieManager(CookieManager cookieManager){
-		httpClient.setCookieHandler(cookieManager);
+		HttpClientRegistry.setCookieHandler(cookieManager);
 	}
 }
@@ -0,0 +1,119 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte arrays in power-of-two size classes from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE},
+ * used to read response bodies without allocating a new array for every response. Each class keeps at most
+ * {@link #BUFFERS_PER_CLASS} free buffers, so the pool holds a few hundred kilobytes at most.
+ */
+public class BufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 2 * 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+    public static final int BUFFERS_PER_CLASS = 4;
+
+    private static final int MIN_SHIFT = 11;
+    private static final int CLASS_COUNT = 6;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<byte[]>[] freeBuffers = new ArrayDeque[CLASS_COUNT];
+
+    private static final AtomicLong allocations = new AtomicLong();
+    private static final AtomicLong reuses = new AtomicLong();
+
+    static {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            freeBuffers[i] = new ArrayDeque<>(BUFFERS_PER_CLASS);
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    /**
+     * Returns a buffer of at least the given size, from the pool if one is free.
+     *
+     * @param minSize the minimum size, at most {@link #MAX_BUFFER_SIZE}
+     * @return a buffer whose length is the size of its class
+     */
+    public static byte[] acquire(int minSize) {
+        if (minSize > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("minSize > " + MAX_BUFFER_SIZE + ": " + minSize);
+        }
+
+        int sizeClass = sizeClass(minSize);
+        byte[] buffer;
+
+        synchronized (freeBuffers) {
+            buffer = freeBuffers[sizeClass].pollLast();
+        }
+
+        if (buffer != null) {
+            reuses.incrementAndGet();
+            return buffer;
+        }
+
+        allocations.incrementAndGet();
+        return new byte[MIN_BUFFER_SIZE << sizeClass];
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used afterwards. Buffers that were not
+     * returned by {@link #acquire(int)} are ignored.
+     *
+     * @param buffer the buffer
+     */
+    public static void release(byte[] buffer) {
+        int length = buffer.length;
+
+        if (length < MIN_BUFFER_SIZE || length > MAX_BUFFER_SIZE || Integer.bitCount(length) != 1) {
+            return;
+        }
+
+        int sizeClass = Integer.numberOfTrailingZeros(length) - MIN_SHIFT;
+
+        synchronized (freeBuffers) {
+            if (freeBuffers[sizeClass].size() < BUFFERS_PER_CLASS) {
+                freeBuffers[sizeClass].addLast(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return the number of buffers the pool had to allocate
+     */
+    public static long getAllocationCount() {
+        return allocations.get();
+    }
+
+    /**
+     * @return the number of buffers served from the pool
+     */
+    public static long getReuseCount() {
+        return reuses.get();
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+
+        // the smallest power of two that holds size
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Tracks what a request is waiting for, so that it can be cancelled at any point: while it waits for a retry,
+ * for authorization, for a slot of the scheduler, for a shared call of the coalescer or for its own OkHttp call.
+ * <p>
+ * One handle covers all the attempts of a request. Every step registers itself before it starts, and a step
+ * that finds the handle cancelled fails with {@link RequestCancelledException} instead of starting, so the
+ * callback of a cancelled request is always called exactly once.
+ * </p>
+ */
+public class CallHandle {
+
+    private final RequestTimer requestTimer = new RequestTimer();
+
+    private boolean cancelled = false;
+    private boolean running = false;
+
+    // only the fields of the current step are set
+    private ScheduledFuture<?> timer;
+    private Runnable onCancelled;
+    private RequestScheduler scheduler;
+    private RequestScheduler.Task task;
+    private RequestCoalescer.Subscription subscription;
+    private Call call;
+    private Request request;
+    private Callback callback;
+
+    /**
+     * @return the timer shared by all the attempts of the request
+     */
+    public RequestTimer getRequestTimer() {
+        return requestTimer;
+    }
+
+    /**
+     * @return true if the request was cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the request. A request waiting for a retry, authorization, a slot or a shared call is removed
+     * at once and its callback fails with {@link RequestCancelledException}; a call in flight is cancelled in
+     * OkHttp and fails the same way when OkHttp gives it up.
+     *
+     * @return false if the request was already cancelled
+     */
+    public boolean cancel() {
+        ScheduledFuture<?> cancelledTimer;
+        Runnable cancelledWait;
+        RequestScheduler cancelledScheduler;
+        RequestScheduler.Task cancelledTask;
+        RequestCoalescer.Subscription cancelledSubscription;
+        Call cancelledCall;
+        Request cancelledRequest;
+        Callback cancelledCallback;
+
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+
+            cancelled = true;
+
+            cancelledTimer = timer;
+            cancelledWait = onCancelled;
+            cancelledScheduler = scheduler;
+            cancelledTask = task;
+            cancelledSubscription = subscription;
+            cancelledCall = call;
+            cancelledRequest = request;
+            cancelledCallback = callback;
+
+            clear();
+        }
+
+        if (cancelledTimer != null) {
+            // the retry checks the handle before it runs, so it is never sent
+            cancelledTimer.cancel(false);
+        }
+
+        if (cancelledWait != null) {
+            cancelledWait.run();
+        }
+
+        if (cancelledScheduler != null && cancelledScheduler.remove(cancelledTask)) {
+            cancelledCallback.onFailure(cancelledRequest, new RequestCancelledException());
+        }
+
+        if (cancelledSubscription != null && cancelledSubscription.detach()) {
+            cancelledCallback.onFailure(cancelledRequest, new RequestCancelledException());
+        }
+
+        if (cancelledCall != null) {
+            cancelledCall.cancel();
+        }
+
+        return true;
+    }
+
+    private void clear() {
+        running = false;
+        timer = null;
+        onCancelled = null;
+        scheduler = null;
+        task = null;
+        subscription = null;
+        call = null;
+        request = null;
+        callback = null;
+    }
+
+    /**
+     * Runs a retry after the given delay, unless the request is cancelled first.
+     *
+     * @param retry       the retry
+     * @param delay       the delay in milliseconds
+     * @param onCancelled called instead of the retry if the request is cancelled while it waits
+     * @return false if the request is already cancelled, in which case nothing is scheduled
+     */
+    public synchronized boolean scheduleRetry(final Runnable retry, long delay, Runnable onCancelled) {
+        if (cancelled) {
+            return false;
+        }
+
+        clear();
+
+        this.onCancelled = onCancelled;
+        timer = RetryEngine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CallHandle.this) {
+                    if (cancelled) {
+                        return;
+                    }
+
+                    timer = null;
+                    CallHandle.this.onCancelled = null;
+                }
+
+                retry.run();
+            }
+        }, delay);
+
+        return true;
+    }
+
+    /**
+     * Registers a wait for something other than a call, such as authorization.
+     *
+     * @param onCancelled called if the request is cancelled while it waits, it must stop the wait
+     * @return false if the request is already cancelled, in which case the wait must not start
+     */
+    public synchronized boolean onWaiting(Runnable onCancelled) {
+        if (cancelled) {
+            return false;
+        }
+
+        clear();
+        this.onCancelled = onCancelled;
+
+        return true;
+    }
+
+    /**
+     * Ends a wait registered with {@link #onWaiting}.
+     *
+     * @return false if the request was cancelled, in which case the listener has already been told
+     */
+    public synchronized boolean onWaitingDone() {
+        if (cancelled) {
+            return false;
+        }
+
+        onCancelled = null;
+
+        return true;
+    }
+
+    /**
+     * Registers a call that waits for a slot of the scheduler. Must be called before the task is scheduled.
+     *
+     * @return false if the request is cancelled and must not be scheduled
+     */
+    public synchronized boolean onScheduled(RequestScheduler scheduler, RequestScheduler.Task task, Request request, Callback callback) {
+        if (cancelled) {
+            return false;
+        }
+
+        clear();
+
+        this.scheduler = scheduler;
+        this.task = task;
+        this.request = request;
+        this.callback = callback;
+
+        return true;
+    }
+
+    /**
+     * Registers the start of an attempt, once the call can go to the network.
+     *
+     * @return false if the request is cancelled and must not be sent
+     */
+    public synchronized boolean onStarted() {
+        if (cancelled) {
+            return false;
+        }
+
+        clear();
+        running = true;
+
+        return true;
+    }
+
+    /**
+     * Registers the OkHttp call of the current attempt. Must be called before the call is enqueued.
+     *
+     * @return false if the request is cancelled and the call must not be enqueued
+     */
+    public synchronized boolean onCall(Call call) {
+        if (cancelled) {
+            return false;
+        }
+
+        this.call = call;
+
+        return true;
+    }
+
+    /**
+     * Registers the membership of the current attempt in a shared call. If the request was cancelled in the
+     * meantime, the attempt is detached at once.
+     */
+    public void onSubscribed(RequestCoalescer.Subscription subscription, Request request, Callback callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                // the shared call may already have finished, and the next step registered itself
+                if (running) {
+                    this.subscription = subscription;
+                    this.request = request;
+                    this.callback = callback;
+                }
+
+                return;
+            }
+        }
+
+        if (subscription.detach()) {
+            callback.onFailure(request, new RequestCancelledException());
+        }
+    }
+
+    /**
+     * Wraps the callback of an attempt, so that the attempt fails with {@link RequestCancelledException}
+     * when the request was cancelled, whatever the outcome of the call.
+     *
+     * @param callback the callback of the attempt
+     * @return the callback to pass to OkHttp or to the coalescer
+     */
+    public Callback wrap(final Callback callback) {
+        return new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                callback.onFailure(request, onFinished() ? new RequestCancelledException() : e);
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                if (onFinished()) {
+                    response.body().close();
+                    callback.onFailure(response.request(), new RequestCancelledException());
+                } else {
+                    callback.onResponse(response);
+                }
+            }
+        };
+    }
+
+    /**
+     * Ends the current attempt.
+     *
+     * @return true if the request was cancelled
+     */
+    public synchronized boolean onFinished() {
+        if (!cancelled) {
+            clear();
+        }
+
+        return cancelled;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the handles of the tagged calls in flight, so that they can be cancelled by tag.
+ */
+public class CallRegistry {
+
+    private static final Map<Object, Set<CallHandle>> calls = new HashMap<>();
+
+    public static void register(Object tag, CallHandle handle) {
+        synchronized (calls) {
+            Set<CallHandle> handles = calls.get(tag);
+
+            if (handles == null) {
+                handles = new HashSet<>();
+                calls.put(tag, handles);
+            }
+
+            handles.add(handle);
+        }
+    }
+
+    public static void unregister(Object tag, CallHandle handle) {
+        synchronized (calls) {
+            Set<CallHandle> handles = calls.get(tag);
+
+            if (handles != null && handles.remove(handle) && handles.isEmpty()) {
+                calls.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * Cancels all the calls with the given tag.
+     *
+     * @param tag the tag
+     * @return the number of calls that were cancelled
+     */
+    public static int cancelAll(Object tag) {
+        List<CallHandle> handles;
+
+        synchronized (calls) {
+            Set<CallHandle> tagged = calls.remove(tag);
+
+            if (tagged == null) {
+                return 0;
+            }
+
+            handles = new ArrayList<>(tagged);
+        }
+
+        // cancelling calls listeners, so it happens outside the lock
+        int cancelled = 0;
+
+        for (CallHandle handle : handles) {
+            if (handle.cancel()) {
+                cancelled++;
+            }
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * @return the number of tagged calls in flight
+     */
+    public static int getCount() {
+        synchronized (calls) {
+            int count = 0;
+
+            for (Set<CallHandle> handles : calls.values()) {
+                count += handles.size();
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener.State;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker of one host. The outcome of the last calls is kept in a ring buffer together with
+ * running counts, so recording an outcome takes constant time.
+ * <p>
+ * Every call asks for a {@link Permit} before it is sent. Permits carry the generation of the state they were
+ * given in, so the outcome of a call that started before the last state change is ignored.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    private final String host;
+    private final CircuitBreakerConfig config;
+    private final CircuitBreakerListener listener;
+
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int nextIndex = 0;
+    private int callCount = 0;
+    private int failureCount = 0;
+    private int slowCount = 0;
+
+    private State state = State.CLOSED;
+    private long generation = 0;
+    private long openedAt;
+    private int halfOpenPermits;
+
+    /**
+     * A permission to send one call.
+     */
+    public static class Permit {
+        private final long generation;
+
+        private Permit(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * @param host     the host of this circuit breaker
+     * @param config   the thresholds of this circuit breaker
+     * @param listener notified when the state changes, may be null
+     */
+    public CircuitBreaker(String host, CircuitBreakerConfig config, CircuitBreakerListener listener) {
+        this.host = host;
+        this.config = config;
+        this.listener = listener;
+        this.failedCalls = new boolean[config.getWindowSize()];
+        this.slowCalls = new boolean[config.getWindowSize()];
+    }
+
+    /**
+     * @return the current state, moving an open circuit to half-open once the open duration has passed
+     */
+    public State getState() {
+        State previous;
+        State current;
+
+        synchronized (this) {
+            previous = state;
+            current = updateOpenState();
+        }
+
+        notifyIfChanged(previous, current);
+        return current;
+    }
+
+    /**
+     * Asks for permission to send a call.
+     *
+     * @return the permit, or null if the call must not be sent
+     */
+    public Permit acquire() {
+        State previous;
+        State current;
+        Permit permit = null;
+
+        synchronized (this) {
+            previous = state;
+            current = updateOpenState();
+
+            if (current == State.CLOSED) {
+                permit = new Permit(generation);
+            } else if (current == State.HALF_OPEN && halfOpenPermits > 0) {
+                halfOpenPermits--;
+                permit = new Permit(generation);
+            }
+        }
+
+        notifyIfChanged(previous, current);
+        return permit;
+    }
+
+    /**
+     * @return the time in milliseconds until an open circuit lets trial calls through
+     */
+    public synchronized long getRemainingOpenTime() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt);
+        return Math.max(0, config.getOpenDuration() - elapsed);
+    }
+
+    /**
+     * Records the outcome of a call.
+     *
+     * @param permit   the permit the call was sent with
+     * @param failed   true if the call failed
+     * @param duration the duration of the call in nanoseconds
+     */
+    public void record(Permit permit, boolean failed, long duration) {
+        boolean slow = TimeUnit.NANOSECONDS.toMillis(duration) >= config.getSlowCallDuration();
+        State previous;
+        State current;
+
+        synchronized (this) {
+            if (permit.generation != generation || state == State.OPEN) {
+                return;
+            }
+
+            previous = state;
+            add(failed, slow);
+
+            if (state == State.HALF_OPEN) {
+                // all the trial calls are done
+                if (callCount >= config.getHalfOpenCalls()) {
+                    transitionTo(isAboveThresholds() ? State.OPEN : State.CLOSED);
+                }
+            } else if (callCount >= config.getMinimumCalls() && isAboveThresholds()) {
+                transitionTo(State.OPEN);
+            }
+
+            current = state;
+        }
+
+        notifyIfChanged(previous, current);
+    }
+
+    /**
+     * Gives back the permit of a call that ended without an outcome, so that another trial call can take
+     * its place while the breaker is half-open.
+     *
+     * @param permit the permit the call was sent with
+     */
+    public synchronized void release(Permit permit) {
+        if (permit.generation == generation && state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    /**
+     * Wraps the callback of a call so that its outcome is recorded. A call fails when it ends with an
+     * I/O error or with a status code of 500 or more.
+     *
+     * @param permit   the permit the call is sent with
+     * @param callback the callback of the call
+     * @return the wrapping callback
+     */
+    public Callback wrap(final Permit permit, final Callback callback) {
+        final long start = System.nanoTime();
+
+        return new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                // a cancelled call says nothing about the host
+                if (e instanceof RequestCancelledException) {
+                    release(permit);
+                } else {
+                    record(permit, true, System.nanoTime() - start);
+                }
+
+                callback.onFailure(request, e);
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                record(permit, response.code() >= 500, System.nanoTime() - start);
+                callback.onResponse(response);
+            }
+        };
+    }
+
+    private State updateOpenState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(config.getOpenDuration())) {
+            transitionTo(State.HALF_OPEN);
+        }
+
+        return state;
+    }
+
+    private void add(boolean failed, boolean slow) {
+        int window = failedCalls.length;
+
+        if (callCount == window) {
+            // the oldest outcome leaves the window
+            if (failedCalls[nextIndex]) {
+                failureCount--;
+            }
+            if (slowCalls[nextIndex]) {
+                slowCount--;
+            }
+        } else {
+            callCount++;
+        }
+
+        failedCalls[nextIndex] = failed;
+        slowCalls[nextIndex] = slow;
+        nextIndex = (nextIndex + 1) % window;
+
+        if (failed) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCount++;
+        }
+    }
+
+    private boolean isAboveThresholds() {
+        return failureCount * 100 >= config.getFailureRateThreshold() * callCount
+                || slowCount * 100 >= config.getSlowCallRateThreshold() * callCount;
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        generation++;
+
+        nextIndex = 0;
+        callCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+        } else if (newState == State.HALF_OPEN) {
+            halfOpenPermits = config.getHalfOpenCalls();
+        }
+    }
+
+    private void notifyIfChanged(State previous, State current) {
+        if (previous != current && listener != null) {
+            listener.onStateChanged(host, previous, current);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the circuit breakers of all the hosts the SDK sends requests to. Circuit breakers are created
+ * the first time a host is used, and are dropped when the configuration changes.
+ */
+public class CircuitBreakerRegistry {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + CircuitBreakerRegistry.class.getSimpleName());
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private static final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    private static volatile CircuitBreakerConfig config = null;
+
+    private static final CircuitBreakerListener dispatcher = new CircuitBreakerListener() {
+        @Override
+        public void onStateChanged(String host, State from, State to) {
+            logger.info("Circuit breaker for " + host + " changed from " + from + " to " + to);
+
+            for (CircuitBreakerListener listener : listeners) {
+                listener.onStateChanged(host, from, to);
+            }
+        }
+    };
+
+    private CircuitBreakerRegistry() {
+    }
+
+    /**
+     * Enables circuit breakers with the given configuration, or disables them.
+     *
+     * @param newConfig the thresholds of the circuit breakers, or null to disable them
+     */
+    public static synchronized void setConfig(CircuitBreakerConfig newConfig) {
+        config = newConfig;
+        breakers.clear();
+    }
+
+    /**
+     * @return the thresholds of the circuit breakers, or null if they are disabled
+     */
+    public static CircuitBreakerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the circuit breaker of a host, creating it if needed.
+     *
+     * @param host the host of a request
+     * @return the circuit breaker, or null if circuit breakers are disabled
+     */
+    public static CircuitBreaker get(String host) {
+        CircuitBreakerConfig currentConfig = config;
+
+        if (currentConfig == null || host == null) {
+            return null;
+        }
+
+        CircuitBreaker breaker = breakers.get(host);
+
+        if (breaker == null) {
+            CircuitBreaker newBreaker = new CircuitBreaker(host, currentConfig, dispatcher);
+            breaker = breakers.putIfAbsent(host, newBreaker);
+
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+
+        return breaker;
+    }
+
+    /**
+     * @param host a host
+     * @return the state of the circuit breaker of the host, or null if circuit breakers are disabled
+     */
+    public static CircuitBreakerListener.State getState(String host) {
+        CircuitBreaker breaker = get(host);
+        return breaker != null ? breaker.getState() : null;
+    }
+
+    public static void addListener(CircuitBreakerListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public static void removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+}
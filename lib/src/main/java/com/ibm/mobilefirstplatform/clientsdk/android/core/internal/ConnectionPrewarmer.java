@@ -0,0 +1,142 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Opens connections ahead of the first request, so that DNS lookup, TCP connect and TLS handshake are
+ * done before they are needed. A HEAD request is sent to the host and its response is discarded; the
+ * connection stays in the pool of the client that later sends the real requests.
+ */
+public class ConnectionPrewarmer {
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ConnectionPrewarmer.class.getSimpleName());
+
+    private static final Map<AuthorizationManager, Target> authorizationTargets = new WeakHashMap<>();
+
+    private ConnectionPrewarmer() {
+    }
+
+    /**
+     * A host that another part of the SDK connects to, such as the server of an authorization manager.
+     */
+    public interface Target {
+        /**
+         * @return a request to the host, for the client that later sends the real requests, or null if the
+         * host is not known yet
+         * @throws MalformedURLException if the URL of the host is not valid
+         */
+        BaseRequest newPrewarmRequest() throws MalformedURLException;
+    }
+
+    /**
+     * Registers the server an authorization manager sends its requests to. The server is only prewarmed while
+     * that manager is the one set in {@link BMSClient}.
+     *
+     * @param authorizationManager the authorization manager
+     * @param target               the server of the authorization manager
+     */
+    public static void register(AuthorizationManager authorizationManager, Target target) {
+        synchronized (authorizationTargets) {
+            authorizationTargets.put(authorizationManager, target);
+        }
+    }
+
+    /**
+     * Opens connections to the Bluemix app route and to the server of the current authorization manager.
+     */
+    public static void prewarm() {
+        BMSClient client = BMSClient.getInstance();
+
+        if (client.getBluemixAppRoute() != null) {
+            prewarm(new BaseRequest(client.getBluemixAppRoute(), BaseRequest.HEAD));
+        }
+
+        Target target;
+
+        // managers without a server, such as DummyAuthorizationManager, register no target
+        synchronized (authorizationTargets) {
+            target = authorizationTargets.get(client.getAuthorizationManager());
+        }
+
+        if (target == null) {
+            return;
+        }
+
+        try {
+            BaseRequest request = target.newPrewarmRequest();
+
+            if (request != null) {
+                prewarm(request);
+            }
+        } catch (MalformedURLException e) {
+            logger.error("Authorization server URL is not valid: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Opens a connection to the host of the given request, using the client the request would use.
+     *
+     * @param request the request whose host and client are used
+     */
+    public static void prewarm(BaseRequest request) {
+        prewarm(request.getClientForCall(), request.getUrl(), null);
+    }
+
+    /**
+     * Opens a connection to the host of the given URL.
+     *
+     * @param client   the client whose connection pool keeps the connection
+     * @param url      a URL on the host to connect to
+     * @param callback notified when the connection is ready or failed, may be null
+     */
+    public static void prewarm(OkHttpClient client, final String url, final Callback callback) {
+        Request request = new Request.Builder()
+                .url(url)
+                .head()
+                .build();
+
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                logger.debug("Connection prewarming failed for " + url + ": " + e.getLocalizedMessage());
+
+                if (callback != null) {
+                    callback.onFailure(request, e);
+                }
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                // releases the connection back to the pool
+                response.body().close();
+
+                if (callback != null) {
+                    callback.onResponse(response);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.os.Debug;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CompressionStatistics;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.internal.Util;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * A request body that compresses another body with gzip while it is written to the socket. The compressed
+ * size is not known in advance, so the body is sent with chunked encoding.
+ */
+public class GzipRequestBody extends RequestBody {
+
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String GZIP = "gzip";
+
+    private static final AtomicLong compressedBodies = new AtomicLong();
+    private static final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private static final AtomicLong bytesAfterCompression = new AtomicLong();
+    private static final AtomicLong cpuTimeNanos = new AtomicLong();
+
+    private static final CpuClock THREAD_CPU_CLOCK = new CpuClock() {
+        @Override
+        public long threadCpuTimeNanos() {
+            try {
+                return Debug.threadCpuTimeNanos();
+            } catch (RuntimeException e) {
+                // outside of Android, for example in unit tests on the JVM, the platform call is not available
+                return -1;
+            }
+        }
+    };
+
+    private static volatile CpuClock cpuClock = THREAD_CPU_CLOCK;
+
+    private final RequestBody body;
+
+    /**
+     * Measures the CPU time spent compressing.
+     */
+    interface CpuClock {
+        /**
+         * @return the CPU time of the current thread in nanoseconds, or -1 if it can't be measured
+         */
+        long threadCpuTimeNanos();
+    }
+
+    public GzipRequestBody(RequestBody body) {
+        this.body = body;
+    }
+
+    /**
+     * Returns true if a body should be compressed. Only bodies with a known length of at least
+     * the threshold are compressed.
+     *
+     * @param body      the request body
+     * @param threshold the minimum length in bytes
+     * @return true if the body should be compressed
+     */
+    public static boolean shouldCompress(RequestBody body, long threshold) {
+        if (body == null) {
+            return false;
+        }
+
+        try {
+            long length = body.contentLength();
+            return length >= 0 && length >= threshold;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the counters of all the bodies compressed so far
+     */
+    public static CompressionStatistics getStatistics() {
+        return new CompressionStatistics(compressedBodies.get(), bytesBeforeCompression.get(),
+                bytesAfterCompression.get(), cpuTimeNanos.get());
+    }
+
+    /**
+     * Replaces the clock that measures the CPU time spent compressing.
+     *
+     * @param clock the clock, or null for the CPU time of the current thread
+     */
+    static void setCpuClock(CpuClock clock) {
+        cpuClock = clock != null ? clock : THREAD_CPU_CLOCK;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(countingSink));
+        CpuClock clock = cpuClock;
+        long cpuStart = clock.threadCpuTimeNanos();
+        boolean written = false;
+
+        try {
+            body.writeTo(gzipSink);
+            gzipSink.close();
+            written = true;
+        } finally {
+            // closing the gzip sink ends its Deflater, whose native memory is not freed otherwise
+            if (!written) {
+                Util.closeQuietly(gzipSink);
+            }
+        }
+
+        long cpuEnd = clock.threadCpuTimeNanos();
+
+        compressedBodies.incrementAndGet();
+        bytesBeforeCompression.addAndGet(body.contentLength());
+        bytesAfterCompression.addAndGet(countingSink.bytesWritten);
+
+        // the clock returns -1 on platforms that can't measure it
+        if (cpuStart >= 0 && cpuEnd >= cpuStart) {
+            cpuTimeNanos.addAndGet(cpuEnd - cpuStart);
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        private long bytesWritten = 0;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+        }
+    }
+}
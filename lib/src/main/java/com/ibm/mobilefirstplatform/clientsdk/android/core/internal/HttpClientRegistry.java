@@ -0,0 +1,245 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ConnectionStatistics;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+
+import java.net.CookieHandler;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the settings shared by all the OkHttp clients of the SDK, that is the resource client of
+ * {@link BaseRequest} and the client of the authorization requests. Every client registers itself once
+ * and all changes are applied to all the registered clients under one lock.
+ */
+public class HttpClientRegistry {
+
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_DURATION = TimeUnit.MINUTES.toMillis(5);
+
+    private static final List<Protocol> HTTP_2_PROTOCOLS = Collections.unmodifiableList(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    private static final List<Protocol> HTTP_1_PROTOCOLS = Collections.singletonList(Protocol.HTTP_1_1);
+
+    private static final List<OkHttpClient> clients = new ArrayList<>();
+
+    private static int maxRequests = DEFAULT_MAX_REQUESTS;
+    private static int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private static int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+    private static long keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+    private static boolean http2Enabled = true;
+    private static ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAliveDuration);
+    private static TLSEnabledSSLSocketFactory sslSocketFactory;
+    private static CookieHandler cookieHandler = null;
+
+    static {
+        try {
+            sslSocketFactory = TLSEnabledSSLSocketFactory.getInstance();
+        } catch (KeyManagementException e) {
+            e.printStackTrace();
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private HttpClientRegistry() {
+    }
+
+    /**
+     * Adds a client and applies the current settings to it. The client also gets the shared TLS socket
+     * factory, so all clients share one TLS session cache, the hooks that time its calls and the interceptors
+     * of the {@link InterceptorRegistry}.
+     *
+     * @param client the client to manage
+     */
+    public static synchronized void register(OkHttpClient client) {
+        if (sslSocketFactory != null) {
+            client.setSslSocketFactory(sslSocketFactory);
+        }
+
+        RequestEvents.install(client);
+        InterceptorRegistry.install(client);
+
+        clients.add(client);
+        apply(client);
+    }
+
+    /**
+     * Replaces the TLS socket factory of all the clients, so that tests can trust their own certificates.
+     *
+     * @param factory the factory shared by all the clients
+     */
+    static synchronized void setSslSocketFactory(TLSEnabledSSLSocketFactory factory) {
+        sslSocketFactory = factory;
+
+        for (OkHttpClient client : clients) {
+            client.setSslSocketFactory(factory);
+        }
+
+        // connections that were opened with the previous factory must not be reused
+        connectionPool.evictAll();
+    }
+
+    /**
+     * Changes the dispatcher and connection pool settings of all the clients. Calls that are already running
+     * keep the connection they have.
+     *
+     * @param maxRequests        the maximum number of concurrent requests
+     * @param maxRequestsPerHost the maximum number of concurrent requests to one host
+     * @param maxIdleConnections the maximum number of idle connections kept in the pool
+     * @param keepAliveDuration  the time in milliseconds an idle connection is kept in the pool
+     */
+    public static synchronized void setConnectionSettings(int maxRequests, int maxRequestsPerHost, int maxIdleConnections, long keepAliveDuration) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+        }
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+        }
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections < 0: " + maxIdleConnections);
+        }
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration <= 0: " + keepAliveDuration);
+        }
+
+        ConnectionPool previousPool = null;
+
+        if (maxIdleConnections != HttpClientRegistry.maxIdleConnections || keepAliveDuration != HttpClientRegistry.keepAliveDuration) {
+            previousPool = connectionPool;
+            connectionPool = new ConnectionPool(maxIdleConnections, keepAliveDuration);
+        }
+
+        HttpClientRegistry.maxRequests = maxRequests;
+        HttpClientRegistry.maxRequestsPerHost = maxRequestsPerHost;
+        HttpClientRegistry.maxIdleConnections = maxIdleConnections;
+        HttpClientRegistry.keepAliveDuration = keepAliveDuration;
+
+        for (OkHttpClient client : clients) {
+            apply(client);
+        }
+
+        if (previousPool != null) {
+            previousPool.evictAll();
+        }
+    }
+
+    /**
+     * Enables or disables HTTP/2 for all the clients. When enabled, HTTP/2 is negotiated with ALPN during the
+     * TLS handshake and HTTP/1.1 is used with servers that don't support it.
+     *
+     * @param enabled true to offer HTTP/2
+     */
+    public static synchronized void setHttp2Enabled(boolean enabled) {
+        if (http2Enabled == enabled) {
+            return;
+        }
+
+        http2Enabled = enabled;
+
+        for (OkHttpClient client : clients) {
+            apply(client);
+        }
+
+        // connections that were negotiated with the previous protocols must not be reused
+        connectionPool.evictAll();
+    }
+
+    /**
+     * Sets the cookie handler of all the clients, so that resource and authorization requests share cookies.
+     *
+     * @param handler the cookie handler, or null to ignore cookies
+     */
+    public static synchronized void setCookieHandler(CookieHandler handler) {
+        cookieHandler = handler;
+
+        for (OkHttpClient client : clients) {
+            client.setCookieHandler(handler);
+        }
+    }
+
+    public static synchronized CookieHandler getCookieHandler() {
+        return cookieHandler;
+    }
+
+    public static synchronized boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * @return the protocols offered by the clients, in order of preference
+     */
+    public static synchronized List<Protocol> getProtocols() {
+        return http2Enabled ? HTTP_2_PROTOCOLS : HTTP_1_PROTOCOLS;
+    }
+
+    private static void apply(OkHttpClient client) {
+        Dispatcher dispatcher = client.getDispatcher();
+
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        client.setConnectionPool(connectionPool);
+        client.setProtocols(getProtocols());
+        client.setCookieHandler(cookieHandler);
+    }
+
+    public static synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public static synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public static synchronized int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public static synchronized long getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * @return the current number of calls and connections of all the clients
+     */
+    public static synchronized ConnectionStatistics getStatistics() {
+        int runningCalls = 0;
+        int queuedCalls = 0;
+
+        for (OkHttpClient client : clients) {
+            runningCalls += client.getDispatcher().getRunningCallCount();
+            queuedCalls += client.getDispatcher().getQueuedCallCount();
+        }
+
+        long fullHandshakes = sslSocketFactory != null ? sslSocketFactory.getFullHandshakeCount() : 0;
+        long resumedHandshakes = sslSocketFactory != null ? sslSocketFactory.getResumedHandshakeCount() : 0;
+
+        return new ConnectionStatistics(runningCalls, queuedCalls,
+                connectionPool.getConnectionCount(),
+                connectionPool.getIdleConnectionCount(),
+                connectionPool.getMultiplexedConnectionCount(),
+                fullHandshakes, resumedHandshakes);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the interceptors added to all the OkHttp clients of the SDK. Every client gets one application
+ * and one network interceptor from {@link #install(OkHttpClient)} that run the registered interceptors of
+ * their level, so the interceptor lists of the clients never change while calls are running.
+ * <p>
+ * Registrations replace an immutable snapshot under a lock; calls only read the current snapshot. A call
+ * keeps the snapshot it started with.
+ * </p>
+ */
+public class InterceptorRegistry {
+
+    /**
+     * Where an interceptor runs.
+     */
+    public enum Level {
+        /**
+         * Once per call, before the response cache, redirects and retries of OkHttp. Application interceptors
+         * may short-circuit the call or proceed several times.
+         */
+        APPLICATION,
+
+        /**
+         * Once per network request, with the connection that carries it. Network interceptors run again for
+         * every redirect and must proceed exactly once.
+         */
+        NETWORK
+    }
+
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static volatile Entry[] applicationInterceptors = NO_ENTRIES;
+    private static volatile Entry[] networkInterceptors = NO_ENTRIES;
+
+    private static final Interceptor applicationDispatcher = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return proceed(chain, applicationInterceptors);
+        }
+    };
+
+    private static final Interceptor networkDispatcher = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return proceed(chain, networkInterceptors);
+        }
+    };
+
+    private InterceptorRegistry() {
+    }
+
+    /**
+     * Adds the interceptors that run the registered interceptors to a client.
+     *
+     * @param client the client
+     */
+    public static void install(OkHttpClient client) {
+        client.interceptors().add(applicationDispatcher);
+        client.networkInterceptors().add(networkDispatcher);
+    }
+
+    /**
+     * Registers an interceptor for all the clients. Interceptors with a higher priority run first, that is
+     * they see the request before and the response after interceptors with a lower priority; interceptors
+     * with the same priority run in the order they were registered. Registering an interceptor again
+     * moves it to the new level and priority.
+     *
+     * @param interceptor the interceptor
+     * @param level       where the interceptor runs
+     * @param priority    the priority of the interceptor
+     */
+    public static synchronized void register(Interceptor interceptor, Level level, int priority) {
+        if (interceptor == null) {
+            return;
+        }
+        if (level == null) {
+            throw new IllegalArgumentException("level is null");
+        }
+
+        unregister(interceptor);
+
+        Entry entry = new Entry(interceptor, priority);
+
+        if (level == Level.APPLICATION) {
+            applicationInterceptors = insert(applicationInterceptors, entry);
+        } else {
+            networkInterceptors = insert(networkInterceptors, entry);
+        }
+    }
+
+    /**
+     * Removes an interceptor from all the clients. Calls that are already running still use it.
+     *
+     * @param interceptor the interceptor
+     */
+    public static synchronized void unregister(Interceptor interceptor) {
+        if (interceptor == null) {
+            return;
+        }
+
+        applicationInterceptors = remove(applicationInterceptors, interceptor);
+        networkInterceptors = remove(networkInterceptors, interceptor);
+    }
+
+    /**
+     * @param level a level
+     * @return the interceptors of the level, in the order they run
+     */
+    public static List<Interceptor> getInterceptors(Level level) {
+        Entry[] entries = level == Level.APPLICATION ? applicationInterceptors : networkInterceptors;
+        List<Interceptor> interceptors = new ArrayList<>(entries.length);
+
+        for (Entry entry : entries) {
+            interceptors.add(entry.interceptor);
+        }
+
+        return interceptors;
+    }
+
+    private static Entry[] insert(Entry[] entries, Entry entry) {
+        // after all the entries with the same or a higher priority
+        int index = 0;
+        while (index < entries.length && entries[index].priority >= entry.priority) {
+            index++;
+        }
+
+        Entry[] result = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, result, 0, index);
+        result[index] = entry;
+        System.arraycopy(entries, index, result, index + 1, entries.length - index);
+
+        return result;
+    }
+
+    private static Entry[] remove(Entry[] entries, Interceptor interceptor) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].interceptor == interceptor) {
+                if (entries.length == 1) {
+                    return NO_ENTRIES;
+                }
+
+                Entry[] result = Arrays.copyOf(entries, entries.length - 1);
+                System.arraycopy(entries, i + 1, result, i, entries.length - i - 1);
+
+                return result;
+            }
+        }
+
+        return entries;
+    }
+
+    private static Response proceed(Interceptor.Chain chain, Entry[] entries) throws IOException {
+        if (entries.length == 0) {
+            return chain.proceed(chain.request());
+        }
+
+        return new RegisteredChain(chain, entries, 0, chain.request()).proceed(chain.request());
+    }
+
+    private static class Entry {
+        final Interceptor interceptor;
+        final int priority;
+
+        Entry(Interceptor interceptor, int priority) {
+            this.interceptor = interceptor;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Runs the registered interceptors of one level inside the chain of OkHttp.
+     */
+    private static class RegisteredChain implements Interceptor.Chain {
+        private final Interceptor.Chain outer;
+        private final Entry[] entries;
+        private final int index;
+        private final Request request;
+
+        RegisteredChain(Interceptor.Chain outer, Entry[] entries, int index, Request request) {
+            this.outer = outer;
+            this.entries = entries;
+            this.index = index;
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            if (index == entries.length) {
+                return outer.proceed(request);
+            }
+
+            return entries[index].interceptor.intercept(new RegisteredChain(outer, entries, index + 1, request));
+        }
+
+        @Override
+        public Connection connection() {
+            return outer.connection();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the elements of a JSON array one at a time from a stream, so that only the current element is held
+ * in memory. The array is either the whole document, or a member of the top-level object.
+ * <p>
+ * Elements are returned as {@link JSONObject}, {@link JSONArray}, String, Long, Double, Boolean or
+ * {@link JSONObject#NULL}, as {@link JSONObject#get(String)} would return them.
+ * </p>
+ */
+public class JsonArrayReader implements Closeable {
+
+    private final JsonReader reader;
+    private final String arrayName;
+    private boolean inArray = false;
+    private boolean done = false;
+
+    /**
+     * @param in        the JSON document
+     * @param charset   the charset of the document
+     * @param arrayName the name of the array in the top-level object, or null if the document is the array
+     */
+    public JsonArrayReader(InputStream in, Charset charset, String arrayName) {
+        this.reader = new JsonReader(new InputStreamReader(in, charset));
+        this.arrayName = arrayName;
+    }
+
+    /**
+     * @return true if there is another element
+     * @throws IOException if the document can't be read or is not valid JSON
+     */
+    public boolean hasNext() throws IOException {
+        if (done) {
+            return false;
+        }
+
+        try {
+            if (!inArray) {
+                beginArray();
+                inArray = true;
+            }
+
+            if (reader.hasNext()) {
+                return true;
+            }
+
+            endArray();
+            done = true;
+            return false;
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw malformed(e);
+        }
+    }
+
+    /**
+     * @return the next element
+     * @throws IOException if the document can't be read or is not valid JSON
+     * @throws IllegalStateException if there are no more elements
+     */
+    public Object next() throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("No more elements in the JSON array");
+        }
+
+        try {
+            return readValue();
+        } catch (IllegalStateException | NumberFormatException | JSONException e) {
+            throw malformed(e);
+        }
+    }
+
+    private void beginArray() throws IOException {
+        if (arrayName == null) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new IOException("Expected a JSON array but was " + reader.peek());
+            }
+
+            reader.beginArray();
+            return;
+        }
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(arrayName) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                return;
+            }
+
+            reader.skipValue();
+        }
+
+        throw new IOException("No JSON array named " + arrayName);
+    }
+
+    private void endArray() throws IOException {
+        reader.endArray();
+
+        // reading the rest of the document lets the connection be reused
+        if (arrayName != null) {
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+
+            reader.endObject();
+        }
+    }
+
+    private Object readValue() throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, readValue());
+                }
+                reader.endObject();
+
+                return object;
+
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue());
+                }
+                reader.endArray();
+
+                return array;
+
+            case NUMBER:
+                return toNumber(reader.nextString());
+
+            case BOOLEAN:
+                return reader.nextBoolean();
+
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Number toNumber(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(value);
+        }
+    }
+
+    private static IOException malformed(Exception e) {
+        return new IOException("Malformed JSON: " + e.getLocalizedMessage(), e);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
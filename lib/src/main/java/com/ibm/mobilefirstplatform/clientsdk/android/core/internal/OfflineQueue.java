@@ -0,0 +1,516 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.OfflineQueueListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Request;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Stores deferred requests in a {@link QueueFile} and sends them in order, with at most a given number of
+ * requests in flight.
+ * <p>
+ * A request is only removed from the queue once the server has answered it, so every request is delivered at
+ * least once: a request in flight when the application stops is sent again on the next start. Requests that
+ * fail with an I/O error, a server error or a throttling status pause the queue; it resumes when connectivity
+ * returns, or after a backoff delay. A request that still fails after {@link #DEFAULT_MAX_ATTEMPTS} attempts
+ * while the device is online is dropped, so one request can't block the queue forever; the attempts are
+ * counted from the start of the application. Requests rejected with any other status, cancelled requests and
+ * requests failing with errors that a retry won't change, such as an unknown host or a TLS handshake
+ * failure, are dropped at once. Dropped requests are reported to the {@link OfflineQueueListener}.
+ * </p>
+ * <p>
+ * Requests are sent in the order they were queued. With more than one request in flight they may complete in
+ * another order, and a request sent again after a failure may arrive after requests queued later.
+ * </p>
+ */
+public class OfflineQueue {
+
+    public static final String QUEUE_DIRECTORY = "bms-offline-queue";
+    public static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+    public static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    /**
+     * The largest request body the queue stores. Records are read into memory to be sent, so larger bodies
+     * and bodies of unknown length are not queued.
+     */
+    public static final long MAX_BODY_SIZE = 1024 * 1024;
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + OfflineQueue.class.getSimpleName());
+
+    private static OfflineQueue instance;
+    private static Context receiverContext;
+    private static BroadcastReceiver connectivityReceiver;
+
+    /**
+     * Sends the requests taken from the queue.
+     */
+    public interface Sender {
+        void send(QueuedRequest request, ResponseListener listener);
+    }
+
+    /**
+     * Tells whether the device is online.
+     */
+    public interface Connectivity {
+        boolean isConnected();
+    }
+
+    private final QueueFile queueFile;
+    private final Sender sender;
+    private final int maxConcurrentRequests;
+
+    private final Map<Long, ResponseListener> listeners = new HashMap<>();
+    private final Map<Long, Long> completed = new HashMap<>();
+    private final Set<Long> inFlight = new HashSet<>();
+    private final Map<Long, Integer> attempts = new HashMap<>();
+
+    private long dispatchOffset;
+    // nothing is sent before the first resume, so the owner can set up the queue first
+    private boolean paused = true;
+    private boolean closed = false;
+    private boolean retryScheduled = false;
+    private long retryDelay = MIN_RETRY_DELAY;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile OfflineQueueListener queueListener;
+    private volatile Connectivity connectivity;
+
+    /**
+     * Opens the queue stored in the given directory. No request is sent, including the requests left from
+     * a previous run, until {@link #resume()} is called.
+     *
+     * @param directory             the directory of the queue files
+     * @param maxConcurrentRequests the maximum number of requests in flight
+     * @param sender                sends the requests taken from the queue
+     * @throws IOException if the queue files can't be opened
+     */
+    public OfflineQueue(File directory, int maxConcurrentRequests, Sender sender) throws IOException {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests < 1: " + maxConcurrentRequests);
+        }
+
+        this.queueFile = new QueueFile(directory);
+        this.sender = sender;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.dispatchOffset = queueFile.getHead();
+    }
+
+    /**
+     * Enables the offline queue of the SDK, stored in the files directory of the application, and starts
+     * sending the requests left from a previous run.
+     *
+     * @param context               Android application context
+     * @param maxConcurrentRequests the maximum number of requests in flight
+     * @param listener              notified about every request delivered or dropped, may be null
+     * @throws IOException if the queue files can't be opened
+     */
+    public static synchronized void enable(Context context, int maxConcurrentRequests, OfflineQueueListener listener) throws IOException {
+        disable();
+
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        final OfflineQueue queue = new OfflineQueue(new File(appContext.getFilesDir(), QUEUE_DIRECTORY),
+                maxConcurrentRequests, new RequestSender(appContext));
+        queue.setListener(listener);
+
+        final Context connectivityContext = appContext;
+        queue.setConnectivity(new Connectivity() {
+            @Override
+            public boolean isConnected() {
+                return OfflineQueue.isConnected(connectivityContext);
+            }
+        });
+
+        connectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (isConnected(context)) {
+                    queue.resume();
+                }
+            }
+        };
+        receiverContext = appContext;
+        appContext.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+
+        instance = queue;
+        queue.resume();
+    }
+
+    /**
+     * Disables the offline queue. The queued requests stay on disk and are sent once it is enabled again.
+     */
+    public static synchronized void disable() {
+        if (connectivityReceiver != null) {
+            receiverContext.unregisterReceiver(connectivityReceiver);
+            connectivityReceiver = null;
+            receiverContext = null;
+        }
+
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * @return the offline queue of the SDK, or null if it is disabled
+     */
+    public static synchronized OfflineQueue getInstance() {
+        return instance;
+    }
+
+    private static boolean isConnected(Context context) {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = manager != null ? manager.getActiveNetworkInfo() : null;
+
+        return network != null && network.isConnected();
+    }
+
+    public void setListener(OfflineQueueListener listener) {
+        this.queueListener = listener;
+    }
+
+    /**
+     * Sets how the queue learns whether the device is online. While it is offline no request is sent and
+     * failures don't count as attempts; the owner calls {@link #resume()} when the device is online again.
+     *
+     * @param connectivity the connectivity, or null to treat the device as always online
+     */
+    public void setConnectivity(Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Sets how many times a request is sent before it is dropped, when every attempt fails with an error
+     * that might not happen again.
+     *
+     * @param maxAttempts the maximum number of attempts of a request
+     */
+    public synchronized void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    private boolean isOnline() {
+        Connectivity currentConnectivity = connectivity;
+
+        return currentConnectivity == null || currentConnectivity.isConnected();
+    }
+
+    /**
+     * @return the number of requests in the queue, including those in flight
+     */
+    public int size() {
+        return queueFile.size();
+    }
+
+    /**
+     * Appends a request to the queue file and sends it when its turn comes.
+     *
+     * @param request  the request to queue
+     * @param listener notified when the request is delivered or dropped, unless the application stops first
+     * @throws IOException if the request can't be stored
+     */
+    public void add(QueuedRequest request, ResponseListener listener) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Offline queue is closed");
+            }
+
+            long offset = queueFile.append(request.toBytes());
+
+            if (listener != null) {
+                listeners.put(offset, listener);
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Sends the queued requests again after a pause, for example when connectivity returns.
+     */
+    public void resume() {
+        synchronized (this) {
+            paused = false;
+            retryDelay = MIN_RETRY_DELAY;
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Stops sending requests. The requests in flight complete, the queued requests stay in the queue file.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        try {
+            queueFile.close();
+        } catch (IOException e) {
+            logger.error("Offline queue can't be closed: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void dispatch() {
+        List<QueueFile.Record> records = new ArrayList<>();
+        boolean online = isOnline();
+
+        synchronized (this) {
+            // the connectivity receiver resumes the queue once the device is online again
+            if (!online) {
+                paused = true;
+            }
+
+            try {
+                while (!paused && !closed && inFlight.size() < maxConcurrentRequests) {
+                    QueueFile.Record record = queueFile.read(dispatchOffset);
+
+                    if (record == null) {
+                        break;
+                    }
+
+                    dispatchOffset = record.getNextOffset();
+
+                    // after a pause the queue is read again from the head, skipping what is done or in flight
+                    if (completed.containsKey(record.getOffset()) || inFlight.contains(record.getOffset())) {
+                        continue;
+                    }
+
+                    inFlight.add(record.getOffset());
+                    records.add(record);
+                }
+            } catch (IOException e) {
+                logger.error("Offline queue can't be read: " + e.getLocalizedMessage());
+            }
+        }
+
+        for (QueueFile.Record record : records) {
+            send(record);
+        }
+    }
+
+    private void send(final QueueFile.Record record) {
+        final QueuedRequest request;
+
+        try {
+            request = QueuedRequest.fromBytes(record.getData());
+        } catch (IOException e) {
+            complete(record, null, null, e, false);
+            return;
+        }
+
+        sender.send(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                complete(record, request, response, null, true);
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                if (!isOnline()) {
+                    // the device went offline, the attempt does not count
+                    retryLater(record);
+                } else if (isTransientFailure(response, t) && countAttempt(record) < getMaxAttempts()) {
+                    retryLater(record);
+                } else {
+                    complete(record, request, response, t, false);
+                }
+            }
+        });
+    }
+
+    private synchronized int countAttempt(QueueFile.Record record) {
+        Integer count = attempts.get(record.getOffset());
+        int newCount = count != null ? count + 1 : 1;
+
+        attempts.put(record.getOffset(), newCount);
+
+        return newCount;
+    }
+
+    private synchronized int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private static boolean isTransientFailure(Response response, Throwable t) {
+        if (response == null) {
+            // these fail the same way on every attempt
+            if (t instanceof RequestCancelledException || t instanceof UnknownHostException
+                    || t instanceof SSLHandshakeException || t instanceof SSLPeerUnverifiedException) {
+                return false;
+            }
+
+            return t instanceof IOException;
+        }
+
+        int status = response.getStatus();
+        return status >= 500 || status == 408 || status == 429;
+    }
+
+    private void complete(QueueFile.Record record, QueuedRequest request, Response response, Throwable t, boolean delivered) {
+        ResponseListener listener;
+
+        synchronized (this) {
+            inFlight.remove(record.getOffset());
+            completed.put(record.getOffset(), record.getNextOffset());
+            attempts.remove(record.getOffset());
+            listener = listeners.remove(record.getOffset());
+
+            if (delivered) {
+                retryDelay = MIN_RETRY_DELAY;
+            }
+
+            removeCompletedHead();
+        }
+
+        OfflineQueueListener currentQueueListener = queueListener;
+        String method = request != null ? request.getMethod() : null;
+        String url = request != null ? request.getUrl() : null;
+
+        if (delivered) {
+            if (currentQueueListener != null) {
+                currentQueueListener.onDelivered(method, url, response);
+            }
+            if (listener != null) {
+                listener.onSuccess(response);
+            }
+        } else {
+            logger.error("Dropping queued request " + request + ": " + (t != null ? t.getLocalizedMessage() : response));
+
+            if (currentQueueListener != null) {
+                currentQueueListener.onDropped(method, url, response, t);
+            }
+            if (listener != null) {
+                listener.onFailure(response, t, null);
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Removes the completed records at the head of the queue. Records completed out of order stay until
+     * all the records before them are completed.
+     */
+    private void removeCompletedHead() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            Long head = queueFile.getHead();
+
+            while (completed.containsKey(head)) {
+                QueueFile.Record record = queueFile.peek();
+
+                if (record == null) {
+                    break;
+                }
+
+                queueFile.remove(record);
+                completed.remove(head);
+                head = queueFile.getHead();
+            }
+        } catch (IOException e) {
+            // the records stay in the queue file and are sent again on the next start
+            logger.error("Offline queue head can't be written: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void retryLater(QueueFile.Record record) {
+        long delay;
+
+        synchronized (this) {
+            inFlight.remove(record.getOffset());
+            paused = true;
+            dispatchOffset = queueFile.getHead();
+
+            if (retryScheduled || closed) {
+                return;
+            }
+
+            retryScheduled = true;
+            delay = retryDelay;
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        }
+
+        RetryEngine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (OfflineQueue.this) {
+                    retryScheduled = false;
+                    paused = false;
+                }
+
+                dispatch();
+            }
+        }, delay);
+    }
+
+    /**
+     * Sends queued requests as resource requests, so they get the authorization handling of {@link Request}.
+     */
+    static class RequestSender implements Sender {
+        private final Context context;
+
+        RequestSender(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void send(QueuedRequest queuedRequest, ResponseListener listener) {
+            Request request = new Request(queuedRequest.getUrl(), queuedRequest.getMethod());
+            request.setHeaders(queuedRequest.getHeaders().toMultimap());
+
+            if (queuedRequest.getBody() != null) {
+                request.send(context, queuedRequest.getBody(), listener);
+            } else {
+                request.send(context, listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,678 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A cookie store that keeps cookies across restarts of the application.
+ * <p>
+ * Cookies are indexed by domain, then path, then name, so a lookup only visits the domains of the host and
+ * the paths that are prefixes of the request path instead of every cookie. The number of cookies is capped:
+ * expired cookies are dropped first, then the cookies that expire soonest; session cookies are dropped last.
+ * Host-only cookies, set without a Domain attribute, are sent to their host only and not to its subdomains
+ * (RFC 6265, section 5.3).
+ * </p>
+ * <p>
+ * Every change is appended to a log file as a record with its length and CRC32, so adding a cookie writes only
+ * that cookie. When most of the log is made of replaced or removed cookies, the live cookies are written to a
+ * new log which replaces the old one with a rename. Loading stops at the first incomplete or damaged record,
+ * which is what a write interrupted by a crash leaves behind. Session cookies are kept too, which saves an
+ * authorization round trip after a restart.
+ * </p>
+ */
+public class PersistentCookieStore implements CookieStore {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + PersistentCookieStore.class.getSimpleName());
+
+    public static final int DEFAULT_MAX_COOKIES = 300;
+
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int MIN_COMPACT_RECORDS = 256;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private static final long SESSION = Long.MAX_VALUE;
+
+    // CookieManager gives the cookies of hosts without a dot this suffix when they have no Domain attribute
+    private static final String LOCAL_SUFFIX = ".local";
+
+    private final File file;
+    private final int maxCookies;
+    private RandomAccessFile log;
+    private int recordCount = 0;
+    private long nextSequence = 0;
+
+    // domain -> path -> name -> cookie
+    private final Map<String, Map<String, Map<String, Entry>>> index = new HashMap<>();
+    // ordered by expiry, the next cookie to evict first
+    private final TreeSet<Entry> byExpiry = new TreeSet<>();
+
+    private static class Entry implements Comparable<Entry> {
+        final String domain;
+        final String path;
+        final String name;
+        final HttpCookie cookie;
+        final boolean hostOnly;
+        final long expiresAt;
+        final long sequence;
+
+        Entry(String domain, String path, String name, HttpCookie cookie, boolean hostOnly, long expiresAt, long sequence) {
+            this.domain = domain;
+            this.path = path;
+            this.name = name;
+            this.cookie = cookie;
+            this.hostOnly = hostOnly;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (expiresAt != other.expiresAt) {
+                return expiresAt < other.expiresAt ? -1 : 1;
+            }
+
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Opens the store kept in the given file, creating it if needed.
+     *
+     * @param file       the log file
+     * @param maxCookies the maximum number of cookies kept
+     * @throws IOException if the file can't be read or written
+     */
+    public PersistentCookieStore(File file, int maxCookies) throws IOException {
+        if (maxCookies < 1) {
+            throw new IllegalArgumentException("maxCookies < 1: " + maxCookies);
+        }
+
+        this.file = file;
+        this.maxCookies = maxCookies;
+
+        // a compaction that was interrupted before the rename left the old log intact
+        File compactFile = new File(file.getPath() + COMPACT_SUFFIX);
+        if (compactFile.exists() && !compactFile.delete()) {
+            throw new IOException("Can't delete " + compactFile);
+        }
+
+        log = new RandomAccessFile(file, "rw");
+        load();
+
+        if (purge(System.currentTimeMillis()) || shouldCompact()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void add(URI uri, HttpCookie cookie) {
+        if (cookie == null) {
+            throw new NullPointerException("cookie is null");
+        }
+
+        String host = uri != null ? normalizeHost(uri.getHost()) : null;
+        boolean hostOnly = host != null && isHostOnly(host, cookie.getDomain());
+        String domain = hostOnly ? host : (cookie.getDomain() != null ? normalizeDomain(cookie.getDomain()) : null);
+
+        // a cookie must not be set for a domain the host does not belong to
+        if (domain == null || (host != null && !domainMatches(host, domain))) {
+            return;
+        }
+
+        String path = cookie.getPath() != null ? cookie.getPath() : defaultPath(uri);
+        long maxAge = cookie.getMaxAge();
+
+        Entry previous = removeEntry(domain, path, cookie.getName());
+
+        // a cookie with a max age of 0 deletes the cookie it replaces
+        if (maxAge == 0) {
+            if (previous != null) {
+                write(removeRecord(previous));
+            }
+            return;
+        }
+
+        long expiresAt = maxAge < 0 ? SESSION : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxAge);
+        Entry entry = new Entry(domain, path, cookie.getName(), cookie, hostOnly, expiresAt, nextSequence++);
+
+        putEntry(entry);
+        write(putRecord(entry));
+
+        if (byExpiry.size() > maxCookies) {
+            evict();
+        }
+
+        if (shouldCompact()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized List<HttpCookie> get(URI uri) {
+        if (uri == null) {
+            throw new NullPointerException("uri is null");
+        }
+
+        String host = normalizeHost(uri.getHost());
+        if (host == null) {
+            return Collections.emptyList();
+        }
+
+        String path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        long now = System.currentTimeMillis();
+
+        List<HttpCookie> cookies = new ArrayList<>();
+        List<Entry> expired = null;
+
+        for (String domain : candidateDomains(host)) {
+            Map<String, Map<String, Entry>> paths = index.get(domain);
+            if (paths == null) {
+                continue;
+            }
+
+            for (String candidatePath : candidatePaths(path)) {
+                Map<String, Entry> names = paths.get(candidatePath);
+                if (names == null) {
+                    continue;
+                }
+
+                for (Entry entry : names.values()) {
+                    // host-only cookies don't go to the subdomains of their host
+                    if (entry.hostOnly && !domain.equals(host)) {
+                        continue;
+                    }
+
+                    if (entry.isExpired(now)) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(entry);
+                    } else if (secure || !entry.cookie.getSecure()) {
+                        cookies.add(entry.cookie);
+                    }
+                }
+            }
+        }
+
+        if (expired != null) {
+            for (Entry entry : expired) {
+                removeEntry(entry.domain, entry.path, entry.name);
+                write(removeRecord(entry));
+            }
+        }
+
+        return cookies;
+    }
+
+    @Override
+    public synchronized List<HttpCookie> getCookies() {
+        purge(System.currentTimeMillis());
+
+        List<HttpCookie> cookies = new ArrayList<>(byExpiry.size());
+        for (Entry entry : byExpiry) {
+            cookies.add(entry.cookie);
+        }
+
+        return Collections.unmodifiableList(cookies);
+    }
+
+    @Override
+    public synchronized List<URI> getURIs() {
+        List<URI> uris = new ArrayList<>(index.size());
+
+        for (String domain : index.keySet()) {
+            try {
+                uris.add(new URI("http", domain, null, null));
+            } catch (URISyntaxException e) {
+                logger.debug("Can't build URI for cookie domain " + domain);
+            }
+        }
+
+        return Collections.unmodifiableList(uris);
+    }
+
+    @Override
+    public synchronized boolean remove(URI uri, HttpCookie cookie) {
+        if (cookie == null) {
+            throw new NullPointerException("cookie is null");
+        }
+
+        String host = uri != null ? normalizeHost(uri.getHost()) : null;
+        String domain = host != null && isHostOnly(host, cookie.getDomain()) ? host
+                : (cookie.getDomain() != null ? normalizeDomain(cookie.getDomain()) : null);
+        String path = cookie.getPath() != null ? cookie.getPath() : defaultPath(uri);
+
+        Entry entry = domain != null ? removeEntry(domain, path, cookie.getName()) : null;
+
+        if (entry == null) {
+            return false;
+        }
+
+        write(removeRecord(entry));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll() {
+        boolean changed = !byExpiry.isEmpty();
+
+        index.clear();
+        byExpiry.clear();
+
+        try {
+            log.setLength(0);
+            recordCount = 0;
+        } catch (IOException e) {
+            logger.error("Cookie file can't be cleared: " + e.getLocalizedMessage());
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the number of cookies in the store, including the expired cookies not dropped yet
+     */
+    public synchronized int size() {
+        return byExpiry.size();
+    }
+
+    /**
+     * Writes the log to disk and closes it. The store must not be used afterwards.
+     */
+    public synchronized void close() {
+        try {
+            log.getFD().sync();
+            log.close();
+        } catch (IOException e) {
+            logger.error("Cookie file can't be closed: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void putEntry(Entry entry) {
+        Map<String, Map<String, Entry>> paths = index.get(entry.domain);
+        if (paths == null) {
+            paths = new HashMap<>();
+            index.put(entry.domain, paths);
+        }
+
+        Map<String, Entry> names = paths.get(entry.path);
+        if (names == null) {
+            names = new HashMap<>();
+            paths.put(entry.path, names);
+        }
+
+        Entry previous = names.put(entry.name, entry);
+        if (previous != null) {
+            byExpiry.remove(previous);
+        }
+
+        byExpiry.add(entry);
+    }
+
+    private Entry removeEntry(String domain, String path, String name) {
+        Map<String, Map<String, Entry>> paths = index.get(domain);
+        if (paths == null) {
+            return null;
+        }
+
+        Map<String, Entry> names = paths.get(path);
+        if (names == null) {
+            return null;
+        }
+
+        Entry entry = names.remove(name);
+        if (entry == null) {
+            return null;
+        }
+
+        byExpiry.remove(entry);
+
+        if (names.isEmpty()) {
+            paths.remove(path);
+
+            if (paths.isEmpty()) {
+                index.remove(domain);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Drops the expired cookies, then the cookies that expire soonest until the store is within its cap.
+     */
+    private void evict() {
+        purge(System.currentTimeMillis());
+
+        while (byExpiry.size() > maxCookies) {
+            Entry entry = byExpiry.first();
+            removeEntry(entry.domain, entry.path, entry.name);
+            write(removeRecord(entry));
+        }
+    }
+
+    /**
+     * @return true if an expired cookie was dropped
+     */
+    private boolean purge(long now) {
+        boolean purged = false;
+
+        while (!byExpiry.isEmpty() && byExpiry.first().isExpired(now)) {
+            Entry entry = byExpiry.first();
+            removeEntry(entry.domain, entry.path, entry.name);
+            write(removeRecord(entry));
+            purged = true;
+        }
+
+        return purged;
+    }
+
+    private static List<String> candidateDomains(String host) {
+        List<String> domains = new ArrayList<>();
+        domains.add(host);
+
+        // IP addresses only match themselves
+        if (isIpAddress(host)) {
+            return domains;
+        }
+
+        int dot = host.indexOf('.');
+        while (dot != -1 && host.indexOf('.', dot + 1) != -1) {
+            domains.add(host.substring(dot + 1));
+            dot = host.indexOf('.', dot + 1);
+        }
+
+        return domains;
+    }
+
+    private static List<String> candidatePaths(String path) {
+        List<String> paths = new ArrayList<>();
+        paths.add(path);
+
+        // a cookie path matches when it is a prefix that ends with a slash or is followed by one
+        for (int i = path.indexOf('/'); i != -1; i = path.indexOf('/', i + 1)) {
+            String withSlash = path.substring(0, i + 1);
+
+            if (!withSlash.equals(path)) {
+                paths.add(withSlash);
+            }
+            if (i > 0) {
+                paths.add(path.substring(0, i));
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * A cookie is host-only when it has no Domain attribute. CookieManager sets the domain of such cookies to
+     * the request host before they reach the store, so a domain that is exactly the host, without the leading
+     * dot of a Domain attribute, is taken as host-only too.
+     */
+    private static boolean isHostOnly(String host, String cookieDomain) {
+        if (cookieDomain == null) {
+            return true;
+        }
+
+        String domain = cookieDomain.toLowerCase(Locale.US);
+        return domain.equals(host) || domain.equals(host + LOCAL_SUFFIX);
+    }
+
+    private static boolean domainMatches(String host, String domain) {
+        return host.equals(domain) || (host.endsWith("." + domain) && !isIpAddress(host));
+    }
+
+    private static boolean isIpAddress(String host) {
+        return host.indexOf(':') != -1 || host.matches("[0-9.]+");
+    }
+
+    private static String normalizeHost(String host) {
+        return host != null ? host.toLowerCase(Locale.US) : null;
+    }
+
+    private static String normalizeDomain(String domain) {
+        String normalized = domain.toLowerCase(Locale.US);
+        return normalized.startsWith(".") ? normalized.substring(1) : normalized;
+    }
+
+    private static String defaultPath(URI uri) {
+        String path = uri != null ? uri.getPath() : null;
+
+        if (path == null || !path.startsWith("/")) {
+            return "/";
+        }
+
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash == 0 ? "/" : path.substring(0, lastSlash);
+    }
+
+    private static byte[] putRecord(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(PUT);
+            out.writeUTF(entry.domain);
+            out.writeUTF(entry.path);
+            out.writeUTF(entry.name);
+            out.writeUTF(entry.cookie.getValue() != null ? entry.cookie.getValue() : "");
+            out.writeLong(entry.expiresAt);
+            out.writeBoolean(entry.cookie.getSecure());
+            out.writeByte(entry.cookie.getVersion());
+            out.writeBoolean(entry.hostOnly);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] removeRecord(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(REMOVE);
+            out.writeUTF(entry.domain);
+            out.writeUTF(entry.path);
+            out.writeUTF(entry.name);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void write(byte[] data) {
+        try {
+            log.seek(log.length());
+            log.write(frame(data));
+            recordCount++;
+        } catch (IOException e) {
+            // the cookie stays in memory for this run
+            logger.error("Cookie can't be written: " + e.getLocalizedMessage());
+        }
+    }
+
+    private static byte[] frame(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + data.length);
+        record.putInt(data.length);
+        record.putInt((int) crc.getValue());
+        record.put(data);
+
+        return record.array();
+    }
+
+    private void load() throws IOException {
+        long position = 0;
+        long length = log.length();
+
+        log.seek(0);
+
+        while (position + RECORD_HEADER_LENGTH <= length) {
+            int dataLength = log.readInt();
+            int checksum = log.readInt();
+
+            if (dataLength < 0 || position + RECORD_HEADER_LENGTH + dataLength > length) {
+                break;
+            }
+
+            byte[] data = new byte[dataLength];
+            log.readFully(data);
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+
+            if ((int) crc.getValue() != checksum || !apply(data)) {
+                break;
+            }
+
+            position += RECORD_HEADER_LENGTH + dataLength;
+            recordCount++;
+        }
+
+        // everything after the last valid record is the remains of an interrupted write
+        if (length > position) {
+            log.setLength(position);
+        }
+    }
+
+    private boolean apply(byte[] data) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        try {
+            byte type = in.readByte();
+            String domain = in.readUTF();
+            String path = in.readUTF();
+            String name = in.readUTF();
+
+            if (type == REMOVE) {
+                removeEntry(domain, path, name);
+                return true;
+            }
+
+            if (type != PUT) {
+                return false;
+            }
+
+            String value = in.readUTF();
+            long expiresAt = in.readLong();
+            boolean secure = in.readBoolean();
+            int version = in.readByte();
+            // records written before host-only cookies were told apart end here
+            boolean hostOnly = in.available() > 0 && in.readBoolean();
+
+            HttpCookie cookie = new HttpCookie(name, value);
+            cookie.setDomain(domain);
+            cookie.setPath(path);
+            cookie.setSecure(secure);
+            cookie.setVersion(version);
+
+            if (expiresAt != SESSION) {
+                cookie.setMaxAge(Math.max(0, TimeUnit.MILLISECONDS.toSeconds(expiresAt - System.currentTimeMillis())));
+            }
+
+            putEntry(new Entry(domain, path, name, cookie, hostOnly, expiresAt, nextSequence++));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean shouldCompact() {
+        return recordCount >= MIN_COMPACT_RECORDS && recordCount > 2 * byExpiry.size();
+    }
+
+    /**
+     * Writes the live cookies to a new log and replaces the old log.
+     */
+    private void compact() {
+        File compactFile = new File(file.getPath() + COMPACT_SUFFIX);
+
+        try {
+            RandomAccessFile compactLog = new RandomAccessFile(compactFile, "rw");
+
+            try {
+                compactLog.setLength(0);
+
+                // oldest first, so that loading keeps the order of the sequence numbers
+                List<Entry> entries = new ArrayList<>(byExpiry);
+                Collections.sort(entries, new Comparator<Entry>() {
+                    @Override
+                    public int compare(Entry a, Entry b) {
+                        return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+                    }
+                });
+
+                for (Entry entry : entries) {
+                    compactLog.write(frame(putRecord(entry)));
+                }
+
+                compactLog.getFD().sync();
+            } finally {
+                compactLog.close();
+            }
+
+            log.close();
+
+            if (!compactFile.renameTo(file)) {
+                // the old log is still complete, keep using it
+                log = new RandomAccessFile(file, "rw");
+                logger.error("Cookie file can't be replaced: " + file);
+                return;
+            }
+
+            log = new RandomAccessFile(file, "rw");
+            recordCount = byExpiry.size();
+        } catch (IOException e) {
+            logger.error("Cookie file can't be compacted: " + e.getLocalizedMessage());
+        }
+    }
+}
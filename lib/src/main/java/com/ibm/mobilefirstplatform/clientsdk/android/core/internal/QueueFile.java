@@ -0,0 +1,344 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent FIFO queue of byte records, made of two files in one directory:
+ * <ul>
+ *     <li>The log file, to which records are only ever appended. Each record is its length, the CRC32 of its
+ *     data and the data. The file starts with the logical offset of its first byte.</li>
+ *     <li>The head file, which holds the logical offset of the first record still in the queue.</li>
+ * </ul>
+ * Records are addressed by logical offsets that never change, so removing the first record only rewrites the
+ * eight bytes of the head. Once the removed records take up most of the log, the remaining records are copied to
+ * a new log, which replaces the old one with a rename. Both files are synced to disk on every change.
+ * <p>
+ * When the queue is opened, the records from the head on are checked and the log is truncated at the first
+ * record that is incomplete or damaged, which is what an append interrupted by a crash leaves behind.
+ * A damaged head file makes the queue start over from the first record of the log, so records may be
+ * returned again but are never lost.
+ * </p>
+ */
+public class QueueFile {
+
+    static final String LOG_FILE = "queue.log";
+    static final String HEAD_FILE = "queue.head";
+    private static final String COMPACT_FILE = "queue.compact";
+
+    private static final int LOG_HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final long HEAD_CHECK = 0x5157554555454844L;
+
+    private static final long MIN_COMPACT_LENGTH = 64 * 1024;
+
+    private final File directory;
+    private RandomAccessFile log;
+    private final RandomAccessFile head;
+
+    private long baseOffset;
+    private long headOffset;
+    private long endOffset;
+    private int size;
+
+    /**
+     * A record read from the queue.
+     */
+    public static class Record {
+        private final long offset;
+        private final long nextOffset;
+        private final byte[] data;
+
+        Record(long offset, long nextOffset, byte[] data) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.data = data;
+        }
+
+        /**
+         * @return the logical offset of this record
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the logical offset of the record after this one
+         */
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Opens the queue stored in the given directory, creating it if needed, and recovers from a crash.
+     *
+     * @param directory the directory of the queue files
+     * @throws IOException if the files can't be read or written
+     */
+    public QueueFile(File directory) throws IOException {
+        this.directory = directory;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create queue directory " + directory);
+        }
+
+        // a compaction that was interrupted before the rename left the old log intact
+        File compactFile = new File(directory, COMPACT_FILE);
+        if (compactFile.exists() && !compactFile.delete()) {
+            throw new IOException("Can't delete " + compactFile);
+        }
+
+        log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+        head = new RandomAccessFile(new File(directory, HEAD_FILE), "rw");
+
+        if (log.length() < LOG_HEADER_LENGTH) {
+            log.setLength(0);
+            log.writeLong(0);
+            log.getFD().sync();
+        }
+
+        log.seek(0);
+        baseOffset = log.readLong();
+        headOffset = readHead();
+
+        recover();
+    }
+
+    private long readHead() throws IOException {
+        if (head.length() >= 16) {
+            head.seek(0);
+            long offset = head.readLong();
+            long check = head.readLong();
+
+            if ((offset ^ HEAD_CHECK) == check && offset >= baseOffset && offset <= baseOffset + log.length() - LOG_HEADER_LENGTH) {
+                return offset;
+            }
+        }
+
+        return baseOffset;
+    }
+
+    private void recover() throws IOException {
+        long offset = headOffset;
+        int count = 0;
+        Record record;
+
+        while ((record = readRecord(offset)) != null) {
+            offset = record.nextOffset;
+            count++;
+        }
+
+        // everything after the last valid record is the remains of an interrupted append
+        long validLength = toPosition(offset);
+        if (log.length() > validLength) {
+            log.setLength(validLength);
+            log.getFD().sync();
+        }
+
+        endOffset = offset;
+        size = count;
+    }
+
+    /**
+     * Appends a record to the end of the queue.
+     *
+     * @param data the data of the record
+     * @return the logical offset of the record
+     * @throws IOException if the record can't be written
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + data.length);
+        record.putInt(data.length);
+        record.putInt((int) crc.getValue());
+        record.put(data);
+
+        long offset = endOffset;
+
+        log.seek(toPosition(offset));
+        log.write(record.array());
+        log.getFD().sync();
+
+        endOffset = offset + record.capacity();
+        size++;
+
+        return offset;
+    }
+
+    /**
+     * Reads the record at the given logical offset.
+     *
+     * @param offset the logical offset of a record, at or after the head
+     * @return the record, or null if there is no record at this offset
+     * @throws IOException if the log can't be read
+     */
+    public synchronized Record read(long offset) throws IOException {
+        if (offset < headOffset || offset >= endOffset) {
+            return null;
+        }
+
+        return readRecord(offset);
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        long position = toPosition(offset);
+
+        if (position + RECORD_HEADER_LENGTH > log.length()) {
+            return null;
+        }
+
+        log.seek(position);
+        int length = log.readInt();
+        int checksum = log.readInt();
+
+        if (length < 0 || position + RECORD_HEADER_LENGTH + length > log.length()) {
+            return null;
+        }
+
+        byte[] data = new byte[length];
+        log.readFully(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        return new Record(offset, offset + RECORD_HEADER_LENGTH + length, data);
+    }
+
+    /**
+     * @return the logical offset of the first record in the queue
+     */
+    public synchronized long getHead() {
+        return headOffset;
+    }
+
+    /**
+     * @return the first record in the queue, or null if the queue is empty
+     * @throws IOException if the log can't be read
+     */
+    public synchronized Record peek() throws IOException {
+        return read(headOffset);
+    }
+
+    /**
+     * Removes the first record from the queue.
+     *
+     * @param record the first record, as returned by {@link #peek()} or {@link #read(long)}
+     * @throws IOException if the head can't be written
+     */
+    public synchronized void remove(Record record) throws IOException {
+        if (record.offset != headOffset) {
+            throw new IllegalStateException("Record at " + record.offset + " is not the head " + headOffset);
+        }
+
+        headOffset = record.nextOffset;
+        size--;
+
+        head.seek(0);
+        head.writeLong(headOffset);
+        head.writeLong(headOffset ^ HEAD_CHECK);
+        head.getFD().sync();
+
+        long removedLength = headOffset - baseOffset;
+        if (removedLength >= MIN_COMPACT_LENGTH && removedLength * 2 >= endOffset - baseOffset) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the records still in the queue to a new log starting at the head, and replaces the old log.
+     */
+    private void compact() throws IOException {
+        File compactFile = new File(directory, COMPACT_FILE);
+        RandomAccessFile compactLog = new RandomAccessFile(compactFile, "rw");
+
+        try {
+            compactLog.setLength(0);
+            compactLog.writeLong(headOffset);
+
+            byte[] buffer = new byte[8192];
+            long position = toPosition(headOffset);
+            long end = toPosition(endOffset);
+
+            log.seek(position);
+            while (position < end) {
+                int count = log.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (count == -1) {
+                    throw new IOException("Unexpected end of queue log");
+                }
+
+                compactLog.write(buffer, 0, count);
+                position += count;
+            }
+
+            compactLog.getFD().sync();
+        } finally {
+            compactLog.close();
+        }
+
+        File logFile = new File(directory, LOG_FILE);
+        log.close();
+
+        if (!compactFile.renameTo(logFile)) {
+            // the old log is still complete, keep using it
+            log = new RandomAccessFile(logFile, "rw");
+            throw new IOException("Can't replace " + logFile);
+        }
+
+        log = new RandomAccessFile(logFile, "rw");
+        baseOffset = headOffset;
+    }
+
+    /**
+     * @return the number of records in the queue
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes used by the log file
+     * @throws IOException if the length can't be read
+     */
+    public synchronized long getFileLength() throws IOException {
+        return log.length();
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            log.close();
+        } finally {
+            head.close();
+        }
+    }
+
+    private long toPosition(long offset) {
+        return LOG_HEADER_LENGTH + offset - baseOffset;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A request stored in the offline queue: its method, full URL, headers and body.
+ */
+public class QueuedRequest {
+
+    private static final int VERSION = 1;
+
+    private final String method;
+    private final String url;
+    private final Headers headers;
+    private final byte[] body;
+
+    /**
+     * @param method  the HTTP method
+     * @param url     the full URL, including the query parameters
+     * @param headers the request headers, including Content-Type when there is a body
+     * @param body    the request body, or null
+     */
+    public QueuedRequest(String method, String url, Headers headers, byte[] body) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Headers getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the request body, or null if the request has none
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the request in the format stored in the queue file
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + (body != null ? body.length : 0));
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(VERSION);
+            writeString(out, method);
+            writeString(out, url);
+
+            out.writeInt(headers.size());
+            for (int i = 0; i < headers.size(); i++) {
+                writeString(out, headers.name(i));
+                writeString(out, headers.value(i));
+            }
+
+            if (body == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(body.length);
+                out.write(body);
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data a request in the format stored in the queue file
+     * @return the request
+     * @throws IOException if the data is not a request
+     */
+    public static QueuedRequest fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unknown queued request version " + version);
+        }
+
+        String method = readString(in);
+        String url = readString(in);
+
+        Headers.Builder headers = new Headers.Builder();
+        int headerCount = in.readInt();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(readString(in), readString(in));
+        }
+
+        byte[] body = null;
+        int bodyLength = in.readInt();
+        if (bodyLength >= 0) {
+            body = new byte[bodyLength];
+            in.readFully(body);
+        }
+
+        return new QueuedRequest(method, url, headers.build(), body);
+    }
+
+    // writeUTF is limited to 64KB, which a URL can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one network call between identical requests that are in flight at the same time.
+ * <p>
+ * Requests are identical when they have the same method, URL and headers (including Authorization),
+ * and are sent with the same timeouts and redirect settings. The response body is read once and every waiting callback gets its own copy of the response, so
+ * authorization handling still happens per request.
+ * </p>
+ */
+public class RequestCoalescer {
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + RequestCoalescer.class.getSimpleName());
+
+    private final Map<String, InFlightCall> inFlightCalls = new HashMap<>();
+
+    /**
+     * Sends the request, or joins the call of an identical request that is already in flight.
+     *
+     * @param client   the client to use if a new call has to be made
+     * @param request  the request to send
+     * @param callback the callback to notify when the response arrives
+     * @return a subscription that detaches the callback from the shared call
+     */
+    public Subscription enqueue(OkHttpClient client, Request request, Callback callback) {
+        String key = getKey(client, request);
+        InFlightCall inFlightCall;
+        boolean isNewCall = false;
+
+        synchronized (inFlightCalls) {
+            inFlightCall = inFlightCalls.get(key);
+
+            if (inFlightCall == null) {
+                inFlightCall = new InFlightCall(key, client.newCall(request));
+                inFlightCalls.put(key, inFlightCall);
+                isNewCall = true;
+            } else {
+                logger.debug("Joining in-flight request to " + request.urlString());
+            }
+
+            inFlightCall.callbacks.add(callback);
+        }
+
+        if (isNewCall) {
+            inFlightCall.call.enqueue(inFlightCall);
+        }
+
+        return new Subscription(inFlightCall, callback);
+    }
+
+    /**
+     * @return the number of distinct calls currently in flight
+     */
+    public int getInFlightCount() {
+        synchronized (inFlightCalls) {
+            return inFlightCalls.size();
+        }
+    }
+
+    private static String getKey(OkHttpClient client, Request request) {
+        // a call made by one client must not answer a call with a shorter timeout or other redirect rules
+        return request.method() + " " + request.urlString() + "\n"
+                + client.getConnectTimeout() + " " + client.getReadTimeout() + " " + client.getWriteTimeout() + " "
+                + client.getFollowRedirects() + " " + client.getFollowSslRedirects() + "\n"
+                + request.headers().toString();
+    }
+
+    /**
+     * Returns the callbacks to notify and removes the call, so that later requests start a new call.
+     */
+    private List<Callback> complete(InFlightCall inFlightCall) {
+        synchronized (inFlightCalls) {
+            if (inFlightCalls.get(inFlightCall.key) == inFlightCall) {
+                inFlightCalls.remove(inFlightCall.key);
+            }
+
+            inFlightCall.completed = true;
+
+            return new ArrayList<>(inFlightCall.callbacks);
+        }
+    }
+
+    /**
+     * A callback's membership in a shared call.
+     */
+    public class Subscription {
+        private final InFlightCall inFlightCall;
+        private final Callback callback;
+
+        private Subscription(InFlightCall inFlightCall, Callback callback) {
+            this.inFlightCall = inFlightCall;
+            this.callback = callback;
+        }
+
+        /**
+         * Detaches the callback from the shared call. The network call is only cancelled when no
+         * other callback is waiting for it.
+         *
+         * @return true if the callback was detached before the response arrived
+         */
+        public boolean detach() {
+            synchronized (inFlightCalls) {
+                if (inFlightCall.completed || !inFlightCall.callbacks.remove(callback)) {
+                    return false;
+                }
+
+                if (inFlightCall.callbacks.isEmpty()) {
+                    inFlightCalls.remove(inFlightCall.key);
+                    inFlightCall.completed = true;
+                    inFlightCall.call.cancel();
+                }
+
+                return true;
+            }
+        }
+    }
+
+    private class InFlightCall implements Callback {
+        private final String key;
+        private final Call call;
+        private final List<Callback> callbacks = new ArrayList<>();
+        private boolean completed = false;
+
+        InFlightCall(String key, Call call) {
+            this.key = key;
+            this.call = call;
+        }
+
+        @Override
+        public void onFailure(Request request, IOException e) {
+            for (Callback callback : complete(this)) {
+                notifyFailure(callback, request, e);
+            }
+        }
+
+        @Override
+        public void onResponse(Response response) throws IOException {
+            List<Callback> waitingCallbacks = complete(this);
+
+            if (waitingCallbacks.isEmpty()) {
+                response.body().close();
+                return;
+            }
+
+            if (waitingCallbacks.size() == 1) {
+                waitingCallbacks.get(0).onResponse(response);
+                return;
+            }
+
+            byte[] bodyBytes;
+
+            try {
+                bodyBytes = response.body().bytes();
+            } catch (IOException e) {
+                for (Callback callback : waitingCallbacks) {
+                    notifyFailure(callback, response.request(), e);
+                }
+                return;
+            }
+
+            MediaType contentType = response.body().contentType();
+
+            for (Callback callback : waitingCallbacks) {
+                Response copy = response.newBuilder()
+                        .body(ResponseBody.create(contentType, bodyBytes))
+                        .build();
+
+                try {
+                    callback.onResponse(copy);
+                } catch (IOException | RuntimeException e) {
+                    // one failing callback must not keep the response from the other callbacks
+                    logger.error("Coalesced response callback failed: " + e.getLocalizedMessage());
+                }
+            }
+        }
+
+        private void notifyFailure(Callback callback, Request request, IOException e) {
+            try {
+                callback.onFailure(request, e);
+            } catch (RuntimeException callbackException) {
+                logger.error("Coalesced failure callback failed: " + callbackException.getLocalizedMessage());
+            }
+        }
+    }
+}
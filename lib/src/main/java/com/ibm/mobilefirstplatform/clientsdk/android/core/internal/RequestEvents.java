@@ -0,0 +1,243 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestEventListener;
+import com.squareup.okhttp.Dns;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.SocketFactory;
+
+import okio.BufferedSink;
+
+/**
+ * Connects the {@link RequestTimer} of a request to the OkHttp clients. OkHttp 2 has no event callbacks,
+ * so every client gets a DNS resolver, a socket factory and two interceptors that record the phases of
+ * the calls. DNS lookups, connects and TLS handshakes run on the thread of the call, which the application
+ * interceptor binds to the timer of the request.
+ */
+public class RequestEvents {
+
+    private static final List<RequestEventListener> listeners = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<RequestTimer> currentTimer = new ThreadLocal<>();
+
+    private static final Dns dns = new Dns() {
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            RequestTimer timer = currentTimer.get();
+
+            if (timer == null) {
+                return Dns.SYSTEM.lookup(hostname);
+            }
+
+            timer.dnsStarted(hostname);
+            List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+            timer.dnsEnded(hostname, addresses);
+
+            return addresses;
+        }
+    };
+
+    private static final SocketFactory socketFactory = new TimedSocketFactory();
+
+    private static final Interceptor callInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            RequestTimer timer = RequestTimer.of(request);
+
+            if (timer == null) {
+                return chain.proceed(request);
+            }
+
+            timer.attemptStarted(request.method(), request.urlString());
+
+            RequestTimer previous = currentTimer.get();
+            currentTimer.set(timer);
+
+            try {
+                return chain.proceed(request);
+            } catch (IOException e) {
+                timer.failed(e);
+                throw e;
+            } finally {
+                currentTimer.set(previous);
+            }
+        }
+    };
+
+    private static final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            RequestTimer timer = RequestTimer.of(request);
+
+            if (timer == null) {
+                return chain.proceed(request);
+            }
+
+            timer.connectionAcquired();
+
+            if (request.body() != null) {
+                request = request.newBuilder().method(request.method(), new TimedRequestBody(request.body(), timer)).build();
+            } else {
+                timer.requestSent();
+            }
+
+            Response response = chain.proceed(request);
+            timer.firstByteReceived();
+
+            return response;
+        }
+    };
+
+    private RequestEvents() {
+    }
+
+    /**
+     * Installs the DNS resolver, socket factory and interceptors that time the calls of a client.
+     *
+     * @param client the client
+     */
+    public static void install(OkHttpClient client) {
+        client.setDns(dns);
+        client.setSocketFactory(socketFactory);
+        client.interceptors().add(callInterceptor);
+        client.networkInterceptors().add(networkInterceptor);
+    }
+
+    /**
+     * @return the timer of the call running on the current thread, or null
+     */
+    static RequestTimer getCurrentTimer() {
+        return currentTimer.get();
+    }
+
+    public static void addListener(RequestEventListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public static void removeListener(RequestEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the registered listeners; an empty list without an iterator allocation when there are none
+     */
+    static List<RequestEventListener> getListeners() {
+        return listeners.isEmpty() ? Collections.<RequestEventListener>emptyList() : listeners;
+    }
+
+    /**
+     * Creates sockets that report their connect to the timer of the current call.
+     */
+    private static class TimedSocketFactory extends SocketFactory {
+
+        @Override
+        public Socket createSocket() {
+            return new TimedSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return SocketFactory.getDefault().createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return SocketFactory.getDefault().createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return SocketFactory.getDefault().createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return SocketFactory.getDefault().createSocket(address, port, localAddress, localPort);
+        }
+    }
+
+    private static class TimedSocket extends Socket {
+
+        @Override
+        public void connect(SocketAddress endpoint, int timeout) throws IOException {
+            RequestTimer timer = currentTimer.get();
+
+            if (timer == null || !(endpoint instanceof InetSocketAddress)) {
+                super.connect(endpoint, timeout);
+                return;
+            }
+
+            InetSocketAddress address = (InetSocketAddress) endpoint;
+            timer.connectStarted(address);
+
+            try {
+                super.connect(endpoint, timeout);
+            } catch (IOException e) {
+                timer.connectFailed(address, e);
+                throw e;
+            }
+
+            timer.connectEnded(address);
+        }
+    }
+
+    /**
+     * Reports when the body of a request has been written.
+     */
+    private static class TimedRequestBody extends RequestBody {
+        private final RequestBody body;
+        private final RequestTimer timer;
+
+        TimedRequestBody(RequestBody body, RequestTimer timer) {
+            this.body = body;
+            this.timer = timer;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return body.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            body.writeTo(sink);
+            timer.requestSent();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Orders calls by priority before they reach the OkHttp dispatcher.
+ * <p>
+ * The scheduler never releases more calls than the dispatcher would run at once (in total and per host),
+ * so the dispatcher's own FIFO queue stays empty and the order is decided here. Low and background calls
+ * to a host share a limited number of the slots of that host, so they can't take all its connections. To avoid starvation,
+ * a waiting call is raised by one priority level for every {@link #AGING_INTERVAL} milliseconds it waits.
+ * </p>
+ */
+public class RequestScheduler {
+
+    /**
+     * Time in milliseconds after which a waiting call is treated as one priority level higher.
+     */
+    public static final long AGING_INTERVAL = 2000;
+
+    /**
+     * Work to run once the scheduler has given it a slot.
+     */
+    public interface Task {
+        /**
+         * Starts the call. The slot must be released when the call finishes, usually by passing the
+         * callback through {@link Slot#releaseAfter(Callback)}.
+         *
+         * @param slot the slot taken by the call
+         */
+        void run(Slot slot);
+    }
+
+    private final Dispatcher dispatcher;
+    private final List<Slot> waiting = new LinkedList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, Integer> runningLowPriorityPerHost = new HashMap<>();
+    private int running = 0;
+    private float lowPriorityShare = 0.5f;
+
+    /**
+     * @param dispatcher the dispatcher whose limits the scheduler follows
+     */
+    public RequestScheduler(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the share of the per host limit that low and background calls to one host may use together.
+     * Calls to other hosts don't count against it.
+     *
+     * @param lowPriorityShare a value between 0 and 1, at least one slot is always available
+     */
+    public synchronized void setLowPriorityShare(float lowPriorityShare) {
+        this.lowPriorityShare = Math.max(0f, Math.min(1f, lowPriorityShare));
+    }
+
+    /**
+     * Runs the task now if there is a free slot, otherwise when one becomes available.
+     *
+     * @param priority the priority of the call
+     * @param host     the host the call goes to
+     * @param task     the task that starts the call
+     */
+    public void schedule(BaseRequest.Priority priority, String host, Task task) {
+        Slot slot = new Slot(priority, host, task);
+
+        synchronized (this) {
+            waiting.add(slot);
+        }
+
+        promote();
+    }
+
+    /**
+     * @return the number of calls waiting for a slot
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the number of calls that hold a slot
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    private void promote() {
+        List<Slot> ready = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Slot next;
+
+            while ((next = nextSlot(now)) != null) {
+                waiting.remove(next);
+                acquire(next);
+                ready.add(next);
+            }
+        }
+
+        for (Slot slot : ready) {
+            slot.task.run(slot);
+        }
+    }
+
+    private Slot nextSlot(long now) {
+        if (running >= dispatcher.getMaxRequests()) {
+            return null;
+        }
+
+        int maxPerHost = dispatcher.getMaxRequestsPerHost();
+        int maxLowPriority = Math.max(1, (int) (maxPerHost * lowPriorityShare));
+
+        Slot best = null;
+        long bestRank = Long.MAX_VALUE;
+
+        for (Slot slot : waiting) {
+            if (count(runningPerHost, slot.host) >= maxPerHost) {
+                continue;
+            }
+
+            if (slot.isLowPriority() && count(runningLowPriorityPerHost, slot.host) >= maxLowPriority) {
+                continue;
+            }
+
+            long rank = Math.max(0, slot.priority.ordinal() - (now - slot.scheduledAt) / AGING_INTERVAL);
+
+            // waiting is in arrival order, so on equal rank the earlier call wins
+            if (rank < bestRank) {
+                best = slot;
+                bestRank = rank;
+            }
+        }
+
+        return best;
+    }
+
+    private static int count(Map<String, Integer> counts, String host) {
+        Integer count = counts.get(host);
+        return count == null ? 0 : count;
+    }
+
+    private static void decrement(Map<String, Integer> counts, String host) {
+        int count = count(counts, host) - 1;
+
+        if (count > 0) {
+            counts.put(host, count);
+        } else {
+            counts.remove(host);
+        }
+    }
+
+    private void acquire(Slot slot) {
+        running++;
+        runningPerHost.put(slot.host, count(runningPerHost, slot.host) + 1);
+
+        if (slot.isLowPriority()) {
+            runningLowPriorityPerHost.put(slot.host, count(runningLowPriorityPerHost, slot.host) + 1);
+        }
+    }
+
+    private void release(Slot slot) {
+        synchronized (this) {
+            running--;
+            decrement(runningPerHost, slot.host);
+
+            if (slot.isLowPriority()) {
+                decrement(runningLowPriorityPerHost, slot.host);
+            }
+        }
+
+        promote();
+    }
+
+    /**
+     * Removes a call that has not started yet.
+     *
+     * @param task the task that was scheduled
+     * @return true if the call was still waiting
+     */
+    public boolean remove(Task task) {
+        synchronized (this) {
+            Iterator<Slot> iterator = waiting.iterator();
+
+            while (iterator.hasNext()) {
+                if (iterator.next().task == task) {
+                    iterator.remove();
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A place in the scheduler, held from the moment a call starts until its response body is closed or read
+     * to the end, because the connection stays busy until then.
+     */
+    public class Slot {
+        private final BaseRequest.Priority priority;
+        private final String host;
+        private final Task task;
+        private final long scheduledAt = System.currentTimeMillis();
+        private boolean released = false;
+
+        private Slot(BaseRequest.Priority priority, String host, Task task) {
+            this.priority = priority;
+            this.host = host;
+            this.task = task;
+        }
+
+        private boolean isLowPriority() {
+            return priority == BaseRequest.Priority.LOW || priority == BaseRequest.Priority.BACKGROUND;
+        }
+
+        /**
+         * Gives the slot back to the scheduler. Calling this more than once has no effect.
+         */
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+
+                released = true;
+            }
+
+            RequestScheduler.this.release(this);
+        }
+
+        /**
+         * Wraps a callback so that this slot is released when the call finishes: when it fails, or when the
+         * body of its response is closed or read to the end. The callback must close the body it gets.
+         *
+         * @param callback the callback of the call
+         * @return the callback to pass to OkHttp
+         */
+        public Callback releaseAfter(final Callback callback) {
+            return new Callback() {
+                @Override
+                public void onFailure(Request request, IOException e) {
+                    release();
+                    callback.onFailure(request, e);
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    Response releasingResponse = response.newBuilder()
+                            .body(new ReleasingBody(response.body()))
+                            .build();
+
+                    try {
+                        callback.onResponse(releasingResponse);
+                    } catch (IOException | RuntimeException e) {
+                        release();
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        /**
+         * A response body that releases the slot once it is closed or exhausted.
+         */
+        private class ReleasingBody extends ResponseBody {
+            private final ResponseBody body;
+            private BufferedSource source;
+
+            ReleasingBody(ResponseBody body) {
+                this.body = body;
+            }
+
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return body.contentLength();
+            }
+
+            @Override
+            public synchronized BufferedSource source() throws IOException {
+                if (source == null) {
+                    source = Okio.buffer(new ForwardingSource(body.source()) {
+                        @Override
+                        public long read(Buffer sink, long byteCount) throws IOException {
+                            long read = super.read(sink, byteCount);
+
+                            if (read == -1) {
+                                release();
+                            }
+
+                            return read;
+                        }
+
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                release();
+                            }
+                        }
+                    });
+                }
+
+                return source;
+            }
+        }
+    }
+}
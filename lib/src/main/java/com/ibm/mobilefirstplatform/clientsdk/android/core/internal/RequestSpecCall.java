@@ -0,0 +1,217 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestSpec;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.StreamingResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.api.MCAAuthorizationManager;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One call of a {@link RequestSpec}. The call holds the authorization and retry state that a {@link
+ * com.ibm.mobilefirstplatform.clientsdk.android.core.api.Request} keeps in its fields, so a spec can be sent
+ * any number of times concurrently. Attempts of one call run one after the other, and share the handle that
+ * cancels them.
+ */
+public class RequestSpecCall {
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final int MAX_AUTHORIZATION_ATTEMPTS = 2;
+
+    private final RequestSpec spec;
+    private final Context context;
+    private final CallHandle handle = new CallHandle();
+    private final ResponseListener listener;
+
+    private int authorizationAttempts = 0;
+    private int retries = 0;
+
+    public RequestSpecCall(RequestSpec spec, Context context, ResponseListener listener) {
+        this.spec = spec;
+        this.context = context;
+        this.listener = ResponseDelivery.wrap(listener, spec.getCallbackExecutor(), handle, spec.getTag());
+    }
+
+    /**
+     * Sends the first attempt of this call.
+     */
+    public void start() {
+        RetryEngine.getBudget().onRequest();
+        sendAttempt();
+    }
+
+    /**
+     * Cancels this call, whether it waits to be sent, waits for authorization or a retry, or is in flight.
+     *
+     * @return true if the call was cancelled
+     */
+    public boolean cancel() {
+        return handle.cancel();
+    }
+
+    private void sendAttempt() {
+        // the template is shared, every call gets its own request carrying the timer of its handle
+        Request.Builder requestBuilder = spec.getTemplate().newBuilder().tag(handle.getRequestTimer());
+        String cachedAuthHeader = getAuthorizationManager().getCachedAuthorizationHeader();
+
+        if (cachedAuthHeader != null) {
+            requestBuilder.header(AUTHORIZATION, cachedAuthHeader);
+        }
+
+        Request request = requestBuilder.build();
+
+        boolean coalesce = spec.isCoalescingEnabled() && spec.getMethod() == BaseRequest.Method.GET
+                && !(listener instanceof StreamingResponseListener);
+
+        BaseRequest.dispatch(BaseRequest.getResourceScheduler(), spec.getPriority(),
+                BaseRequest.getClientForCall(BaseRequest.getResourceClient(), spec.getTimeout(), spec.getFollowRedirects()),
+                request, new AttemptCallback(), coalesce, handle);
+    }
+
+    private static AuthorizationManager getAuthorizationManager() {
+        return BMSClient.getInstance().getAuthorizationManager();
+    }
+
+    private void retry(long delay) {
+        retries++;
+
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                sendAttempt();
+            }
+        };
+
+        if (!handle.scheduleRetry(retry, delay, cancelled())) {
+            cancelled().run();
+        }
+    }
+
+    private Runnable cancelled() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailure(null, new RequestCancelledException(), null);
+            }
+        };
+    }
+
+    private class AttemptCallback implements Callback {
+
+        @Override
+        public void onFailure(Request request, IOException e) {
+            // retrying is pointless while the circuit breaker of the host is open, or after a cancel
+            boolean retryable = !(e instanceof CircuitBreakerOpenException) && !(e instanceof RequestCancelledException);
+            long delay = retryable ? RetryEngine.getRetryDelay(spec.getRetryPolicy(), spec.getMethod().name(), retries)
+                    : RetryEngine.NO_RETRY;
+
+            if (delay == RetryEngine.NO_RETRY) {
+                listener.onFailure(null, e, null);
+            } else {
+                retry(delay);
+            }
+        }
+
+        @Override
+        public void onResponse(com.squareup.okhttp.Response response) throws IOException {
+            AuthorizationManager authorizationManager = getAuthorizationManager();
+            Map<String, List<String>> responseHeaders = response.headers().toMultimap();
+
+            if (authorizationManager.isAuthorizationRequired(response.code(), responseHeaders)) {
+                obtainAuthorization(authorizationManager, response);
+                return;
+            }
+
+            if (response.isSuccessful() || response.isRedirect()) {
+                BaseRequest.deliverSuccess(listener, response);
+                return;
+            }
+
+            long delay = RetryEngine.getRetryDelay(spec.getRetryPolicy(), spec.getMethod().name(), retries, response);
+
+            if (delay == RetryEngine.NO_RETRY) {
+                BaseRequest.deliverFailure(listener, response);
+            } else {
+                response.body().close();
+                retry(delay);
+            }
+        }
+
+        private void obtainAuthorization(final AuthorizationManager authorizationManager,
+                                         com.squareup.okhttp.Response response) throws IOException {
+            if (authorizationAttempts++ >= MAX_AUTHORIZATION_ATTEMPTS) {
+                BaseRequest.deliverFailure(listener, response);
+                return;
+            }
+
+            response.body().close();
+
+            final RequestTimer timer = handle.getRequestTimer();
+            final ResponseListener authorizationListener = new ResponseListener() {
+                @Override
+                public void onSuccess(Response authResponse) {
+                    timer.authorizationEnded(true);
+
+                    // the listener was told when the call was cancelled
+                    if (handle.onWaitingDone()) {
+                        // the new attempt takes the authorization header cached by obtainAuthorization
+                        sendAttempt();
+                    }
+                }
+
+                @Override
+                public void onFailure(Response authResponse, Throwable t, JSONObject extendedInfo) {
+                    timer.authorizationEnded(false);
+
+                    if (handle.onWaitingDone()) {
+                        listener.onFailure(authResponse, t, extendedInfo);
+                    }
+                }
+            };
+
+            boolean waiting = handle.onWaiting(new Runnable() {
+                @Override
+                public void run() {
+                    if (authorizationManager instanceof MCAAuthorizationManager) {
+                        ((MCAAuthorizationManager) authorizationManager).cancelAuthorizationWait(authorizationListener);
+                    }
+
+                    listener.onFailure(null, new RequestCancelledException(), null);
+                }
+            });
+
+            if (waiting) {
+                timer.authorizationStarted();
+                authorizationManager.obtainAuthorization(context, authorizationListener);
+            } else {
+                cancelled().run();
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestEventListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.squareup.okhttp.Request;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the phases of one request across all its attempts and reports them to the registered
+ * {@link RequestEventListener}s. The timer travels with the request as the tag of its OkHttp requests.
+ * <p>
+ * Every phase is recorded with one clock read, and events are only built when a listener is registered.
+ * Listeners are called outside the lock of the timer.
+ * </p>
+ */
+public class RequestTimer {
+
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private final long id = nextId.incrementAndGet();
+
+    private int attempts = 0;
+    private long callStart;
+    private long dnsStart;
+    private long dnsEnd;
+    private long connectStart;
+    private long connectEnd;
+    private long tlsStart;
+    private long tlsEnd;
+    private long requestStart;
+    private long requestSent;
+    private long firstByte;
+    private long bodyComplete;
+
+    private long authorizationStart;
+    private long authorizationTime;
+    private int authorizationCount;
+
+    /**
+     * @param request an OkHttp request
+     * @return the timer of the request, or null if it has none
+     */
+    public static RequestTimer of(Request request) {
+        if (request == null) {
+            return null;
+        }
+
+        Object tag = request.tag();
+        return tag instanceof RequestTimer ? (RequestTimer) tag : null;
+    }
+
+    /**
+     * @return the id reported with every event of the request
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Starts a new attempt, clearing the phases of the previous one.
+     *
+     * @param method the HTTP method
+     * @param url    the URL of the request
+     */
+    public void attemptStarted(String method, String url) {
+        boolean first;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            first = attempts++ == 0;
+
+            if (first) {
+                callStart = now;
+            }
+
+            dnsStart = dnsEnd = 0;
+            connectStart = connectEnd = 0;
+            tlsStart = tlsEnd = 0;
+            requestStart = requestSent = 0;
+            firstByte = bodyComplete = 0;
+        }
+
+        if (first) {
+            for (RequestEventListener listener : listeners()) {
+                listener.callStart(id, method, url);
+            }
+        }
+    }
+
+    public void dnsStarted(String host) {
+        synchronized (this) {
+            dnsStart = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.dnsStart(id, host);
+        }
+    }
+
+    public void dnsEnded(String host, List<InetAddress> addresses) {
+        synchronized (this) {
+            dnsEnd = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.dnsEnd(id, host, addresses);
+        }
+    }
+
+    public void connectStarted(InetSocketAddress address) {
+        synchronized (this) {
+            connectStart = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.connectStart(id, address);
+        }
+    }
+
+    public void connectEnded(InetSocketAddress address) {
+        synchronized (this) {
+            connectEnd = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.connectEnd(id, address);
+        }
+    }
+
+    public void connectFailed(InetSocketAddress address, IOException e) {
+        for (RequestEventListener listener : listeners()) {
+            listener.connectFailed(id, address, e);
+        }
+    }
+
+    public void tlsStarted(String host) {
+        synchronized (this) {
+            tlsStart = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.tlsStart(id, host);
+        }
+    }
+
+    /**
+     * The attempt got a connection and is about to write the request. Ends a pending TLS handshake, which
+     * has no callback of its own on the connecting thread.
+     */
+    public void connectionAcquired() {
+        boolean handshakeEnded = false;
+
+        synchronized (this) {
+            requestStart = System.nanoTime();
+
+            if (tlsStart != 0 && tlsEnd == 0) {
+                tlsEnd = requestStart;
+                handshakeEnded = true;
+            }
+        }
+
+        if (handshakeEnded) {
+            for (RequestEventListener listener : listeners()) {
+                listener.tlsEnd(id);
+            }
+        }
+    }
+
+    public void requestSent() {
+        synchronized (this) {
+            requestSent = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.requestSent(id);
+        }
+    }
+
+    public void firstByteReceived() {
+        synchronized (this) {
+            firstByte = System.nanoTime();
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.firstByte(id);
+        }
+    }
+
+    /**
+     * The response body of the attempt was read, which ends the request. Only the first call counts, later
+     * calls come from responses shared by coalesced requests.
+     *
+     * @param byteCount the size of the body, or -1 if unknown
+     */
+    public void bodyCompleted(long byteCount) {
+        synchronized (this) {
+            if (bodyComplete != 0) {
+                return;
+            }
+
+            bodyComplete = System.nanoTime();
+        }
+
+        List<RequestEventListener> listeners = listeners();
+
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        RequestTimings timings = getTimings();
+
+        for (RequestEventListener listener : listeners) {
+            listener.bodyComplete(id, byteCount);
+            listener.callEnd(id, timings);
+        }
+    }
+
+    public void failed(IOException e) {
+        for (RequestEventListener listener : listeners()) {
+            listener.callFailed(id, e);
+        }
+    }
+
+    public void authorizationStarted() {
+        synchronized (this) {
+            authorizationStart = System.nanoTime();
+            authorizationCount++;
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.authorizationStart(id);
+        }
+    }
+
+    public void authorizationEnded(boolean success) {
+        synchronized (this) {
+            if (authorizationStart != 0) {
+                authorizationTime += System.nanoTime() - authorizationStart;
+                authorizationStart = 0;
+            }
+        }
+
+        for (RequestEventListener listener : listeners()) {
+            listener.authorizationEnd(id, success);
+        }
+    }
+
+    /**
+     * @return a snapshot of the phases measured so far
+     */
+    public synchronized RequestTimings getTimings() {
+        long end = bodyComplete != 0 ? bodyComplete : System.nanoTime();
+        long sent = requestSent != 0 ? requestSent : requestStart;
+
+        return new RequestTimings(
+                millis(dnsStart, dnsEnd),
+                millis(connectStart, connectEnd),
+                millis(tlsStart, tlsEnd),
+                millis(requestStart, requestSent),
+                millis(sent, firstByte),
+                millis(firstByte, bodyComplete),
+                TimeUnit.NANOSECONDS.toMillis(authorizationTime),
+                authorizationCount,
+                attempts,
+                attempts > 0 ? TimeUnit.NANOSECONDS.toMillis(end - callStart) : -1,
+                requestStart != 0 && connectStart == 0);
+    }
+
+    private static long millis(long start, long end) {
+        return start != 0 && end != 0 ? TimeUnit.NANOSECONDS.toMillis(end - start) : -1;
+    }
+
+    private static List<RequestEventListener> listeners() {
+        return RequestEvents.getListeners();
+    }
+}
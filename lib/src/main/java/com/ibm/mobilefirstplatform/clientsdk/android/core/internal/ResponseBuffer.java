@@ -0,0 +1,479 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.LargeBodyPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseBodyTooLargeException;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * A response body read from the network, held in a pooled buffer, in an array of its own when it is larger than
+ * the buffers of the {@link BufferPool}, or in a temporary file when it is larger than the in-memory limit.
+ * {@link #release()} gives the buffer back to the pool or deletes the file. The pooled buffer never leaves this
+ * class: streams and arrays handed out are copies, or arrays of their own. The file of a buffer that becomes
+ * unreachable without being released is deleted the next time a body is spilled or a buffer released, and
+ * files left behind by an earlier run are deleted when their directory is set with {@link #setSpillDirectory}.
+ */
+public class ResponseBuffer {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    static final String SPILL_PREFIX = "bms-response-body";
+    static final String SPILL_SUFFIX = ".tmp";
+
+    private static volatile long maxInMemorySize = Long.MAX_VALUE;
+    private static volatile LargeBodyPolicy largeBodyPolicy = LargeBodyPolicy.SPILL_TO_FILE;
+    private static volatile File spillDirectory = null;
+    // the directories cleaned by this process, whose spill files now all belong to live buffers
+    private static final Set<File> cleanedDirectories = new HashSet<>();
+
+    // keeps the references of spill files reachable until their buffer is released or collected
+    private static final Set<SpillFileReference> spillFiles = new HashSet<>();
+    private static final ReferenceQueue<ResponseBuffer> unreachableBuffers = new ReferenceQueue<>();
+
+    private static class SpillFileReference extends PhantomReference<ResponseBuffer> {
+        final File file;
+
+        SpillFileReference(ResponseBuffer buffer, File file) {
+            super(buffer, unreachableBuffers);
+            this.file = file;
+        }
+    }
+
+    private byte[] data;
+    private final int length;
+    private boolean pooled;
+    private File file;
+    private final long fileLength;
+    private SpillFileReference spillFileReference;
+
+    private ResponseBuffer(byte[] data, int length, boolean pooled) {
+        this.data = data;
+        this.length = length;
+        this.pooled = pooled;
+        this.file = null;
+        this.fileLength = -1;
+    }
+
+    private ResponseBuffer(File file, long fileLength) {
+        this.data = null;
+        this.length = -1;
+        this.pooled = false;
+        this.file = file;
+        this.fileLength = fileLength;
+        this.spillFileReference = new SpillFileReference(this, file);
+
+        synchronized (spillFiles) {
+            spillFiles.add(spillFileReference);
+        }
+    }
+
+    /**
+     * Sets the largest body kept in memory and what happens to larger bodies.
+     *
+     * @param maxSize the limit in bytes, or Long.MAX_VALUE for no limit
+     * @param policy  what happens to larger bodies
+     */
+    public static void setLimit(long maxSize, LargeBodyPolicy policy) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy is null");
+        }
+
+        maxInMemorySize = maxSize;
+        largeBodyPolicy = policy;
+    }
+
+    public static long getMaxInMemorySize() {
+        return maxInMemorySize;
+    }
+
+    public static LargeBodyPolicy getLargeBodyPolicy() {
+        return largeBodyPolicy;
+    }
+
+    /**
+     * Sets the directory of the temporary files of spilled bodies. The first time a directory is set, the
+     * files that an earlier run of the application left in it are deleted.
+     *
+     * @param directory the directory, or null for the default temporary directory
+     */
+    public static void setSpillDirectory(File directory) {
+        if (directory != null) {
+            deleteStaleSpillFiles(directory);
+        }
+
+        spillDirectory = directory;
+    }
+
+    private static void deleteStaleSpillFiles(File directory) {
+        synchronized (cleanedDirectories) {
+            if (!cleanedDirectories.add(directory)) {
+                return;
+            }
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (name.startsWith(SPILL_PREFIX) && name.endsWith(SPILL_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads a response body and closes it.
+     *
+     * @param body the body
+     * @return the buffered body
+     * @throws ResponseBodyTooLargeException if the body is over the limit and the policy is to fail
+     * @throws IOException if the body can't be read
+     */
+    public static ResponseBuffer read(ResponseBody body) throws IOException {
+        try {
+            long contentLength = body.contentLength();
+            long limit = maxInMemorySize;
+            LargeBodyPolicy policy = largeBodyPolicy;
+            BufferedSource source = body.source();
+
+            if (contentLength > limit) {
+                if (policy == LargeBodyPolicy.FAIL) {
+                    throw new ResponseBodyTooLargeException(limit, contentLength);
+                }
+
+                return spill(source, EMPTY, 0);
+            }
+
+            // no array can hold it
+            if (contentLength > MAX_ARRAY_SIZE) {
+                return spill(source, EMPTY, 0);
+            }
+
+            if (contentLength >= 0) {
+                return readFixedLength(source, (int) contentLength);
+            }
+
+            return readChunked(source, limit, policy);
+        } finally {
+            try {
+                body.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static ResponseBuffer readFixedLength(BufferedSource source, int contentLength) throws IOException {
+        if (contentLength == 0) {
+            return new ResponseBuffer(EMPTY, 0, false);
+        }
+
+        boolean pooled = contentLength <= BufferPool.MAX_BUFFER_SIZE;
+        byte[] buffer = pooled ? BufferPool.acquire(contentLength) : new byte[contentLength];
+        int count = 0;
+
+        try {
+            while (count < contentLength) {
+                int read = source.read(buffer, count, contentLength - count);
+
+                if (read == -1) {
+                    throw new IOException("Content-Length (" + contentLength + ") and stream length (" + count + ") disagree");
+                }
+
+                count += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (pooled) {
+                BufferPool.release(buffer);
+            }
+            throw e;
+        }
+
+        return new ResponseBuffer(buffer, contentLength, pooled);
+    }
+
+    private static ResponseBuffer readChunked(BufferedSource source, long limit, LargeBodyPolicy policy) throws IOException {
+        byte[] buffer = BufferPool.acquire(BufferPool.MIN_BUFFER_SIZE);
+        boolean pooled = true;
+        int count = 0;
+
+        try {
+            while (true) {
+                int capacity = (int) Math.min(buffer.length, limit);
+
+                if (count == capacity) {
+                    if (count >= limit || count >= MAX_ARRAY_SIZE) {
+                        if (source.exhausted()) {
+                            break;
+                        }
+                        if (policy == LargeBodyPolicy.FAIL) {
+                            throw new ResponseBodyTooLargeException(limit, -1);
+                        }
+
+                        ResponseBuffer spilled = spill(source, buffer, count);
+
+                        if (pooled) {
+                            BufferPool.release(buffer);
+                        }
+                        return spilled;
+                    }
+
+                    int newSize = (int) Math.min(Math.min(count * 2L, limit), MAX_ARRAY_SIZE);
+                    boolean newPooled = newSize <= BufferPool.MAX_BUFFER_SIZE;
+                    byte[] larger = newPooled ? BufferPool.acquire(newSize) : new byte[newSize];
+
+                    System.arraycopy(buffer, 0, larger, 0, count);
+
+                    if (pooled) {
+                        BufferPool.release(buffer);
+                    }
+
+                    buffer = larger;
+                    pooled = newPooled;
+                    continue;
+                }
+
+                int read = source.read(buffer, count, capacity - count);
+
+                if (read == -1) {
+                    break;
+                }
+
+                count += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (pooled) {
+                BufferPool.release(buffer);
+            }
+            throw e;
+        }
+
+        return new ResponseBuffer(buffer, count, pooled);
+    }
+
+    /**
+     * Deletes the spill files of the buffers that became unreachable without being released.
+     */
+    static void deleteUnreachableSpillFiles() {
+        Reference<? extends ResponseBuffer> reference;
+
+        while ((reference = unreachableBuffers.poll()) != null) {
+            synchronized (spillFiles) {
+                spillFiles.remove(reference);
+            }
+
+            ((SpillFileReference) reference).file.delete();
+        }
+    }
+
+    private static ResponseBuffer spill(BufferedSource source, byte[] prefix, int prefixLength) throws IOException {
+        deleteUnreachableSpillFiles();
+
+        File spillFile = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX, spillDirectory);
+        boolean complete = false;
+
+        try {
+            BufferedSink sink = Okio.buffer(Okio.sink(spillFile));
+
+            try {
+                sink.write(prefix, 0, prefixLength);
+                sink.writeAll(source);
+            } finally {
+                sink.close();
+            }
+
+            complete = true;
+        } finally {
+            if (!complete) {
+                spillFile.delete();
+            }
+        }
+
+        return new ResponseBuffer(spillFile, spillFile.length());
+    }
+
+    /**
+     * @return the size of the body in bytes
+     */
+    public long length() {
+        return isSpilled() ? fileLength : length;
+    }
+
+    /**
+     * @return true if the body is in a temporary file
+     */
+    public boolean isSpilled() {
+        return fileLength >= 0;
+    }
+
+    /**
+     * Opens a stream of the body. A stream of a body in memory reads a copy, so it stays valid after
+     * {@link #release()}.
+     *
+     * @return a stream of the body, or null once the buffer was released
+     * @throws IOException if the temporary file can't be opened
+     */
+    public synchronized InputStream openStream() throws IOException {
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+
+        byte[] bytes = toByteArray();
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    /**
+     * @return a copy of the body that stays valid after {@link #release()}, or null if the body is in a
+     * temporary file or the buffer was released
+     */
+    public synchronized byte[] toByteArray() {
+        if (data == null) {
+            return null;
+        }
+
+        // an array of its own can be handed out as is
+        if (!pooled && data.length == length) {
+            return data;
+        }
+
+        return Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Decodes the body without copying the buffer.
+     *
+     * @param charset the charset of the body
+     * @return the text of the body, or null if the body is in a temporary file or the buffer was released
+     */
+    public synchronized String decode(Charset charset) {
+        if (data == null) {
+            return null;
+        }
+
+        return new String(data, 0, length, charset);
+    }
+
+    /**
+     * Tells whether the body is well-formed UTF-8, in which case the text decoded from it encodes back to the
+     * same bytes.
+     *
+     * @return true if the body is in memory and is well-formed UTF-8
+     */
+    public synchronized boolean isValidUtf8() {
+        return data != null && isValidUtf8(data, length);
+    }
+
+    private static boolean isValidUtf8(byte[] bytes, int length) {
+        int i = 0;
+
+        while (i < length) {
+            int b = bytes[i] & 0xff;
+
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+
+            int continuations;
+
+            if (b >= 0xc2 && b <= 0xdf) {
+                continuations = 1;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                continuations = 2;
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                continuations = 3;
+            } else {
+                return false;
+            }
+
+            if (length - i <= continuations) {
+                return false;
+            }
+
+            // the second byte also rules out overlong forms, surrogates and code points above U+10FFFF
+            int low = b == 0xe0 ? 0xa0 : (b == 0xf0 ? 0x90 : 0x80);
+            int high = b == 0xed ? 0x9f : (b == 0xf4 ? 0x8f : 0xbf);
+            int second = bytes[i + 1] & 0xff;
+
+            if (second < low || second > high) {
+                return false;
+            }
+
+            for (int k = 2; k <= continuations; k++) {
+                int next = bytes[i + k] & 0xff;
+
+                if (next < 0x80 || next > 0xbf) {
+                    return false;
+                }
+            }
+
+            i += continuations + 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gives the buffer back to the pool or deletes the temporary file. Streams of a temporary file opened
+     * before must not be read afterwards; arrays and streams of a body in memory stay valid.
+     */
+    public synchronized void release() {
+        if (pooled && data != null) {
+            BufferPool.release(data);
+        }
+
+        data = null;
+        pooled = false;
+
+        if (file != null) {
+            file.delete();
+            file = null;
+
+            synchronized (spillFiles) {
+                spillFiles.remove(spillFileReference);
+            }
+
+            spillFileReference.clear();
+            spillFileReference = null;
+        }
+
+        deleteUnreachableSpillFiles();
+    }
+}
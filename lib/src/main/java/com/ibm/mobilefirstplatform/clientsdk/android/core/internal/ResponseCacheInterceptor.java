@@ -0,0 +1,94 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CacheStatistics;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application interceptor that counts how responses were served by the response cache.
+ * Counting only happens while a cache is installed.
+ */
+public class ResponseCacheInterceptor implements Interceptor {
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    private volatile boolean enabled = false;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+
+        if (enabled) {
+            record(response);
+        }
+
+        return response;
+    }
+
+    private void record(Response response) {
+        Response networkResponse = response.networkResponse();
+        Response cacheResponse = response.cacheResponse();
+
+        if (networkResponse == null && cacheResponse != null) {
+            hitCount.incrementAndGet();
+        } else if (networkResponse != null && cacheResponse != null && networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            revalidationCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Turns counting on or off and resets the counters.
+     *
+     * @param enabled true if a cache is installed
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        hitCount.set(0);
+        missCount.set(0);
+        revalidationCount.set(0);
+    }
+
+    /**
+     * @param cache the installed cache, may be null
+     * @return the current counters together with the size of the given cache
+     */
+    public CacheStatistics getStatistics(Cache cache) {
+        long size = 0;
+        long maxSize = 0;
+
+        if (cache != null) {
+            try {
+                size = cache.getSize();
+            } catch (IOException e) {
+                size = -1;
+            }
+
+            maxSize = cache.getMaxSize();
+        }
+
+        return new CacheStatistics(hitCount.get(), missCount.get(), revalidationCount.get(), size, maxSize);
+    }
+}
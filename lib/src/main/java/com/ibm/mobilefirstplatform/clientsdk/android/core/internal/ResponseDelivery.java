@@ -0,0 +1,260 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CallbackExecutors;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.StreamingResponseListener;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides on which threads responses are read and listeners are called.
+ * <p>
+ * Without a parse pool, response bodies are read on the network thread that received them. With a parse pool,
+ * they are read on one of its threads instead, so network threads go back to the dispatcher at once. Listeners
+ * are then called through their callback executor; the direct executor calls them on the thread that read the
+ * response.
+ * </p>
+ */
+public class ResponseDelivery {
+
+    private static final long PARSE_THREAD_KEEP_ALIVE = 30;
+
+    private static volatile Executor defaultExecutor = CallbackExecutors.direct();
+    private static volatile ThreadPoolExecutor parsePool = null;
+
+    /**
+     * Sets the executor for listeners of requests that have no executor of their own.
+     *
+     * @param executor the executor, or null for the direct executor
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        defaultExecutor = executor != null ? executor : CallbackExecutors.direct();
+    }
+
+    public static Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    /**
+     * Sets the number of threads that read response bodies. Tasks queue up when all the threads are busy.
+     *
+     * @param threads the number of threads, or 0 to read responses on the network threads
+     */
+    public static synchronized void setParsePoolSize(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads < 0: " + threads);
+        }
+
+        ThreadPoolExecutor previous = parsePool;
+
+        if (threads == 0) {
+            parsePool = null;
+        } else if (previous != null) {
+            // raise the maximum first, so the core size never exceeds it
+            if (threads > previous.getMaximumPoolSize()) {
+                previous.setMaximumPoolSize(threads);
+                previous.setCorePoolSize(threads);
+            } else {
+                previous.setCorePoolSize(threads);
+                previous.setMaximumPoolSize(threads);
+            }
+            return;
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, PARSE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ParseThreadFactory());
+            pool.allowCoreThreadTimeOut(true);
+            parsePool = pool;
+        }
+
+        if (previous != null) {
+            // queued tasks still run
+            previous.shutdown();
+        }
+    }
+
+    public static int getParsePoolSize() {
+        ThreadPoolExecutor pool = parsePool;
+        return pool != null ? pool.getMaximumPoolSize() : 0;
+    }
+
+    /**
+     * Runs a task that reads a response on the parse pool, or on the calling thread if there is no parse pool
+     * or the calling thread is part of it.
+     *
+     * @param task the task
+     */
+    public static void parse(Runnable task) {
+        ThreadPoolExecutor pool = parsePool;
+
+        if (pool == null || Thread.currentThread() instanceof ParseThread) {
+            task.run();
+            return;
+        }
+
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the pool was just replaced
+            task.run();
+        }
+    }
+
+    /**
+     * Wraps the listener of a request, so that it is called through the given executor and the call is
+     * removed from the registry of tagged calls when it finishes. Streaming listeners are called on the
+     * thread that reads the body, which stays open only until they return, so only their failures go
+     * through the executor.
+     *
+     * @param listener the listener of the request
+     * @param executor the executor, or null for the default executor
+     * @param handle   the handle of the call
+     * @param tag      the tag of the call, or null
+     * @return the listener to pass to the request
+     */
+    public static ResponseListener wrap(ResponseListener listener, Executor executor, CallHandle handle, Object tag) {
+        if (listener == null) {
+            return null;
+        }
+
+        if (tag != null) {
+            CallRegistry.register(tag, handle);
+        }
+
+        Executor callbackExecutor = executor != null ? executor : defaultExecutor;
+
+        if (listener instanceof StreamingResponseListener) {
+            return new StreamingDeliveringListener(listener, callbackExecutor, handle, tag);
+        }
+
+        return new DeliveringListener(listener, callbackExecutor, handle, tag);
+    }
+
+    /**
+     * @param listener the listener of a request
+     * @return true if the listener gives the pooled buffer of a buffered response back itself, once the
+     * listener of the application returned
+     */
+    public static boolean releasesPooledBuffers(ResponseListener listener) {
+        return listener instanceof DeliveringListener;
+    }
+
+    private static void releasePooledBuffer(Response response) {
+        if (response instanceof ResponseImpl) {
+            ((ResponseImpl) response).releasePooledBuffer();
+        }
+    }
+
+    private static class DeliveringListener implements ResponseListener {
+        final ResponseListener listener;
+        final Executor executor;
+        final CallHandle handle;
+        final Object tag;
+
+        DeliveringListener(ResponseListener listener, Executor executor, CallHandle handle, Object tag) {
+            this.listener = listener;
+            this.executor = executor;
+            this.handle = handle;
+            this.tag = tag;
+        }
+
+        void finish() {
+            if (tag != null) {
+                CallRegistry.unregister(tag, handle);
+            }
+        }
+
+        @Override
+        public void onSuccess(final Response response) {
+            finish();
+
+            parse(new Runnable() {
+                @Override
+                public void run() {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                listener.onSuccess(response);
+                            } finally {
+                                releasePooledBuffer(response);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(final Response response, final Throwable t, final JSONObject extendedInfo) {
+            finish();
+
+            parse(new Runnable() {
+                @Override
+                public void run() {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                listener.onFailure(response, t, extendedInfo);
+                            } finally {
+                                releasePooledBuffer(response);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private static class StreamingDeliveringListener extends DeliveringListener implements StreamingResponseListener {
+
+        StreamingDeliveringListener(ResponseListener listener, Executor executor, CallHandle handle, Object tag) {
+            super(listener, executor, handle, tag);
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            finish();
+            listener.onSuccess(response);
+        }
+    }
+
+    private static class ParseThread extends Thread {
+        ParseThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    private static class ParseThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new ParseThread(runnable, "BMS Response Parser " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -13,46 +13,111 @@
 
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
-import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ExtendedResponse;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.LargeBodyPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseBodyTooLargeException;
 import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
 import com.squareup.okhttp.Headers;
 import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.ResponseBody;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import okio.BufferedSource;
+
 import static com.squareup.okhttp.internal.Util.UTF_8;
 
-public class ResponseImpl implements Response {
+public class ResponseImpl implements ExtendedResponse {
     private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ResponseImpl.class.getSimpleName());
     private com.squareup.okhttp.Response okHttpResponse;
     private Headers headers;
     private MediaType contentType;
     private byte bodyBytes[];
+    private ResponseBuffer bodyBuffer;
+    private ResponseBody streamingBody;
+    private ResponseBodyTooLargeException bodyTooLarge;
+    private RequestTimer timer;
+    // the pooled buffer went back once the body was decoded, the bytes are encoded back from the text
+    private boolean bytesFromText;
+
+    // decoded once, on first use
+    private String responseText;
+    private JSONObject responseJSON;
+    private Map<String, List<String>> headerMap;
+    private Set<String> headerNames;
 
     public ResponseImpl(com.squareup.okhttp.Response response) {
+        this(response, false);
+    }
+
+    /**
+     * Creates a response wrapper. A buffered response reads the whole body right away, into a pooled buffer,
+     * or into a temporary file when it is larger than the in-memory limit. The buffer goes back to the pool
+     * once the body is decoded as UTF-8 text or copied by {@link #getResponseBytes()}, and at the latest when
+     * the listener returns; {@link #close()} also deletes the file. A streaming response leaves the body on the
+     * connection, it is read through {@link #getResponseByteStream()} or {@link #getResponseSource()} and must
+     * be released with {@link #close()}.
+     *
+     * @param response the OkHttp response
+     * @param streaming true to leave the body unread
+     */
+    public ResponseImpl(com.squareup.okhttp.Response response, boolean streaming) {
         okHttpResponse = response;
 
         if (okHttpResponse != null) {
             headers = okHttpResponse.headers();
+            contentType = okHttpResponse.body().contentType();
+            timer = RequestTimer.of(okHttpResponse.request());
 
-            try {
-                bodyBytes = okHttpResponse.body().bytes();
-            } catch (Exception e) {
-                logger.error("Response body bytes can't be read: " + e.getLocalizedMessage());
-                bodyBytes = null;
+            if (streaming) {
+                streamingBody = okHttpResponse.body();
+            } else {
+                bodyBuffer = readBody(okHttpResponse.body());
+                onBodyComplete(bodyBuffer != null ? bodyBuffer.length() : 0);
             }
+        }
+    }
 
-            contentType = okHttpResponse.body().contentType();
+    private void onBodyComplete(long byteCount) {
+        if (timer != null) {
+            timer.bodyCompleted(byteCount);
         }
     }
 
+    private ResponseBuffer readBody(ResponseBody body) {
+        try {
+            return ResponseBuffer.read(body);
+        } catch (ResponseBodyTooLargeException e) {
+            logger.error(e.getLocalizedMessage());
+            bodyTooLarge = e;
+            return null;
+        } catch (Exception e) {
+            logger.error("Response body bytes can't be read: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the error of a body that was over the in-memory limit with the {@link LargeBodyPolicy#FAIL}
+     * policy, or null
+     */
+    public ResponseBodyTooLargeException getBodyTooLargeException() {
+        return bodyTooLarge;
+    }
+
     /**
      * This method gets the HTTP status of the response.
      *
@@ -67,53 +132,236 @@ public class ResponseImpl implements Response {
     }
 
     /**
-     * This method parses the response body as a String.
+     * This method parses the response body as a String. The body is decoded on the first call only.
      *
      * @return The body of the response as a String. Empty string if there is no body.
      * @throws RuntimeException if the response text can not be parsed to a valid string.
      */
-    public String getResponseText() {
-        if (bodyBytes == null) {
+    public synchronized String getResponseText() {
+        if (responseText == null) {
+            responseText = decodeText();
+        }
+
+        return responseText;
+    }
+
+    /**
+     * @return the charset of the response body, UTF-8 unless the content type names another one
+     */
+    public Charset getResponseCharset() {
+        return contentType != null ? contentType.charset(UTF_8) : UTF_8;
+    }
+
+    private String decodeText() {
+        Charset charset = getResponseCharset();
+
+        // decoding the pooled buffer saves a copy of the body
+        if (bodyBytes == null && bodyBuffer != null) {
+            if (bodyBuffer.isSpilled()) {
+                throw new RuntimeException("Response body of " + bodyBuffer.length()
+                        + " bytes is over the in-memory limit, read it with getResponseByteStream()");
+            }
+
+            String text = bodyBuffer.decode(charset);
+
+            if (text == null) {
+                return "";
+            }
+
+            // well-formed UTF-8 encodes back to the same bytes, so the body is consumed once it is decoded
+            if (UTF_8.equals(charset) && bodyBuffer.isValidUtf8()) {
+                bodyBuffer.release();
+                bodyBuffer = null;
+                bytesFromText = true;
+            }
+
+            return text;
+        }
+
+        byte[] bytes = getResponseBytes();
+
+        if (bytes == null) {
             return "";
         }
 
-        Charset charset = contentType != null ? contentType.charset(UTF_8) : UTF_8;
         try {
-            return new String(bodyBytes, charset.name());
+            return new String(bytes, charset.name());
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * This method parses the response body as a JSONObject.
+     * This method parses the response body as a JSONObject. The body is parsed on the first call only, and the
+     * same object is returned to every caller afterwards, so it must not be modified; copy it to change it.
      *
      * @return The body of the response as a JSONObject.
      * @throws RuntimeException if response text can not be parsed to a valid string or if response text is not a valid JSON object.
      */
-    public JSONObject getResponseJSON() {
-        String responseText = getResponseText();
+    public synchronized JSONObject getResponseJSON() {
+        if (responseJSON != null) {
+            return responseJSON;
+        }
+
+        String text = getResponseText();
 
-        if(responseText == null || responseText.length() == 0){
+        if(text == null || text.length() == 0){
             return null;
         }
 
         try {
-            return new JSONObject(responseText);
+            responseJSON = new JSONObject(text);
+            return responseJSON;
         } catch (JSONException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * This method gets the bytes of the response body.
+     * Frees the raw body once its text was decoded by {@link #getResponseText()} or {@link #getResponseJSON()},
+     * which keep returning the decoded forms. {@link #getResponseBytes()} and {@link #getResponseByteStream()}
+     * return null afterwards.
      *
-     * @return the bytes of the response body. Will be null if there is no body.
+     * @return true if the raw body was freed, false if the text was not decoded yet
      */
-    public byte[] getResponseBytes() {
+    public synchronized boolean releaseBodyBytes() {
+        if (responseText == null) {
+            return false;
+        }
+
+        bodyBytes = null;
+        bytesFromText = false;
+        close();
+
+        return true;
+    }
+
+    /**
+     * This method gets the bytes of the response body. For a streaming response the part of the
+     * body that has not been read yet is buffered on the first call.
+     *
+     * @return the bytes of the response body. Will be null if there is no body, if the body was
+     * over the in-memory limit, or if the response was closed before.
+     */
+    public synchronized byte[] getResponseBytes() {
+        if (bodyBytes == null && bodyBuffer == null && streamingBody != null) {
+            bodyBuffer = readBody(streamingBody);
+            streamingBody = null;
+            onBodyComplete(bodyBuffer != null ? bodyBuffer.length() : 0);
+        }
+
+        if (bodyBytes == null && bytesFromText) {
+            bodyBytes = responseText.getBytes(UTF_8);
+        }
+
+        if (bodyBytes == null && bodyBuffer != null) {
+            bodyBytes = bodyBuffer.toByteArray();
+
+            // the copy holds the whole body, the pooled buffer can go back at once
+            if (bodyBytes != null) {
+                bodyBuffer.release();
+                bodyBuffer = null;
+            }
+        }
+
         return bodyBytes;
     }
 
+    /**
+     * This method gets the response body as a stream. For a streaming response the stream reads
+     * directly from the connection.
+     *
+     * @return the response body stream. Will be null if there is no body.
+     */
+    public synchronized InputStream getResponseByteStream() {
+        if (streamingBody != null) {
+            try {
+                return streamingBody.byteStream();
+            } catch (IOException e) {
+                logger.error("Response body stream can't be opened: " + e.getLocalizedMessage());
+                return null;
+            }
+        }
+
+        if (bodyBuffer != null && bodyBuffer.isSpilled()) {
+            try {
+                return bodyBuffer.openStream();
+            } catch (IOException e) {
+                logger.error("Response body stream can't be opened: " + e.getLocalizedMessage());
+                return null;
+            }
+        }
+
+        // a body in memory is streamed from an array of its own, never from the pooled buffer
+        byte[] bytes = getResponseBytes();
+
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    /**
+     * Returns the source of a streaming response body, reading directly from the connection.
+     *
+     * @return the response body source. Will be null if this response is not streaming.
+     * @throws IOException if the source can't be opened
+     */
+    public synchronized BufferedSource getResponseSource() throws IOException {
+        if (streamingBody == null) {
+            return null;
+        }
+
+        return streamingBody.source();
+    }
+
+    /**
+     * Returns true if the body of this response is read from the connection on demand.
+     */
+    public synchronized boolean isStreaming() {
+        return streamingBody != null;
+    }
+
+    /**
+     * @exclude
+     * Gives the pooled buffer of the body back once the listener returned. A body that was not decoded as
+     * text is moved into an array of its own first, so the response stays complete if the application keeps it.
+     */
+    public synchronized void releasePooledBuffer() {
+        if (bodyBuffer != null && !bodyBuffer.isSpilled()) {
+            getResponseBytes();
+        }
+    }
+
+    /**
+     * Releases the connection of a streaming response, or gives the buffer of a buffered response back to
+     * the pool and deletes its temporary file. Streams returned by {@link #getResponseByteStream()} must
+     * not be read afterwards; the bytes and the text stay available if they were read before.
+     */
+    public synchronized void close() {
+        if (bodyBuffer != null) {
+            bodyBuffer.release();
+            bodyBuffer = null;
+        }
+
+        if (streamingBody != null) {
+            try {
+                streamingBody.close();
+            } catch (IOException e) {
+                logger.debug("Response body can't be closed: " + e.getLocalizedMessage());
+            }
+
+            streamingBody = null;
+            onBodyComplete(-1);
+        }
+    }
+
+    /**
+     * Get the time spent in each phase of the request.
+     *
+     * @return the timing summary of the request, or null if the request was not timed
+     */
+    public RequestTimings getTimings() {
+        return timer != null ? timer.getTimings() : null;
+    }
+
     /** Returns true if this response redirects to another resource. */
     public boolean isRedirect() {
         if (okHttpResponse == null) {
@@ -134,15 +382,26 @@ public class ResponseImpl implements Response {
     }
 
     /**
-     * Get the HTTP headers from the response.
+     * Get the HTTP headers from the response. The map is built on the first call only, and shared by all
+     * callers afterwards.
      *
-     * @return A map with all the headers, and the corresponding values for each one.
+     * @return A read-only map with all the headers, and the read-only values for each one.
      */
-    public Map<String, List<String>> getHeaders() {
+    public synchronized Map<String, List<String>> getHeaders() {
         if (headers == null) {
             return null;
         }
-        return headers.toMultimap();
+
+        if (headerMap == null) {
+            Map<String, List<String>> readOnlyHeaders = new LinkedHashMap<>();
+
+            for (Map.Entry<String, List<String>> header : headers.toMultimap().entrySet()) {
+                readOnlyHeaders.put(header.getKey(), Collections.unmodifiableList(header.getValue()));
+            }
+
+            headerMap = Collections.unmodifiableMap(readOnlyHeaders);
+        }
+        return headerMap;
     }
 
     /**
@@ -178,17 +437,25 @@ public class ResponseImpl implements Response {
     /**
      * Get the names of all the HTTP headers in the response.
      *
-     * @return The names of all the headers in the response
+     * @return The read-only names of all the headers in the response
      */
-    public Set<String> getResponseHeadersNames() {
+    public synchronized Set<String> getResponseHeadersNames() {
         if (headers == null) {
             return null;
         }
-        return headers.names();
+
+        if (headerNames == null) {
+            headerNames = Collections.unmodifiableSet(headers.names());
+        }
+        return headerNames;
     }
 
     @Override
     public String toString() {
+        if (isStreaming()) {
+            return "Response: Status=" + getStatus() + ", Response Text: (streaming)";
+        }
+
         try {
             return "Response: Status=" + getStatus() + ", Response Text: " + getResponseText();
         } catch (RuntimeException e) {
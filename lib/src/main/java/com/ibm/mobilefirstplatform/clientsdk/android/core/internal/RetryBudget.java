@@ -0,0 +1,100 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+/**
+ * Limits retries to a share of the requests sent, so that during an outage retries don't multiply the
+ * load on the server. Every request sent for the first time adds a fraction of a token, up to the
+ * reserve, and every retry takes a whole token. A full budget allows a burst of retries as large as the reserve.
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RETRY_RATIO = 0.1;
+    public static final int DEFAULT_RESERVE = 10;
+
+    private double retryRatio;
+    private int reserve;
+    private double tokens;
+
+    private long retryCount = 0;
+    private long rejectedCount = 0;
+
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_RESERVE);
+    }
+
+    /**
+     * @param retryRatio the number of retries allowed per request sent
+     * @param reserve    the maximum number of retries allowed in a burst
+     */
+    public RetryBudget(double retryRatio, int reserve) {
+        setLimits(retryRatio, reserve);
+    }
+
+    /**
+     * Changes the limits of this budget and fills it up.
+     *
+     * @param retryRatio the number of retries allowed per request sent
+     * @param reserve    the maximum number of retries allowed in a burst
+     */
+    public synchronized void setLimits(double retryRatio, int reserve) {
+        if (retryRatio < 0 || Double.isNaN(retryRatio)) {
+            throw new IllegalArgumentException("retryRatio < 0: " + retryRatio);
+        }
+        if (reserve < 0) {
+            throw new IllegalArgumentException("reserve < 0: " + reserve);
+        }
+
+        this.retryRatio = retryRatio;
+        this.reserve = reserve;
+        this.tokens = reserve;
+    }
+
+    /**
+     * Called once for every request sent for the first time.
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(reserve, tokens + retryRatio);
+    }
+
+    /**
+     * Takes a token for a retry.
+     *
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryRetry() {
+        if (tokens < 1) {
+            rejectedCount++;
+            return false;
+        }
+
+        tokens--;
+        retryCount++;
+        return true;
+    }
+
+    /**
+     * @return the number of retries allowed so far
+     */
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return the number of retries refused because the budget was empty
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+}
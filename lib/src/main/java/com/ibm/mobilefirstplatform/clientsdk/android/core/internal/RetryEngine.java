@@ -0,0 +1,165 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RetryPolicy;
+import com.squareup.okhttp.Response;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed request is retried and after which delay, and runs the retries once the delay
+ * has passed. All the retries of the SDK draw from one {@link RetryBudget}.
+ */
+public class RetryEngine {
+
+    public static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * The value returned when a request must not be retried.
+     */
+    public static final long NO_RETRY = -1;
+
+    private static final RetryBudget budget = new RetryBudget();
+    private static final Random random = new Random();
+
+    private static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BMS Retry Timer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private RetryEngine() {
+    }
+
+    /**
+     * @return the retry budget shared by all requests
+     */
+    public static RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the delay before retrying a request that failed with an I/O error.
+     *
+     * @param policy  the retry policy of the request, or null if it is not retried
+     * @param method  the HTTP method of the request
+     * @param retries the number of retries already made
+     * @return the delay in milliseconds, or {@link #NO_RETRY}
+     */
+    public static long getRetryDelay(RetryPolicy policy, String method, int retries) {
+        if (!canRetry(policy, method, retries)) {
+            return NO_RETRY;
+        }
+
+        return takeFromBudget(jitter(policy.getDelayCeiling(retries)));
+    }
+
+    /**
+     * Returns the delay before retrying a request that got an unsuccessful response.
+     *
+     * @param policy   the retry policy of the request, or null if it is not retried
+     * @param method   the HTTP method of the request
+     * @param retries  the number of retries already made
+     * @param response the response of the server
+     * @return the delay in milliseconds, or {@link #NO_RETRY}
+     */
+    public static long getRetryDelay(RetryPolicy policy, String method, int retries, Response response) {
+        if (!canRetry(policy, method, retries) || !policy.isRetryableStatusCode(response.code())) {
+            return NO_RETRY;
+        }
+
+        long delay = jitter(policy.getDelayCeiling(retries));
+
+        if (policy.isRetryAfterEnabled()) {
+            long retryAfter = getRetryAfter(response);
+
+            // the server asked for more patience than the policy has
+            if (retryAfter > policy.getMaxDelay()) {
+                return NO_RETRY;
+            }
+
+            if (retryAfter >= 0) {
+                delay = retryAfter;
+            }
+        }
+
+        return takeFromBudget(delay);
+    }
+
+    /**
+     * Runs a retry, or any other short task, once its delay has passed.
+     *
+     * @param retry the retry to run
+     * @param delay the delay in milliseconds
+     * @return the scheduled task, which can be cancelled
+     */
+    public static ScheduledFuture<?> schedule(Runnable retry, long delay) {
+        return timer.schedule(retry, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parses a Retry-After header, given either as a number of seconds or as an HTTP date.
+     *
+     * @param response the response of the server
+     * @return the delay in milliseconds, or -1 if the response has no valid Retry-After header
+     */
+    public static long getRetryAfter(Response response) {
+        String value = response.header(RETRY_AFTER);
+
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds >= 0 ? TimeUnit.SECONDS.toMillis(seconds) : -1;
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try a date
+        }
+
+        Date date = response.headers().getDate(RETRY_AFTER);
+
+        if (date == null) {
+            return -1;
+        }
+
+        return Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    private static boolean canRetry(RetryPolicy policy, String method, int retries) {
+        return policy != null && retries + 1 < policy.getMaxAttempts() && policy.isRetryableMethod(method);
+    }
+
+    private static long takeFromBudget(long delay) {
+        return budget.tryRetry() ? delay : NO_RETRY;
+    }
+
+    private static long jitter(long ceiling) {
+        if (ceiling <= 0) {
+            return 0;
+        }
+
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
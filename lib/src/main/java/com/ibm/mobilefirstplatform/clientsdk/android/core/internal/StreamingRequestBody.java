@@ -0,0 +1,290 @@
+/*
+ *     Copyright 2015 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.StreamingResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.internal.Util;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * A request body that is streamed from a file or an input stream to the socket, so the body is never
+ * held in memory as a whole.
+ * <p>
+ * File bodies can be written any number of times. Replayable input stream bodies are copied to a spool
+ * file in the given directory while they are sent for the first time, so they can be replayed from disk when
+ * the request has to be sent again (for example after obtaining authorization). Other input stream bodies are
+ * sent once without a copy, and writing them again fails.
+ * </p>
+ */
+public class StreamingRequestBody extends RequestBody {
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + StreamingRequestBody.class.getSimpleName());
+
+    private static final long SEGMENT_SIZE = 8192;
+
+    private final MediaType contentType;
+    private final long contentLength;
+    private final File file;
+    private final InputStream stream;
+    private final File spoolDirectory;
+    private final boolean replayable;
+
+    private boolean streamConsumed = false;
+    private File spoolFile;
+    private boolean spoolComplete = false;
+
+    private StreamingRequestBody(MediaType contentType, long contentLength, File file, InputStream stream, File spoolDirectory,
+                                 boolean replayable) {
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.file = file;
+        this.stream = stream;
+        this.spoolDirectory = spoolDirectory;
+        this.replayable = replayable;
+    }
+
+    /**
+     * Creates a body that streams the content of the given file.
+     *
+     * @param contentType the content type of the body
+     * @param file        the file to send
+     * @return the request body
+     */
+    public static StreamingRequestBody create(MediaType contentType, File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can't be null");
+        }
+
+        return new StreamingRequestBody(contentType, file.length(), file, null, null, true);
+    }
+
+    /**
+     * Creates a body that streams the content of the given input stream.
+     *
+     * @param contentType    the content type of the body
+     * @param stream         the stream to send, it is closed once it has been read
+     * @param contentLength  the number of bytes in the stream, or -1 to send the body with chunked encoding
+     * @param spoolDirectory the directory for the replay copy, or null for the default temporary directory
+     * @param replayable     true to keep a replay copy, false if the request is never sent again
+     * @return the request body
+     */
+    public static StreamingRequestBody create(MediaType contentType, InputStream stream, long contentLength, File spoolDirectory,
+                                              boolean replayable) {
+        if (stream == null) {
+            throw new IllegalArgumentException("stream can't be null");
+        }
+
+        return new StreamingRequestBody(contentType, contentLength, null, stream, spoolDirectory, replayable);
+    }
+
+    /**
+     * Returns true if the given body can be written more than once.
+     *
+     * @param body the body of a request, may be null
+     * @return false for input stream bodies sent without a replay copy, true otherwise
+     */
+    public static boolean isReplayable(RequestBody body) {
+        return !(body instanceof StreamingRequestBody) || ((StreamingRequestBody) body).replayable;
+    }
+
+    /**
+     * Returns a body with the same content that can be sent again. Bodies that are not streaming are
+     * returned as they are.
+     *
+     * @param body the body that was already sent
+     * @return the body to use when resending the request
+     * @throws IOException if the content of the body can no longer be read
+     */
+    public static RequestBody replay(RequestBody body) throws IOException {
+        if (body instanceof StreamingRequestBody) {
+            ((StreamingRequestBody) body).checkReplayable();
+        }
+
+        return body;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (file != null) {
+            writeFile(file, sink);
+            return;
+        }
+
+        File replayFile;
+
+        synchronized (this) {
+            if (!streamConsumed) {
+                streamConsumed = true;
+                replayFile = null;
+            } else {
+                checkReplayable();
+                replayFile = spoolFile;
+            }
+        }
+
+        if (replayFile != null) {
+            writeFile(replayFile, sink);
+        } else if (replayable) {
+            writeStream(sink);
+        } else {
+            writeStreamOnce(sink);
+        }
+    }
+
+    /**
+     * Deletes the replay copy of an input stream body. The body can't be sent again afterwards.
+     */
+    public synchronized void release() {
+        if (spoolFile != null && !spoolFile.delete()) {
+            logger.debug("Request body spool file can't be deleted: " + spoolFile);
+        }
+
+        spoolFile = null;
+        spoolComplete = false;
+    }
+
+    /**
+     * Wraps the listener of a request so that the replay copy of this body is deleted once the request
+     * has finished.
+     *
+     * @param listener the listener of the request
+     * @return the listener to pass when sending the request
+     */
+    public ResponseListener releaseAfter(ResponseListener listener) {
+        if (stream == null || !replayable) {
+            return listener;
+        }
+
+        if (listener instanceof StreamingResponseListener) {
+            return new ReleasingStreamingListener(listener);
+        }
+
+        return new ReleasingListener(listener);
+    }
+
+    private synchronized void checkReplayable() throws IOException {
+        if (stream != null && streamConsumed && !spoolComplete) {
+            throw new IOException("Request body stream has already been consumed and can't be sent again");
+        }
+    }
+
+    private void writeStream(BufferedSink sink) throws IOException {
+        File spool = File.createTempFile("bms-request-body", ".tmp", spoolDirectory);
+        BufferedSink spoolSink = Okio.buffer(Okio.sink(spool));
+        Source source = Okio.source(stream);
+        boolean complete = false;
+
+        try {
+            Buffer buffer = new Buffer();
+            long read;
+
+            while ((read = source.read(buffer, SEGMENT_SIZE)) != -1) {
+                buffer.copyTo(spoolSink.buffer(), 0, read);
+                spoolSink.emitCompleteSegments();
+                sink.write(buffer, read);
+            }
+
+            spoolSink.flush();
+            complete = true;
+        } finally {
+            Util.closeQuietly(source);
+            Util.closeQuietly(spoolSink);
+
+            synchronized (this) {
+                spoolFile = spool;
+                spoolComplete = complete;
+            }
+        }
+    }
+
+    private void writeStreamOnce(BufferedSink sink) throws IOException {
+        Source source = Okio.source(stream);
+
+        try {
+            sink.writeAll(source);
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    private static void writeFile(File file, BufferedSink sink) throws IOException {
+        Source source = Okio.source(file);
+
+        try {
+            sink.writeAll(source);
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    private class ReleasingListener implements ResponseListener {
+        private final ResponseListener listener;
+
+        ReleasingListener(ResponseListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            try {
+                if (listener != null) {
+                    listener.onSuccess(response);
+                }
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            try {
+                if (listener != null) {
+                    listener.onFailure(response, t, extendedInfo);
+                }
+            } finally {
+                release();
+            }
+        }
+    }
+
+    private class ReleasingStreamingListener extends ReleasingListener implements StreamingResponseListener {
+        ReleasingStreamingListener(ResponseListener listener) {
+            super(listener);
+        }
+    }
+}
@@ -6,22 +6,120 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 /**
  * This class implements an SSLSocketFactory that changes the default TLS protocols.
+ * <p>
+ * All the clients of the SDK use the instance returned by {@link #getInstance()}, so they share one TLS session
+ * cache and reconnecting to a host can use an abbreviated handshake. The factory counts full and resumed handshakes.
+ * </p>
  */
 public class TLSEnabledSSLSocketFactory extends SSLSocketFactory {
 
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 64;
+    public static final int DEFAULT_SESSION_TIMEOUT = (int) TimeUnit.HOURS.toSeconds(12);
+
+    private static final String[] TLS_PROTOCOLS = {"TLSv1.1", "TLSv1.2"};
+
+    private static TLSEnabledSSLSocketFactory instance;
+
     private SSLSocketFactory internalSSLSocketFactory;
+    private final String[] enabledProtocols;
+    private final HandshakeCounter handshakeCounter;
+
+    /**
+     * Returns the factory shared by all the clients of the SDK.
+     *
+     * @return the shared factory
+     * @throws KeyManagementException if the TLS context can't be initialized
+     * @throws NoSuchAlgorithmException if TLS is not available
+     */
+    public static synchronized TLSEnabledSSLSocketFactory getInstance() throws KeyManagementException, NoSuchAlgorithmException {
+        if (instance == null) {
+            instance = new TLSEnabledSSLSocketFactory();
+        }
+
+        return instance;
+    }
 
     public TLSEnabledSSLSocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
+        this(DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT);
+    }
+
+    /**
+     * @param sessionCacheSize the maximum number of TLS sessions kept for resumption
+     * @param sessionTimeout   the time in seconds a TLS session can be resumed
+     * @throws KeyManagementException if the TLS context can't be initialized
+     * @throws NoSuchAlgorithmException if TLS is not available
+     */
+    public TLSEnabledSSLSocketFactory(int sessionCacheSize, int sessionTimeout) throws KeyManagementException, NoSuchAlgorithmException {
+        this(newDefaultContext(), sessionCacheSize, sessionTimeout);
+    }
+
+    /**
+     * @param context          the TLS context whose sockets and client session cache are used
+     * @param sessionCacheSize the maximum number of TLS sessions kept for resumption
+     * @param sessionTimeout   the time in seconds a TLS session can be resumed
+     */
+    TLSEnabledSSLSocketFactory(SSLContext context, int sessionCacheSize, int sessionTimeout) {
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+
+        internalSSLSocketFactory = context.getSocketFactory();
+        enabledProtocols = getSupportedProtocols(context);
+        handshakeCounter = new HandshakeCounter(sessionCacheSize > 0 ? sessionCacheSize : DEFAULT_SESSION_CACHE_SIZE);
+    }
+
+    private static SSLContext newDefaultContext() throws KeyManagementException, NoSuchAlgorithmException {
         SSLContext context = SSLContext.getInstance("TLS");
         context.init(null, null, null);
-        internalSSLSocketFactory = context.getSocketFactory();
+
+        return context;
+    }
+
+    private static String[] getSupportedProtocols(SSLContext context) {
+        List<String> supported = Arrays.asList(context.getSupportedSSLParameters().getProtocols());
+        List<String> protocols = new ArrayList<>();
+
+        for (String protocol : TLS_PROTOCOLS) {
+            if (supported.contains(protocol)) {
+                protocols.add(protocol);
+            }
+        }
+
+        // older platforms without TLSv1.1 and TLSv1.2 keep their default protocols
+        return protocols.isEmpty() ? null : protocols.toArray(new String[protocols.size()]);
+    }
+
+    /**
+     * @return the number of handshakes that created a new TLS session, see {@link HandshakeCounter} for its limits
+     */
+    public long getFullHandshakeCount() {
+        return handshakeCounter.fullHandshakes.get();
+    }
+
+    /**
+     * @return the number of handshakes that resumed a cached TLS session, see {@link HandshakeCounter} for its limits
+     */
+    public long getResumedHandshakeCount() {
+        return handshakeCounter.resumedHandshakes.get();
     }
 
     @Override
@@ -36,6 +134,12 @@ public class TLSEnabledSSLSocketFactory extends SSLSocketFactory {
 
     @Override
     public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        // OkHttp layers TLS over the connected socket and starts the handshake right away
+        RequestTimer timer = RequestEvents.getCurrentTimer();
+        if (timer != null) {
+            timer.tlsStarted(host);
+        }
+
         return enableTLSOnSocket(internalSSLSocketFactory.createSocket(s, host, port, autoClose));
     }
 
@@ -61,8 +165,74 @@ public class TLSEnabledSSLSocketFactory extends SSLSocketFactory {
 
     private Socket enableTLSOnSocket(Socket socket) {
         if(socket != null && (socket instanceof SSLSocket)) {
-            ((SSLSocket)socket).setEnabledProtocols(new String[] {"TLSv1.1", "TLSv1.2"});
+            SSLSocket sslSocket = (SSLSocket) socket;
+
+            if (enabledProtocols != null) {
+                sslSocket.setEnabledProtocols(enabledProtocols);
+            }
+
+            sslSocket.addHandshakeCompletedListener(handshakeCounter);
         }
         return socket;
     }
+
+    /**
+     * Tells full and resumed handshakes apart by remembering the ids of the recent sessions: a handshake
+     * that ends with a known session id has resumed that session.
+     * <p>
+     * This is a heuristic. It holds for TLS 1.2 resumption by session id, but TLS 1.3 resumes with session
+     * tickets and gives every connection a new session id, so resumed TLS 1.3 handshakes are counted as full
+     * ones; TLS 1.2 servers that resume with tickets may do the same. The platform notifies the listener
+     * after the handshake, on its own thread, so the counts can lag behind the connections.
+     * </p>
+     */
+    private static class HandshakeCounter implements HandshakeCompletedListener {
+        private final AtomicLong fullHandshakes = new AtomicLong();
+        private final AtomicLong resumedHandshakes = new AtomicLong();
+        private final Map<String, Boolean> knownSessions;
+
+        HandshakeCounter(final int maxSessions) {
+            knownSessions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > maxSessions;
+                }
+            };
+        }
+
+        @Override
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            byte[] id = event.getSession().getId();
+
+            // without a session id there is nothing to compare, count it as a full handshake
+            if (id == null || id.length == 0) {
+                fullHandshakes.incrementAndGet();
+                return;
+            }
+
+            String sessionId = toHex(id);
+            boolean resumed;
+
+            synchronized (knownSessions) {
+                resumed = knownSessions.put(sessionId, Boolean.TRUE) != null;
+            }
+
+            if (resumed) {
+                resumedHandshakes.incrementAndGet();
+            } else {
+                fullHandshakes.incrementAndGet();
+            }
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return builder.toString();
+        }
+    }
 }
@@ -15,7 +15,10 @@ package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.api;
 
 import android.content.Context;
 
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ConnectionPrewarmer;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AppIdentity;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.DeviceIdentity;
@@ -26,11 +29,13 @@ import com.ibm.mobilefirstplatform.clientsdk.android.security.identity.BaseUserI
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationHeaderHelper;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationProcessManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequestManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.challengehandlers.ChallengeHandler;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.preferences.AuthorizationManagerPreferences;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URLConnection;
 import java.security.InvalidParameterException;
 import java.util.HashMap;
@@ -76,6 +81,17 @@ public class MCAAuthorizationManager implements AuthorizationManager {
             instance = new MCAAuthorizationManager(context.getApplicationContext());
 
             AuthorizationRequest.setup();
+            ConnectionPrewarmer.register(instance, new ConnectionPrewarmer.Target() {
+                @Override
+                public BaseRequest newPrewarmRequest() throws MalformedURLException {
+                    // the region is only known once BMSClient is initialized
+                    if (AuthorizationRequestManager.overrideServerHost == null && BMSClient.getInstance().getBluemixRegionSuffix() == null) {
+                        return null;
+                    }
+
+                    return new AuthorizationRequest(AuthorizationRequestManager.getServerHost() + "/", BaseRequest.HEAD);
+                }
+            });
         }
         return instance;
     }
@@ -99,6 +115,16 @@ public class MCAAuthorizationManager implements AuthorizationManager {
         authorizationProcessManager.startAuthorizationProcess(context, listener);
     }
 
+    /**
+     * Stops waiting for the authorization process started with {@link #obtainAuthorization}. The process goes on
+     * for the other listeners, and the given listener is no longer called, unless it is the last one waiting.
+     * @param listener the listener passed to obtainAuthorization
+     * @return true if the listener was removed
+     */
+    public boolean cancelAuthorizationWait(ResponseListener listener) {
+        return authorizationProcessManager.removeListener(listener);
+    }
+
     /**
      * Check if the params came from response that requires authorization
      * @param statusCode of the response
@@ -39,11 +39,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Handles the complete authorization process cycle
@@ -53,7 +52,8 @@ public class AuthorizationProcessManager {
 
     private static final String HTTP_LOCALHOST = "http://localhost";
     private AuthorizationManagerPreferences preferences;
-    private ConcurrentLinkedQueue<ResponseListener> authorizationQueue;
+    // guarded by itself: listeners join, leave and are taken for the outcome as one step each
+    private final List<ResponseListener> authorizationQueue;
     private KeyPair registrationKeyPair;
     private DefaultJSONSigner jsonSigner;
 
@@ -65,7 +65,7 @@ public class AuthorizationProcessManager {
         this.logger = Logger.getLogger(Logger.INTERNAL_PREFIX + AuthorizationProcessManager.class.getSimpleName());
 
         this.preferences = preferences;
-        this.authorizationQueue = new ConcurrentLinkedQueue<>();
+        this.authorizationQueue = new ArrayList<>();
         this.jsonSigner = new DefaultJSONSigner();
 
         File keyStoreFile = new File(context.getFilesDir().getAbsolutePath(), "mfp.keystore");
@@ -92,10 +92,15 @@ public class AuthorizationProcessManager {
      * @param listener response listener that will get the result of the process
      */
     public void startAuthorizationProcess(final Context context, ResponseListener listener) {
-        authorizationQueue.add(listener);
+        int queueSize;
+
+        synchronized (authorizationQueue) {
+            authorizationQueue.add(listener);
+            queueSize = authorizationQueue.size();
+        }
 
         //start the authorization process only if this is the first time we ask for authorization
-        if (authorizationQueue.size() == 1) {
+        if (queueSize == 1) {
             try {
                 if (preferences.clientId.get() == null) {
                     logger.info("starting registration process");
@@ -111,7 +116,24 @@ public class AuthorizationProcessManager {
 
         else{
             logger.info("authorization process already running, adding response listener to the queue");
-            logger.debug(String.format("authorization process currently handling %d requests", authorizationQueue.size()));
+            logger.debug(String.format("authorization process currently handling %d requests", queueSize));
+        }
+    }
+
+    /**
+     * Removes a listener that no longer waits for the authorization process. The last listener is kept, since
+     * a new process starts whenever the queue is empty; it still gets the outcome of the running process.
+     * A listener whose outcome is already being delivered is not removed either.
+     * @param listener response listener passed to startAuthorizationProcess
+     * @return true if the listener was removed
+     */
+    public boolean removeListener(ResponseListener listener) {
+        synchronized (authorizationQueue) {
+            if (authorizationQueue.size() <= 1) {
+                return false;
+            }
+
+            return authorizationQueue.remove(listener);
         }
     }
 
@@ -222,8 +244,7 @@ public class AuthorizationProcessManager {
      */
     private void saveCertificateFromResponse(Response response) {
         try {
-            String responseBody = response.getResponseText();
-            JSONObject jsonResponse = new JSONObject(responseBody);
+            JSONObject jsonResponse = ((ResponseImpl)response).getResponseJSON();
 
             //handle certificate
             String certificateString = jsonResponse.getString("certificate");
@@ -447,12 +468,8 @@ public class AuthorizationProcessManager {
             t.printStackTrace();
         }
 
-        Iterator<ResponseListener> iterator = authorizationQueue.iterator();
-
-        while(iterator.hasNext()) {
-            ResponseListener next = iterator.next();
-            next.onFailure(response, t, extendedInfo);
-            iterator.remove();
+        for (ResponseListener listener : takeListeners()) {
+            listener.onFailure(response, t, extendedInfo);
         }
     }
 
@@ -462,13 +479,22 @@ public class AuthorizationProcessManager {
      * @param response final success response from the server
      */
     private void handleAuthorizationSuccess(Response response) {
+        for (ResponseListener listener : takeListeners()) {
+            listener.onSuccess(response);
+        }
+    }
 
-        Iterator<ResponseListener> iterator = authorizationQueue.iterator();
+    /**
+     * Empties the queue, so that the listeners are called outside the lock and requests that ask for
+     * authorization from now on start a new process.
+     * @return the listeners waiting for the process that just finished
+     */
+    private List<ResponseListener> takeListeners() {
+        synchronized (authorizationQueue) {
+            List<ResponseListener> listeners = new ArrayList<>(authorizationQueue);
+            authorizationQueue.clear();
 
-        while(iterator.hasNext()) {
-            ResponseListener next = iterator.next();
-            next.onSuccess(response);
-            iterator.remove();
+            return listeners;
         }
     }
 
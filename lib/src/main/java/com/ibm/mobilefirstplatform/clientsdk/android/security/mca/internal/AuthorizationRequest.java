@@ -15,16 +15,13 @@ package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
-import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.TLSEnabledSSLSocketFactory;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.HttpClientRegistry;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.RequestScheduler;
 import com.squareup.okhttp.OkHttpClient;
 
 import java.net.MalformedURLException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 
-import javax.net.ssl.SSLSocketFactory;
-
 /**
  * AuthorizationRequest is used internally to send authorization requests.
  */
@@ -33,15 +30,7 @@ public class AuthorizationRequest extends BaseRequest {
     private static OkHttpClient httpClient = new OkHttpClient();
 
     static {
-        SSLSocketFactory tlsEnabledSSLSocketFactory;
-        try {
-            tlsEnabledSSLSocketFactory = new TLSEnabledSSLSocketFactory();
-            httpClient.setSslSocketFactory(tlsEnabledSSLSocketFactory);
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
+        HttpClientRegistry.register(httpClient);
     }
 
     /**
@@ -53,6 +42,9 @@ public class AuthorizationRequest extends BaseRequest {
     public AuthorizationRequest(String url, String method) throws MalformedURLException {
         super(url, method);
 
+        // the authorization server does not accept compressed bodies
+        setCompressionEnabled(false);
+
         // we want to handle redirects in-place
         httpClient.setFollowRedirects(false);
     }
@@ -65,6 +57,15 @@ public class AuthorizationRequest extends BaseRequest {
         return httpClient;
     }
 
+    /**
+     * Authorization requests are few and block resource requests, so they skip the priority scheduler.
+     * @return null
+     */
+    @Override
+    protected RequestScheduler getScheduler() {
+        return null;
+    }
+
     /**
      * Setup network interceptor.
      */
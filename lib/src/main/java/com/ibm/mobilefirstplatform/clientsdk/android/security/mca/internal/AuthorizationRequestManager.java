@@ -169,16 +169,7 @@ public class AuthorizationRequestManager implements ResponseListener {
             rootUrl = url.toString().replace(path, "");
         } else {
             // "path" is a relative
-
-			String serverHost = BMSClient.getInstance().getDefaultProtocol()
-							+ "://"
-							+ AUTH_SERVER_NAME
-							+ BMSClient.getInstance().getBluemixRegionSuffix();
-
-			if (overrideServerHost!=null)
-				serverHost = overrideServerHost;
-
-            rootUrl = serverHost
+            rootUrl = getServerHost()
                     + "/"
                     + AUTH_SERVER_NAME
                     + "/"
@@ -189,6 +180,22 @@ public class AuthorizationRequestManager implements ResponseListener {
         sendRequestInternal(rootUrl, path, options);
     }
 
+    /**
+     * Builds the scheme and host of the authorization server for the configured region.
+     *
+     * @return the authorization server root, for example https://imf-authserver.ng.bluemix.net
+     */
+    public static String getServerHost() {
+        if (overrideServerHost != null) {
+            return overrideServerHost;
+        }
+
+        return BMSClient.getInstance().getDefaultProtocol()
+                + "://"
+                + AUTH_SERVER_NAME
+                + BMSClient.getInstance().getBluemixRegionSuffix();
+    }
+
     /**
      * Re-sends an authorization request after all challenges have been handled.
      *
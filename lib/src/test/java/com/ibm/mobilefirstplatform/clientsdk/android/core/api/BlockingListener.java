@@ -0,0 +1,78 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * A listener that lets a test wait for the outcome of a request.
+ */
+class BlockingListener implements ResponseListener {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile Response response;
+    private volatile Throwable failure;
+
+    @Override
+    public void onSuccess(Response response) {
+        this.response = response;
+        latch.countDown();
+    }
+
+    @Override
+    public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+        this.response = response;
+        this.failure = t != null ? t : new AssertionError("status " + (response != null ? response.getStatus() : 0));
+        latch.countDown();
+    }
+
+    /**
+     * @return the response of a successful request
+     * @throws AssertionError if the request failed or did not finish in time
+     */
+    Response awaitSuccess() throws InterruptedException {
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+
+        if (failure != null) {
+            throw new AssertionError("request failed: " + failure);
+        }
+
+        return response;
+    }
+
+    /**
+     * @return the failure of a request that failed
+     * @throws AssertionError if the request succeeded or did not finish in time
+     */
+    Throwable awaitFailure() throws InterruptedException {
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+
+        if (failure == null) {
+            throw new AssertionError("request should have failed");
+        }
+
+        return failure;
+    }
+
+    /**
+     * @return the response of a request that failed, may be null
+     */
+    Response getResponse() {
+        return response;
+    }
+}
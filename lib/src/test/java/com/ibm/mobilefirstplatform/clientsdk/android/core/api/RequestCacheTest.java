@@ -0,0 +1,148 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class RequestCacheTest {
+
+    private MockWebServer server;
+    private File cacheDirectory;
+    private AuthorizationManager previousManager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        cacheDirectory = File.createTempFile("response-cache", "");
+        cacheDirectory.delete();
+        Request.setCache(new Cache(cacheDirectory, 1024 * 1024));
+
+        previousManager = BMSClient.getInstance().getAuthorizationManager();
+        BMSClient.getInstance().setAuthorizationManager(new TestAuthorizationManager());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BMSClient.getInstance().disableResponseCache();
+        BMSClient.getInstance().setAuthorizationManager(previousManager);
+        server.shutdown();
+
+        delete(cacheDirectory);
+    }
+
+    @Test
+    public void freshResponsesShouldBeServedFromCache() throws Exception {
+        server.enqueue(new MockResponse().setBody("A").addHeader("Cache-Control", "max-age=60"));
+
+        assertEquals("A", get("/fresh", Request.CachePolicy.DEFAULT).getResponseText());
+        assertEquals("A", get("/fresh", Request.CachePolicy.DEFAULT).getResponseText());
+
+        assertEquals(1, server.getRequestCount());
+        assertStatistics(1, 1, 0);
+    }
+
+    @Test
+    public void staleResponsesShouldBeRevalidated() throws Exception {
+        server.enqueue(new MockResponse().setBody("A").addHeader("Cache-Control", "no-cache").addHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals("A", get("/stale", Request.CachePolicy.DEFAULT).getResponseText());
+        assertEquals("A", get("/stale", Request.CachePolicy.DEFAULT).getResponseText());
+
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertStatistics(0, 1, 1);
+    }
+
+    @Test
+    public void networkOnlyShouldSkipFreshCachedResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("A").addHeader("Cache-Control", "max-age=60"));
+        server.enqueue(new MockResponse().setBody("B").addHeader("Cache-Control", "max-age=60"));
+
+        assertEquals("A", get("/network", Request.CachePolicy.DEFAULT).getResponseText());
+        assertEquals("B", get("/network", Request.CachePolicy.NETWORK_ONLY).getResponseText());
+
+        // the network response replaced the cached one
+        assertEquals("B", get("/network", Request.CachePolicy.DEFAULT).getResponseText());
+        assertEquals(2, server.getRequestCount());
+        assertStatistics(1, 2, 0);
+    }
+
+    @Test
+    public void cacheOnlyShouldFailWithoutCachedResponse() throws Exception {
+        BlockingListener listener = send("/missing", Request.CachePolicy.CACHE_ONLY);
+
+        listener.awaitFailure();
+        assertEquals(504, listener.getResponse().getStatus());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void preferCacheShouldUseStaleResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("A").addHeader("Cache-Control", "max-age=0")
+                .addHeader("Last-Modified", "Mon, 01 Jan 2001 00:00:00 GMT"));
+
+        assertEquals("A", get("/prefer", Request.CachePolicy.DEFAULT).getResponseText());
+        assertEquals("A", get("/prefer", Request.CachePolicy.PREFER_CACHE).getResponseText());
+
+        assertEquals(1, server.getRequestCount());
+        assertStatistics(1, 1, 0);
+    }
+
+    private Response get(String path, Request.CachePolicy policy) throws Exception {
+        return send(path, policy).awaitSuccess();
+    }
+
+    private BlockingListener send(String path, Request.CachePolicy policy) throws Exception {
+        Request request = new Request(server.url(path).toString(), Request.GET);
+        request.setCachePolicy(policy);
+
+        BlockingListener listener = new BlockingListener();
+        request.send(null, listener);
+        return listener;
+    }
+
+    private static void assertStatistics(long hits, long misses, long revalidations) {
+        CacheStatistics statistics = BMSClient.getInstance().getResponseCacheStatistics();
+
+        assertEquals("hits", hits, statistics.getHitCount());
+        assertEquals("misses", misses, statistics.getMissCount());
+        assertEquals("revalidations", revalidations, statistics.getRevalidationCount());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
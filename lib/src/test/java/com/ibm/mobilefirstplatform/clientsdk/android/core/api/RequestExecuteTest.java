@@ -0,0 +1,149 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.BuildConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Robolectric runs the tests on the main looper, so requests are executed on another thread.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RequestExecuteTest {
+
+    private MockWebServer server;
+    private AuthorizationManager previousManager;
+    private TestAuthorizationManager authorizationManager;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+
+        // like a protected resource: requests without the authorization header are refused
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (!TestAuthorizationManager.AUTHORIZATION_HEADER.equals(request.getHeader("Authorization"))) {
+                    return new MockResponse().setResponseCode(401);
+                }
+
+                return new MockResponse().setBody("ok " + request.getPath());
+            }
+        });
+
+        server.start();
+
+        previousManager = BMSClient.getInstance().getAuthorizationManager();
+        authorizationManager = new TestAuthorizationManager();
+        BMSClient.getInstance().setAuthorizationManager(authorizationManager);
+
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // never leave a request waiting for authorization
+        authorizationManager.release();
+        executor.shutdownNow();
+
+        BMSClient.getInstance().setAuthorizationManager(previousManager);
+        server.shutdown();
+    }
+
+    @Test
+    public void executeShouldObtainAuthorizationAndResend() throws Exception {
+        Future<Response> response = execute(new Request(server.url("/sync").toString(), Request.POST), "body");
+
+        assertEquals("ok /sync", response.get(10, TimeUnit.SECONDS).getResponseText());
+        assertEquals(1, authorizationManager.getAuthorizationCount());
+        assertEquals(2, server.getRequestCount());
+
+        assertNull(server.takeRequest().getHeader("Authorization"));
+        RecordedRequest resent = server.takeRequest();
+        assertEquals(TestAuthorizationManager.AUTHORIZATION_HEADER, resent.getHeader("Authorization"));
+        assertEquals("body", resent.getBody().readUtf8());
+    }
+
+    @Test
+    public void executeShouldBeRejectedOnTheMainThread() throws Exception {
+        try {
+            new Request(server.url("/sync").toString(), Request.GET).execute(null);
+            fail("execute should throw on the main thread");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void executeShouldJoinAnAuthorizationInFlight() throws Exception {
+        authorizationManager.hold();
+
+        BlockingListener listener = new BlockingListener();
+        new Request(server.url("/async").toString(), Request.GET).send(null, listener);
+        awaitWaitingCount(1);
+
+        Future<Response> response = execute(new Request(server.url("/sync").toString(), Request.GET), null);
+        awaitWaitingCount(2);
+
+        // the authorization completes while execute waits for it on its own thread
+        authorizationManager.release();
+
+        assertEquals("ok /sync", response.get(10, TimeUnit.SECONDS).getResponseText());
+        assertEquals("ok /async", listener.awaitSuccess().getResponseText());
+        assertEquals(1, authorizationManager.getAuthorizationCount());
+    }
+
+    private Future<Response> execute(final Request request, final String text) {
+        return executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return text != null ? request.execute(null, text) : request.execute(null);
+            }
+        });
+    }
+
+    private void awaitWaitingCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (authorizationManager.getWaitingCount() < count) {
+            assertTrue("requests did not wait for authorization in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
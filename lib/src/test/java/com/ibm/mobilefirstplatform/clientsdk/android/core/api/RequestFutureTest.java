@@ -0,0 +1,203 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class RequestFutureTest {
+
+    @Test
+    public void thenShouldTransformResult() throws Exception {
+        RequestFuture<Integer> length = RequestFuture.completed("hello").then(new RequestFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+
+        assertEquals(Integer.valueOf(5), length.get());
+    }
+
+    @Test
+    public void thenComposeShouldChainDependentFutures() throws Exception {
+        final RequestFuture<String> second = new RequestFuture<>();
+
+        RequestFuture<String> chained = RequestFuture.completed("first").thenCompose(new RequestFuture.Function<String, RequestFuture<String>>() {
+            @Override
+            public RequestFuture<String> apply(String value) {
+                return second;
+            }
+        });
+
+        assertFalse(chained.isDone());
+
+        second.complete("second");
+
+        assertEquals("second", chained.get());
+    }
+
+    @Test
+    public void failureShouldPropagateThroughChain() throws Exception {
+        IllegalStateException cause = new IllegalStateException("failed");
+
+        RequestFuture<Integer> chained = RequestFuture.<String>failed(cause).then(new RequestFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                fail("the function should not run after a failure");
+                return 0;
+            }
+        });
+
+        try {
+            chained.get();
+            fail("get should throw");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void allShouldKeepOrderAndFailFast() throws Exception {
+        RequestFuture<String> first = new RequestFuture<>();
+        RequestFuture<String> second = new RequestFuture<>();
+        RequestFuture<List<String>> all = RequestFuture.all(Arrays.asList(first, second));
+
+        second.complete("b");
+        assertFalse(all.isDone());
+        first.complete("a");
+
+        assertEquals(Arrays.asList("a", "b"), all.get());
+
+        RequestFuture<String> failing = new RequestFuture<>();
+        RequestFuture<String> pending = new RequestFuture<>();
+        RequestFuture<List<String>> failed = RequestFuture.all(Arrays.asList(failing, pending));
+
+        failing.fail(new IllegalStateException());
+
+        assertTrue(failed.isDone());
+        assertTrue("the other futures should be cancelled", pending.isCancelled());
+    }
+
+    @Test
+    public void anyShouldTakeFirstSuccess() throws Exception {
+        RequestFuture<String> failing = new RequestFuture<>();
+        RequestFuture<String> succeeding = new RequestFuture<>();
+        RequestFuture<String> pending = new RequestFuture<>();
+        RequestFuture<String> any = RequestFuture.any(Arrays.asList(failing, succeeding, pending));
+
+        failing.fail(new IllegalStateException());
+        assertFalse(any.isDone());
+        succeeding.complete("ok");
+
+        assertEquals("ok", any.get());
+        assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    public void timeoutShouldFailAndCancelSource() throws Exception {
+        RequestFuture<String> slow = new RequestFuture<>();
+        RequestFuture<String> bounded = slow.timeout(50, TimeUnit.MILLISECONDS);
+
+        try {
+            bounded.get(5, TimeUnit.SECONDS);
+            fail("get should throw");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void cancelShouldReachSource() throws Exception {
+        final AtomicBoolean sourceCancelled = new AtomicBoolean();
+        RequestFuture<String> source = new RequestFuture<>();
+        source.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                sourceCancelled.set(true);
+            }
+        });
+
+        RequestFuture<Integer> derived = source.then(new RequestFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+
+        assertTrue(derived.cancel(true));
+        assertTrue(sourceCancelled.get());
+        assertTrue(source.isCancelled());
+        assertFalse(source.complete("late"));
+
+        try {
+            derived.get();
+            fail("get should throw");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancelRacingWithThenComposeShouldCancelTheNextRequest() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            final RequestFuture<String> first = new RequestFuture<>();
+            final RequestFuture<String> second = new RequestFuture<>();
+            final RequestFuture<String> chained = first.thenCompose(new RequestFuture.Function<String, RequestFuture<String>>() {
+                @Override
+                public RequestFuture<String> apply(String value) {
+                    return second;
+                }
+            });
+
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread completing = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    first.complete("first");
+                }
+            });
+
+            completing.start();
+            start.countDown();
+            chained.cancel(true);
+            completing.join();
+
+            // whichever request was running when the chain was cancelled, the second one must not outlive it
+            assertTrue(chained.isCancelled());
+            assertTrue("iteration " + i, first.isCancelled() || second.isCancelled());
+        }
+    }
+}
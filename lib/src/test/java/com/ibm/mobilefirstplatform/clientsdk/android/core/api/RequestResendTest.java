@@ -0,0 +1,100 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class RequestResendTest {
+
+    private static final String BODY = "streamed request body";
+
+    private MockWebServer server;
+    private AuthorizationManager previousManager;
+    private TestAuthorizationManager authorizationManager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        previousManager = BMSClient.getInstance().getAuthorizationManager();
+        authorizationManager = new TestAuthorizationManager();
+        BMSClient.getInstance().setAuthorizationManager(authorizationManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BMSClient.getInstance().setAuthorizationManager(previousManager);
+        server.shutdown();
+    }
+
+    @Test
+    public void streamBodyShouldBeResentAfterAuthorization() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Request request = new Request(server.url("/upload").toString(), Request.POST);
+        BlockingListener listener = new BlockingListener();
+        request.send(null, new ByteArrayInputStream(BODY.getBytes("UTF-8")), BODY.length(), listener);
+
+        assertResentWithAuthorization(listener);
+    }
+
+    @Test
+    public void fileBodyShouldBeResentAfterAuthorization() throws Exception {
+        File file = File.createTempFile("upload", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(BODY.getBytes("UTF-8"));
+        out.close();
+
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try {
+            Request request = new Request(server.url("/upload").toString(), Request.POST);
+            BlockingListener listener = new BlockingListener();
+            request.send(null, file, listener);
+
+            assertResentWithAuthorization(listener);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertResentWithAuthorization(BlockingListener listener) throws Exception {
+        assertEquals("ok", listener.awaitSuccess().getResponseText());
+        assertEquals(1, authorizationManager.getAuthorizationCount());
+
+        RecordedRequest first = server.takeRequest();
+        RecordedRequest second = server.takeRequest();
+
+        assertEquals(BODY, first.getBody().readUtf8());
+        assertNull(first.getHeader("Authorization"));
+        assertEquals(BODY, second.getBody().readUtf8());
+        assertEquals(TestAuthorizationManager.AUTHORIZATION_HEADER, second.getHeader("Authorization"));
+    }
+}
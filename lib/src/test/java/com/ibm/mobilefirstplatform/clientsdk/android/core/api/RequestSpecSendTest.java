@@ -0,0 +1,174 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class RequestSpecSendTest {
+
+    private static final int CALLS = 20;
+
+    private MockWebServer server;
+    private AuthorizationManager previousManager;
+    private TestAuthorizationManager authorizationManager;
+
+    private final AtomicInteger unauthorizedCount = new AtomicInteger();
+    private final AtomicInteger authorizedCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+
+        // like a protected resource: requests without the authorization header are refused
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (!TestAuthorizationManager.AUTHORIZATION_HEADER.equals(request.getHeader("Authorization"))) {
+                    unauthorizedCount.incrementAndGet();
+                    return new MockResponse().setResponseCode(401);
+                }
+
+                authorizedCount.incrementAndGet();
+                return new MockResponse().setBody("item");
+            }
+        });
+
+        server.start();
+
+        previousManager = BMSClient.getInstance().getAuthorizationManager();
+        authorizationManager = new TestAuthorizationManager();
+        BMSClient.getInstance().setAuthorizationManager(authorizationManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BMSClient.getInstance().setAuthorizationManager(previousManager);
+        server.shutdown();
+    }
+
+    @Test
+    public void everyCallShouldObtainAuthorizationAndBeResent() throws Exception {
+        RequestSpec spec = new RequestSpec.Builder(server.url("/items").toString(), Request.Method.GET).build();
+
+        for (int i = 0; i < 3; i++) {
+            // the authorization expires between calls, so every call gets a 401 first
+            authorizationManager.clearAuthorizationData();
+
+            BlockingListener listener = new BlockingListener();
+            spec.send(null, listener);
+
+            assertEquals("item", listener.awaitSuccess().getResponseText());
+        }
+
+        assertEquals(3, authorizationManager.getAuthorizationCount());
+        assertEquals(3, unauthorizedCount.get());
+        assertEquals(3, authorizedCount.get());
+    }
+
+    @Test
+    public void concurrentCallsShouldEachBeResentAfterAuthorization() throws Exception {
+        RequestSpec spec = new RequestSpec.Builder(server.url("/items").toString(), Request.Method.POST)
+                .body("poll")
+                .build();
+
+        BlockingListener[] listeners = new BlockingListener[CALLS];
+
+        for (int i = 0; i < CALLS; i++) {
+            listeners[i] = new BlockingListener();
+            spec.send(null, listeners[i]);
+        }
+
+        for (BlockingListener listener : listeners) {
+            assertEquals("item", listener.awaitSuccess().getResponseText());
+        }
+
+        // every refused call obtained authorization on its own, and was sent once more
+        assertEquals(CALLS, authorizedCount.get());
+        assertEquals(unauthorizedCount.get(), authorizationManager.getAuthorizationCount());
+        assertEquals(CALLS + unauthorizedCount.get(), server.getRequestCount());
+    }
+
+    @Test
+    public void listenerShouldBeCalledThroughTheExecutorOfTheSpec() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        };
+
+        RequestSpec spec = new RequestSpec.Builder(server.url("/items").toString(), Request.Method.GET)
+                .callbackExecutor(executor)
+                .build();
+
+        BlockingListener listener = new BlockingListener();
+        spec.send(null, listener);
+        listener.awaitSuccess();
+
+        // the 401 and the resend stay internal, only the outcome goes through the executor
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void cancelAllShouldCancelEveryCallWithTheTagOfTheSpec() throws Exception {
+        final Object tag = new Object();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // holds the calls until they are cancelled
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody("late");
+            }
+        });
+
+        RequestSpec spec = new RequestSpec.Builder(server.url("/slow").toString(), Request.Method.GET)
+                .tag(tag)
+                .build();
+
+        BlockingListener first = new BlockingListener();
+        BlockingListener second = new BlockingListener();
+        spec.send(null, first);
+        spec.send(null, second);
+
+        server.takeRequest();
+        server.takeRequest();
+
+        assertEquals(2, BMSClient.getInstance().cancelAll(tag));
+        assertTrue(first.awaitFailure() instanceof RequestCancelledException);
+        assertTrue(second.awaitFailure() instanceof RequestCancelledException);
+
+        // finished calls leave the registry
+        assertEquals(0, BMSClient.getInstance().cancelAll(tag));
+        release.countDown();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class RequestSpecTest {
+
+    private static final String URL = "https://myapp.mybluemix.net/api/items";
+
+    @Test
+    public void methodShouldBeParsedIgnoringCase() {
+        assertSame(Request.Method.GET, Request.Method.fromString("get"));
+        assertSame(Request.Method.OPTIONS, Request.Method.fromString("Options"));
+        assertNull(Request.Method.fromString("CONNECT"));
+        assertNull(Request.Method.fromString(null));
+
+        assertFalse(Request.Method.GET.permitsRequestBody());
+        assertFalse(Request.Method.HEAD.permitsRequestBody());
+        assertTrue(Request.Method.POST.permitsRequestBody());
+    }
+
+    @Test
+    public void specShouldHoldPrebuiltTemplate() {
+        RequestSpec spec = new RequestSpec.Builder(URL, Request.Method.POST)
+                .header("X-Test", "1")
+                .queryParameter("q", "a b")
+                .body("hello")
+                .build();
+
+        com.squareup.okhttp.Request template = spec.getTemplate();
+
+        assertEquals("POST", template.method());
+        assertEquals(URL + "?q=a%20b", spec.getUrl());
+        assertEquals("1", spec.getHeaders().get("X-Test"));
+        assertEquals("text/plain; charset=utf-8", template.body().contentType().toString());
+        // every call of a spec starts from the same template
+        assertSame(template, spec.getTemplate());
+    }
+
+    @Test
+    public void headAndGetShouldNotHaveBody() {
+        RequestSpec head = new RequestSpec.Builder(URL, Request.Method.HEAD).body("ignored").build();
+        RequestSpec get = new RequestSpec.Builder(URL, Request.Method.GET).build();
+
+        assertNull(head.getTemplate().body());
+        assertNull(get.getTemplate().body());
+    }
+
+    @Test
+    public void builderChangesShouldNotAffectBuiltSpecs() {
+        byte[] data = {1, 2, 3};
+        RequestSpec.Builder builder = new RequestSpec.Builder(URL, Request.Method.PUT).body(data).header("X-Test", "1");
+        RequestSpec first = builder.build();
+
+        data[0] = 9;
+        builder.header("X-Test", "2");
+        RequestSpec second = builder.build();
+
+        assertEquals("1", first.getHeaders().get("X-Test"));
+        assertEquals("2", second.getHeaders().get("X-Test"));
+        assertEquals(3, first.getTemplate().body().contentLength());
+    }
+
+    @Test
+    public void invalidUrlShouldBeRejected() {
+        try {
+            new RequestSpec.Builder("ftp://host/file", Request.Method.GET).build();
+            fail("an ftp URL should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
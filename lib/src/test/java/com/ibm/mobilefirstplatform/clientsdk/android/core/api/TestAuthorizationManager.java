@@ -0,0 +1,139 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AppIdentity;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.DeviceIdentity;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.UserIdentity;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An authorization manager that asks for authorization on 401 responses and grants it at once, with an
+ * Authorization header that the test server can check. While held, authorizations are granted only when
+ * released, and requests that need authorization in the meantime join the one in flight, like the MCA
+ * authorization process.
+ */
+class TestAuthorizationManager implements AuthorizationManager {
+
+    static final String AUTHORIZATION_HEADER = "Bearer test-token";
+
+    private final AtomicInteger authorizationCount = new AtomicInteger();
+    private volatile String cachedHeader = null;
+
+    private boolean held = false;
+    private List<ResponseListener> waitingListeners = new ArrayList<>();
+
+    int getAuthorizationCount() {
+        return authorizationCount.get();
+    }
+
+    @Override
+    public boolean isAuthorizationRequired(int statusCode, Map<String, List<String>> headers) {
+        return statusCode == 401;
+    }
+
+    @Override
+    public boolean isAuthorizationRequired(HttpURLConnection urlConnection) {
+        return false;
+    }
+
+    /**
+     * Holds the authorizations obtained from now on until {@link #release}.
+     */
+    synchronized void hold() {
+        held = true;
+    }
+
+    /**
+     * Grants the authorization in flight to every request waiting for it.
+     */
+    void release() {
+        List<ResponseListener> toNotify;
+
+        synchronized (this) {
+            held = false;
+            cachedHeader = AUTHORIZATION_HEADER;
+
+            toNotify = waitingListeners;
+            waitingListeners = new ArrayList<>();
+        }
+
+        for (ResponseListener listener : toNotify) {
+            listener.onSuccess(null);
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for the authorization in flight
+     */
+    synchronized int getWaitingCount() {
+        return waitingListeners.size();
+    }
+
+    @Override
+    public void obtainAuthorization(Context context, ResponseListener listener, Object... params) {
+        synchronized (this) {
+            if (held) {
+                // only the first request starts an authorization, the others join it
+                if (waitingListeners.isEmpty()) {
+                    authorizationCount.incrementAndGet();
+                }
+
+                waitingListeners.add(listener);
+                return;
+            }
+        }
+
+        authorizationCount.incrementAndGet();
+        cachedHeader = AUTHORIZATION_HEADER;
+        listener.onSuccess(null);
+    }
+
+    @Override
+    public String getCachedAuthorizationHeader() {
+        return cachedHeader;
+    }
+
+    @Override
+    public void clearAuthorizationData() {
+        cachedHeader = null;
+    }
+
+    @Override
+    public UserIdentity getUserIdentity() {
+        return null;
+    }
+
+    @Override
+    public DeviceIdentity getDeviceIdentity() {
+        return null;
+    }
+
+    @Override
+    public AppIdentity getAppIdentity() {
+        return null;
+    }
+
+    @Override
+    public void logout(Context context, ResponseListener listener) {
+        clearAuthorizationData();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.squareup.okhttp.HttpUrl;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class UrlTemplateTest {
+
+    private static final String BASE = "https://myapp.mybluemix.net";
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void shouldExpandVariables() {
+        UrlTemplate template = UrlTemplate.compile(BASE + "/api/items/{id}/files/{name}.json");
+
+        Map<String, String> path = new HashMap<>();
+        path.put("id", "42");
+        path.put("name", "report");
+
+        HttpUrl url = template.expand(path, null);
+
+        assertEquals(BASE + "/api/items/42/files/report.json", url.toString());
+        assertEquals(Arrays.asList("id", "name"), Arrays.asList(template.getVariableNames().toArray()));
+    }
+
+    @Test
+    public void shouldEncodePathAndQueryValues() {
+        UrlTemplate template = UrlTemplate.compile(BASE + "/api/items/{id}");
+
+        Map<String, String> path = new HashMap<>();
+        path.put("id", "a/b c?");
+
+        Map<String, String> query = new LinkedHashMap<>();
+        query.put("q", "x&y=z");
+        query.put("encoded", "%C3%A9t%C3%A9");
+
+        HttpUrl url = template.expand(path, query);
+
+        assertEquals(Arrays.asList("api", "items", "a/b c?"), url.pathSegments());
+        assertEquals("x&y=z", url.queryParameter("q"));
+        // values that are already encoded are not encoded twice
+        assertEquals("\u00e9t\u00e9", url.queryParameter("encoded"));
+    }
+
+    @Test
+    public void shouldKeepTrailingSlashAndBasePath() {
+        UrlTemplate template = UrlTemplate.compile(BASE + "/ctx/items/");
+
+        assertEquals(BASE + "/ctx/items/", template.expand(null, null).toString());
+    }
+
+    @Test
+    public void shouldRejectDotSegments() {
+        String[] invalid = {"/items/./{id}", "/items/../{id}", "/items/%2e%2E/{id}", BASE + "/../{id}"};
+
+        for (String template : invalid) {
+            try {
+                UrlTemplate.compile(template);
+                fail("Template should be rejected: " + template);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        UrlTemplate template = UrlTemplate.compile(BASE + "/api/{a}{b}/{id}");
+        String[][] values = {{"", "", "42"}, {".", "", "42"}, {".", ".", "42"}, {"x", "", ""}, {"", "", ".."}};
+
+        for (String[] value : values) {
+            Map<String, String> path = new HashMap<>();
+            path.put("a", value[0]);
+            path.put("b", value[1]);
+            path.put("id", value[2]);
+
+            try {
+                template.expand(path, null);
+                fail("Expansion should be rejected: " + Arrays.toString(value));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // dots next to other text are ordinary file names
+        Map<String, String> path = new HashMap<>();
+        path.put("a", "..");
+        path.put("b", "x");
+        path.put("id", "...");
+
+        assertEquals(Arrays.asList("api", "..x", "..."), template.expand(path, null).pathSegments());
+    }
+
+    @Test
+    public void shouldRejectInvalidTemplates() {
+        String[] invalid = {"/items/{id", "/items/{}", "/items?q={q}", "ftp://host/{x}", "https://{host}/x", "items/{id}"};
+
+        for (String template : invalid) {
+            try {
+                UrlTemplate.compile(template);
+                fail("Template should be rejected: " + template);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        try {
+            UrlTemplate.compile(BASE + "/items/{id}").expand(new HashMap<String, String>(), null);
+            fail("Missing variable should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the URL building of the template with the string concatenation used before templates existed:
+     * the app route concatenation of convertRelativeURLToBluemixAbsolute, then getURLWithQueryParameters with
+     * a query built with +=, a scan of the path slashes and a java.net.URL parse. Both build the same URLs;
+     * the best of a few rounds is compared, and the timings are reported in the assertion message.
+     */
+    @Test
+    public void templateShouldNotBeSlowerThanConcatenation() throws Exception {
+        UrlTemplate template = UrlTemplate.compile(BASE + "/api/items/{id}");
+        Map<String, String> query = new LinkedHashMap<>();
+
+        for (int i = 0; i < 8; i++) {
+            query.put("param" + i, "value" + i);
+        }
+
+        assertEquals(legacyUrl(BASE, "/api/items/7", query).toString(), expand(template, 7, query).toString());
+
+        buildLegacy(query, WARMUP);
+        buildTemplated(template, query, WARMUP);
+
+        long legacy = Long.MAX_VALUE;
+        long templated = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            legacy = Math.min(legacy, buildLegacy(query, ITERATIONS));
+            templated = Math.min(templated, buildTemplated(template, query, ITERATIONS));
+        }
+
+        String timings = ITERATIONS + " URLs: concatenation=" + TimeUnit.NANOSECONDS.toMillis(legacy)
+                + "ms, template=" + TimeUnit.NANOSECONDS.toMillis(templated) + "ms";
+
+        // the margin keeps the comparison stable on a busy machine
+        assertTrue("template should not be slower than concatenation, " + timings, templated < legacy * 2);
+    }
+
+    private static long buildLegacy(Map<String, String> query, int iterations) throws Exception {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            length += legacyUrl(BASE, "/api/items/" + i, query).toString().length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(length > 0);
+
+        return elapsed;
+    }
+
+    private static long buildTemplated(UrlTemplate template, Map<String, String> query, int iterations) {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            length += expand(template, i, query).toString().length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(length > 0);
+
+        return elapsed;
+    }
+
+    private static URL expand(UrlTemplate template, int id, Map<String, String> query) {
+        Map<String, String> path = new HashMap<>();
+        path.put("id", Integer.toString(id));
+
+        return template.expand(path, query).url();
+    }
+
+    /**
+     * The URL building of requests before templates existed.
+     */
+    private static URL legacyUrl(String appRoute, String path, Map<String, String> queryParameters) throws Exception {
+        String url = appRoute + path;
+        String queryParamsURLFragment = "";
+        int i = 0;
+
+        for (Map.Entry<String, String> entry : queryParameters.entrySet()) {
+            if (i > 0) {
+                queryParamsURLFragment += "&";
+            }
+
+            queryParamsURLFragment += entry.getKey() + "=" + entry.getValue();
+            i++;
+        }
+
+        int slashCount = 0;
+        int lastIndex = 0;
+        while (lastIndex != -1) {
+            lastIndex = url.indexOf("/", lastIndex);
+            if (lastIndex != -1) {
+                slashCount++;
+                lastIndex += 1;
+            }
+        }
+
+        if (slashCount < 3) {
+            url += "/";
+        }
+
+        if (!url.contains("?")) {
+            queryParamsURLFragment = "?" + queryParamsURLFragment;
+        }
+
+        return new URL(url + queryParamsURLFragment);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class BaseRequestTest {
+
+    private static final int REQUEST_COUNT = 200;
+    private static final int SERVER_DELAY = 600;
+    private static final int SHORT_TIMEOUT = 100;
+    private static final int LONG_TIMEOUT = 5000;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(SERVER_DELAY);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void timeoutShouldNotChangeSharedClient() throws Exception {
+        BaseRequest request = new BaseRequest("http://test.com", BaseRequest.GET, 42);
+        OkHttpClient sharedClient = request.getHttpClient();
+
+        assertEquals(BaseRequest.DEFAULT_TIMEOUT, sharedClient.getReadTimeout());
+
+        OkHttpClient callClient = request.getClientForCall();
+
+        assertNotSame(sharedClient, callClient);
+        assertEquals(42, callClient.getConnectTimeout());
+        assertEquals(42, callClient.getReadTimeout());
+        assertEquals(42, callClient.getWriteTimeout());
+        assertSame(sharedClient.getDispatcher(), callClient.getDispatcher());
+        assertEquals(BaseRequest.DEFAULT_TIMEOUT, sharedClient.getReadTimeout());
+
+        BaseRequest defaultRequest = new BaseRequest("http://test.com", BaseRequest.GET);
+
+        assertSame(sharedClient, defaultRequest.getClientForCall());
+    }
+
+    @Test
+    public void concurrentRequestsShouldKeepTheirOwnTimeouts() throws Exception {
+        // the dispatcher is shared by every request of the process, so its limits are put back afterwards
+        Dispatcher dispatcher = new BaseRequest(null, BaseRequest.GET).getHttpClient().getDispatcher();
+        int maxRequests = dispatcher.getMaxRequests();
+        int maxRequestsPerHost = dispatcher.getMaxRequestsPerHost();
+
+        // let all the requests run at the same time so every timeout is measured in parallel
+        dispatcher.setMaxRequests(REQUEST_COUNT);
+        dispatcher.setMaxRequestsPerHost(REQUEST_COUNT);
+
+        try {
+            sendWithMixedTimeouts();
+        } finally {
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        }
+    }
+
+    private void sendWithMixedTimeouts() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(REQUEST_COUNT);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(REQUEST_COUNT);
+        String url = server.url("/slow").toString();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            final int index = i;
+            int timeout = (index % 2 == 0) ? SHORT_TIMEOUT : LONG_TIMEOUT;
+
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET, timeout);
+            request.send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    results.set(index, response);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    results.set(index, t);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue("requests did not finish in time", latch.await(30, TimeUnit.SECONDS));
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            Object result = results.get(i);
+
+            if (i % 2 == 0) {
+                assertTrue("request " + i + " should have timed out but got " + result, result instanceof SocketTimeoutException);
+            } else {
+                assertTrue("request " + i + " should have succeeded but got " + result, result instanceof Response);
+                assertEquals(200, ((Response) result).getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void identicalGetRequestsShouldShareOneCall() throws Exception {
+        final int callerCount = 5;
+        final CountDownLatch latch = new CountDownLatch(callerCount);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(callerCount);
+        String url = server.url("/shared").toString();
+
+        for (int i = 0; i < callerCount; i++) {
+            final int index = i;
+
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+            request.setCoalescingEnabled(true);
+            request.send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    results.set(index, response);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    results.set(index, t);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue("requests did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+
+        for (int i = 0; i < callerCount; i++) {
+            Object result = results.get(i);
+
+            assertTrue("request " + i + " should have succeeded but got " + result, result instanceof Response);
+            assertEquals("ok", ((Response) result).getResponseText());
+        }
+    }
+
+    @Test
+    public void requestsWithDifferentTimeoutsShouldNotShareACall() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(2);
+        String url = server.url("/shared").toString();
+        int[] timeouts = { SHORT_TIMEOUT, LONG_TIMEOUT };
+
+        for (int i = 0; i < timeouts.length; i++) {
+            final int index = i;
+
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET, timeouts[i]);
+            request.setCoalescingEnabled(true);
+            request.send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    results.set(index, response);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    results.set(index, t);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue("requests did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+        assertTrue("short request should have timed out but got " + results.get(0), results.get(0) instanceof SocketTimeoutException);
+        assertTrue("long request should have succeeded but got " + results.get(1), results.get(1) instanceof Response);
+    }
+
+    @Test
+    public void cancelShouldStopCallInFlight() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(1);
+        CallHandle handle = new CallHandle();
+
+        BaseRequest request = new BaseRequest(server.url("/cancel").toString(), BaseRequest.GET);
+        request.setCallHandle(handle);
+        request.send(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                results.set(0, response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                results.set(0, t);
+                latch.countDown();
+            }
+        });
+
+        // wait until the call reached the server
+        server.takeRequest();
+        long start = System.nanoTime();
+
+        assertTrue(handle.cancel());
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertTrue("request should have been cancelled but got " + results.get(0), results.get(0) instanceof RequestCancelledException);
+        assertTrue("cancel should not wait for the server", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SERVER_DELAY);
+
+        // a cancelled handle stops the next calls before they are sent
+        final CountDownLatch secondLatch = new CountDownLatch(1);
+
+        request.send(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                results.set(0, response);
+                secondLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                results.set(0, t);
+                secondLatch.countDown();
+            }
+        });
+
+        assertTrue(secondLatch.await(10, TimeUnit.SECONDS));
+        assertTrue(results.get(0) instanceof RequestCancelledException);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void cancelAllShouldCancelTaggedCallsThroughTheirExecutor() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(2);
+        final Object tag = new Object();
+        CallHandle handle = new CallHandle();
+
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "callback");
+                thread.start();
+            }
+        };
+
+        ResponseListener listener = ResponseDelivery.wrap(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                results.set(0, response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                results.set(0, t);
+                results.set(1, Thread.currentThread().getName());
+                latch.countDown();
+            }
+        }, executor, handle, tag);
+
+        BaseRequest request = new BaseRequest(server.url("/tagged").toString(), BaseRequest.GET);
+        request.setCallHandle(handle);
+        request.send(listener);
+
+        server.takeRequest();
+
+        assertEquals(1, CallRegistry.cancelAll(tag));
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertTrue("request should have been cancelled but got " + results.get(0), results.get(0) instanceof RequestCancelledException);
+        assertEquals("callback", results.get(1));
+
+        // finished calls leave the registry
+        assertEquals(0, CallRegistry.cancelAll(tag));
+    }
+
+    @Test
+    public void executeShouldWaitForResponseOnCallingThread() throws Exception {
+        BaseRequest request = new BaseRequest(server.url("/sync").toString(), BaseRequest.POST);
+        request.addHeader(BaseRequest.CONTENT_TYPE, BaseRequest.TEXT_PLAIN);
+
+        com.squareup.okhttp.Response response = request.executeRequest(request.createBody("hello"));
+
+        assertEquals(200, response.code());
+        assertEquals("ok", response.body().string());
+
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("POST", recorded.getMethod());
+        assertEquals("hello", recorded.getBody().readUtf8());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener.State;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_DURATION = 200;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    private final List<String> transitions = new ArrayList<>();
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig.Builder()
+                .windowSize(10)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallThreshold(50, 1000)
+                .openDuration(OPEN_DURATION)
+                .halfOpenCalls(2)
+                .build();
+
+        breaker = new CircuitBreaker("example.com", config, new CircuitBreakerListener() {
+            @Override
+            public void onStateChanged(String host, State from, State to) {
+                transitions.add(from + "->" + to);
+            }
+        });
+    }
+
+    @Test
+    public void shouldNotOpenBeforeMinimumCalls() {
+        call(true, FAST);
+        call(true, FAST);
+        call(true, FAST);
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void shouldOpenOnFailureRateAndFailFast() {
+        call(false, FAST);
+        call(true, FAST);
+        call(false, FAST);
+        call(true, FAST);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertNull(breaker.acquire());
+        assertEquals(1, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void shouldOpenOnSlowCallRate() {
+        call(false, SLOW);
+        call(false, FAST);
+        call(false, SLOW);
+        call(false, FAST);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulTrialCalls() throws Exception {
+        open();
+        Thread.sleep(OPEN_DURATION + 50);
+
+        CircuitBreaker.Permit first = breaker.acquire();
+        CircuitBreaker.Permit second = breaker.acquire();
+        assertNotNull(first);
+        assertNotNull(second);
+
+        // only the trial calls are let through
+        assertNull(breaker.acquire());
+
+        breaker.record(first, false, FAST);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.record(second, false, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void shouldOpenAgainWhenTrialCallsFail() throws Exception {
+        open();
+        Thread.sleep(OPEN_DURATION + 50);
+
+        call(true, FAST);
+        call(true, FAST);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void shouldIgnoreOutcomesFromBeforeStateChange() {
+        CircuitBreaker.Permit stale = breaker.acquire();
+        open();
+
+        breaker.record(stale, false, FAST);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void oldOutcomesShouldLeaveTheWindow() {
+        call(true, FAST);
+        for (int i = 0; i < 10; i++) {
+            call(false, FAST);
+        }
+
+        // the early failure has left the window of 10 calls, and then failures up to 4 of 10 keep it closed
+        for (int i = 0; i < 4; i++) {
+            call(true, FAST);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+
+        call(true, FAST);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true, FAST);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    private void call(boolean failed, long duration) {
+        CircuitBreaker.Permit permit = breaker.acquire();
+        assertNotNull(permit);
+        breaker.record(permit, failed, duration);
+    }
+}
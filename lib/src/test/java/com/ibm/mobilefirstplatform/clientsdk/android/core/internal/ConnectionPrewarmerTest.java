@@ -0,0 +1,199 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.BuildConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ConnectionStatistics;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.api.MCAAuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequestManager;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.internal.SslContextBuilder;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ConnectionPrewarmerTest {
+
+    private static final int ROUNDS = 5;
+
+    private SSLContext sslContext;
+    private MockWebServer server;
+    private AuthorizationManager previousAuthorizationManager;
+
+    @Before
+    public void setUp() throws Exception {
+        sslContext = SslContextBuilder.localhost();
+        resetConnections();
+
+        server = new MockWebServer();
+        server.useHttps(sslContext.getSocketFactory(), false);
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+
+        previousAuthorizationManager = BMSClient.getInstance().getAuthorizationManager();
+        BMSClient.getInstance().initialize(RuntimeEnvironment.application, server.url("/").toString(), "guid", BMSClient.REGION_US_SOUTH);
+
+        // a server that can be reached, so only the authorization manager decides whether it is prewarmed
+        AuthorizationRequestManager.overrideServerHost = server.url("/auth").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AuthorizationRequestManager.overrideServerHost = null;
+        BMSClient.getInstance().setAuthorizationManager(previousAuthorizationManager);
+        HttpClientRegistry.setSslSocketFactory(TLSEnabledSSLSocketFactory.getInstance());
+        server.shutdown();
+    }
+
+    @Test
+    public void firstRequestShouldReusePrewarmedConnection() throws Exception {
+        BMSClient.getInstance().prewarm();
+        awaitIdleConnections(1);
+
+        ConnectionStatistics prewarmed = BMSClient.getInstance().getConnectionStatistics();
+
+        // sent through the resource client, as a request of the application would be
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        resourceClient.newCall(new Request.Builder().url(server.url("/resource")).build()).execute().body().close();
+
+        RecordedRequest prewarmRequest = server.takeRequest();
+        RecordedRequest firstRequest = server.takeRequest();
+        ConnectionStatistics after = BMSClient.getInstance().getConnectionStatistics();
+
+        assertEquals("HEAD", prewarmRequest.getMethod());
+        assertEquals("/resource", firstRequest.getPath());
+        assertEquals(1, firstRequest.getSequenceNumber());
+        assertEquals(1, after.getConnectionCount());
+        assertEquals(prewarmed.getFullHandshakeCount(), after.getFullHandshakeCount());
+        assertEquals(prewarmed.getResumedHandshakeCount(), after.getResumedHandshakeCount());
+    }
+
+    @Test
+    public void authorizationServerShouldNotBePrewarmedWithoutAuthorizationManager() throws Exception {
+        // initialize installs a DummyAuthorizationManager, which has no server
+        BMSClient.getInstance().prewarm();
+        awaitIdleConnections(1);
+
+        // give a second prewarm request the time to arrive
+        Thread.sleep(500);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("/", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void authorizationServerShouldBePrewarmedWithMcaAuthorizationManager() throws Exception {
+        BMSClient.getInstance().setAuthorizationManager(MCAAuthorizationManager.createInstance(RuntimeEnvironment.application));
+        BMSClient.getInstance().prewarm();
+
+        List<String> paths = new ArrayList<>();
+        paths.add(server.takeRequest().getPath());
+        paths.add(server.takeRequest().getPath());
+
+        assertTrue(paths.toString(), paths.contains("/"));
+        assertTrue(paths.toString(), paths.contains("/auth/"));
+    }
+
+    /**
+     * Compares the latency of the first request of the application with and without prewarming, each time
+     * with an empty connection pool. Cold requests may still resume the TLS session of an earlier round,
+     * which only makes the comparison harder for prewarming.
+     */
+    @Test
+    public void prewarmedFirstRequestShouldBeFasterThanCold() throws Exception {
+        long[] cold = new long[ROUNDS];
+        long[] prewarmed = new long[ROUNDS];
+
+        for (int i = 0; i < ROUNDS; i++) {
+            resetConnections();
+            cold[i] = executeFirstRequest();
+
+            resetConnections();
+            BMSClient.getInstance().prewarm();
+            awaitIdleConnections(1);
+            prewarmed[i] = executeFirstRequest();
+        }
+
+        Arrays.sort(cold);
+        Arrays.sort(prewarmed);
+        long coldMedian = TimeUnit.NANOSECONDS.toMicros(cold[ROUNDS / 2]);
+        long prewarmedMedian = TimeUnit.NANOSECONDS.toMicros(prewarmed[ROUNDS / 2]);
+
+        assertTrue("first request latency over TLS, cold median=" + coldMedian + "us, prewarmed median="
+                + prewarmedMedian + "us", prewarmedMedian < coldMedian);
+    }
+
+    /**
+     * Empties the shared connection pool.
+     */
+    private void resetConnections() throws Exception {
+        HttpClientRegistry.setSslSocketFactory(new TLSEnabledSSLSocketFactory(sslContext,
+                TLSEnabledSSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE, TLSEnabledSSLSocketFactory.DEFAULT_SESSION_TIMEOUT));
+    }
+
+    /**
+     * Sends a request through the resource client, as a request of the application would be.
+     *
+     * @return the time until the body was read, in nanoseconds
+     */
+    private long executeFirstRequest() throws Exception {
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        Request request = new Request.Builder().url(server.url("/resource")).build();
+
+        long start = System.nanoTime();
+        resourceClient.newCall(request).execute().body().string();
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Prewarming runs in the background, the connection is back in the pool once its response is closed.
+     */
+    private void awaitIdleConnections(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (BMSClient.getInstance().getConnectionStatistics().getIdleConnectionCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, BMSClient.getInstance().getConnectionStatistics().getIdleConnectionCount());
+    }
+}
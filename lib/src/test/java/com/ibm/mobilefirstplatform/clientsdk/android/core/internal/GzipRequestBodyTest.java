@@ -0,0 +1,216 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CompressionStatistics;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class GzipRequestBodyTest {
+
+    private static final long CPU_TIME_PER_BODY = 1000;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        // a fake clock, the platform one is not available on the JVM
+        GzipRequestBody.setCpuClock(new GzipRequestBody.CpuClock() {
+            private long now = 0;
+
+            @Override
+            public synchronized long threadCpuTimeNanos() {
+                now += CPU_TIME_PER_BODY;
+                return now;
+            }
+        });
+
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        GzipRequestBody.setCpuClock(null);
+        server.shutdown();
+    }
+
+    @Test
+    public void largeBodyShouldBeSentCompressed() throws Exception {
+        String body = repeat("{\"event\":\"sync\",\"value\":42}", 1000);
+        CompressionStatistics before = GzipRequestBody.getStatistics();
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        send(body, 1024);
+
+        RecordedRequest recorded = server.takeRequest();
+
+        assertEquals("gzip", recorded.getHeader("Content-Encoding"));
+        assertEquals(body, gunzip(recorded.getBody()));
+
+        CompressionStatistics after = GzipRequestBody.getStatistics();
+        long sent = after.getBytesAfterCompression() - before.getBytesAfterCompression();
+
+        assertEquals(1, after.getCompressedBodyCount() - before.getCompressedBodyCount());
+        assertEquals(body.length(), after.getBytesBeforeCompression() - before.getBytesBeforeCompression());
+        assertEquals(recorded.getBodySize(), sent);
+        assertTrue("the body should shrink, " + sent + " bytes sent", sent < body.length() / 10);
+        assertEquals(CPU_TIME_PER_BODY, after.getCpuTimeNanos() - before.getCpuTimeNanos());
+    }
+
+    @Test
+    public void smallBodyShouldBeSentAsIs() throws Exception {
+        CompressionStatistics before = GzipRequestBody.getStatistics();
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        send("{\"event\":\"sync\"}", 1024);
+
+        RecordedRequest recorded = server.takeRequest();
+
+        assertNull(recorded.getHeader("Content-Encoding"));
+        assertEquals("{\"event\":\"sync\"}", recorded.getBody().readUtf8());
+        assertEquals(before.getCompressedBodyCount(), GzipRequestBody.getStatistics().getCompressedBodyCount());
+    }
+
+    @Test
+    public void compressedResponseShouldBeDecoded() throws Exception {
+        String body = repeat("{\"event\":\"sync\",\"value\":42}", 1000);
+        Buffer compressed = new Buffer();
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(compressed));
+
+        gzipSink.writeUtf8(body);
+        gzipSink.close();
+
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(compressed));
+        Response response = send(body, 1024);
+
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+        assertEquals(body, response.getResponseText());
+    }
+
+    @Test
+    public void failedBodyShouldCloseTheGzipSinkAndNotBeCounted() throws Exception {
+        final IOException failure = new IOException("body failed");
+        RequestBody failingBody = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return MediaType.parse("application/json");
+            }
+
+            @Override
+            public long contentLength() {
+                return 2048;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8("{\"event\":");
+                throw failure;
+            }
+        };
+
+        final boolean[] closed = new boolean[1];
+        BufferedSink socket = Okio.buffer(new ForwardingSink(new Buffer()) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        });
+
+        CompressionStatistics before = GzipRequestBody.getStatistics();
+
+        try {
+            new GzipRequestBody(failingBody).writeTo(socket);
+            fail("the failure of the body should be thrown");
+        } catch (IOException e) {
+            assertTrue(e == failure);
+        }
+
+        // the gzip sink was closed, which ends its Deflater
+        assertTrue(closed[0]);
+
+        CompressionStatistics after = GzipRequestBody.getStatistics();
+        assertEquals(before.getCompressedBodyCount(), after.getCompressedBodyCount());
+        assertEquals(before.getBytesBeforeCompression(), after.getBytesBeforeCompression());
+        assertEquals(before.getBytesAfterCompression(), after.getBytesAfterCompression());
+        assertEquals(before.getCpuTimeNanos(), after.getCpuTimeNanos());
+    }
+
+    private Response send(String body, long threshold) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Response> result = new AtomicReference<>();
+
+        BaseRequest request = new BaseRequest(server.url("/sync").toString(), BaseRequest.POST);
+        request.setCompressionEnabled(true);
+        request.setCompressionThreshold(threshold);
+        request.send(body, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result.set(response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                latch.countDown();
+            }
+        });
+
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertEquals(200, result.get().getStatus());
+
+        return result.get();
+    }
+
+    private static String gunzip(Buffer compressed) throws Exception {
+        return Okio.buffer(new GzipSource(compressed)).readUtf8();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.internal.SslContextBuilder;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class Http2Test {
+
+    private static final int CONCURRENT_REQUESTS = 50;
+    private static final int SERVER_DELAY = 100;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        SSLContext sslContext = SslContextBuilder.localhost();
+
+        HttpClientRegistry.setSslSocketFactory(new TLSEnabledSSLSocketFactory(sslContext,
+                TLSEnabledSSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE, TLSEnabledSSLSocketFactory.DEFAULT_SESSION_TIMEOUT));
+
+        // let the whole burst run at once, so HTTP/1.1 needs one connection per request
+        BMSClient.getInstance().setConnectionSettings(CONCURRENT_REQUESTS, CONCURRENT_REQUESTS, CONCURRENT_REQUESTS,
+                HttpClientRegistry.DEFAULT_KEEP_ALIVE_DURATION);
+
+        server = new MockWebServer();
+        server.useHttps(sslContext.getSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(SERVER_DELAY);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BMSClient.getInstance().setHttp2Enabled(true);
+        BMSClient.getInstance().setConnectionSettings(HttpClientRegistry.DEFAULT_MAX_REQUESTS, HttpClientRegistry.DEFAULT_MAX_REQUESTS_PER_HOST,
+                HttpClientRegistry.DEFAULT_MAX_IDLE_CONNECTIONS, HttpClientRegistry.DEFAULT_KEEP_ALIVE_DURATION);
+        HttpClientRegistry.setSslSocketFactory(TLSEnabledSSLSocketFactory.getInstance());
+        server.shutdown();
+    }
+
+    @Test
+    public void switchShouldApplyToResourceAndAuthorizationClients() throws Exception {
+        BaseRequest authorizationRequest = new AuthorizationRequest(server.url("/").toString(), BaseRequest.GET);
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        OkHttpClient authorizationClient = authorizationRequest.getHttpClient();
+
+        BMSClient.getInstance().setHttp2Enabled(false);
+
+        assertEquals(Arrays.asList(Protocol.HTTP_1_1), resourceClient.getProtocols());
+        assertEquals(Arrays.asList(Protocol.HTTP_1_1), authorizationClient.getProtocols());
+
+        BMSClient.getInstance().setHttp2Enabled(true);
+
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), resourceClient.getProtocols());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), authorizationClient.getProtocols());
+    }
+
+    @Test
+    public void http1ShouldBeNegotiatedWhenHttp2IsDisabled() throws Exception {
+        BMSClient.getInstance().setHttp2Enabled(false);
+
+        assertEquals(Protocol.HTTP_1_1, sendFirstRequest());
+    }
+
+    /**
+     * Sends the same burst of concurrent requests over HTTP/1.1 and over HTTP/2. Needs ALPN support in the
+     * JVM running the test.
+     */
+    @Test
+    public void concurrentRequestsOverHttp2ShouldShareOneConnection() throws Exception {
+        // switching the protocols empties the connection pool
+        BMSClient.getInstance().setHttp2Enabled(false);
+        sendFirstRequest();
+        sendBurst();
+        int http1Connections = BMSClient.getInstance().getConnectionStatistics().getConnectionCount();
+
+        BMSClient.getInstance().setHttp2Enabled(true);
+        Protocol protocol = sendFirstRequest();
+        sendBurst();
+        int http2Connections = BMSClient.getInstance().getConnectionStatistics().getConnectionCount();
+
+        Assume.assumeTrue("ALPN is not available, HTTP/2 was not negotiated", protocol == Protocol.HTTP_2);
+
+        assertEquals(1, http2Connections);
+        assertEquals(1, BMSClient.getInstance().getConnectionStatistics().getMultiplexedConnectionCount());
+        assertTrue("HTTP/1.1 should need more connections, it used " + http1Connections, http1Connections > http2Connections);
+    }
+
+    /**
+     * Opens the connection with a request on the resource client, so HTTP/2 streams have a connection to share.
+     *
+     * @return the negotiated protocol
+     */
+    private Protocol sendFirstRequest() throws Exception {
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        com.squareup.okhttp.Response response = resourceClient.newCall(new Request.Builder().url(server.url("/first")).build()).execute();
+
+        response.body().close();
+
+        return response.protocol();
+    }
+
+    private void sendBurst() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(CONCURRENT_REQUESTS);
+        final AtomicInteger successes = new AtomicInteger();
+
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            new BaseRequest(server.url("/burst/" + i).toString(), BaseRequest.GET).send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    successes.incrementAndGet();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue("requests did not finish in time", latch.await(30, TimeUnit.SECONDS));
+        assertEquals(CONCURRENT_REQUESTS, successes.get());
+    }
+}
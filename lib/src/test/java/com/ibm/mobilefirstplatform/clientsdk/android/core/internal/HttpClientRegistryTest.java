@@ -0,0 +1,153 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ConnectionStatistics;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class HttpClientRegistryTest {
+
+    private static final int SERVER_DELAY = 200;
+    private static final int REQUEST_COUNT = 6;
+
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int concurrent = concurrentRequests.incrementAndGet();
+
+                synchronized (maxConcurrentRequests) {
+                    maxConcurrentRequests.set(Math.max(maxConcurrentRequests.get(), concurrent));
+                }
+
+                Thread.sleep(SERVER_DELAY);
+                concurrentRequests.decrementAndGet();
+
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BMSClient.getInstance().setConnectionSettings(HttpClientRegistry.DEFAULT_MAX_REQUESTS, HttpClientRegistry.DEFAULT_MAX_REQUESTS_PER_HOST,
+                HttpClientRegistry.DEFAULT_MAX_IDLE_CONNECTIONS, HttpClientRegistry.DEFAULT_KEEP_ALIVE_DURATION);
+        server.shutdown();
+    }
+
+    @Test
+    public void settingsShouldApplyToResourceAndAuthorizationClients() throws Exception {
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        // AuthorizationRequest overrides the protected getter, so it is called through BaseRequest
+        BaseRequest authorizationRequest = new AuthorizationRequest(server.url("/").toString(), BaseRequest.GET);
+        OkHttpClient authorizationClient = authorizationRequest.getHttpClient();
+
+        BMSClient.getInstance().setConnectionSettings(10, 7, 3, 60000);
+
+        assertEquals(10, BMSClient.getInstance().getMaxRequests());
+        assertEquals(7, BMSClient.getInstance().getMaxRequestsPerHost());
+        assertEquals(3, BMSClient.getInstance().getMaxIdleConnections());
+        assertEquals(60000, BMSClient.getInstance().getKeepAliveDuration());
+
+        for (OkHttpClient client : new OkHttpClient[] { resourceClient, authorizationClient }) {
+            assertEquals(10, client.getDispatcher().getMaxRequests());
+            assertEquals(7, client.getDispatcher().getMaxRequestsPerHost());
+        }
+
+        assertSame(resourceClient.getConnectionPool(), authorizationClient.getConnectionPool());
+    }
+
+    @Test
+    public void invalidSettingsShouldBeRejected() {
+        BMSClient.getInstance().setConnectionSettings(10, 7, 3, 60000);
+
+        try {
+            BMSClient.getInstance().setConnectionSettings(10, 0, 3, 60000);
+            fail("a per host limit of 0 should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(7, BMSClient.getInstance().getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void perHostLimitShouldApplyToRequests() throws Exception {
+        BMSClient.getInstance().setConnectionSettings(HttpClientRegistry.DEFAULT_MAX_REQUESTS, 2,
+                HttpClientRegistry.DEFAULT_MAX_IDLE_CONNECTIONS, HttpClientRegistry.DEFAULT_KEEP_ALIVE_DURATION);
+
+        final CountDownLatch latch = new CountDownLatch(REQUEST_COUNT);
+        final AtomicInteger successes = new AtomicInteger();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            new BaseRequest(server.url("/limited/" + i).toString(), BaseRequest.GET).send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    successes.incrementAndGet();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue("requests did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertEquals(REQUEST_COUNT, successes.get());
+        assertEquals(2, maxConcurrentRequests.get());
+    }
+
+    @Test
+    public void statisticsShouldReportIdleConnections() throws Exception {
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+
+        resourceClient.newCall(new Request.Builder().url(server.url("/pooled")).build()).execute().body().close();
+
+        ConnectionStatistics statistics = BMSClient.getInstance().getConnectionStatistics();
+
+        assertTrue(statistics.toString(), statistics.getConnectionCount() >= 1);
+        assertTrue(statistics.toString(), statistics.getIdleConnectionCount() >= 1);
+        assertEquals(0, statistics.getRunningCallCount());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class InterceptorRegistryTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private List<String> calls;
+    private List<Interceptor> registered;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        client = new OkHttpClient();
+        InterceptorRegistry.install(client);
+
+        calls = Collections.synchronizedList(new ArrayList<String>());
+        registered = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Interceptor interceptor : registered) {
+            InterceptorRegistry.unregister(interceptor);
+        }
+
+        server.shutdown();
+    }
+
+    @Test
+    public void interceptorsShouldRunByPriority() throws Exception {
+        register("low", InterceptorRegistry.Level.APPLICATION, -10);
+        register("high", InterceptorRegistry.Level.APPLICATION, 10);
+        register("default", InterceptorRegistry.Level.APPLICATION, InterceptorRegistry.DEFAULT_PRIORITY);
+        register("default-later", InterceptorRegistry.Level.APPLICATION, InterceptorRegistry.DEFAULT_PRIORITY);
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        execute("/");
+
+        assertEquals(Arrays.asList("high", "default", "default-later", "low"), calls);
+    }
+
+    @Test
+    public void networkInterceptorsShouldRunForEveryRedirect() throws Exception {
+        register("application", InterceptorRegistry.Level.APPLICATION, InterceptorRegistry.DEFAULT_PRIORITY);
+        register("network", InterceptorRegistry.Level.NETWORK, InterceptorRegistry.DEFAULT_PRIORITY);
+
+        server.enqueue(new MockResponse().setResponseCode(302).setHeader("Location", "/target"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        execute("/redirect");
+
+        assertEquals(Arrays.asList("application", "network", "network"), calls);
+    }
+
+    @Test
+    public void unregisteredInterceptorsShouldNotRun() throws Exception {
+        Interceptor interceptor = register("removed", InterceptorRegistry.Level.NETWORK, InterceptorRegistry.DEFAULT_PRIORITY);
+        InterceptorRegistry.unregister(interceptor);
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        execute("/");
+
+        assertTrue(calls.isEmpty());
+        assertTrue(InterceptorRegistry.getInterceptors(InterceptorRegistry.Level.NETWORK).isEmpty());
+    }
+
+    private Interceptor register(final String name, InterceptorRegistry.Level level, int priority) {
+        Interceptor interceptor = new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                calls.add(name);
+                return chain.proceed(chain.request());
+            }
+        };
+
+        InterceptorRegistry.register(interceptor, level, priority);
+        registered.add(interceptor);
+
+        return interceptor;
+    }
+
+    private void execute(String path) throws IOException {
+        Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+        response.body().close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.BuildConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.JsonArrayListener;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JsonArrayReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void readerShouldReturnElementsOfTopLevelArray() throws Exception {
+        JsonArrayReader reader = reader("[{\"id\": 1, \"tags\": [\"a\"]}, \"text\", 2.5, true, null]", null);
+
+        JSONObject first = (JSONObject) reader.next();
+        assertEquals(1L, first.get("id"));
+        assertEquals("a", ((JSONArray) first.get("tags")).get(0));
+        assertEquals("text", reader.next());
+        assertEquals(2.5, reader.next());
+        assertEquals(Boolean.TRUE, reader.next());
+        assertEquals(JSONObject.NULL, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void readerShouldFindNamedArrayAndSkipOtherMembers() throws Exception {
+        JsonArrayReader reader = reader("{\"total\": 2, \"meta\": {\"items\": 0}, \"items\": [1, 2], \"next\": null}", "items");
+
+        assertEquals(1L, reader.next());
+        assertEquals(2L, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void readerShouldFailOnMissingArrayOrMalformedJson() throws Exception {
+        try {
+            reader("{\"total\": 2}", "items").hasNext();
+            fail("Missing array was found");
+        } catch (IOException expected) {
+        }
+
+        JsonArrayReader reader = reader("[1, {\"id\" 2}]", null);
+        assertEquals(1L, reader.next());
+
+        try {
+            reader.next();
+            fail("Malformed element was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void listenerShouldDeliverElementsAndCount() {
+        final List<Object> elements = new ArrayList<>();
+        final int[] completed = {-1};
+        final Throwable[] failure = {null};
+
+        JsonArrayListener listener = new JsonArrayListener("items", null) {
+            @Override
+            public void onElement(Object element, int index) {
+                assertEquals(elements.size(), index);
+                elements.add(element);
+            }
+
+            @Override
+            public void onComplete(com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response response, int count) {
+                completed[0] = count;
+            }
+
+            @Override
+            public void onFailure(com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response response, Throwable t, JSONObject extendedInfo) {
+                failure[0] = t;
+            }
+        };
+
+        ResponseImpl response = new ResponseImpl(okResponse("{\"items\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 3}]}"), true);
+        listener.onSuccess(response);
+        response.close();
+
+        assertNull(failure[0]);
+        assertEquals(3, completed[0]);
+        assertEquals(3, elements.size());
+        assertEquals(3, ((JSONObject) elements.get(2)).optInt("id"));
+
+        elements.clear();
+        ResponseImpl malformed = new ResponseImpl(okResponse("{\"items\": [{\"id\": 1}, oops"), true);
+        listener.onSuccess(malformed);
+        malformed.close();
+
+        assertTrue(failure[0] instanceof IOException);
+    }
+
+    private static JsonArrayReader reader(String json, String arrayName) {
+        return new JsonArrayReader(new ByteArrayInputStream(json.getBytes(UTF_8)), UTF_8, arrayName);
+    }
+
+    private static Response okResponse(String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json; charset=utf-8"), body))
+                .build();
+    }
+}
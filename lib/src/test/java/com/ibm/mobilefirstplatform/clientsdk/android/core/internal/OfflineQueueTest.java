@@ -0,0 +1,475 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestCancelledException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class OfflineQueueTest {
+
+    private MockWebServer server;
+    private File directory;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        directory = File.createTempFile("offline-queue", "");
+        assertTrue(directory.delete());
+
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void queueFileShouldSurviveReopen() throws Exception {
+        QueueFile queueFile = new QueueFile(directory);
+        queueFile.append("first".getBytes("UTF-8"));
+        queueFile.append("second".getBytes("UTF-8"));
+        queueFile.append("third".getBytes("UTF-8"));
+        queueFile.remove(queueFile.peek());
+        queueFile.close();
+
+        queueFile = new QueueFile(directory);
+        assertEquals(2, queueFile.size());
+        assertEquals("second", new String(queueFile.peek().getData(), "UTF-8"));
+
+        QueueFile.Record second = queueFile.peek();
+        assertEquals("third", new String(queueFile.read(second.getNextOffset()).getData(), "UTF-8"));
+        queueFile.close();
+    }
+
+    @Test
+    public void queueFileShouldDropTornAppend() throws Exception {
+        QueueFile queueFile = new QueueFile(directory);
+        queueFile.append("complete".getBytes("UTF-8"));
+        long validLength = queueFile.getFileLength();
+        queueFile.close();
+
+        // a crash in the middle of an append leaves a record header without all of its data
+        RandomAccessFile log = new RandomAccessFile(new File(directory, QueueFile.LOG_FILE), "rw");
+        log.seek(log.length());
+        log.writeInt(1000);
+        log.writeInt(42);
+        log.write(new byte[10]);
+        log.close();
+
+        queueFile = new QueueFile(directory);
+        assertEquals(1, queueFile.size());
+        assertEquals(validLength, queueFile.getFileLength());
+
+        // appending after recovery continues from the last valid record
+        queueFile.append("after".getBytes("UTF-8"));
+        queueFile.remove(queueFile.peek());
+        assertEquals("after", new String(queueFile.peek().getData(), "UTF-8"));
+        queueFile.close();
+    }
+
+    @Test
+    public void queueFileShouldReplayAllOnDamagedHead() throws Exception {
+        QueueFile queueFile = new QueueFile(directory);
+        queueFile.append("first".getBytes("UTF-8"));
+        queueFile.append("second".getBytes("UTF-8"));
+        queueFile.remove(queueFile.peek());
+        queueFile.close();
+
+        RandomAccessFile head = new RandomAccessFile(new File(directory, QueueFile.HEAD_FILE), "rw");
+        head.seek(8);
+        head.writeLong(0);
+        head.close();
+
+        // at least once: a damaged head means sending the removed record again, never losing one
+        queueFile = new QueueFile(directory);
+        assertEquals(2, queueFile.size());
+        assertEquals("first", new String(queueFile.peek().getData(), "UTF-8"));
+        queueFile.close();
+    }
+
+    @Test
+    public void queueFileShouldCompactWithoutChangingOffsets() throws Exception {
+        QueueFile queueFile = new QueueFile(directory);
+        byte[] data = new byte[1024];
+
+        long lastOffset = 0;
+        for (int i = 0; i < 200; i++) {
+            lastOffset = queueFile.append(data);
+        }
+
+        for (int i = 0; i < 199; i++) {
+            queueFile.remove(queueFile.peek());
+        }
+
+        assertTrue(queueFile.getFileLength() < 100 * 1024);
+        assertEquals(lastOffset, queueFile.peek().getOffset());
+        queueFile.close();
+
+        queueFile = new QueueFile(directory);
+        assertEquals(1, queueFile.size());
+        assertEquals(lastOffset, queueFile.peek().getOffset());
+        queueFile.close();
+    }
+
+    @Test
+    public void requestsShouldBeSentInOrderAfterCrash() throws Exception {
+        // the first run queues the requests but dies before it goes online, without closing the queue
+        OfflineQueue queue = new OfflineQueue(directory, 1, new HttpSender());
+        for (int i = 0; i < 5; i++) {
+            queue.add(request(i), null);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+
+        OfflineQueue restarted = new OfflineQueue(directory, 1, new HttpSender());
+        assertEquals(5, restarted.size());
+
+        CountDownLatch delivered = awaitDelivery(restarted, 5);
+        restarted.resume();
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            RecordedRequest recorded = server.takeRequest();
+            assertEquals("/events/" + i, recorded.getPath());
+            assertEquals("body " + i, recorded.getBody().readUtf8());
+            assertEquals("value " + i, recorded.getHeader("X-Test"));
+        }
+
+        waitForEmpty(restarted);
+        restarted.close();
+    }
+
+    @Test
+    public void requestInFlightDuringCrashShouldBeSentAgain() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        OfflineQueue queue = new OfflineQueue(directory, 1, new HttpSender(500));
+        CountDownLatch delivered = awaitDelivery(queue, 1);
+        queue.resume();
+        for (int i = 0; i < 3; i++) {
+            queue.add(request(i), null);
+        }
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals("/events/0", server.takeRequest().getPath());
+        assertEquals("/events/1", server.takeRequest().getPath());
+
+        // the second request was sent but never answered when the process died
+        queue.close();
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        OfflineQueue restarted = new OfflineQueue(directory, 1, new HttpSender());
+        assertEquals(2, restarted.size());
+
+        delivered = awaitDelivery(restarted, 2);
+        restarted.resume();
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals("/events/1", server.takeRequest().getPath());
+        assertEquals("/events/2", server.takeRequest().getPath());
+        restarted.close();
+    }
+
+    @Test
+    public void serverErrorShouldKeepRequestAndClientErrorShouldDropIt() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        OfflineQueue queue = new OfflineQueue(directory, 1, new HttpSender());
+        queue.resume();
+
+        final CountDownLatch done = new CountDownLatch(2);
+        final Response[] outcomes = new Response[2];
+
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            queue.add(request(i), new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    outcomes[index] = response;
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    outcomes[index] = response;
+                    done.countDown();
+                }
+            });
+        }
+
+        // the 503 pauses the queue for the minimum retry delay
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(200, outcomes[0].getStatus());
+        assertEquals(400, outcomes[1].getStatus());
+        assertEquals("/events/0", server.takeRequest().getPath());
+        assertEquals("/events/0", server.takeRequest().getPath());
+        assertEquals("/events/1", server.takeRequest().getPath());
+
+        waitForEmpty(queue);
+        queue.close();
+    }
+
+    @Test
+    public void concurrentDrainShouldRemoveAllRequests() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+
+        OfflineQueue queue = new OfflineQueue(directory, 4, new HttpSender());
+        CountDownLatch delivered = awaitDelivery(queue, 50);
+        queue.resume();
+        for (int i = 0; i < 50; i++) {
+            queue.add(request(i), null);
+        }
+
+        assertTrue(delivered.await(20, TimeUnit.SECONDS));
+        waitForEmpty(queue);
+        queue.close();
+
+        QueueFile queueFile = new QueueFile(directory);
+        assertNull(queueFile.peek());
+        queueFile.close();
+    }
+
+    @Test
+    public void requestShouldBeDroppedAfterMaxAttempts() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        OfflineQueue queue = new OfflineQueue(directory, 1, new HttpSender());
+        queue.setMaxAttempts(2);
+        queue.resume();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final Response[] outcome = new Response[1];
+
+        queue.add(request(0), new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                outcome[0] = response;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(503, outcome[0].getStatus());
+        assertEquals(2, server.getRequestCount());
+
+        waitForEmpty(queue);
+        queue.close();
+    }
+
+    @Test
+    public void permanentErrorsShouldDropRequestAtOnce() throws Exception {
+        IOException[] errors = {
+                new UnknownHostException("unknown.example.com"),
+                new SSLHandshakeException("handshake failed"),
+                new RequestCancelledException()
+        };
+
+        for (final IOException error : errors) {
+            final AtomicInteger attempts = new AtomicInteger();
+            OfflineQueue queue = new OfflineQueue(directory, 1, new OfflineQueue.Sender() {
+                @Override
+                public void send(QueuedRequest request, ResponseListener listener) {
+                    attempts.incrementAndGet();
+                    listener.onFailure(null, error, null);
+                }
+            });
+            queue.resume();
+
+            final CountDownLatch dropped = new CountDownLatch(1);
+            final Throwable[] reported = new Throwable[1];
+
+            queue.add(request(0), new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    reported[0] = t;
+                    dropped.countDown();
+                }
+            });
+
+            assertTrue(dropped.await(10, TimeUnit.SECONDS));
+            assertSame(error, reported[0]);
+            assertEquals(1, attempts.get());
+
+            waitForEmpty(queue);
+            queue.close();
+        }
+    }
+
+    @Test
+    public void requestsShouldWaitWhileOffline() throws Exception {
+        final AtomicBoolean online = new AtomicBoolean(false);
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        OfflineQueue queue = new OfflineQueue(directory, 1, new HttpSender());
+        queue.setConnectivity(new OfflineQueue.Connectivity() {
+            @Override
+            public boolean isConnected() {
+                return online.get();
+            }
+        });
+        CountDownLatch delivered = awaitDelivery(queue, 1);
+        queue.resume();
+        queue.add(request(0), null);
+
+        assertEquals(0, server.getRequestCount());
+        assertEquals(1, queue.size());
+
+        online.set(true);
+        queue.resume();
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals("/events/0", server.takeRequest().getPath());
+
+        waitForEmpty(queue);
+        queue.close();
+    }
+
+    private static QueuedRequest request(int index) {
+        Headers headers = new Headers.Builder()
+                .add("Content-Type", "text/plain")
+                .add("X-Test", "value " + index)
+                .build();
+
+        return new QueuedRequest("POST", "/events/" + index, headers, ("body " + index).getBytes());
+    }
+
+    private CountDownLatch awaitDelivery(OfflineQueue queue, int count) {
+        final CountDownLatch latch = new CountDownLatch(count);
+
+        queue.setListener(new com.ibm.mobilefirstplatform.clientsdk.android.core.api.OfflineQueueListener() {
+            @Override
+            public void onDelivered(String method, String url, Response response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onDropped(String method, String url, Response response, Throwable t) {
+            }
+        });
+
+        return latch;
+    }
+
+    private static void waitForEmpty(OfflineQueue queue) throws InterruptedException {
+        for (int i = 0; i < 100 && queue.size() > 0; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Sends queued requests straight to the mock server. The queued URLs are paths on the server.
+     */
+    private class HttpSender implements OfflineQueue.Sender {
+        private final OkHttpClient senderClient;
+
+        HttpSender() {
+            senderClient = client;
+        }
+
+        HttpSender(int readTimeout) {
+            senderClient = client.clone();
+            senderClient.setReadTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void send(QueuedRequest queuedRequest, final ResponseListener listener) {
+            MediaType contentType = MediaType.parse(queuedRequest.getHeaders().get("Content-Type"));
+            Request request = new Request.Builder()
+                    .url(server.url(queuedRequest.getUrl()))
+                    .headers(queuedRequest.getHeaders())
+                    .method(queuedRequest.getMethod(), RequestBody.create(contentType, queuedRequest.getBody()))
+                    .build();
+
+            senderClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Request request, IOException e) {
+                    listener.onFailure(null, e, null);
+                }
+
+                @Override
+                public void onResponse(com.squareup.okhttp.Response response) {
+                    if (response.isSuccessful()) {
+                        listener.onSuccess(new ResponseImpl(response));
+                    } else {
+                        listener.onFailure(new ResponseImpl(response), null, null);
+                    }
+                }
+            });
+        }
+    }
+}
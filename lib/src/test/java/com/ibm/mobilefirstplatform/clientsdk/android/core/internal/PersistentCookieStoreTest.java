@@ -0,0 +1,179 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class PersistentCookieStoreTest {
+
+    private static final URI APP = URI.create("https://app.example.com/api/items");
+    private static final URI OTHER = URI.create("https://other.example.com/api/items");
+
+    private File file;
+    private PersistentCookieStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("cookies", "");
+        store = new PersistentCookieStore(file, 10);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        file.delete();
+    }
+
+    @Test
+    public void getShouldMatchDomainAndPath() {
+        store.add(APP, cookie("host", "1", null, "/api"));
+        store.add(APP, cookie("domain", "2", ".example.com", "/"));
+        store.add(APP, cookie("otherPath", "3", null, "/admin"));
+        store.add(APP, cookie("prefix", "4", null, "/ap"));
+
+        assertEquals(names("domain", "host"), names(store.get(APP)));
+        assertEquals(names("domain"), names(store.get(OTHER)));
+        assertEquals(names("domain"), names(store.get(URI.create("https://app.example.com/"))));
+    }
+
+    @Test
+    public void hostOnlyCookiesShouldNotReachSubdomains() throws Exception {
+        URI parent = URI.create("https://example.com/api/items");
+
+        store.add(parent, cookie("hostOnly", "1", null, "/"));
+        store.add(parent, cookie("domain", "2", ".example.com", "/"));
+
+        assertEquals(names("domain", "hostOnly"), names(store.get(parent)));
+        assertEquals(names("domain"), names(store.get(APP)));
+
+        // CookieManager gives cookies without a Domain attribute the domain of the request host
+        CookieManager manager = new CookieManager(store, CookiePolicy.ACCEPT_ALL);
+        manager.put(parent, Collections.singletonMap("Set-Cookie", Collections.singletonList("managed=3; Path=/")));
+
+        assertEquals(names("domain", "hostOnly", "managed"), names(store.get(parent)));
+        assertEquals(names("domain"), names(store.get(APP)));
+
+        // the flag is kept across restarts
+        store.close();
+        store = new PersistentCookieStore(file, 10);
+
+        assertEquals(names("domain", "hostOnly", "managed"), names(store.get(parent)));
+        assertEquals(names("domain"), names(store.get(APP)));
+    }
+
+    @Test
+    public void cookiesShouldSurviveReopening() throws Exception {
+        store.add(APP, cookie("session", "s", null, "/"));
+        store.add(APP, cookie("replaced", "old", null, "/"));
+        store.add(APP, cookie("replaced", "new", null, "/"));
+
+        HttpCookie persistent = cookie("persistent", "p", null, "/");
+        persistent.setMaxAge(3600);
+        store.add(APP, persistent);
+
+        HttpCookie deleted = cookie("deleted", "d", null, "/");
+        store.add(APP, deleted);
+        HttpCookie deletion = cookie("deleted", "", null, "/");
+        deletion.setMaxAge(0);
+        store.add(APP, deletion);
+
+        store.close();
+        store = new PersistentCookieStore(file, 10);
+
+        List<HttpCookie> cookies = store.get(APP);
+        assertEquals(names("persistent", "replaced", "session"), names(cookies));
+
+        for (HttpCookie cookie : cookies) {
+            if (cookie.getName().equals("replaced")) {
+                assertEquals("new", cookie.getValue());
+            }
+            if (cookie.getName().equals("persistent")) {
+                assertTrue(cookie.getMaxAge() > 3500);
+            }
+        }
+    }
+
+    @Test
+    public void fullStoreShouldEvictCookiesThatExpireSoonest() {
+        for (int i = 0; i < 10; i++) {
+            HttpCookie cookie = cookie("c" + i, "v", null, "/");
+            cookie.setMaxAge(i == 3 ? 60 : 3600 + i);
+            store.add(APP, cookie);
+        }
+
+        store.add(APP, cookie("session", "s", null, "/"));
+
+        List<String> names = names(store.get(APP));
+        assertEquals(10, names.size());
+        assertTrue(names.contains("session"));
+        assertTrue(!names.contains("c3"));
+    }
+
+    @Test
+    public void damagedTailShouldBeDropped() throws Exception {
+        store.add(APP, cookie("first", "1", null, "/"));
+        store.add(APP, cookie("second", "2", null, "/"));
+        store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        store = new PersistentCookieStore(file, 10);
+        assertEquals(names("first"), names(store.get(APP)));
+
+        // the store keeps appending after the last valid record
+        store.add(APP, cookie("third", "3", null, "/"));
+        store.close();
+        store = new PersistentCookieStore(file, 10);
+        assertEquals(names("first", "third"), names(store.get(APP)));
+    }
+
+    private static HttpCookie cookie(String name, String value, String domain, String path) {
+        HttpCookie cookie = new HttpCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath(path);
+        return cookie;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static List<String> names(List<HttpCookie> cookies) {
+        List<String> list = new ArrayList<>();
+        for (HttpCookie cookie : cookies) {
+            list.add(cookie.getName());
+        }
+        Collections.sort(list);
+        return list;
+    }
+}
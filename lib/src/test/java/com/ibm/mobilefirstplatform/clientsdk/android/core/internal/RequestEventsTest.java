@@ -0,0 +1,183 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ExtendedResponse;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestEventListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+public class RequestEventsTest {
+
+    private static final int SERVER_DELAY = 200;
+
+    private MockWebServer server;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(SERVER_DELAY);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+
+        listener = new RecordingListener();
+        RequestEvents.addListener(listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RequestEvents.removeListener(listener);
+        server.shutdown();
+    }
+
+    @Test
+    public void eventsShouldFollowThePhasesOfTheCall() throws Exception {
+        ExtendedResponse response = send("/first", "body");
+
+        List<String> events = listener.getEvents();
+        assertEquals("callStart", events.get(0));
+        assertTrue(events.toString(), events.indexOf("connectStart") < events.indexOf("connectEnd"));
+        assertTrue(events.toString(), events.indexOf("connectEnd") < events.indexOf("requestSent"));
+        assertTrue(events.toString(), events.indexOf("requestSent") < events.indexOf("firstByte"));
+        assertTrue(events.toString(), events.indexOf("firstByte") < events.indexOf("bodyComplete"));
+        assertEquals("callEnd", events.get(events.size() - 1));
+
+        RequestTimings timings = response.getTimings();
+        assertNotNull(timings);
+        assertFalse(timings.isConnectionReused());
+        assertTrue(timings.toString(), timings.getConnectTime() >= 0);
+        assertTrue(timings.toString(), timings.getServerTime() >= SERVER_DELAY);
+        assertTrue(timings.toString(), timings.getTotalTime() >= timings.getServerTime());
+        assertEquals(1, timings.getAttemptCount());
+        assertEquals(0, timings.getAuthorizationCount());
+    }
+
+    @Test
+    public void secondCallShouldReuseTheConnection() throws Exception {
+        send("/first", null);
+        listener.clear();
+
+        RequestTimings timings = send("/second", null).getTimings();
+
+        assertTrue(timings.isConnectionReused());
+        assertEquals(-1, timings.getConnectTime());
+        assertEquals(-1, timings.getTlsTime());
+        assertFalse(listener.getEvents().contains("connectStart"));
+    }
+
+    private ExtendedResponse send(String path, String body) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Response> result = new AtomicReference<>();
+
+        ResponseListener responseListener = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result.set(response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                latch.countDown();
+            }
+        };
+
+        if (body != null) {
+            new BaseRequest(server.url(path).toString(), BaseRequest.POST).send(body, responseListener);
+        } else {
+            new BaseRequest(server.url(path).toString(), BaseRequest.GET).send(responseListener);
+        }
+
+        assertTrue("request did not finish in time", latch.await(10, TimeUnit.SECONDS));
+        assertNotNull("request failed", result.get());
+
+        return (ExtendedResponse) result.get();
+    }
+
+    private static class RecordingListener extends RequestEventListener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        List<String> getEvents() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+
+        void clear() {
+            events.clear();
+        }
+
+        @Override
+        public void callStart(long callId, String method, String url) {
+            events.add("callStart");
+        }
+
+        @Override
+        public void connectStart(long callId, InetSocketAddress address) {
+            events.add("connectStart");
+        }
+
+        @Override
+        public void connectEnd(long callId, InetSocketAddress address) {
+            events.add("connectEnd");
+        }
+
+        @Override
+        public void requestSent(long callId) {
+            events.add("requestSent");
+        }
+
+        @Override
+        public void firstByte(long callId) {
+            events.add("firstByte");
+        }
+
+        @Override
+        public void bodyComplete(long callId, long byteCount) {
+            events.add("bodyComplete");
+        }
+
+        @Override
+        public void callEnd(long callId, RequestTimings timings) {
+            events.add("callEnd");
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private static final int BACKGROUND_COUNT = 200;
+    private static final int HIGH_COUNT = 50;
+    private static final int SERVER_DELAY = 20;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new com.squareup.okhttp.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(SERVER_DELAY);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void higherPriorityShouldRunFirst() throws Exception {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(1);
+        RequestScheduler scheduler = new RequestScheduler(dispatcher);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final List<RequestScheduler.Slot> slots = new ArrayList<>();
+
+        scheduler.schedule(BaseRequest.Priority.NORMAL, "host", recordingTask("first", order, slots));
+        scheduler.schedule(BaseRequest.Priority.BACKGROUND, "host", recordingTask("background", order, slots));
+        scheduler.schedule(BaseRequest.Priority.LOW, "host", recordingTask("low", order, slots));
+        scheduler.schedule(BaseRequest.Priority.HIGH, "host", recordingTask("high", order, slots));
+
+        assertEquals(1, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getWaitingCount());
+
+        for (int i = 0; i < 4; i++) {
+            slots.get(i).release();
+        }
+
+        assertEquals(4, order.size());
+        assertEquals("first", order.get(0));
+        assertEquals("high", order.get(1));
+        assertEquals("low", order.get(2));
+        assertEquals("background", order.get(3));
+    }
+
+    @Test
+    public void slotShouldBeHeldUntilTheBodyIsClosed() throws Exception {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(1);
+        RequestScheduler scheduler = new RequestScheduler(dispatcher);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final List<RequestScheduler.Slot> slots = new ArrayList<>();
+        final List<com.squareup.okhttp.Response> responses = new ArrayList<>();
+
+        scheduler.schedule(BaseRequest.Priority.NORMAL, "host", recordingTask("first", order, slots));
+        scheduler.schedule(BaseRequest.Priority.NORMAL, "host", recordingTask("second", order, slots));
+
+        Callback callback = slots.get(0).releaseAfter(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+            }
+
+            @Override
+            public void onResponse(com.squareup.okhttp.Response response) {
+                responses.add(response);
+            }
+        });
+
+        Request request = new Request.Builder().url("http://host/").build();
+        callback.onResponse(new com.squareup.okhttp.Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(ResponseBody.create(MediaType.parse("text/plain"), "ok"))
+                .build());
+
+        // the connection is still busy while the body is unread
+        assertEquals(1, order.size());
+        assertEquals(1, scheduler.getWaitingCount());
+
+        assertEquals("ok", responses.get(0).body().string());
+
+        assertEquals(2, order.size());
+        assertEquals("second", order.get(1));
+        assertEquals(0, scheduler.getWaitingCount());
+    }
+
+    @Test
+    public void lowPriorityShareShouldBeCountedPerHost() throws Exception {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(4);
+        RequestScheduler scheduler = new RequestScheduler(dispatcher);
+        scheduler.setLowPriorityShare(0.5f);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final List<RequestScheduler.Slot> slots = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.schedule(BaseRequest.Priority.LOW, "first", recordingTask("first " + i, order, slots));
+            scheduler.schedule(BaseRequest.Priority.BACKGROUND, "second", recordingTask("second " + i, order, slots));
+        }
+
+        // two low priority slots on each host, the busy first host doesn't hold back the second one
+        assertEquals(4, scheduler.getRunningCount());
+        assertEquals(2, scheduler.getWaitingCount());
+        assertEquals(Arrays.asList("first 0", "second 0", "first 1", "second 1"), order);
+
+        // a slot released on the first host goes to the call waiting for that host
+        slots.get(0).release();
+
+        assertEquals(4, scheduler.getRunningCount());
+        assertEquals("first 2", order.get(4));
+
+        // calls of a higher priority still get the rest of the per host limit
+        scheduler.schedule(BaseRequest.Priority.NORMAL, "second", recordingTask("normal", order, slots));
+        assertEquals("normal", order.get(5));
+        assertEquals(1, scheduler.getWaitingCount());
+    }
+
+    private RequestScheduler.Task recordingTask(final String name, final List<String> order, final List<RequestScheduler.Slot> slots) {
+        return new RequestScheduler.Task() {
+            @Override
+            public void run(RequestScheduler.Slot slot) {
+                order.add(name);
+                slots.add(slot);
+            }
+        };
+    }
+
+    /**
+     * Benchmark: latency of high priority requests sent while 200 background requests are queued.
+     */
+    @Test
+    public void highPriorityLatencyWithQueuedBackgroundRequests() throws Exception {
+        String url = server.url("/").toString();
+        final CountDownLatch backgroundLatch = new CountDownLatch(BACKGROUND_COUNT);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < BACKGROUND_COUNT; i++) {
+            BaseRequest request = new BaseRequest(url + "background/" + i, BaseRequest.GET);
+            request.setPriority(BaseRequest.Priority.BACKGROUND);
+            request.send(new CountingListener(backgroundLatch, null, 0));
+        }
+
+        long[] latencies = new long[HIGH_COUNT];
+
+        for (int i = 0; i < HIGH_COUNT; i++) {
+            CountDownLatch latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(url + "high/" + i, BaseRequest.GET);
+            request.setPriority(BaseRequest.Priority.HIGH);
+            request.send(new CountingListener(latch, latencies, i));
+
+            assertTrue("high priority request did not finish", latch.await(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue("background requests did not finish", backgroundLatch.await(60, TimeUnit.SECONDS));
+        long backgroundDrainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long p50 = TimeUnit.NANOSECONDS.toMillis(sorted[HIGH_COUNT / 2]);
+        long p99 = TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(HIGH_COUNT * 0.99) - 1]);
+
+        assertTrue("p50 of high priority requests should not wait for the background queue", p50 < backgroundDrainMillis / 2);
+        assertTrue("p99 of high priority requests should not wait for the background queue", p99 < backgroundDrainMillis / 2);
+    }
+
+    private static class CountingListener implements ResponseListener {
+        private final CountDownLatch latch;
+        private final long[] latencies;
+        private final int index;
+        private final long sentAt = System.nanoTime();
+
+        CountingListener(CountDownLatch latch, long[] latencies, int index) {
+            this.latch = latch;
+            this.latencies = latencies;
+            this.index = index;
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            finish();
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            finish();
+        }
+
+        private void finish() {
+            if (latencies != null) {
+                latencies[index] = System.nanoTime() - sentAt;
+            }
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.LargeBodyPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseBodyTooLargeException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import okio.Buffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ResponseBufferTest {
+
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @After
+    public void tearDown() {
+        ResponseBuffer.setLimit(Long.MAX_VALUE, LargeBodyPolicy.SPILL_TO_FILE);
+        ResponseBuffer.setSpillDirectory(null);
+    }
+
+    @Test
+    public void readShouldBufferKnownAndUnknownLengths() throws Exception {
+        byte[] data = bytes(10000);
+
+        ResponseBuffer known = ResponseBuffer.read(ResponseBody.create(TEXT, data));
+        ResponseBuffer chunked = ResponseBuffer.read(chunkedBody(data));
+
+        assertTrue(Arrays.equals(data, known.toByteArray()));
+        assertTrue(Arrays.equals(data, chunked.toByteArray()));
+        assertEquals(data.length, chunked.length());
+        assertFalse(chunked.isSpilled());
+
+        known.release();
+        chunked.release();
+        assertNull(known.toByteArray());
+    }
+
+    @Test
+    public void releasedBuffersShouldBeReused() throws Exception {
+        ResponseBuffer.read(ResponseBody.create(TEXT, bytes(5000))).release();
+
+        long reuses = BufferPool.getReuseCount();
+        ResponseBuffer buffer = ResponseBuffer.read(ResponseBody.create(TEXT, bytes(6000)));
+
+        assertEquals(reuses + 1, BufferPool.getReuseCount());
+        assertEquals(new String(bytes(6000), UTF_8), buffer.decode(UTF_8));
+        buffer.release();
+    }
+
+    @Test
+    public void largeBodiesShouldSpillToFile() throws Exception {
+        ResponseBuffer.setLimit(4096, LargeBodyPolicy.SPILL_TO_FILE);
+        byte[] data = bytes(20000);
+
+        ResponseBuffer known = ResponseBuffer.read(ResponseBody.create(TEXT, data));
+        ResponseBuffer chunked = ResponseBuffer.read(chunkedBody(data));
+
+        assertTrue(known.isSpilled());
+        assertTrue(chunked.isSpilled());
+        assertEquals(data.length, chunked.length());
+        assertNull(chunked.decode(UTF_8));
+        assertTrue(Arrays.equals(data, readAll(known.openStream())));
+        assertTrue(Arrays.equals(data, readAll(chunked.openStream())));
+
+        known.release();
+        chunked.release();
+    }
+
+    @Test
+    public void largeBodiesShouldFailWithFailPolicy() throws Exception {
+        ResponseBuffer.setLimit(4096, LargeBodyPolicy.FAIL);
+
+        try {
+            ResponseBuffer.read(ResponseBody.create(TEXT, bytes(5000)));
+            fail("Known length over the limit was read");
+        } catch (ResponseBodyTooLargeException e) {
+            assertEquals(4096, e.getLimit());
+            assertEquals(5000, e.getContentLength());
+        }
+
+        try {
+            ResponseBuffer.read(chunkedBody(bytes(5000)));
+            fail("Unknown length over the limit was read");
+        } catch (ResponseBodyTooLargeException e) {
+            assertEquals(-1, e.getContentLength());
+        }
+
+        ResponseBuffer exact = ResponseBuffer.read(chunkedBody(bytes(4096)));
+        assertEquals(4096, exact.length());
+        exact.release();
+    }
+
+    @Test
+    public void closedResponsesShouldDeleteTheirSpillFiles() throws Exception {
+        File directory = createDirectory();
+        ResponseBuffer.setSpillDirectory(directory);
+        ResponseBuffer.setLimit(4096, LargeBodyPolicy.SPILL_TO_FILE);
+        byte[] data = bytes(20000);
+
+        ResponseImpl response = new ResponseImpl(okResponse(ResponseBody.create(TEXT, data)));
+
+        assertEquals(1, spillFiles(directory).length);
+        assertTrue(Arrays.equals(data, readAll(response.getResponseByteStream())));
+
+        response.close();
+
+        assertEquals(0, spillFiles(directory).length);
+        delete(directory);
+    }
+
+    @Test
+    public void staleSpillFilesShouldBeDeletedWhenTheDirectoryIsSet() throws Exception {
+        File directory = createDirectory();
+        File stale = new File(directory, ResponseBuffer.SPILL_PREFIX + "123" + ResponseBuffer.SPILL_SUFFIX);
+        File other = new File(directory, "other.tmp");
+
+        assertTrue(stale.createNewFile());
+        assertTrue(other.createNewFile());
+
+        ResponseBuffer.setSpillDirectory(directory);
+
+        assertFalse(stale.exists());
+        assertTrue(other.exists());
+        delete(directory);
+    }
+
+    @Test
+    public void readingTheBytesShouldGiveTheBufferBack() throws Exception {
+        byte[] data = bytes(6000);
+        ResponseImpl response = new ResponseImpl(okResponse(ResponseBody.create(TEXT, data)));
+
+        assertTrue(Arrays.equals(data, response.getResponseBytes()));
+
+        // the next response takes the buffer of the copied one
+        long reuses = BufferPool.getReuseCount();
+        ResponseImpl next = new ResponseImpl(okResponse(ResponseBody.create(TEXT, data)));
+
+        assertEquals(reuses + 1, BufferPool.getReuseCount());
+        assertTrue(Arrays.equals(data, response.getResponseBytes()));
+
+        next.close();
+    }
+
+    @Test
+    public void streamsShouldNotSeeTheNextResponseInTheReusedBuffer() throws Exception {
+        byte[] first = bytes(6000);
+        byte[] second = new byte[6000];
+        Arrays.fill(second, (byte) 'z');
+
+        ResponseImpl response = new ResponseImpl(okResponse(ResponseBody.create(TEXT, first)));
+        InputStream beforeCopy = response.getResponseByteStream();
+
+        response.getResponseBytes();
+        InputStream afterCopy = response.getResponseByteStream();
+
+        // the next responses of the same size class take the buffer back from the pool
+        long reuses = BufferPool.getReuseCount();
+        ResponseImpl next = new ResponseImpl(okResponse(ResponseBody.create(TEXT, second)));
+        assertEquals(reuses + 1, BufferPool.getReuseCount());
+
+        response.close();
+        ResponseImpl last = new ResponseImpl(okResponse(ResponseBody.create(TEXT, second)));
+
+        assertTrue(Arrays.equals(first, readAll(beforeCopy)));
+        assertTrue(Arrays.equals(first, readAll(afterCopy)));
+
+        next.close();
+        last.close();
+    }
+
+    @Test
+    public void listenerPathShouldGiveTheBufferBack() throws Exception {
+        final byte[] data = bytes(6000);
+        final String[] text = new String[1];
+
+        ResponseListener readingText = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                text[0] = response.getResponseText();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            }
+        };
+
+        final Response[] kept = new Response[1];
+        ResponseListener keepingResponse = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                kept[0] = response;
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            }
+        };
+
+        // with no parse pool, the listener runs on this thread
+        BaseRequest.deliverSuccess(readingText, okResponse(ResponseBody.create(TEXT, data)));
+        assertEquals(new String(data, UTF_8), text[0]);
+
+        long reuses = BufferPool.getReuseCount();
+        BaseRequest.deliverSuccess(keepingResponse, okResponse(ResponseBody.create(TEXT, data)));
+        assertEquals(reuses + 1, BufferPool.getReuseCount());
+
+        // the kept response has a copy of its own, and its buffer went back too
+        ResponseBuffer.read(ResponseBody.create(TEXT, bytes(6000))).release();
+        assertEquals(reuses + 2, BufferPool.getReuseCount());
+        assertTrue(Arrays.equals(data, kept[0].getResponseBytes()));
+    }
+
+    @Test
+    public void bytesShouldSurviveDecodingMalformedText() throws Exception {
+        byte[] data = {'o', 'k', (byte) 0xff, (byte) 0xc0, (byte) 0xaf};
+        ResponseImpl response = new ResponseImpl(okResponse(ResponseBody.create(TEXT, data)));
+
+        response.getResponseText();
+
+        assertTrue(Arrays.equals(data, response.getResponseBytes()));
+    }
+
+    @Test
+    public void unreachableSpilledResponsesShouldDeleteTheirFiles() throws Exception {
+        File directory = createDirectory();
+        ResponseBuffer.setSpillDirectory(directory);
+        ResponseBuffer.setLimit(4096, LargeBodyPolicy.SPILL_TO_FILE);
+
+        new ResponseImpl(okResponse(ResponseBody.create(TEXT, bytes(20000))));
+        assertEquals(1, spillFiles(directory).length);
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (spillFiles(directory).length > 0) {
+            assertTrue("spill file was not deleted in time", System.currentTimeMillis() < deadline);
+            System.gc();
+            Thread.sleep(10);
+            ResponseBuffer.deleteUnreachableSpillFiles();
+        }
+
+        delete(directory);
+    }
+
+    /**
+     * Reads the same bodies the way responses were read before the pool, with {@link ResponseBody#bytes()},
+     * and the way listeners get them, with the text read in the listener, and compares the bytes allocated by
+     * the reading thread.
+     */
+    @Test
+    public void pooledResponsesShouldAllocateLessThanPlainReads() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        byte[] data = bytes(32 * 1024);
+        int iterations = 2000;
+        long threadId = Thread.currentThread().getId();
+
+        // warm up both paths
+        for (int i = 0; i < 100; i++) {
+            readPlain(data);
+            readPooled(data);
+        }
+
+        long start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            readPlain(data);
+        }
+        long plainBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+        long poolAllocations = BufferPool.getAllocationCount();
+
+        start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            readPooled(data);
+        }
+        long pooledBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+        // responses give their buffer back when the listener is done, so the pool doesn't grow
+        assertEquals(poolAllocations, BufferPool.getAllocationCount());
+        assertTrue("plain " + plainBytes + " bytes, pooled " + pooledBytes + " bytes",
+                pooledBytes < plainBytes - (long) iterations * data.length / 2);
+    }
+
+    private static String readPlain(byte[] data) throws IOException {
+        return new String(okResponse(ResponseBody.create(TEXT, data)).body().bytes(), UTF_8);
+    }
+
+    private static final ResponseListener TEXT_LISTENER = new ResponseListener() {
+        @Override
+        public void onSuccess(Response response) {
+            response.getResponseText();
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+        }
+    };
+
+    private static void readPooled(byte[] data) {
+        // with no parse pool, the listener runs on this thread
+        BaseRequest.deliverSuccess(TEXT_LISTENER, okResponse(ResponseBody.create(TEXT, data)));
+    }
+
+    private static com.squareup.okhttp.Response okResponse(ResponseBody body) {
+        return new com.squareup.okhttp.Response.Builder()
+                .request(new Request.Builder().url("http://localhost/items").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(body)
+                .build();
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("spill", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        return directory;
+    }
+
+    private static File[] spillFiles(File directory) {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(ResponseBuffer.SPILL_PREFIX);
+            }
+        });
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    private static ResponseBody chunkedBody(byte[] data) {
+        return ResponseBody.create(TEXT, -1, new Buffer().write(data));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            Buffer buffer = new Buffer();
+            buffer.readFrom(in);
+            return buffer.readByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
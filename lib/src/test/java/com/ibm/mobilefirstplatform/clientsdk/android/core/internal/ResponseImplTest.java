@@ -0,0 +1,97 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ResponseImplTest {
+
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+
+    @Test
+    public void textShouldBeDecodedOnce() {
+        ResponseImpl response = new ResponseImpl(okResponse("hello"));
+
+        String text = response.getResponseText();
+
+        assertEquals("hello", text);
+        assertSame(text, response.getResponseText());
+    }
+
+    @Test
+    public void headersShouldBeBuiltOnceAndBeReadOnly() {
+        ResponseImpl response = new ResponseImpl(okResponse("hello"));
+
+        Map<String, List<String>> headers = response.getHeaders();
+
+        assertEquals("1", headers.get("X-Test").get(0));
+        assertSame(headers, response.getHeaders());
+        assertSame(response.getResponseHeadersNames(), response.getResponseHeadersNames());
+
+        try {
+            headers.remove("X-Test");
+            fail("Headers are modifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        try {
+            headers.get("X-Test").add("2");
+            fail("Header values are modifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        assertEquals(1, response.getHeaders().get("X-Test").size());
+    }
+
+    @Test
+    public void releaseBodyBytesShouldKeepDecodedText() {
+        ResponseImpl response = new ResponseImpl(okResponse("hello"));
+
+        assertFalse(response.releaseBodyBytes());
+        assertEquals(5, response.getResponseBytes().length);
+
+        assertEquals("hello", response.getResponseText());
+        assertTrue(response.releaseBodyBytes());
+
+        assertNull(response.getResponseBytes());
+        assertNull(response.getResponseByteStream());
+        assertEquals("hello", response.getResponseText());
+    }
+
+    private static Response okResponse(String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("X-Test", "1")
+                .body(ResponseBody.create(TEXT, body))
+                .build();
+    }
+}
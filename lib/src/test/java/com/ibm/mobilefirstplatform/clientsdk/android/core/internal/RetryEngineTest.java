@@ -0,0 +1,125 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RetryPolicy;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class RetryEngineTest {
+
+    private RetryPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new RetryPolicy.Builder().maxAttempts(4).baseDelay(100).maxDelay(1000).build();
+        RetryEngine.getBudget().setLimits(RetryBudget.DEFAULT_RETRY_RATIO, 100);
+    }
+
+    @After
+    public void tearDown() {
+        RetryEngine.getBudget().setLimits(RetryBudget.DEFAULT_RETRY_RATIO, RetryBudget.DEFAULT_RESERVE);
+    }
+
+    @Test
+    public void delayShouldStayBelowExponentialCeiling() {
+        for (int retries = 0; retries < 3; retries++) {
+            for (int i = 0; i < 20; i++) {
+                long delay = RetryEngine.getRetryDelay(policy, "GET", retries);
+
+                assertTrue(delay >= 0);
+                assertTrue(delay < policy.getDelayCeiling(retries));
+            }
+        }
+
+        assertEquals(100, policy.getDelayCeiling(0));
+        assertEquals(400, policy.getDelayCeiling(2));
+        assertEquals(1000, policy.getDelayCeiling(10));
+        assertEquals(1000, policy.getDelayCeiling(100));
+    }
+
+    @Test
+    public void shouldStopAfterMaxAttempts() {
+        assertTrue(RetryEngine.getRetryDelay(policy, "GET", 2) >= 0);
+        assertEquals(RetryEngine.NO_RETRY, RetryEngine.getRetryDelay(policy, "GET", 3));
+    }
+
+    @Test
+    public void shouldOnlyRetryIdempotentMethodsByDefault() {
+        assertEquals(RetryEngine.NO_RETRY, RetryEngine.getRetryDelay(policy, "POST", 0));
+        assertTrue(RetryEngine.getRetryDelay(policy, "PUT", 0) >= 0);
+
+        RetryPolicy postPolicy = new RetryPolicy.Builder().retryNonIdempotent(true).build();
+        assertTrue(RetryEngine.getRetryDelay(postPolicy, "POST", 0) >= 0);
+
+        assertEquals(RetryEngine.NO_RETRY, RetryEngine.getRetryDelay(null, "GET", 0));
+    }
+
+    @Test
+    public void shouldFollowRetryAfter() {
+        assertEquals(0, RetryEngine.getRetryDelay(policy, "GET", 0, response(503, "0")));
+        assertEquals(RetryEngine.NO_RETRY, RetryEngine.getRetryDelay(policy, "GET", 0, response(503, "120")));
+        assertEquals(RetryEngine.NO_RETRY, RetryEngine.getRetryDelay(policy, "GET", 0, response(404, null)));
+        assertTrue(RetryEngine.getRetryDelay(policy, "GET", 0, response(502, null)) >= 0);
+
+        assertEquals(2000, RetryEngine.getRetryAfter(response(429, "2")));
+        assertEquals(-1, RetryEngine.getRetryAfter(response(429, "soon")));
+    }
+
+    @Test
+    public void budgetShouldLimitRetries() {
+        RetryBudget budget = new RetryBudget(0.1, 5);
+
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (budget.tryRetry()) {
+                allowed++;
+            }
+        }
+
+        // only the reserve is available without new requests
+        assertEquals(5, allowed);
+        assertFalse(budget.tryRetry());
+
+        for (int i = 0; i < 20; i++) {
+            budget.onRequest();
+        }
+
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+        assertEquals(7, budget.getRetryCount());
+    }
+
+    private static Response response(int code, String retryAfter) {
+        Response.Builder builder = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code);
+
+        if (retryAfter != null) {
+            builder.header(RetryEngine.RETRY_AFTER, retryAfter);
+        }
+
+        return builder.build();
+    }
+}
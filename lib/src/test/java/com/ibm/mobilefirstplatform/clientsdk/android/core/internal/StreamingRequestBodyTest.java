@@ -0,0 +1,68 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import okio.Buffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class StreamingRequestBodyTest {
+
+    private static final MediaType TEXT = MediaType.parse("text/plain");
+
+    @Test
+    public void replayableStreamShouldBeWrittenAgainFromSpoolFile() throws Exception {
+        StreamingRequestBody body = StreamingRequestBody.create(TEXT, stream("hello"), 5, null, true);
+
+        assertTrue(StreamingRequestBody.isReplayable(body));
+        assertEquals("hello", write(body));
+        assertEquals("hello", write(StreamingRequestBody.replay(body)));
+
+        body.release();
+    }
+
+    @Test
+    public void streamWithoutReplayCopyShouldBeWrittenOnce() throws Exception {
+        StreamingRequestBody body = StreamingRequestBody.create(TEXT, stream("hello"), 5, null, false);
+
+        assertFalse(StreamingRequestBody.isReplayable(body));
+        assertEquals("hello", write(body));
+
+        try {
+            write(body);
+            fail("Stream was written twice");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes());
+    }
+
+    private static String write(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
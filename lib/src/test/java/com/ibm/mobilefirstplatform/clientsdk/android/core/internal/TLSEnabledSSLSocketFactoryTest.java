@@ -0,0 +1,107 @@
+/*
+    Copyright 2015 IBM Corp.
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+        http://www.apache.org/licenses/LICENSE-2.0
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ConnectionStatistics;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.internal.SslContextBuilder;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TLSEnabledSSLSocketFactoryTest {
+
+    private MockWebServer server;
+    private ConnectionStatistics before;
+
+    @Before
+    public void setUp() throws Exception {
+        SSLContext sslContext = SslContextBuilder.localhost();
+
+        HttpClientRegistry.setSslSocketFactory(new TLSEnabledSSLSocketFactory(sslContext,
+                TLSEnabledSSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE, TLSEnabledSSLSocketFactory.DEFAULT_SESSION_TIMEOUT));
+
+        server = new MockWebServer();
+        server.useHttps(sslContext.getSocketFactory(), false);
+        server.start();
+
+        before = BMSClient.getInstance().getConnectionStatistics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClientRegistry.setSslSocketFactory(TLSEnabledSSLSocketFactory.getInstance());
+        server.shutdown();
+    }
+
+    @Test
+    public void resourceAndAuthorizationClientsShouldShareTlsSessions() throws Exception {
+        BaseRequest authorizationRequest = new AuthorizationRequest(server.url("/").toString(), BaseRequest.GET);
+        OkHttpClient resourceClient = new BaseRequest(server.url("/").toString(), BaseRequest.GET).getHttpClient();
+        OkHttpClient authorizationClient = authorizationRequest.getHttpClient();
+
+        // every response closes its connection, so each request needs a new handshake
+        execute(resourceClient, "/first");
+        awaitHandshakes(1);
+        execute(authorizationClient, "/second");
+        execute(resourceClient, "/third");
+        awaitHandshakes(3);
+
+        ConnectionStatistics after = BMSClient.getInstance().getConnectionStatistics();
+
+        assertEquals(1, after.getFullHandshakeCount() - before.getFullHandshakeCount());
+        assertEquals(2, after.getResumedHandshakeCount() - before.getResumedHandshakeCount());
+    }
+
+    private void execute(OkHttpClient client, String path) throws Exception {
+        server.enqueue(new MockResponse().setBody("ok").setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+
+        Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+
+        assertEquals("ok", response.body().string());
+    }
+
+    /**
+     * The platform reports completed handshakes on its own thread, so the counters are polled.
+     */
+    private void awaitHandshakes(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (handshakesSinceSetUp() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, handshakesSinceSetUp());
+    }
+
+    private long handshakesSinceSetUp() {
+        ConnectionStatistics now = BMSClient.getInstance().getConnectionStatistics();
+
+        return now.getFullHandshakeCount() - before.getFullHandshakeCount()
+                + now.getResumedHandshakeCount() - before.getResumedHandshakeCount();
+    }
+}